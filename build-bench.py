@@ -0,0 +1,93 @@
+#!/usr/bin/python
+
+'''
+Compiles and runs the JMH benchmarks in the 'src-bench' folder. Any arguments
+are passed on to JMH, for example a regular expression selecting the
+benchmarks to run:
+
+    python build-bench.py SearchBenchmark
+
+The results are written in JSON format to 'build/bench/results-<time>.json'
+so that they can be compared across versions.
+
+The JMH jars are not shipped with the sources. Put jmh-core,
+jmh-generator-annprocess and their dependencies (jopt-simple, commons-math3)
+into 'lib/jmh' before running this script.
+'''
+
+import os, shutil, platform, sys, time
+from os.path import exists, join, isfile, isdir
+
+is_windows = 'windows' in platform.system().lower()
+classpath_sep = ';' if is_windows else ':'
+
+print('Cleaning build directory...')
+class_dir = 'build/bench/classes'
+if not exists(class_dir):
+	os.makedirs(class_dir)
+for filename in os.listdir(class_dir):
+	path = join(class_dir, filename)
+	if isfile(path):
+		os.remove(path)
+	elif isdir(path):
+		shutil.rmtree(path)
+
+def execute(cmd_parts):
+	return os.system(' '.join(cmd_parts))
+
+# Recursively collect library jars
+jars = []
+for root, dirs, files in os.walk('lib'):
+	for filename in files:
+		if not filename.endswith('.jar'): continue
+		jars.append(join(root, filename))
+
+if not [jar for jar in jars if os.path.basename(jar).startswith('jmh-core')]:
+	print('JMH not found. Put the JMH jars into lib/jmh first.')
+	exit(1)
+
+# Collect benchmark sources
+bench_paths = []
+for root, dirs, files in os.walk('src-bench'):
+	for filename in files:
+		if filename.endswith('.java'):
+			bench_paths.append(join(root, filename))
+
+print('Compiling sources...')
+if execute([
+	'javac',
+	'-source 1.7',
+	'-target 1.7',
+	'-sourcepath \"%s\"' % classpath_sep.join(['src-bench', 'src']),
+	'-classpath \"%s\"' % classpath_sep.join(jars),
+	'-nowarn',
+	'-encoding', 'utf8',
+	'-d %s' % class_dir,
+	' '.join(bench_paths)
+]) != 0:
+	exit(1)
+
+# Resources such as the mime-util magic files are loaded from the classpath
+for root, dirs, files in os.walk('src'):
+	for filename in files:
+		if filename.endswith('.java'): continue
+		src_path = join(root, filename)
+		dst_path = join(class_dir, os.path.relpath(src_path, 'src'))
+		if not exists(os.path.dirname(dst_path)):
+			os.makedirs(os.path.dirname(dst_path))
+		shutil.copy(src_path, dst_path)
+
+result_path = 'build/bench/results-%s.json' % time.strftime('%Y%m%d-%H%M%S')
+
+print('Launching benchmarks...')
+print('-' * 40)
+jars.append(class_dir)
+execute([
+	'java',
+	'-classpath \"%s\"' % classpath_sep.join(jars),
+	'org.openjdk.jmh.Main',
+	'-rf json',
+	'-rff %s' % result_path,
+	' '.join(sys.argv[1:])
+])
+print('Results written to ' + result_path)
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.docfetcher.enums.SettingsConf;
+import net.sourceforge.docfetcher.model.FieldTypes;
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.IndexRegistry;
+import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link IndexWriterAdapter#add} for each of the
+ * analyzers that can be selected in the preferences. The writer is reopened
+ * on each iteration so that the in-memory index doesn't grow without bounds.
+ *
+ * @author Tran Nam Quang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+	// See IndexRegistry.resetAnalyzer: 0 = Standard, 1 = source code, 2 = Ansj
+	@Param({"0", "1", "2"})
+	public int analyzer;
+
+	private String text;
+	private IndexWriterAdapter writer;
+
+	@Setup(Level.Trial)
+	public void setUpTrial() {
+		SettingsConf.Int.LuceneAnalyzer.set(analyzer);
+		IndexRegistry.resetAnalyzer();
+		text = new Corpus().text(2000);
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpIteration() throws IOException {
+		writer = new IndexWriterAdapter(new RAMDirectory());
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownIteration() throws IOException {
+		writer.close();
+	}
+
+	@Benchmark
+	public void add() throws Exception {
+		Document doc = new Document();
+		doc.add(new Field(Fields.CONTENT.key(), text,
+			FieldTypes.TYPE_TEXT_WITH_POSITIONS_OFFSETS_NOT_STORED));
+		writer.add(doc);
+	}
+
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * Generates the documents the benchmarks run on. The text is made up of words
+ * drawn from a small fixed vocabulary with a fixed random seed, so that the
+ * generated corpus is the same on every run and results stay comparable
+ * across versions.
+ *
+ * @author Tran Nam Quang
+ */
+final class Corpus {
+
+	/**
+	 * The document types for which the corpus can generate files. Each
+	 * constant corresponds to a parser.
+	 */
+	enum Type {
+		TXT ("txt"),
+		HTML ("html"),
+		RTF ("rtf"),
+		PDF ("pdf"),
+		DOCX ("docx"),
+		;
+
+		public final String extension;
+
+		Type(@NotNull String extension) {
+			this.extension = extension;
+		}
+	}
+
+	private static final String[] VOCABULARY = {
+		"index", "search", "document", "folder", "archive", "parser", "query",
+		"lucene", "highlight", "preview", "filter", "result", "token", "phrase",
+		"wildcard", "analyzer", "charset", "metadata", "author", "title",
+		"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+		"elit", "sed", "do", "eiusmod", "tempor", "incididunt", "labore",
+		"getFileName", "parseResult", "IndexWriter", "toString", "hashCode",
+		"交通", "安全", "出行", "上车", "下车",
+	};
+
+	private final Random random = new Random(42);
+
+	/**
+	 * Returns the given number of words separated by spaces, with a line break
+	 * after every twelve words.
+	 */
+	@NotNull
+	public String text(int wordCount) {
+		StringBuilder sb = new StringBuilder(wordCount * 8);
+		for (int i = 0; i < wordCount; i++) {
+			sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+			sb.append(i % 12 == 11 ? '\n' : ' ');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes a file of the given type with the given number of words into the
+	 * given directory and returns it.
+	 */
+	@NotNull
+	public File write(	@NotNull File dir,
+						@NotNull String basename,
+						@NotNull Type type,
+						int wordCount) throws IOException {
+		File file = new File(dir, basename + "." + type.extension);
+		String text = text(wordCount);
+		switch (type) {
+		case TXT:
+			Files.write(text, file, Charsets.UTF_8);
+			break;
+		case HTML:
+			Files.write("<html><head><meta charset=\"utf-8\"><title>" + basename
+				+ "</title></head><body><p>"
+				+ text.replace("\n", "</p>\n<p>")
+				+ "</p></body></html>", file, Charsets.UTF_8);
+			break;
+		case RTF:
+			Files.write("{\\rtf1\\ansi\\deff0 "
+				+ toRtf(text).replace("\n", "\\par\n")
+				+ "}", file, Charsets.US_ASCII);
+			break;
+		case PDF:
+			writePdf(file, text);
+			break;
+		case DOCX:
+			writeDocx(file, text);
+			break;
+		}
+		return file;
+	}
+
+	@NotNull
+	private static String toRtf(@NotNull String text) {
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 128)
+				sb.append(c);
+			else
+				sb.append("\\u").append((int) c).append('?');
+		}
+		return sb.toString();
+	}
+
+	// The standard PDF fonts can't encode Chinese characters, so they're dropped
+	private static void writePdf(@NotNull File file, @NotNull String text)
+			throws IOException {
+		PDDocument doc = new PDDocument();
+		try {
+			String[] lines = text.replaceAll("[^\\x00-\\x7F]", "").split("\n");
+			int linesPerPage = 50;
+			for (int i = 0; i < lines.length; i += linesPerPage) {
+				PDPage page = new PDPage();
+				doc.addPage(page);
+				PDPageContentStream content = new PDPageContentStream(doc, page);
+				content.beginText();
+				content.setFont(PDType1Font.HELVETICA, 10);
+				content.setLeading(14);
+				content.newLineAtOffset(40, 750);
+				for (int j = i; j < Math.min(i + linesPerPage, lines.length); j++) {
+					content.showText(lines[j]);
+					content.newLine();
+				}
+				content.endText();
+				content.close();
+			}
+			doc.save(file);
+		}
+		finally {
+			doc.close();
+		}
+	}
+
+	private static void writeDocx(@NotNull File file, @NotNull String text)
+			throws IOException {
+		XWPFDocument doc = new XWPFDocument();
+		for (String line : text.split("\n"))
+			doc.createParagraph().createRun().setText(line);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			doc.write(out);
+		}
+		finally {
+			Closeables.closeQuietly(out);
+		}
+	}
+
+}
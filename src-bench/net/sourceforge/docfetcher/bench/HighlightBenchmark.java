@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.IndexRegistry;
+import net.sourceforge.docfetcher.model.search.HighlightService;
+
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time {@link HighlightService#highlight} takes on large texts,
+ * for plain term queries and for phrase queries.
+ *
+ * @author Tran Nam Quang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HighlightBenchmark {
+
+	@Param({"10000", "200000"})
+	public int wordCount;
+
+	@Param({"false", "true"})
+	public boolean phrase;
+
+	private String text;
+	private Query query;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		text = new Corpus().text(wordCount);
+		QueryParser parser = new QueryParser(
+			Fields.CONTENT.key(), IndexRegistry.getAnalyzer());
+		query = parser.parse(phrase ? "\"lucene index\"" : "lucene OR index");
+	}
+
+	@Benchmark
+	public Object highlight() throws Exception {
+		return HighlightService.highlight(query, phrase, text);
+	}
+
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.docfetcher.model.LuceneIndex;
+import net.sourceforge.docfetcher.model.index.DecoratedMultiReader;
+import net.sourceforge.docfetcher.model.index.file.FileIndex;
+import net.sourceforge.docfetcher.model.search.IndexLookup;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time for resolving the indexes of 100,000 search results
+ * spread over 50 indexes of random sizes, with the {@link IndexLookup} table
+ * of the searcher snapshot and, for comparison, with the per-hit lookup the
+ * searcher used before, i.e. asking the {@link DecoratedMultiReader} for the
+ * sub-reader of the hit and then getting the index from the index list. The
+ * indexes consist of empty documents in RAM and are built once per trial.
+ *
+ * @author Tran Nam Quang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexLookupBenchmark {
+
+	private static final int INDEX_COUNT = 50;
+	private static final int HIT_COUNT = 100000;
+
+	private DecoratedMultiReader reader;
+	private List<LuceneIndex> indexes;
+	private IndexLookup lookup;
+	private int[] hits;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random random = new Random(42);
+		LuceneIndex[] indexArray = new LuceneIndex[INDEX_COUNT];
+		IndexReader[] subReaders = new IndexReader[INDEX_COUNT];
+		for (int i = 0; i < INDEX_COUNT; i++) {
+			indexArray[i] = new FileIndex(null, new File("index" + i));
+			RAMDirectory dir = new RAMDirectory();
+			IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig());
+			for (int j = random.nextInt(5000); j >= 0; j--)
+				writer.addDocument(new Document());
+			writer.close();
+			subReaders[i] = DirectoryReader.open(dir);
+		}
+		reader = new DecoratedMultiReader(subReaders);
+		indexes = Arrays.asList(indexArray);
+		lookup = new IndexLookup(reader, indexes);
+
+		hits = new int[HIT_COUNT];
+		for (int i = 0; i < HIT_COUNT; i++)
+			hits[i] = random.nextInt(reader.maxDoc());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		reader.close();
+	}
+
+	@Benchmark
+	public int lookupTable() {
+		int hash = 0;
+		for (int hit : hits)
+			hash += lookup.getIndex(hit).getConfig().hashCode();
+		return hash;
+	}
+
+	@Benchmark
+	public int readerIndex() {
+		int hash = 0;
+		for (int hit : hits)
+			hash += indexes.get(reader.decoratedReaderIndex(hit)).getConfig().hashCode();
+		return hash;
+	}
+
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.bench;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.IndexRegistry;
+import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
+import net.sourceforge.docfetcher.model.search.PhraseDetectingQueryParser;
+import net.sourceforge.docfetcher.model.search.ReversedTermsAnalyzer;
+import net.sourceforge.docfetcher.util.Util;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the latency of a leading-wildcard query on an index with and
+ * without reversed terms (see {@link ReversedTermsAnalyzer}). The index is
+ * made up of random words, so that the term dictionary has roughly as many
+ * terms as words were written. The index is built once per trial.
+ *
+ * @author Tran Nam Quang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LeadingWildcardBenchmark {
+
+	private static final int WORDS_PER_DOC = 100;
+
+	@Param({"1000000", "3000000"})
+	public int wordCount;
+
+	@Param({"false", "true"})
+	public boolean reversed;
+
+	private File tempDir;
+	private Directory directory;
+	private DirectoryReader reader;
+	private IndexSearcher searcher;
+	private Query query;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempDir = Util.createTempDir();
+		directory = FSDirectory.open(tempDir.toPath());
+		IndexWriterAdapter writer = new IndexWriterAdapter(directory, reversed);
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < wordCount; i += WORDS_PER_DOC) {
+			sb.setLength(0);
+			for (int j = 0; j < WORDS_PER_DOC; j++) {
+				int length = 5 + random.nextInt(6);
+				for (int k = 0; k < length; k++)
+					sb.append((char) ('a' + random.nextInt(26)));
+				sb.append(' ');
+			}
+			Document doc = new Document();
+			doc.add(Fields.createContent(sb.toString()));
+			writer.add(doc);
+		}
+		writer.close();
+
+		reader = DirectoryReader.open(directory);
+		searcher = new IndexSearcher(reader);
+		PhraseDetectingQueryParser queryParser = new PhraseDetectingQueryParser(
+			Fields.CONTENT.key(), IndexRegistry.getAnalyzer());
+		queryParser.setAllowLeadingWildcard(true);
+		queryParser.setReverseLeadingWildcards(reversed);
+		query = queryParser.parse("*abc");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		reader.close();
+		directory.close();
+		Util.deleteRecursively(tempDir);
+	}
+
+	@Benchmark
+	public int search() throws Exception {
+		return searcher.search(query, 100).totalHits;
+	}
+
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.docfetcher.model.Cancelable;
+import net.sourceforge.docfetcher.model.Path;
+import net.sourceforge.docfetcher.model.index.IndexingConfig;
+import net.sourceforge.docfetcher.model.index.IndexingReporter;
+import net.sourceforge.docfetcher.model.parse.ParseResult;
+import net.sourceforge.docfetcher.model.parse.ParseService;
+import net.sourceforge.docfetcher.util.Util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link ParseService#parse} for each parser type
+ * on a generated document of about 20,000 words.
+ *
+ * @author Tran Nam Quang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({"TXT", "HTML", "RTF", "PDF", "DOCX"})
+	public String type;
+
+	private File tempDir;
+	private File file;
+	private IndexingConfig config;
+	private Path path;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		tempDir = Util.createTempDir();
+		file = new Corpus().write(tempDir, "doc", Corpus.Type.valueOf(type), 20000);
+		config = new IndexingConfig();
+		path = new Path(file);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Util.deleteRecursively(tempDir);
+	}
+
+	@Benchmark
+	public int parse() throws Exception {
+		ParseResult result = ParseService.parse(config, file, file.getName(),
+			path, IndexingReporter.nullReporter, Cancelable.nullCancelable);
+		try {
+			return result.readContent().length();
+		}
+		finally {
+			result.close();
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.docfetcher.model.Cancelable;
+import net.sourceforge.docfetcher.model.IndexRegistry;
+import net.sourceforge.docfetcher.model.index.file.FileIndex;
+import net.sourceforge.docfetcher.model.search.Searcher;
+import net.sourceforge.docfetcher.util.Util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of {@link Searcher#search(String)} on an index of
+ * 2,000 generated text and HTML files, for term, phrase and wildcard queries.
+ * The index is built once per trial.
+ *
+ * @author Tran Nam Quang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	@Param({"term", "phrase", "wildcard"})
+	public String queryType;
+
+	private File tempDir;
+	private IndexRegistry indexRegistry;
+	private Searcher searcher;
+	private String query;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		tempDir = Util.createTempDir();
+		File corpusDir = new File(tempDir, "corpus");
+		File indexParentDir = new File(tempDir, "indexes");
+		corpusDir.mkdirs();
+
+		Corpus corpus = new Corpus();
+		for (int i = 0; i < 2000; i++) {
+			Corpus.Type type = i % 2 == 0 ? Corpus.Type.TXT : Corpus.Type.HTML;
+			corpus.write(corpusDir, "doc" + i, type, 500);
+		}
+
+		indexRegistry = new IndexRegistry(indexParentDir, 20, 1000);
+		indexRegistry.load(Cancelable.nullCancelable);
+		FileIndex index = new FileIndex(indexParentDir, corpusDir);
+		index.update(null, null);
+		indexRegistry.addIndex(index);
+		searcher = indexRegistry.getSearcher();
+
+		if (queryType.equals("term"))
+			query = "lucene";
+		else if (queryType.equals("phrase"))
+			query = "\"search document\"";
+		else
+			query = "high*";
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		searcher.shutdown();
+		Util.deleteRecursively(tempDir);
+	}
+
+	@Benchmark
+	public int search() throws Exception {
+		return searcher.search(query).size();
+	}
+
+}
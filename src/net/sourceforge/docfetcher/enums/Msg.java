@@ -462,6 +462,11 @@ public enum Msg {
 		"Watch folders for file changes",
 		"Label of a checkbox button to enable/disable folder watching. " +
 		Comments.seeIndexingOptions),
+	index_reversed_terms (
+		"Speed up searches with leading wildcards (larger index)",
+		"Label of a checkbox button to enable/disable indexing the reversed " +
+		"forms of words, which speeds up searches like '*report'. " +
+		Comments.seeIndexingOptions),
 	changing_store_relative_paths_setting (
 		"Changing the 'store relative paths' setting might require adapting " +
 		"some of the regular expressions in the pattern table that are " +
@@ -710,6 +715,8 @@ public enum Msg {
 		
 	// Result panel and status bar
 	num_results ("Results: {0}"),
+	results_incomplete ("(incomplete)"),
+	search_progress ("Searching... {0}%"),
 	num_sel_results ("Selected: {0}"),
 	title ("Title"),
 	score ("Score [%]"),
@@ -45,6 +45,7 @@ public final class ProgramConf {
 	public static enum Bool implements Loadable {
 		FixWindowSizes (false),
 		DryRun (false),
+		ReportFileSystemCalls (false),
 		AllowIndexCreation (true),
 		AllowIndexUpdate (true),
 		AllowIndexRenaming (true),
@@ -58,6 +59,8 @@ public final class ProgramConf {
 		SaveSettings (true),
 		TextPreviewEnabled (true),
 		PythonApiEnabled (false),
+		ConcurrentIndexingOnSameDisk (false),
+		CacheTextOnIndexing (false),
 		;
 
 		private boolean value;
@@ -77,8 +80,25 @@ public final class ProgramConf {
 		MaxLinesInProgressPanel (1000, 2),
 		SearchBoxMaxWidth (500, 0),
 		MaxResultsTotal (10000, 1),
+		TypeAheadMaxResults (100, 1),
+		TypeAheadCompletions (10, 1),
+		MaxExpandedTerms (1024, 1),
+		SearchThreads (0, 0),
+		ResultCacheSize (32, 0),
+		SearchTimeLimit (0, 0),
 		PatternTableHeight (4, 1),
 		UnpackCacheCapacity (20, 1),
+		TextCacheSize (256, 0),
+		MaxIndexedChars (0, 0),
+		ParseCacheSize (0, 0),
+		ParseCacheMaxAge (90, 1),
+		ParserThreads (1, 0),
+		ConcurrentIndexingTasks (1, 1),
+		BulkLoadRAMBufferMB (256, 16),
+		BulkLoadSegmentsPerTier (30, 2),
+		BulkLoadMergeThreads (0, 0),
+		CheckpointDocs (100000, 0),
+		CheckpointMinutes (10, 0),
 		InitialSorting (0),
 		PythonApiPort (28834),
 		;
@@ -110,6 +130,9 @@ public final class ProgramConf {
 	public static enum Str implements Loadable {
 		AppName ("DocFetcher"),
 		TextEncodingOverride (""),
+		PrefixQueryRewrite ("scoring"),
+		WildcardQueryRewrite ("scoring"),
+		FuzzyQueryRewrite ("top-terms"),
 		;
 
 		private String value;
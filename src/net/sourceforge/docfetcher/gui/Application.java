@@ -75,11 +75,9 @@ import net.sourceforge.docfetcher.model.IndexLoadingProblems;
 import net.sourceforge.docfetcher.model.IndexLoadingProblems.CorruptedIndex;
 import net.sourceforge.docfetcher.model.IndexLoadingProblems.OverflowIndex;
 import net.sourceforge.docfetcher.model.IndexRegistry;
-import net.sourceforge.docfetcher.model.LuceneIndex;
 import net.sourceforge.docfetcher.model.index.IndexingQueue;
 import net.sourceforge.docfetcher.model.index.Task.CancelAction;
 import net.sourceforge.docfetcher.model.index.Task.CancelHandler;
-import net.sourceforge.docfetcher.model.index.Task.IndexAction;
 import net.sourceforge.docfetcher.model.parse.ParseService;
 import net.sourceforge.docfetcher.model.parse.Parser;
 import net.sourceforge.docfetcher.model.search.ResultDocument;
@@ -571,6 +569,7 @@ public final class Application {
 
 					// Must be called *after* the indexes have been loaded
 					daemon.enqueueUpdateTasks();
+					indexRegistry.enqueueInterruptedUpdates();
 					
 					// Confirm deletion of obsolete files inside the index
 					// folder
@@ -649,8 +648,8 @@ public final class Application {
 				}
 			});
 			
-			for (LuceneIndex index : indexRegistry.getIndexes())
-				queue.addTask(index, IndexAction.UPDATE);
+			// Interrupted updates are resumed from their indexing journals
+			indexRegistry.enqueueAllUpdates();
 		}
 		catch (IOException e) {
 			Util.printErr(e);
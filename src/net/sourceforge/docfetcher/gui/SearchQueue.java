@@ -11,7 +11,6 @@
 
 package net.sourceforge.docfetcher.gui;
 
-import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
@@ -34,7 +33,10 @@ import net.sourceforge.docfetcher.model.parse.Parser;
 import net.sourceforge.docfetcher.model.search.PhraseDetectingQueryParser;
 import net.sourceforge.docfetcher.model.search.ResultDocument;
 import net.sourceforge.docfetcher.model.search.SearchException;
+import net.sourceforge.docfetcher.model.search.SearchFilter;
 import net.sourceforge.docfetcher.model.search.Searcher;
+import net.sourceforge.docfetcher.model.search.Searcher.PartialResultHandler;
+import net.sourceforge.docfetcher.model.search.Searcher.SearchResult;
 import net.sourceforge.docfetcher.util.AppUtil;
 import net.sourceforge.docfetcher.util.CheckedOutOfMemoryError;
 import net.sourceforge.docfetcher.util.Event;
@@ -77,6 +79,11 @@ public final class SearchQueue {
 	@Nullable private volatile String query;
 	@Nullable private volatile Set<String> listDocIds;
 	@Nullable private List<ResultDocument> results;
+	private volatile boolean resultsComplete = true;
+	@Nullable private String lastQuery;
+	private boolean lastQueryIsTypeAhead;
+	@Nullable private Set<String> lastListDocIds;
+	private final SearchFilter searchFilter = new SearchFilter();
 	@Nullable private Set<String> checkedParsers;
 	@Nullable private TreeCheckState treeCheckState;
 	private boolean allParsersChecked;
@@ -243,51 +250,12 @@ public final class SearchQueue {
 		}
 		
 		IndexRegistry indexRegistry = indexPanel.getIndexRegistry();
-
-		// Run search
+		
 		if (queueCopy.contains(GuiEvent.SEARCH_OR_LIST)) {
-			try {
-				Searcher searcher = indexRegistry.getSearcher(); // might block
-				
-				/*
-				 * Bug #3538102: The returned searcher is null if
-				 * IndexRegistry.getSearcher() was blocking and the thread is
-				 * interrupted. This can happen as follows: (1) The user has a
-				 * lot of indexes and/or the indexes are very large, so that
-				 * loading them on startup takes a long time. (2) During
-				 * startup, when the indexes are loaded, the user enters
-				 * something into the search field and presses Enter. (3)
-				 * DocFetcher blocks because it can't start searching until all
-				 * indexes have been loaded. Seeing that the program has
-				 * apparently frozen, the user closes the program. This
-				 * interrupts the searcher thread, causing the
-				 * IndexRegistry.getSearcher() method to unblock and return
-				 * null.
-				 */
-				if (searcher == null)
-					return false;
-				
-				if (query != null)
-					results = searcher.search(query);
-				else if (listDocIds != null)
-					results = searcher.list(listDocIds);
-				else
-					throw new IllegalStateException();
-			}
-			catch (SearchException e) {
-				AppUtil.showError(e.getMessage(), true, true);
-				Util.runSyncExec(searchBar.getControl(), new Runnable() {
-					public void run() {
-						searchBar.setEnabled(true);
-					}
-				});
-				
-				// Don't return yet, we might have to update the filters
-				results = null;
-			}
-			catch (CheckedOutOfMemoryError e) {
-				UtilGui.showOutOfMemoryMessage(searchBar.getControl(), e);
-			}
+			lastQuery = query;
+			lastListDocIds = listDocIds;
+			lastQueryIsTypeAhead = queueCopy.contains(GuiEvent.TYPE_AHEAD)
+				&& !queueCopy.contains(GuiEvent.EXPLICIT_SEARCH);
 		}
 		
 		// Build parser filter
@@ -298,44 +266,27 @@ public final class SearchQueue {
 				}
 			});
 		}
+		searchFilter.setIncludedParsers(allParsersChecked ? null : checkedParsers);
 		
 		// Build location filter
 		if (treeCheckState == null || queueCopy.contains(GuiEvent.LOCATION))
 			treeCheckState = indexRegistry.getTreeCheckState();
+		searchFilter.setTreeCheckState(treeCheckState);
+		
+		// Build size filter
+		Long[] minMax = filesizePanel.getValuesInKB();
+		if (minMax == null)
+			searchFilter.setSizeInKB(null, null);
+		else
+			searchFilter.setSizeInKB(minMax[0], minMax[1]);
 		
 		/*
 		 * No need to update the result panel if the user changed the filter
 		 * settings before having run any searches.
 		 */
-		if (results == null)
+		if (lastQuery == null && lastListDocIds == null)
 			return true;
 		
-		Long[] minMax = filesizePanel.getValuesInKB();
-		final List<ResultDocument> visibleResults = new ArrayList<ResultDocument>();
-
-		// Apply filters
-		for (ResultDocument doc : results) {
-			if (minMax != null) {
-				long size = doc.getSizeInKB();
-				if (minMax[0] != null && size < minMax[0])
-					continue;
-				if (minMax[1] != null && size > minMax[1])
-					continue;
-			}
-			if (!doc.isEmail()) {
-				if (checkedParsers.isEmpty())
-					continue;
-				if (!allParsersChecked) {
-					String parserName = doc.getParserName();
-					if (!checkedParsers.contains(parserName))
-						continue;
-				}
-			}
-			if (!treeCheckState.isChecked(doc.getParentPath()))
-				continue;
-			visibleResults.add(doc);
-		}
-		
 		boolean filesFound = false;
 		boolean emailsFound = false;
 		for (LuceneIndex index : indexRegistry.getIndexes()) {
@@ -346,6 +297,71 @@ public final class SearchQueue {
 		}
 		final HeaderMode mode = HeaderMode.getInstance(filesFound, emailsFound);
 		
+		/*
+		 * Run search. The filters are part of the Lucene query, so the search
+		 * is run again when the filter settings change. This is fast because
+		 * the filter bitsets are cached, and it ensures that documents passing
+		 * the filters aren't cut off by the maximum number of results.
+		 */
+		try {
+			Searcher searcher = indexRegistry.getSearcher(); // might block
+			
+			/*
+			 * Bug #3538102: The returned searcher is null if
+			 * IndexRegistry.getSearcher() was blocking and the thread is
+			 * interrupted. This can happen as follows: (1) The user has a lot
+			 * of indexes and/or the indexes are very large, so that loading
+			 * them on startup takes a long time. (2) During startup, when the
+			 * indexes are loaded, the user enters something into the search
+			 * field and presses Enter. (3) DocFetcher blocks because it can't
+			 * start searching until all indexes have been loaded. Seeing that
+			 * the program has apparently frozen, the user closes the program.
+			 * This interrupts the searcher thread, causing the
+			 * IndexRegistry.getSearcher() method to unblock and return null.
+			 */
+			if (searcher == null)
+				return false;
+			
+			resultsComplete = true;
+			if (lastQuery != null && lastQueryIsTypeAhead) {
+				results = searcher.searchTypeAhead(lastQuery, searchFilter);
+			}
+			else if (lastQuery != null) {
+				/*
+				 * Show the top results while the search is still running, so
+				 * that searches on large indexes don't leave the user waiting
+				 * in front of an empty result panel.
+				 */
+				SearchResult searchResult = searcher.search(
+					lastQuery, searchFilter, createPartialResultHandler(mode));
+				results = searchResult.resultDocuments;
+				resultsComplete = searchResult.isComplete;
+			}
+			else {
+				results = searcher.list(lastListDocIds, searchFilter);
+			}
+		}
+		catch (SearchException e) {
+			AppUtil.showError(e.getMessage(), true, true);
+			Util.runSyncExec(searchBar.getControl(), new Runnable() {
+				public void run() {
+					searchBar.setEnabled(true);
+				}
+			});
+			
+			// Don't rerun the failed search when the filters change
+			lastQuery = null;
+			lastListDocIds = null;
+			return true;
+		}
+		catch (CheckedOutOfMemoryError e) {
+			UtilGui.showOutOfMemoryMessage(searchBar.getControl(), e);
+		}
+		
+		if (results == null)
+			return true;
+		final List<ResultDocument> visibleResults = results;
+		
 		// Set results
 		Util.runSyncExec(searchBar.getControl(), new Runnable() {
 			public void run() {
@@ -366,6 +382,25 @@ public final class SearchQueue {
 		return true;
 	}
 
+	@NotNull
+	private PartialResultHandler createPartialResultHandler(@NotNull final HeaderMode mode) {
+		return new PartialResultHandler() {
+			public void handlePartialResults(	final List<ResultDocument> resultDocuments,
+												int searchedDocs,
+												int totalDocs) {
+				final int percent = (int) (100L * searchedDocs / Math.max(1, totalDocs));
+				Util.runSyncExec(searchBar.getControl(), new Runnable() {
+					public void run() {
+						resultPanel.setResults(resultDocuments, mode);
+						resultPanel.sortByColumn(ProgramConf.Int.InitialSorting.get());
+						String msg = Msg.search_progress.format(percent);
+						statusBar.getLeftPart().setContents(Img.INFO.get(), msg);
+					}
+				});
+			}
+		};
+	}
+
 	private void updateParserFilter() {
 		ListMap<Parser, Boolean> map = fileTypePanel.getParserStateMap();
 		checkedParsers = Sets.newHashSetWithExpectedSize(map.size());
@@ -385,6 +420,8 @@ public final class SearchQueue {
 		String msg = Msg.num_results.format(resultCount);
 		if (resultCount >= Searcher.MAX_RESULTS)
 			msg += "+";
+		if (!resultsComplete)
+			msg += " " + Msg.results_incomplete.get();
 		int selCount = resultPanel.getSelection().size();
 		if (selCount > 1)
 			msg += spaces + Msg.num_sel_results.format(selCount);
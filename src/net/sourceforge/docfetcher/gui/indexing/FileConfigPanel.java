@@ -50,6 +50,7 @@ final class FileConfigPanel extends ConfigPanel {
 	@NotNull private Button indexFilenameBt;
 	@NotNull private Button storeRelativePathsBt;
 	@NotNull private Button watchFolderBt;
+	@NotNull private Button reversedTermsBt;
 	
 	public FileConfigPanel(	@NotNull Composite parent,
 	                       	@NotNull LuceneIndex index) {
@@ -98,6 +99,7 @@ final class FileConfigPanel extends ConfigPanel {
 		indexFilenameBt = Util.createCheckButton(parent, Msg.index_filenames.get());
 		storeRelativePathsBt = Util.createCheckButton(parent, Msg.store_relative_paths.get());
 		watchFolderBt = Util.createCheckButton(parent, Msg.watch_folders.get());
+		reversedTermsBt = Util.createCheckButton(parent, Msg.index_reversed_terms.get());
 		
 		IndexingConfig config = index.getConfig();
 		
@@ -105,6 +107,7 @@ final class FileConfigPanel extends ConfigPanel {
 		detectExecArchivesBt.setSelection(config.isDetectExecutableArchives());
 		indexFilenameBt.setSelection(config.isIndexFilenames());
 		watchFolderBt.setSelection(config.isWatchFolders());
+		reversedTermsBt.setSelection(config.isIndexReversedTerms());
 		
 		boolean storeRelativePaths = config.isStoreRelativePaths();
 		patternTable.setStoreRelativePaths(storeRelativePaths);
@@ -178,6 +181,7 @@ final class FileConfigPanel extends ConfigPanel {
 		config.setIndexFilenames(indexFilenameBt.getSelection());
 		config.setStoreRelativePaths(storeRelativePathsBt.getSelection());
 		config.setWatchFolders(watchFolderBt.getSelection());
+		config.setIndexReversedTerms(reversedTermsBt.getSelection());
 		config.setSkipTarArchives(ProgramConf.Bool.SkipTarArchives.get());
 		
 		return true;
@@ -224,6 +228,7 @@ final class FileConfigPanel extends ConfigPanel {
 		indexFilenameBt.setSelection(config.isIndexFilenames());
 		storeRelativePathsBt.setSelection(config.isStoreRelativePaths());
 		watchFolderBt.setSelection(config.isWatchFolders());
+		reversedTermsBt.setSelection(config.isIndexReversedTerms());
 	}
 	
 }
@@ -39,6 +39,7 @@ final class OutlookConfigPanel extends ConfigPanel {
 	@NotNull private Button indexFilenameBt;
 	@NotNull private Button storeRelativePathsBt;
 	@NotNull private Button watchFolderBt;
+	@NotNull private Button reversedTermsBt;
 	
 	public OutlookConfigPanel(	@NotNull Composite parent,
 								@NotNull final LuceneIndex index) {
@@ -70,11 +71,13 @@ final class OutlookConfigPanel extends ConfigPanel {
 		indexFilenameBt = Util.createCheckButton(parent, Msg.index_filenames.get());
 		storeRelativePathsBt = Util.createCheckButton(parent, Msg.store_relative_paths.get());
 		watchFolderBt = Util.createCheckButton(parent, Msg.watch_folders.get());
+		reversedTermsBt = Util.createCheckButton(parent, Msg.index_reversed_terms.get());
 		
 		IndexingConfig config = index.getConfig();
 		
 		indexFilenameBt.setSelection(config.isIndexFilenames());
 		watchFolderBt.setSelection(config.isWatchFolders());
+		reversedTermsBt.setSelection(config.isIndexReversedTerms());
 		storeRelativePathsBt.setSelection(config.isStoreRelativePaths());
 	}
 	
@@ -83,6 +86,7 @@ final class OutlookConfigPanel extends ConfigPanel {
 		config.setIndexFilenames(indexFilenameBt.getSelection());
 		config.setStoreRelativePaths(storeRelativePathsBt.getSelection());
 		config.setWatchFolders(watchFolderBt.getSelection());
+		config.setIndexReversedTerms(reversedTermsBt.getSelection());
 		
 		// Turn mime type detection on for all attachments
 		PatternAction alwaysDetectMime = new PatternAction(".*");
@@ -98,6 +102,7 @@ final class OutlookConfigPanel extends ConfigPanel {
 		indexFilenameBt.setSelection(config.isIndexFilenames());
 		storeRelativePathsBt.setSelection(config.isStoreRelativePaths());
 		watchFolderBt.setSelection(config.isWatchFolders());
+		reversedTermsBt.setSelection(config.isIndexReversedTerms());
 	}
 
 }
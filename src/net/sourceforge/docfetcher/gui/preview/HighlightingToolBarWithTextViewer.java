@@ -333,6 +333,29 @@ class HighlightingToolBarWithTextViewer {
 		}
 	}
 	
+	/**
+	 * Appends the given string to the last page, rather than adding it as a
+	 * new page.
+	 */
+	public final void appendText(@NotNull HighlightedString string) {
+		if (pages.isEmpty()) {
+			setText(string);
+			return;
+		}
+		int lastIndex = pages.size() - 1;
+		pages.get(lastIndex).add(string);
+		if (pageIndex != null && pageIndex == lastIndex)
+			textViewer.appendText(string);
+		
+		occCount += string.getRangeCount();
+		occField.setRange(currentOcc, occCount);
+		if (string.getRangeCount() > 0) {
+			upBt.setEnabled(true);
+			downBt.setEnabled(true);
+			highlightBt.setEnabled(true);
+		}
+	}
+	
 	public final void clear(boolean showPageToolbar) {
 		currentOcc = null;
 		occCount = 0;
@@ -343,6 +343,18 @@ public final class PreviewPanel extends Composite {
 		});
 	}
 	
+	// Returns true on success
+	@ThreadSafe
+	private boolean appendTextSafely(	@NotNull final HighlightedString string,
+										long requestCount) {
+		return runSafely(requestCount, textPreview, new Runnable() {
+			public void run() {
+				if (ProgramConf.Bool.TextPreviewEnabled.get())
+					textPreview.appendText(string);
+			}
+		});
+	}
+	
 	// Returns true on success
 	@ThreadSafe
 	private boolean runSafely(	final long requestCount,
@@ -467,10 +479,31 @@ public final class PreviewPanel extends Composite {
 			super(doc, startCount);
 		}
 
-		protected void doRun(Hider overlayHider) throws ParseException,
+		protected void doRun(final Hider overlayHider) throws ParseException,
 				FileNotFoundException, CheckedOutOfMemoryError {
-			HighlightedString string = doc.getHighlightedText();
-			setTextSafely(string, doc.isPlainTextFile(), startCount, false);
+			/*
+			 * Large texts are highlighted and displayed chunk-wise, so that
+			 * the beginning of the text is shown quickly.
+			 */
+			final boolean isPlainTextFile = doc.isPlainTextFile();
+			doc.readHighlightedText(new PreviewPageHandler() {
+				private boolean isFirstChunk = true;
+				private boolean isStopped = false;
+				
+				public void handlePage(HighlightedString chunk) {
+					if (isFirstChunk) {
+						isStopped = !setTextSafely(chunk, isPlainTextFile, startCount, false);
+						isFirstChunk = false;
+						overlayHider.hide();
+					}
+					else {
+						isStopped = !appendTextSafely(chunk, startCount);
+					}
+				}
+				public boolean isStopped() {
+					return isStopped;
+				}
+			});
 		}
 	}
 	
@@ -81,5 +81,9 @@ final class TextPreview extends ToolBarForm {
 	public void appendPage(@NotNull HighlightedString string) {
 		toolBarWithTextViewer.appendPage(string);
 	}
+	
+	public void appendText(@NotNull HighlightedString string) {
+		toolBarWithTextViewer.appendText(string);
+	}
 
 }
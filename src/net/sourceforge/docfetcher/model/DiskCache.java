@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
+
+import com.google.common.io.Closeables;
+
+/**
+ * A bounded on-disk store of compressed entries, which serves as the backend
+ * of the {@link TextCache} and the parse result cache. The format of the
+ * entries is up to the caller.
+ * <p>
+ * Each entry is stored as a file in the cache directory, named after its
+ * key. The total size of the cache directory is bounded; when the bound is
+ * exceeded, the least recently used entries are deleted first. Optionally,
+ * entries that haven't been used for a certain time are deleted as well. The
+ * recency of an entry is recorded in the last-modified value of its file, so
+ * the order survives program restarts.
+ *
+ * @author Tran Nam Quang
+ */
+@ThreadSafe
+@VisibleForPackageGroup
+public final class DiskCache {
+
+	public interface EntryReader<T> {
+		/**
+		 * Reads an entry from the given stream, returning null if the entry
+		 * is outdated, e.g. because it has a different format version.
+		 */
+		@Nullable
+		public T read(@NotNull DataInputStream in) throws IOException;
+	}
+
+	public interface EntryWriter {
+		public void write(@NotNull DataOutputStream out) throws IOException;
+	}
+
+	private static final String EXTENSION = ".gz";
+	private static final Map<File, DiskCache> instances = new HashMap<File, DiskCache>();
+
+	private final File cacheDir;
+	private final long maxSize;
+	private final long maxAge;
+
+	// Maps filenames to file sizes, ordered from least to most recently used
+	@Nullable private LinkedHashMap<String, Long> entries; // guarded by 'this' lock
+	private final Map<String, Long> lastUsed = new HashMap<String, Long>(); // guarded by 'this' lock
+	private long totalSize; // guarded by 'this' lock
+
+	/**
+	 * Creates a store in the given directory whose total size is bounded by
+	 * the given number of bytes. If the given maximum age in milliseconds is
+	 * greater than zero, entries that haven't been used for that long are
+	 * deleted as well.
+	 */
+	public DiskCache(@NotNull File cacheDir, long maxSize, long maxAge) {
+		Util.checkNotNull(cacheDir);
+		Util.checkThat(maxSize > 0);
+		this.cacheDir = cacheDir;
+		this.maxSize = maxSize;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Returns the store for the given directory, so that all users of the
+	 * same directory share its size accounting. The size bounds are taken
+	 * from the first call for a directory.
+	 */
+	@NotNull
+	public static DiskCache getInstance(@NotNull File cacheDir,
+										long maxSize,
+										long maxAge) {
+		cacheDir = Util.getCanonicalFile(cacheDir);
+		synchronized (instances) {
+			DiskCache cache = instances.get(cacheDir);
+			if (cache == null) {
+				cache = new DiskCache(cacheDir, maxSize, maxAge);
+				instances.put(cacheDir, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Returns the entry stored under the given key, or null if the store has
+	 * no such entry or if the given reader rejects it. Entries that can't be
+	 * read are deleted.
+	 */
+	@Nullable
+	public <T> T get(@NotNull String key, @NotNull EntryReader<T> reader) {
+		Util.checkNotNull(key, reader);
+		String filename = key + EXTENSION;
+		synchronized (this) {
+			if (!getEntries().containsKey(filename))
+				return null;
+			getEntries().get(filename); // Mark as most recently used
+			lastUsed.put(filename, System.currentTimeMillis());
+		}
+		File file = new File(cacheDir, filename);
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(file))));
+			T value = reader.read(in);
+			if (value != null)
+				file.setLastModified(System.currentTimeMillis());
+			return value;
+		}
+		catch (IOException e) {
+			// The entry may have been evicted or be damaged
+			remove(filename);
+			return null;
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Stores the entry produced by the given writer under the given key,
+	 * replacing any previous entry. The key must be usable as a filename.
+	 * Failures are not reported, since the store is only used for caching.
+	 */
+	public void put(@NotNull String key, @NotNull EntryWriter writer) {
+		Util.checkNotNull(key, writer);
+		String filename = key + EXTENSION;
+		File tempFile = null;
+		DataOutputStream out = null;
+		try {
+			cacheDir.mkdirs();
+			tempFile = File.createTempFile("entry", ".tmp", cacheDir);
+			out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(tempFile))));
+			writer.write(out);
+			out.close();
+			out = null;
+			synchronized (this) {
+				File file = new File(cacheDir, filename);
+				Long oldSize = getEntries().remove(filename);
+				if (oldSize != null)
+					totalSize -= oldSize;
+				if (file.exists() && !file.delete())
+					return;
+				if (!tempFile.renameTo(file))
+					return;
+				long size = file.length();
+				getEntries().put(filename, size);
+				lastUsed.put(filename, System.currentTimeMillis());
+				totalSize += size;
+				evict();
+			}
+		}
+		catch (IOException e) {
+			Util.printErr(e);
+		}
+		finally {
+			Closeables.closeQuietly(out);
+			if (tempFile != null && tempFile.exists())
+				tempFile.delete();
+		}
+	}
+
+	private synchronized void remove(@NotNull String filename) {
+		Long size = getEntries().remove(filename);
+		lastUsed.remove(filename);
+		if (size == null)
+			return;
+		totalSize -= size;
+		new File(cacheDir, filename).delete();
+	}
+
+	/*
+	 * Deletes the least recently used entries until the size bound is met, as
+	 * well as all entries that are older than the maximum age. Since the
+	 * entries are ordered by recency, the expired ones come first.
+	 */
+	private void evict() {
+		assert Thread.holdsLock(this);
+		long minLastUsed = maxAge > 0
+			? System.currentTimeMillis() - maxAge
+			: Long.MIN_VALUE;
+		Iterator<Map.Entry<String, Long>> it = getEntries().entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Long> entry = it.next();
+			if (totalSize <= maxSize && lastUsed.get(entry.getKey()) >= minLastUsed)
+				break;
+			new File(cacheDir, entry.getKey()).delete();
+			totalSize -= entry.getValue();
+			lastUsed.remove(entry.getKey());
+			it.remove();
+		}
+	}
+
+	/*
+	 * The entries are read from the cache directory lazily, so that the
+	 * directory isn't listed on startup if the store is never used.
+	 */
+	@NotNull
+	private LinkedHashMap<String, Long> getEntries() {
+		assert Thread.holdsLock(this);
+		if (entries != null)
+			return entries;
+		entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		File[] files = cacheDir.listFiles();
+		if (files == null)
+			return entries;
+		for (File file : files)
+			if (file.getName().endsWith(EXTENSION))
+				lastUsed.put(file.getName(), file.lastModified());
+		File[] cacheFiles = new File[lastUsed.size()];
+		int i = 0;
+		for (File file : files)
+			if (file.getName().endsWith(EXTENSION))
+				cacheFiles[i++] = file;
+		Arrays.sort(cacheFiles, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return lastUsed.get(f1.getName()).compareTo(lastUsed.get(f2.getName()));
+			}
+		});
+		for (File file : cacheFiles) {
+			long size = file.length();
+			entries.put(file.getName(), size);
+			totalSize += size;
+		}
+		evict();
+		return entries;
+	}
+
+	@NotNull
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // MD5 is always available
+		}
+	}
+
+	/**
+	 * Returns the digest of the given message digest as a hexadecimal string,
+	 * for use as a key.
+	 */
+	@NotNull
+	public static String toKey(@NotNull MessageDigest md) {
+		byte[] bytes = md.digest();
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+}
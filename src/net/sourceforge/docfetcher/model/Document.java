@@ -37,6 +37,11 @@ public abstract class Document<D extends Document<D, F>, F extends Folder<D, F>>
 		this.lastModified = lastModified;
 	}
 
+	@NotNull
+	public final F getParent() {
+		return parent;
+	}
+
 	public final long getLastModified() {
 		return lastModified;
 	}
@@ -54,8 +59,8 @@ public abstract class Document<D extends Document<D, F>, F extends Folder<D, F>>
 	}
 	
 	/*
-	 * TODO post-release-1.1: This method is somewhat expensive. Try to avoid
-	 * calling it. May also have multi-threading issues.
+	 * The path of the parent is cached, so this only allocates the path of
+	 * the document itself. May have multi-threading issues.
 	 */
 	@NotNull
 	public final Path getPath() {
@@ -11,6 +11,8 @@
 
 package net.sourceforge.docfetcher.model;
 
+import java.io.Reader;
+
 import javolution.io.CharSequenceReader;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
 import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
@@ -18,8 +20,11 @@ import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.LegacyLongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.util.BytesRef;
 
 /**
  * @author Tran Nam Quang
@@ -45,11 +50,15 @@ public enum Fields {
 	UID (StringField.TYPE_STORED),
 	CONTENT (TextField.TYPE_NOT_STORED),
 	CONTENT_WITH_OFFSET (FieldTypes.TYPE_TEXT_WITH_POSITIONS_OFFSETS_STORED,Fields.CONTENT.name()),
+	// Reversed content words, see ReversedTermsAnalyzer
+	CONTENT_REV (TextField.TYPE_NOT_STORED),
 	TYPE (StringField.TYPE_STORED), // file extension or email type (outlook, imap, etc.)
 	// The following must be stored as a numeric field in order to enable
 	// filtering and sorting for the web interface
 	SIZE (LegacyLongField.TYPE_STORED),
 	PARSER (StringField.TYPE_STORED), // Use constant EMAIL_PARSER for emails
+	// Only stored as a doc value, see TreeIndex.getFolderId(Folder)
+	FOLDER_ID (StringField.TYPE_NOT_STORED),
 
 	// Fields available for files
 	FILENAME (TextField.TYPE_STORED),
@@ -95,9 +104,27 @@ public enum Fields {
 		return new LegacyLongField(key, fieldValue, type);
 	}
 
+	/*
+	 * The following two methods create column-stride copies of the field
+	 * values, which the searcher reads for displaying and sorting the result
+	 * table without loading the stored documents. They complement rather than
+	 * replace the stored fields, since indexes created by earlier versions
+	 * don't have them.
+	 */
+	
+	@NotNull
+	public NumericDocValuesField createDocValue(long fieldValue) {
+		return new NumericDocValuesField(key, fieldValue);
+	}
+	
+	@NotNull
+	public SortedDocValuesField createDocValue(@NotNull String fieldValue) {
+		return new SortedDocValuesField(key, new BytesRef(fieldValue));
+	}
+
 	@NotNull
-	private Field create(CharSequenceReader charSequenceReader) {
-		return new Field(key,charSequenceReader,type);
+	private Field create(Reader reader) {
+		return new Field(key, reader, type);
 	}
 
 	// Will create a tokenized and indexed field that is not stored if the given
@@ -123,5 +150,15 @@ public enum Fields {
 		else
 			return CONTENT.create(new CharSequenceReader().setInput(fieldValue));
 	}
+	
+	/**
+	 * Creates a tokenized and indexed content field that is not stored, and
+	 * whose value will be read incrementally from the given reader when the
+	 * containing document is added to the index.
+	 */
+	@NotNull
+	public static Field createContent(@NotNull Reader fieldValue) {
+		return CONTENT.create(fieldValue);
+	}
 
 }
@@ -11,15 +11,18 @@
 
 package net.sourceforge.docfetcher.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sourceforge.docfetcher.UtilGlobal;
 import net.sourceforge.docfetcher.util.Event;
@@ -33,7 +36,8 @@ import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
 import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 
 import com.google.common.base.Predicate;
-import com.google.common.collect.Maps;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 /**
  * @author Tran Nam Quang
@@ -63,6 +67,13 @@ public abstract class Folder
 	
 	private static final long serialVersionUID = 1L;
 
+	private static final long NO_LAST_MODIFIED = Long.MIN_VALUE;
+
+	/**
+	 * The folder ID of folders that haven't been assigned an ID yet.
+	 */
+	public static final int NO_FOLDER_ID = -1;
+
 	// Making these events non-static would lead to trouble with serialization
 	public static final Event<FolderEvent> evtFolderAdding = new Event<FolderEvent>();
 	public static final Event<FolderEvent> evtFolderAdded = new Event<FolderEvent>();
@@ -81,11 +92,13 @@ public abstract class Folder
 	 * with the same identifier, since documents and subfolders are stored in
 	 * different maps.)
 	 *
-	 * These maps are set to null when they're empty in order to avoid wasting
-	 * RAM when the tree is very large and has many empty leaf nodes.
+	 * The maps are compact hash tables that store the children directly,
+	 * without entry objects (see NodeTable). They're set to null when they're
+	 * empty in order to avoid wasting RAM when the tree is very large and has
+	 * many empty leaf nodes.
 	 */
-	@Nullable private HashMap<String, D> documents;
-	@Nullable protected HashMap<String, F> subFolders;
+	@Nullable private NodeTable<D> documents;
+	@Nullable private NodeTable<F> subFolders;
 
 	/*
 	 * If this is a root folder, then it has a non-null path and a null parent.
@@ -97,14 +110,59 @@ public abstract class Folder
 	@Nullable protected Path path;
 	private int pathHashCode;
 
+	/*
+	 * The path of a non-root folder as computed by getPath(), together with
+	 * the path of the parent it was computed from. If the parent's path
+	 * object has changed in the meantime, e.g. because an ancestor was moved,
+	 * the cached path is stale and will be recomputed.
+	 */
+	@Nullable private volatile PathCache pathCache;
+
+	private static final class PathCache {
+		private final Path parentPath;
+		private final Path path;
+
+		private PathCache(@NotNull Path parentPath, @NotNull Path path) {
+			this.parentPath = parentPath;
+			this.path = path;
+		}
+	}
+
 	/**
-	 * The last time this object was modified. Null if the object has no last
-	 * modified field (e.g. regular folder).
+	 * The last time this object was modified, or NO_LAST_MODIFIED if the
+	 * object has no last modified field (e.g. regular folder). This is stored
+	 * as a primitive to save RAM.
 	 */
-	@Nullable private Long lastModified;
+	private long lastModified;
 
 	protected boolean isChecked = true;
 
+	/*
+	 * The ID of this folder within the tree of its index, or NO_FOLDER_ID.
+	 * The ID is assigned when the first document in this folder is indexed or
+	 * when a TreeCheckState is created, whichever comes first. It is stored in
+	 * the Lucene documents of the folder's documents, so that the location
+	 * filter can look up the check state of a document's folder in a bitset.
+	 * The IDs are unique per index.
+	 */
+	private int folderId = NO_FOLDER_ID;
+
+	/*
+	 * The fields of serialized folders in tree-index.ser files from earlier
+	 * program versions, which used hash maps and a boxed last-modified value.
+	 * The current index format doesn't serialize folders (see
+	 * TreeIndexStore).
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("documents", HashMap.class),
+		new ObjectStreamField("subFolders", HashMap.class),
+		new ObjectStreamField("parent", Folder.class),
+		new ObjectStreamField("path", Path.class),
+		new ObjectStreamField("pathHashCode", int.class),
+		new ObjectStreamField("lastModified", Long.class),
+		new ObjectStreamField("isChecked", boolean.class)
+	};
+
 	@SuppressWarnings("unchecked")
 	protected Folder(	@NotNull F parent,
 						@NotNull String name,
@@ -112,7 +170,7 @@ public abstract class Folder
 		super(name);
 		Util.checkNotNull(parent);
 		this.parent = parent;
-		this.lastModified = lastModified;
+		this.lastModified = toPrimitive(lastModified);
 		parent.putSubFolder((F) this);
 		updatePathHashCode();
 	}
@@ -120,9 +178,19 @@ public abstract class Folder
 	protected Folder(@NotNull Path path, @Nullable Long lastModified) {
 		super(path.getName());
 		this.path = path;
-		this.lastModified = lastModified;
+		this.lastModified = toPrimitive(lastModified);
 		updatePathHashCode();
 	}
+
+	/**
+	 * Creates a folder that has neither a parent nor a path. This is only
+	 * meant to be used by {@link TreeIndexStore}, which attaches the folder to
+	 * its parent via {@link #attachLoadedSubFolder(Folder)} right away.
+	 */
+	protected Folder(@NotNull String name, @Nullable Long lastModified) {
+		super(name);
+		this.lastModified = toPrimitive(lastModified);
+	}
 	
 	public final synchronized int getParentCount() {
 		int count = 0;
@@ -135,14 +203,8 @@ public abstract class Folder
 	}
 
 	protected void updatePathHashCode() {
-		if (path != null) {
-			pathHashCode = path.getPath().hashCode();
-		}
-		else {
-			String parentPath = parent.getPath().getPath();
-			String thisPath = Util.joinPath(parentPath, getName());
-			pathHashCode = thisPath.hashCode();
-		}
+		pathCache = null;
+		pathHashCode = resolvePath().getPath().hashCode();
 	}
 
 	synchronized int getPathHashCode() {
@@ -161,34 +223,37 @@ public abstract class Folder
 		return parent == null ? (F) this : parent.getRoot();
 	}
 
-	// TODO post-release-1.1: This method is somewhat expensive. Try to avoid calling it
-	@SuppressWarnings("unchecked")
+	/**
+	 * Returns the path of the receiver. The paths of non-root folders are
+	 * cached, so that this only allocates objects if the receiver or one of
+	 * its ancestors was moved since the last call.
+	 */
 	@NotNull
 	public synchronized final Path getPath() {
 		assert (parent == null) == (path != null);
+		return resolvePath();
+	}
 
+	/*
+	 * Like the path construction of earlier versions, this doesn't lock the
+	 * ancestors of the receiver, in order to avoid deadlocks with callers
+	 * holding a lock on a parent folder.
+	 */
+	@NotNull
+	@RecursiveMethod
+	private Path resolvePath() {
 		// Just return the path if this instance is a root
-		if (path != null)
-			return path;
-
-		// Create a list of nodes from the root down to this instance
-		LinkedList<F> list = new LinkedList<F>();
-		list.add((F) this);
-		F current = parent;
-		while (current != null) {
-			list.addFirst(current);
-			current = current.parent;
-		}
-
-		// Construct path for this instance
-		StringBuilder sb = new StringBuilder();
-		sb.append(list.removeFirst().path.getPath()); // root path
-		for (F node : list) {
-			sb.append("/");
-			sb.append(node.getName());
-		}
+		Path rootPath = path;
+		if (rootPath != null)
+			return rootPath;
 
-		return new Path(sb.toString());
+		Path parentPath = parent.resolvePath();
+		PathCache cache = pathCache;
+		if (cache != null && cache.parentPath == parentPath)
+			return cache.path;
+		Path newPath = parentPath.createSubPath(getName());
+		pathCache = new PathCache(parentPath, newPath);
+		return newPath;
 	}
 
 	synchronized final void setPath(@NotNull Path path) {
@@ -200,11 +265,15 @@ public abstract class Folder
 
 	@Nullable
 	public synchronized final Long getLastModified() {
-		return lastModified;
+		return lastModified == NO_LAST_MODIFIED ? null : lastModified;
 	}
 
 	public synchronized final void setLastModified(@Nullable Long lastModified) {
-		this.lastModified = lastModified;
+		this.lastModified = toPrimitive(lastModified);
+	}
+
+	private static long toPrimitive(@Nullable Long lastModified) {
+		return lastModified == null ? NO_LAST_MODIFIED : lastModified;
 	}
 
 	// will replace document with identical name;
@@ -212,8 +281,8 @@ public abstract class Folder
 	@SuppressWarnings("unchecked")
 	public synchronized final void putDocument(@NotNull D doc) {
 		if (documents == null)
-			documents = Maps.newHashMap();
-		documents.put(doc.getName(), doc);
+			documents = new NodeTable<D>();
+		documents.put(doc);
 		if (doc.parent != null && doc.parent != this)
 			doc.parent.removeDocument(doc);
 		doc.parent = (F) this;
@@ -225,17 +294,45 @@ public abstract class Folder
 		evtFolderAdding.fire(new FolderEvent(this, subFolder));
 		synchronized (this) {
 			if (subFolders == null)
-				subFolders = Maps.newHashMap();
-			if (subFolder.parent != null)
-				subFolder.parent.subFolders.remove(subFolder);
+				subFolders = new NodeTable<F>();
+			if (subFolder.parent != null && subFolder.parent != this)
+				subFolder.parent.detachSubFolder(subFolder);
 			subFolder.parent = (F) this;
 			subFolder.path = null;
 			subFolder.updatePathHashCode();
-			subFolders.put(subFolder.getName(), subFolder);
+			subFolders.put(subFolder);
 		}
 		evtFolderAdded.fire(new FolderEvent(this, subFolder));
 	}
 
+	/**
+	 * Attaches a subfolder that was created with
+	 * {@link #Folder(String, Long)} to the receiver. Unlike
+	 * {@link #putSubFolder(Folder)}, this doesn't fire any events, since the
+	 * folders of an index that is being loaded aren't visible to anyone yet.
+	 */
+	@SuppressWarnings("unchecked")
+	final synchronized void attachLoadedSubFolder(@NotNull F subFolder) {
+		assert subFolder.parent == null && subFolder.path == null;
+		if (subFolders == null)
+			subFolders = new NodeTable<F>();
+		subFolder.parent = (F) this;
+		subFolder.updatePathHashCode();
+		subFolders.put(subFolder);
+	}
+
+	/**
+	 * Removes the given subfolder from the receiver's table of subfolders if
+	 * it's stored there, without updating the subfolder or firing events.
+	 */
+	private synchronized void detachSubFolder(@NotNull F subFolder) {
+		if (subFolders == null || subFolders.get(subFolder.getName()) != subFolder)
+			return;
+		subFolders.remove(subFolder.getName());
+		if (subFolders.isEmpty())
+			subFolders = null;
+	}
+
 	/**
 	 * Removes the given document from the receiver. Does nothing if the given
 	 * document is null.
@@ -257,7 +354,6 @@ public abstract class Folder
 			if (documents != null) {
 				for (D doc : documents.values())
 					doc.parent = null;
-				documents.clear();
 				documents = null;
 			}
 			if (subFolders != null) {
@@ -302,11 +398,9 @@ public abstract class Folder
 
 	public synchronized final void removeDocuments(@NotNull Predicate<D> predicate) {
 		if (documents == null) return;
-		Iterator<D> docIt = documents.values().iterator();
-		while (docIt.hasNext()) {
-			D doc = docIt.next();
+		for (D doc : documents.values()) {
 			if (predicate.apply(doc)) {
-				docIt.remove();
+				documents.remove(doc.getName());
 				doc.parent = null;
 			}
 		}
@@ -323,11 +417,9 @@ public abstract class Folder
 		List<F> toNotify = new ArrayList<F>(subFolders == null ? 0 : subFolders.size());
 		synchronized (this) {
 			if (subFolders == null) return;
-			Iterator<F> subFolderIt = subFolders.values().iterator();
-			while (subFolderIt.hasNext()) {
-				F subFolder = subFolderIt.next();
+			for (F subFolder : subFolders.values()) {
 				if (predicate.apply(subFolder)) {
-					subFolderIt.remove();
+					subFolders.remove(subFolder.getName());
 					subFolder.path = subFolder.getPath();
 					subFolder.parent = null;
 					toNotify.add(subFolder);
@@ -354,13 +446,13 @@ public abstract class Folder
 	@ImmutableCopy
 	@NotNull
 	public synchronized final List<D> getDocuments() {
-		return UtilModel.nullSafeImmutableList(documents);
+		return immutableList(documents);
 	}
 
 	@ImmutableCopy
 	@NotNull
 	public synchronized final Map<String, D> getDocumentMap() {
-		return UtilModel.nullSafeImmutableMap(documents);
+		return immutableMap(documents);
 	}
 
 	@MutableCopy
@@ -392,13 +484,29 @@ public abstract class Folder
 	@ImmutableCopy
 	@NotNull
 	public synchronized final List<F> getSubFolders() {
-		return UtilModel.nullSafeImmutableList(subFolders);
+		return immutableList(subFolders);
 	}
 
 	@ImmutableCopy
 	@NotNull
 	public synchronized final Map<String, F> getSubFolderMap() {
-		return UtilModel.nullSafeImmutableMap(subFolders);
+		return immutableMap(subFolders);
+	}
+
+	@ImmutableCopy
+	@NotNull
+	private static <T extends TreeNode> List<T> immutableList(@Nullable NodeTable<T> table) {
+		if (table == null || table.isEmpty())
+			return Collections.emptyList();
+		return ImmutableList.copyOf(table.values());
+	}
+
+	@ImmutableCopy
+	@NotNull
+	private static <T extends TreeNode> Map<String, T> immutableMap(@Nullable NodeTable<T> table) {
+		if (table == null || table.isEmpty())
+			return Collections.emptyMap();
+		return ImmutableMap.copyOf(table.toMap());
 	}
 
 	public synchronized final int getChildCount() {
@@ -425,17 +533,28 @@ public abstract class Folder
 		this.isChecked = isChecked;
 	}
 
-	@NotNull
-	@SuppressWarnings("unchecked")
-	public synchronized final TreeCheckState getTreeCheckState() {
-		final TreeCheckState state = new TreeCheckState();
-		state.add(this, isChecked);
-		new FolderVisitor<D, F, Throwable>((F) this) {
-			protected void visitFolder(F parent, F folder) {
-				state.add(folder, folder.isChecked);
-			}
-		}.runSilently();
-		return state;
+	/**
+	 * Returns the ID of this folder within the tree of its index, or
+	 * {@link #NO_FOLDER_ID} if no ID has been assigned yet.
+	 *
+	 * @see TreeIndex#getFolderId(Folder)
+	 */
+	public synchronized final int getFolderId() {
+		return folderId;
+	}
+
+	/**
+	 * Returns the ID of this folder, after assigning the next ID from the
+	 * given counter to it if it doesn't have one yet.
+	 */
+	synchronized final int assignFolderId(@NotNull AtomicInteger nextFolderId) {
+		if (folderId == NO_FOLDER_ID)
+			folderId = nextFolderId.getAndIncrement();
+		return folderId;
+	}
+
+	synchronized final void setFolderId(int folderId) {
+		this.folderId = folderId;
 	}
 
 	public final boolean isIndex() {
@@ -520,4 +639,41 @@ public abstract class Folder
 		return false;
 	}
 
+	@SuppressWarnings("unchecked")
+	private void readObject(@NotNull ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		HashMap<String, D> documentMap = (HashMap<String, D>) fields.get("documents", null);
+		if (documentMap != null && !documentMap.isEmpty()) {
+			documents = new NodeTable<D>();
+			for (D doc : documentMap.values())
+				documents.put(doc);
+		}
+		HashMap<String, F> subFolderMap = (HashMap<String, F>) fields.get("subFolders", null);
+		if (subFolderMap != null && !subFolderMap.isEmpty()) {
+			subFolders = new NodeTable<F>();
+			for (F subFolder : subFolderMap.values())
+				subFolders.put(subFolder);
+		}
+		parent = (F) fields.get("parent", null);
+		path = (Path) fields.get("path", null);
+		pathHashCode = fields.get("pathHashCode", 0);
+		lastModified = toPrimitive((Long) fields.get("lastModified", null));
+		isChecked = fields.get("isChecked", true);
+		folderId = NO_FOLDER_ID;
+	}
+
+	private synchronized void writeObject(@NotNull ObjectOutputStream out)
+			throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("documents", documents == null ? null : documents.toMap());
+		fields.put("subFolders", subFolders == null ? null : subFolders.toMap());
+		fields.put("parent", parent);
+		fields.put("path", path);
+		fields.put("pathHashCode", pathHashCode);
+		fields.put("lastModified", getLastModified());
+		fields.put("isChecked", isChecked);
+		out.writeFields();
+	}
+
 }
@@ -11,8 +11,15 @@
 
 package net.sourceforge.docfetcher.model;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import net.sourceforge.docfetcher.model.index.file.FileDocument;
 import net.sourceforge.docfetcher.model.index.file.FileFolder;
 
@@ -43,4 +50,48 @@ public final class FolderTest {
 		}
 	}
 
+	@Test
+	public void testSerialization() throws Exception {
+		FileFolder f1 = new FileFolder(new Path("one"), null);
+		FileFolder f2 = new FileFolder(f1, "two.zip", 5L);
+		new FileDocument(f2, "three", 1L);
+		new FileDocument(f1, "four", 2L);
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bout);
+		out.writeObject(f1);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(
+			new ByteArrayInputStream(bout.toByteArray()));
+		FileFolder copy = (FileFolder) in.readObject();
+		in.close();
+
+		assertEquals(new Path("one"), copy.getPath());
+		assertNull(copy.getLastModified());
+		assertEquals(1, copy.getDocumentCount());
+		FileFolder subFolder = copy.getSubFolder("two.zip");
+		assertEquals(Long.valueOf(5L), subFolder.getLastModified());
+		assertTrue(subFolder.getParent() == copy);
+		FileDocument doc = subFolder.getDocument("three");
+		assertEquals(new Path("one/two.zip/three"), doc.getPath());
+	}
+
+	@Test
+	public void testPathCache() {
+		FileFolder f1 = new FileFolder(new Path("one"), null);
+		FileFolder f2 = new FileFolder(f1, "two", null);
+		FileFolder f3 = new FileFolder(f2, "three", null);
+		assertTrue(f3.getPath() == f3.getPath());
+		assertEquals(new Path("one/two/three"), f3.getPath());
+
+		// Moving an ancestor must invalidate the cached paths
+		FileFolder other = new FileFolder(new Path("other"), null);
+		f1.removeSubFolder(f2);
+		assertEquals(new Path("one/two/three"), f3.getPath());
+		other.putSubFolder(f2);
+		assertEquals(new Path("other/two/three"), f3.getPath());
+		f1.setPath(new Path("renamed"));
+		assertEquals(new Path("renamed"), f1.getPath());
+	}
+
 }
@@ -12,14 +12,12 @@
 package net.sourceforge.docfetcher.model;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.channels.FileLock;
@@ -58,8 +56,11 @@ import net.sourceforge.docfetcher.enums.SettingsConf;
 import net.sourceforge.docfetcher.model.IndexLoadingProblems.CorruptedIndex;
 import net.sourceforge.docfetcher.model.IndexLoadingProblems.OverflowIndex;
 import net.sourceforge.docfetcher.model.index.IndexingQueue;
+import net.sourceforge.docfetcher.model.index.Task.IndexAction;
 import net.sourceforge.docfetcher.model.index.file.FileFactory;
+import net.sourceforge.docfetcher.model.index.file.IndexingJournal;
 import net.sourceforge.docfetcher.model.index.outlook.OutlookMailFactory;
+import net.sourceforge.docfetcher.model.search.ReversedTermsAnalyzer;
 import net.sourceforge.docfetcher.model.search.Searcher;
 import net.sourceforge.docfetcher.model.search.SourceCodeTokenizer;
 import net.sourceforge.docfetcher.util.AppUtil;
@@ -95,6 +96,7 @@ public final class IndexRegistry {
 	public static final Version LUCENE_VERSION = Version.LUCENE_6_6_3;
 
 	private static Analyzer analyzer = null;
+	private static Analyzer reversedTermsAnalyzer = null;
 	
 	@Nullable
 	public static volatile File indexPathOverride = null;
@@ -103,8 +105,11 @@ public final class IndexRegistry {
 	private static final String NAME_FILENAME = "index-name.txt";
 	
 	/*
-	 * This setting prevents errors that would otherwise occur if the user
-	 * enters generic search terms like "*?".
+	 * Generic search terms like "*?" are kept from expanding into huge boolean
+	 * queries by the rewrite methods of the searcher, which are bounded by a
+	 * configurable number of terms (see ProgramConf.Int.MaxExpandedTerms).
+	 * Lucene's own limit is lifted so that it doesn't reject long queries
+	 * that were entered by the user.
 	 */
 	static {
 		BooleanQuery.setMaxClauseCount(Integer.MAX_VALUE);
@@ -150,7 +155,21 @@ public final class IndexRegistry {
 		return analyzer;
 	}
 	
+	/**
+	 * Returns the analyzer for indexes that are configured to index the
+	 * reversed forms of the content words.
+	 * 
+	 * @see ReversedTermsAnalyzer
+	 */
+	@NotNull
+	public static Analyzer getReversedTermsAnalyzer() {
+		if (reversedTermsAnalyzer == null)
+			reversedTermsAnalyzer = new ReversedTermsAnalyzer(getAnalyzer());
+		return reversedTermsAnalyzer;
+	}
+	
 	public static void resetAnalyzer() {
+		reversedTermsAnalyzer = null;
 		switch (SettingsConf.Int.LuceneAnalyzer.get()) {
 		case 1:
 			analyzer = new SourceCodeAnalyzer(LUCENE_VERSION); break;
@@ -341,6 +360,33 @@ public final class IndexRegistry {
 		}
 	}
 
+	/**
+	 * Adds an update task to the indexing queue for each index whose last
+	 * update was interrupted by a cancellation, a shutdown or a crash, so that
+	 * the update is resumed where it stopped (see {@link IndexingJournal}).
+	 * This should be called after the indexes have been loaded.
+	 */
+	@ThreadSafe
+	public void enqueueInterruptedUpdates() {
+		enqueueUpdates(false);
+	}
+
+	/**
+	 * Adds an update task to the indexing queue for every index. Interrupted
+	 * updates are resumed as in {@link #enqueueInterruptedUpdates()}. This
+	 * should be called after the indexes have been loaded.
+	 */
+	@ThreadSafe
+	public void enqueueAllUpdates() {
+		enqueueUpdates(true);
+	}
+
+	private void enqueueUpdates(boolean all) {
+		for (LuceneIndex index : getIndexes())
+			if (IndexingJournal.requestResume(index) || all)
+				queue.addTask(index, IndexAction.UPDATE);
+	}
+
 	@CallOnce
 	@ThreadSafe
 	public IndexLoadingProblems load(@NotNull Cancelable cancelable) throws IOException {
@@ -362,32 +408,36 @@ public final class IndexRegistry {
 			if (cancelable.isCanceled())
 				break;
 			if (file.isDirectory()) {
-				File serFile = new File(file, SER_FILENAME);
-				if (serFile.isFile()) {
+				restoreCheckpoint(file);
+				File treeIndexFile = getTreeIndexFile(file);
+				if (treeIndexFile.isFile()) {
 					/*
-					 * Try to load the tree-index.ser. If this fails, we're
+					 * Try to load the tree index file. If this fails, we're
 					 * probably dealing with a tree-index.ser from DocFetcher
 					 * 1.1 beta 1 through DocFetcher 1.1 beta 6, because the
 					 * serialization version UID was changed after 1.1 beta 6.
+					 * Stack overflows can only occur while loading a
+					 * tree-index.ser, since the newer format is read without
+					 * recursion.
 					 */
 					try {
-						if (!loadIndex(serFile)) {
+						if (!loadIndex(file)) {
 							loadingProblems.addObsoleteFile(file);
 						}
 					} catch (StackOverflowError e) {
 						loadingProblems.addOverflowIndex(new OverflowIndex(file, e));
 					}
 				}
-				else if (!serFile.exists()) {
+				else if (!treeIndexFile.exists()) {
 					/*
-					 * If no tree-index.ser exists and the containing folder has
-					 * a name that ends with a timestamp, it's probably an index
-					 * folder from DocFetcher 1.0.3 or earlier.
+					 * If no tree index file exists and the containing folder
+					 * has a name that ends with a timestamp, it's probably an
+					 * index folder from DocFetcher 1.0.3 or earlier.
 					 */
 					if (file.getName().matches(".*?_\\d+"))
 						loadingProblems.addObsoleteFile(file);
 				}
-				// Ignore if tree-index.ser is a directory
+				// Ignore if the tree index file is a directory
 			}
 			else if (file.isFile()) {
 				/*
@@ -412,7 +462,9 @@ public final class IndexRegistry {
 
 			final int watchId = new SimpleJNotifyListener() {
 				protected void handleEvent(File targetFile, EventType eventType) {
-					if (!targetFile.getName().equals(SER_FILENAME))
+					String filename = targetFile.getName();
+					if (!filename.equals(TreeIndexStore.FILENAME)
+							&& !filename.equals(SER_FILENAME))
 						return;
 					executor.schedule(new Runnable() {
 						public void run() {
@@ -441,34 +493,104 @@ public final class IndexRegistry {
 	}
 
 	/**
-	 * Load the given tree index file. Returns whether the file was successfully
-	 * loaded.
+	 * If the given index directory contains the checkpoint file of an index
+	 * build that was interrupted by a crash, turns the checkpoint file into
+	 * the tree index file, so that the index is loaded in the state of the
+	 * last checkpoint and can be completed by an index update. The Lucene
+	 * index may contain documents written after the last checkpoint, which
+	 * the resumed update replaces by UID. A checkpoint file next to an
+	 * existing tree index file is a leftover and is deleted, along with the
+	 * indexing journal saved with it.
+	 */
+	private static void restoreCheckpoint(@NotNull File indexDir) {
+		File checkpointFile = new File(indexDir, TreeIndexStore.CHECKPOINT_FILENAME);
+		if (!checkpointFile.isFile())
+			return;
+		if (getTreeIndexFile(indexDir).exists()) {
+			checkpointFile.delete();
+			new File(indexDir, IndexingJournal.FILENAME).delete();
+		}
+		else if (!checkpointFile.renameTo(new File(indexDir, TreeIndexStore.FILENAME)))
+			Util.printErr("Could not restore index checkpoint: " + checkpointFile);
+	}
+
+	/**
+	 * Returns the file in the given index directory that contains the tree
+	 * structure of the index. This is a {@link TreeIndexStore} file, unless
+	 * the index directory only contains a tree-index.ser file from an earlier
+	 * program version that couldn't be converted yet.
+	 */
+	@NotNull
+	private static File getTreeIndexFile(@NotNull File indexDir) {
+		File storeFile = new File(indexDir, TreeIndexStore.FILENAME);
+		if (storeFile.isFile())
+			return storeFile;
+		File serFile = new File(indexDir, SER_FILENAME);
+		return serFile.exists() ? serFile : storeFile;
+	}
+
+	/**
+	 * Load the tree index file in the given index directory. Returns whether
+	 * the file was successfully loaded. A tree-index.ser file from an earlier
+	 * program version is converted to the new format on the way.
 	 */
 	@ThreadSafe
-	private boolean loadIndex(@NotNull File serFile) {
+	private boolean loadIndex(@NotNull File indexDir) {
+		File storeFile = new File(indexDir, TreeIndexStore.FILENAME);
+		try {
+			LuceneIndex index;
+			if (storeFile.isFile()) {
+				index = TreeIndexStore.read(storeFile);
+			}
+			else {
+				File serFile = new File(indexDir, SER_FILENAME);
+				index = loadSerFile(serFile);
+				
+				/*
+				 * One-time migration to the new format. If the new file can't
+				 * be written, e.g. because the indexes reside on a read-only
+				 * medium, just keep using the ser file.
+				 */
+				try {
+					TreeIndexStore.write(storeFile, index);
+					serFile.delete();
+				}
+				catch (IOException e) {
+					storeFile.delete();
+					Util.printErr(e);
+				}
+			}
+			//If index can be loaded, load the index name from file
+			index.getRootFolder().setDisplayName(loadIndexName(index.getIndexDirPath()));
+			addIndex(index, getTreeIndexFile(indexDir).lastModified());
+			return true;
+		}
+		catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Loads a tree-index.ser file, as written by earlier program versions.
+	 */
+	@NotNull
+	private static LuceneIndex loadSerFile(@NotNull File serFile)
+			throws IOException, ClassNotFoundException {
 		ObjectInputStream in = null;
 		try {
 			FileInputStream fin = new FileInputStream(serFile);
 			FileLock lock = fin.getChannel().lock(0, Long.MAX_VALUE, true);
-			LuceneIndex index;
 			try {
 				/*
 				 * Without this BufferedInputStream, there can be noticeable
 				 * performance problems if the index resides on a network drive.
 				 */
 				in = new ObjectInputStream(new BufferedInputStream(fin));
-				index = (LuceneIndex) in.readObject();
+				return (LuceneIndex) in.readObject();
 			}
 			finally {
 				lock.release();
 			}
-			//If index can be loaded, load the index name from file
-			index.getRootFolder().setDisplayName(loadIndexName(index.getIndexDirPath()));
-			addIndex(index, serFile.lastModified());
-			return true;
-		}
-		catch (Exception e) {
-			return false;
 		}
 		finally {
 			Closeables.closeQuietly(in);
@@ -492,20 +614,20 @@ public final class IndexRegistry {
 			for (File indexDir : Util.listFiles(indexParentDir)) {
 				if (!indexDir.isDirectory())
 					continue;
-				File serFile = new File(indexDir, SER_FILENAME);
-				if (!serFile.isFile())
+				File treeIndexFile = getTreeIndexFile(indexDir);
+				if (!treeIndexFile.isFile())
 					continue;
 
 				LuceneIndex index = indexDirMap.remove(Util.getAbsFile(indexDir));
 
 				// New index found
 				if (index == null) {
-					loadIndex(serFile);
+					loadIndex(indexDir);
 				}
 				// Existing index; may have been modified
 				else {
 					Long oldLM = indexes.get(index);
-					long newLM = serFile.lastModified();
+					long newLM = treeIndexFile.lastModified();
 					if (oldLM != null && oldLM.longValue() != newLM) {
 						/*
 						 * Remove the old version of the index and add the new
@@ -513,7 +635,7 @@ public final class IndexRegistry {
 						 * searched in right now.
 						 */
 						removeIndexes(Collections.singletonList(index), false);
-						loadIndex(serFile);
+						loadIndex(indexDir);
 					}
 				}
 			}
@@ -533,42 +655,29 @@ public final class IndexRegistry {
 		try {
 			File indexDir = index.getIndexDirPath().getCanonicalFile();
 			indexDir.mkdirs();
-			File serFile = new File(indexDir, SER_FILENAME);
+			File storeFile = new File(indexDir, TreeIndexStore.FILENAME);
 
 			/*
 			 * DocFetcher might have been burned onto a CD-ROM; if so, then just
 			 * ignore it.
 			 */
-			if (serFile.exists() && !serFile.canWrite())
+			File treeIndexFile = getTreeIndexFile(indexDir);
+			if (treeIndexFile.exists() && !treeIndexFile.canWrite())
 				return;
 
-			ObjectOutputStream out = null;
 			try {
-				serFile.createNewFile();
-				FileOutputStream fout = new FileOutputStream(serFile);
-				FileLock lock = fout.getChannel().lock();
-				try {
-					/*
-					 * Without this BufferedOutputStream, there can be noticeable
-					 * performance problems if the index resides on a network drive.
-					 */
-					out = new ObjectOutputStream(new BufferedOutputStream(fout));
-					out.writeObject(index);
-				}
-				finally {
-					lock.release();
-				}
-			}
-			catch (StackOverflowError e) {
-				AppUtil.showError("Couldn't save index '" + index.getDisplayName() + "': Folder hierarchy "
-						+ "is too deep! Please reduce the folder depth and rebuild the index.", true, false);
+				/*
+				 * Only the parts of the tree that changed since the last save
+				 * are written to disk here.
+				 */
+				TreeIndexStore.write(storeFile, index);
+				
+				// Remove ser file left over from an earlier program version
+				new File(indexDir, SER_FILENAME).delete();
 			}
 			catch (IOException e) {
 				Util.printErr(e); // The average user doesn't need to know
 			}
-			finally {
-				Closeables.closeQuietly(out);
-			}
 			
 			if (ProgramConf.Bool.AllowIndexRenaming.get()) {
 				// If saving the index succeeded, save the indexName in a separate file
@@ -578,7 +687,7 @@ public final class IndexRegistry {
 			}
 
 			// Update cached last-modified value of index
-			indexes.put(index, serFile.lastModified());
+			indexes.put(index, getTreeIndexFile(indexDir).lastModified());
 		}
 		finally {
 			writeLock.unlock();
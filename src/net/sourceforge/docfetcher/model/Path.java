@@ -13,6 +13,8 @@ package net.sourceforge.docfetcher.model;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.Normalizer;
 
@@ -57,7 +59,7 @@ public final class Path implements Serializable {
 	
 	private static final long serialVersionUID = 1L;
 	
-	private final String name;
+	@Nullable private String name; // computed on demand for subpaths
 	private final String path;
 	@Nullable private transient File canonicalFile;
 	
@@ -79,6 +81,16 @@ public final class Path implements Serializable {
 		this.name = getDisplayName(canonicalFile);
 	}
 	
+	/**
+	 * Creates a subpath of the given path from a name that doesn't contain
+	 * path separators and has already been normalized. Unlike the public
+	 * constructors, this doesn't normalize the entire path again, and leaves
+	 * the canonical file and the name to be computed when they're needed.
+	 */
+	private Path(@NotNull Path parent, @NotNull String normalizedName) {
+		this.path = parent.path + "/" + normalizedName;
+	}
+	
 	@NotNull
 	private static String getDisplayName(@NotNull File canonicalFile) {
 		return canonicalFile.getParent() == null
@@ -103,6 +115,9 @@ public final class Path implements Serializable {
 	
 	@NotNull
 	public String getName() {
+		String name = this.name;
+		if (name == null)
+			this.name = name = getDisplayName(getCanonicalFile());
 		return name;
 	}
 	
@@ -117,6 +132,13 @@ public final class Path implements Serializable {
 	
 	@NotNull
 	public Path createSubPath(@NotNull String pathPart) {
+		/*
+		 * Fast path for appending a single name, which is what the tree nodes
+		 * do when their paths are constructed.
+		 */
+		if (!path.isEmpty() && !pathPart.isEmpty()
+				&& Util.fileSepMatcher.matchesNoneOf(pathPart))
+			return new Path(this, normalizeUnicode(pathPart, true));
 		return new Path(Util.joinPath(path, pathPart));
 	}
 	
@@ -225,4 +247,10 @@ public final class Path implements Serializable {
 		return new String[] {string, ""};
 	}
 	
+	private void writeObject(@NotNull ObjectOutputStream out)
+			throws IOException {
+		getName(); // The name is part of the serialized form
+		out.defaultWriteObject();
+	}
+	
 }
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import net.sourceforge.docfetcher.model.Path.PathParts;
+import net.sourceforge.docfetcher.util.Util;
 
 import org.junit.Test;
 
@@ -42,6 +43,25 @@ public final class PathTest {
 		}
 	}
 	
+	@Test
+	public void testCreateSubPath() {
+		String[][] samples = {
+			{ "/path/to", "file" },
+			{ "path/to", "file" },
+			{ "C:", "file" },
+			{ "path", "a\u0308" }, // decomposed umlaut
+			{ "", "file" },
+			{ "path", "to/file/" },
+		};
+		for (String[] sample : samples) {
+			Path subPath = new Path(sample[0]).createSubPath(sample[1]);
+			Path expected = new Path(Util.joinPath(sample[0], sample[1]));
+			assertEquals(expected, subPath);
+			assertEquals(expected.getName(), subPath.getName());
+			assertEquals(expected.getCanonicalFile(), subPath.getCanonicalFile());
+		}
+	}
+	
 	private static void add(List<Sample> samples, String input, String... expectedOutput) {
 		Sample sample = new Sample();
 		sample.input = input;
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.docfetcher.enums.ProgramConf;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.Immutable;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
+
+import com.google.common.base.Charsets;
+
+/**
+ * An on-disk cache for the text that is shown in the preview pane, so that
+ * files don't have to be parsed again each time they're previewed. Entries
+ * are keyed by the UID and the last-modified value of the document, so an
+ * entry automatically becomes unreachable when the file is modified.
+ * <p>
+ * Each entry consists of one or more pages of text. The entries are kept in
+ * a {@link DiskCache}, which deletes the least recently used entries when
+ * the size bound of the cache directory is exceeded.
+ *
+ * @author Tran Nam Quang
+ */
+@ThreadSafe
+@VisibleForPackageGroup
+public final class TextCache {
+
+	public static final String DIRNAME = "text-cache";
+
+	private static final int VERSION = 1;
+
+	private final DiskCache store;
+
+	public TextCache(@NotNull File cacheDir, long maxSize) {
+		this(new DiskCache(cacheDir, maxSize, 0));
+	}
+
+	private TextCache(@NotNull DiskCache store) {
+		this.store = store;
+	}
+
+	/**
+	 * Returns the text cache for the indexes in the given index parent
+	 * directory, or null if the given directory is null or if the text cache
+	 * has been disabled in the program configuration.
+	 */
+	@Nullable
+	public static TextCache getInstance(@Nullable File indexParentDir) {
+		if (indexParentDir == null)
+			return null;
+		long maxSize = ProgramConf.Int.TextCacheSize.get() * 1024L * 1024L;
+		if (maxSize <= 0)
+			return null;
+		File cacheDir = new File(indexParentDir, DIRNAME);
+		return new TextCache(DiskCache.getInstance(cacheDir, maxSize, 0));
+	}
+
+	/**
+	 * Returns the pages of text stored for the given document, or null if the
+	 * cache has no entry for it.
+	 */
+	@Immutable
+	@Nullable
+	public List<String> get(@NotNull final String uid, final long lastModified) {
+		Util.checkNotNull(uid);
+		String key = getKey(uid, lastModified);
+		return store.get(key, new DiskCache.EntryReader<List<String>>() {
+			public List<String> read(DataInputStream in) throws IOException {
+				if (in.readInt() != VERSION
+						|| !in.readUTF().equals(uid)
+						|| in.readLong() != lastModified)
+					return null;
+				int pageCount = in.readInt();
+				List<String> pages = new ArrayList<String>(pageCount);
+				for (int i = 0; i < pageCount; i++) {
+					byte[] bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+					pages.add(new String(bytes, Charsets.UTF_8));
+				}
+				return Collections.unmodifiableList(pages);
+			}
+		});
+	}
+
+	/**
+	 * Stores the given text for the given document as a single page.
+	 */
+	public void put(@NotNull String uid,
+					long lastModified,
+					@NotNull CharSequence text) {
+		put(uid, lastModified, Collections.singletonList(text.toString()));
+	}
+
+	/**
+	 * Stores the given pages of text for the given document, replacing any
+	 * previous entry. Failures are not reported, since the cache is only an
+	 * optimization.
+	 */
+	public void put(@NotNull final String uid,
+					final long lastModified,
+					@NotNull final List<String> pages) {
+		Util.checkNotNull(uid, pages);
+		store.put(getKey(uid, lastModified), new DiskCache.EntryWriter() {
+			public void write(DataOutputStream out) throws IOException {
+				out.writeInt(VERSION);
+				out.writeUTF(uid);
+				out.writeLong(lastModified);
+				out.writeInt(pages.size());
+				for (String page : pages) {
+					byte[] bytes = page.getBytes(Charsets.UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+			}
+		});
+	}
+
+	@NotNull
+	private static String getKey(@NotNull String uid, long lastModified) {
+		MessageDigest md = DiskCache.newDigest();
+		md.update(uid.getBytes(Charsets.UTF_8));
+		md.update(String.valueOf(lastModified).getBytes(Charsets.UTF_8));
+		return DiskCache.toKey(md);
+	}
+
+}
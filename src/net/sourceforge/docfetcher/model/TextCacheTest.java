@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import net.sourceforge.docfetcher.util.Util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class TextCacheTest {
+
+	private File tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Util.createTempDir();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Util.deleteRecursively(tempDir);
+	}
+
+	@Test
+	public void testRoundTrip() {
+		TextCache cache = new TextCache(tempDir, 1024 * 1024);
+		cache.put("uid1", 1, "single page äöü");
+		cache.put("uid2", 2, Arrays.asList("page 1", "page 2"));
+
+		assertEquals(Arrays.asList("single page äöü"), cache.get("uid1", 1));
+		assertEquals(Arrays.asList("page 1", "page 2"), cache.get("uid2", 2));
+		assertNull(cache.get("uid1", 2));
+
+		// Entries must survive a restart
+		TextCache newCache = new TextCache(tempDir, 1024 * 1024);
+		assertEquals(Arrays.asList("page 1", "page 2"), newCache.get("uid2", 2));
+	}
+
+	@Test
+	public void testEviction() {
+		// Random letters compress to about 6 KB per entry, so only two fit
+		Random random = new Random(0);
+		TextCache cache = new TextCache(tempDir, 15 * 1024);
+		for (int i = 0; i < 3; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < 10 * 1024; j++)
+				sb.append((char) ('a' + random.nextInt(26)));
+			cache.put("uid" + i, 0, sb);
+			if (i == 1)
+				assertNotNull(cache.get("uid0", 0)); // uid1 is now least recently used
+		}
+		assertNotNull(cache.get("uid0", 0));
+		assertNull(cache.get("uid1", 0));
+		assertNotNull(cache.get("uid2", 0));
+	}
+
+}
@@ -11,211 +11,225 @@
 
 package net.sourceforge.docfetcher.model;
 
-import java.util.HashSet;
-import java.util.NoSuchElementException;
-import java.util.Set;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
 
 /**
+ * A snapshot of the check states of the folders of one or more indexes.
+ * <p>
+ * The check states are stored per index as bitsets over the folder IDs of the
+ * index (see {@link TreeIndex#getFolderId(Folder)}). Since the folder IDs are
+ * also stored in the Lucene documents, looking up whether the folder of a
+ * search result is checked takes constant time, regardless of the number and
+ * the depth of the folders.
+ * <p>
+ * Folders that were created after the snapshot was taken aren't covered by the
+ * bitsets. For these, and for documents indexed by earlier versions without
+ * folder IDs, the check state can still be looked up by path via
+ * {@link #isChecked(Path)}.
+ *
  * @author Tran Nam Quang
  */
 public final class TreeCheckState {
-	
+
 	/*
-	 * TODO post-release-1.1: Check for multi-threading issues in this class,
-	 * especially check-then-act operations on Folder objects and the likes.
+	 * The bitsets of an index are always grown together, so they have the
+	 * same length.
 	 */
-	
-	private final Set<FolderWrapper> checkedSet = new HashSet<FolderWrapper>();
+	private static final class IndexState {
+		@NotNull private final Folder<?, ?> rootFolder;
+		@NotNull private FixedBitSet folders; // IDs of all folders
+		@NotNull private FixedBitSet checked; // IDs of the checked folders
+
+		private IndexState(@NotNull Folder<?, ?> rootFolder, int idCount) {
+			this.rootFolder = rootFolder;
+			folders = new FixedBitSet(Math.max(idCount, 64));
+			checked = new FixedBitSet(folders.length());
+		}
+
+		private void set(int folderId, boolean isChecked) {
+			folders = FixedBitSet.ensureCapacity(folders, folderId);
+			checked = FixedBitSet.ensureCapacity(checked, folderId);
+			folders.set(folderId);
+			if (isChecked)
+				checked.set(folderId);
+		}
+
+		@Nullable
+		private Boolean isChecked(int folderId) {
+			if (folderId < 0 || folderId >= folders.length()
+					|| !folders.get(folderId))
+				return null;
+			return checked.get(folderId);
+		}
+	}
+
+	private final Map<LuceneIndex, IndexState> indexStates = new IdentityHashMap<LuceneIndex, IndexState>();
 	private int folderCount = 0; // includes unchecked and checked folders
-	
-	void add(@NotNull Folder<?, ?> folder, boolean isChecked) {
-		Util.checkNotNull(folder);
-		if (isChecked)
-			checkedSet.add(new FolderWrapper(folder));
-		folderCount++;
+	private int checkedCount = 0;
+
+	/**
+	 * Adds the check states of the given root folder and all folders under it,
+	 * assigning folder IDs from the given counter to the folders that don't
+	 * have one yet.
+	 */
+	void add(	@NotNull LuceneIndex index,
+				@NotNull Folder<?, ?> rootFolder,
+				@NotNull AtomicInteger nextFolderId) {
+		Util.checkNotNull(index, rootFolder, nextFolderId);
+		IndexState state = new IndexState(rootFolder, nextFolderId.get());
+
+		// Walk the tree iteratively to avoid overflowing the stack
+		Deque<Folder<?, ?>> stack = new ArrayDeque<Folder<?, ?>>();
+		stack.push(rootFolder);
+		while (!stack.isEmpty()) {
+			Folder<?, ?> folder = stack.pop();
+			boolean isChecked = folder.isChecked();
+			state.set(folder.assignFolderId(nextFolderId), isChecked);
+			folderCount++;
+			if (isChecked)
+				checkedCount++;
+			for (Folder<?, ?> subFolder : folder.getSubFolders())
+				stack.push(subFolder);
+		}
+		indexStates.put(index, state);
 	}
-	
+
 	void add(@NotNull TreeCheckState other) {
 		Util.checkNotNull(other);
-		checkedSet.addAll(other.checkedSet);
+		indexStates.putAll(other.indexStates);
 		folderCount += other.folderCount;
+		checkedCount += other.checkedCount;
 	}
-	
-	public boolean isChecked(@NotNull Path path) {
-		Util.checkNotNull(path);
-		if (checkedSet.isEmpty())
-			return false;
-		if (folderCount == checkedSet.size())
-			return true;
-		return checkedSet.contains(new PathWrapper(path));
+
+	/**
+	 * Returns true if all folders are checked, in which case
+	 * {@link #isChecked(Path)} returns true for all paths.
+	 */
+	public boolean isAllChecked() {
+		return checkedCount > 0 && folderCount == checkedCount;
 	}
-	
-	private static final class PathWrapper {
-		private final Path path;
 
-		public PathWrapper(@NotNull Path path) {
-			this.path = path;
-		}
-		
-		public boolean equals(Object obj) {
-			/*
-			 * The hash map implementation will call this equals method rather
-			 * than the one on the FolderWrapper, so we'll override this equal
-			 * method and redirect to the equals method of the FolderWrapper.
-			 */
-			return ((FolderWrapper) obj).equals(this);
-		}
-		
-		public int hashCode() {
-			return path.getPath().hashCode();
-		}
+	/**
+	 * Returns true if no folder is checked, in which case
+	 * {@link #isChecked(Path)} returns false for all paths.
+	 */
+	public boolean isNoneChecked() {
+		return checkedCount == 0;
 	}
-	
-	private static final class FolderWrapper {
-		private final Folder<?, ?> folder;
 
-		private FolderWrapper(@NotNull Folder<?, ?> folder) {
-			this.folder = folder;
-		}
-		
-		public boolean equals(Object obj) {
-			/*
-			 * This equals method is called either as a result of adding
-			 * FolderWrapper instances to the checked set, or as a result of
-			 * determining whether the checked set "contains" a particular
-			 * PathWrapper.
-			 */
-			if (obj instanceof FolderWrapper) {
-				FolderWrapper other = (FolderWrapper) obj;
-				return folder.equals(other.folder);
-			}
-			
-			String targetPath = ((PathWrapper) obj).path.getPath();
-			if (targetPath.length() != getPathLength(folder))
-				return false;
-			PathReverseIterator it1 = new PathReverseIterator(folder);
-			StringReverseIterator it2 = new StringReverseIterator(targetPath);
-			while (true) {
-				if (it1.hasNext()) {
-					if (it2.hasNext()) {
-						if (it1.next() != it2.next())
-							return false;
-					}
-					else {
-						return false;
-					}
-				}
-				else {
-					if (it2.hasNext())
-						return false;
-					else
-						break;
-				}
-			}
+	/**
+	 * Returns the IDs of the folders of the given index that are covered by
+	 * this check state, or null if the index isn't covered at all. The
+	 * returned bitset must not be modified.
+	 */
+	@Nullable
+	public Bits getFolders(@NotNull LuceneIndex index) {
+		IndexState state = indexStates.get(index);
+		return state == null ? null : state.folders;
+	}
+
+	/**
+	 * Returns the IDs of the checked folders of the given index, or null if
+	 * the index isn't covered by this check state. The returned bitset must
+	 * not be modified, and has the same length as the one returned by
+	 * {@link #getFolders(LuceneIndex)}.
+	 */
+	@Nullable
+	public Bits getCheckedFolders(@NotNull LuceneIndex index) {
+		IndexState state = indexStates.get(index);
+		return state == null ? null : state.checked;
+	}
+
+	/**
+	 * Returns whether the folder with the given ID in the given index is
+	 * checked, or null if the folder isn't covered by this check state.
+	 */
+	@Nullable
+	public Boolean isChecked(@NotNull LuceneIndex index, int folderId) {
+		IndexState state = indexStates.get(index);
+		return state == null ? null : state.isChecked(folderId);
+	}
+
+	/**
+	 * Returns whether the folder with the given path is checked. This looks
+	 * up the folder in the trees of the indexes, so it takes time proportional
+	 * to the depth of the folder. Folders that are unknown to this check
+	 * state are considered unchecked.
+	 */
+	public boolean isChecked(@NotNull Path path) {
+		Util.checkNotNull(path);
+		if (checkedCount == 0)
+			return false;
+		if (folderCount == checkedCount)
 			return true;
-		}
-		
-		/*
-		 * TODO post-release-1.1: Compute and store the path length as an int
-		 * field in Folder during indexing, instead of computing it here.
-		 */
-		private int getPathLength(@NotNull Folder<?, ?> folder) {
-			int count = 0;
-			Folder<?, ?> current = folder;
-			while (true) {
-				Folder<?, ?> parent = current.getParent();
-				if (parent == null) {
-					count += current.getPath().getPath().length();
-					break;
-				}
-				count += current.getName().length() + 1; // +1 for path separator
-				current = parent;
+		String pathStr = path.getPath();
+		for (IndexState state : indexStates.values()) {
+			Folder<?, ?> folder = state.rootFolder;
+			String rootPath = folder.getPath().getPath();
+			if (pathStr.equals(rootPath))
+				return isChecked(state, folder);
+			String prefix = rootPath.endsWith("/") ? rootPath : rootPath + "/";
+			if (!pathStr.startsWith(prefix))
+				continue;
+			String remaining = pathStr.substring(prefix.length());
+			while (folder != null && !remaining.isEmpty()) {
+				folder = getSubFolder(folder, remaining);
+				if (folder != null)
+					remaining = remaining.substring(Math.min(
+						folder.getName().length() + 1, remaining.length()));
 			}
-			return count;
-		}
-		
-		public int hashCode() {
-			return folder.getPathHashCode();
+			if (folder != null)
+				return isChecked(state, folder);
 		}
+		return false;
 	}
-	
-	private static final class PathReverseIterator {
-		private enum State {
-			PART, SEP, END
-		}
-		
-		private final StringReverseIterator it = new StringReverseIterator();
-		private Folder<?, ?> currentFolder;
-		private State state = State.PART;
-
-		public PathReverseIterator(@NotNull Folder<?, ?> folder) {
-			setCurrentFolder(folder);
-			assert it.hasNext();
-		}
-		
-		public char next() {
-			if (state == State.PART) {
-				char r = it.next();
-				if (!it.hasNext()) {
-					Folder<?, ?> parent = currentFolder.getParent();
-					if (parent == null) {
-						state = State.END;
-					}
-					else {
-						state = State.SEP;
-						setCurrentFolder(parent);
-					}
-				}
-				return r;
-			}
-			else if (state == State.SEP) {
-				state = State.PART;
-				return '/';
-			}
-			throw new NoSuchElementException();
-		}
-		
-		public boolean hasNext() {
-			return state != State.END;
-		}
-		
-		private void setCurrentFolder(@NotNull Folder<?, ?> currentFolder) {
-			this.currentFolder = currentFolder;
-			if (currentFolder.getParent() == null)
-				it.setString(currentFolder.getPath().getPath());
-			else
-				it.setString(currentFolder.getName());
-		}
+
+	/*
+	 * Returns the subfolder of the given folder whose name is a prefix of the
+	 * given relative path, followed by a slash or the end of the path. Folder
+	 * names may contain slashes, e.g. those of Outlook mail folders, so if the
+	 * first path segment isn't a subfolder name, the subfolders are searched
+	 * for the longest matching name.
+	 */
+	@Nullable
+	private static Folder<?, ?> getSubFolder(	@NotNull Folder<?, ?> folder,
+												@NotNull String relPath) {
+		int sep = relPath.indexOf('/');
+		Folder<?, ?> subFolder = folder.getSubFolder(
+			sep < 0 ? relPath : relPath.substring(0, sep));
+		if (subFolder != null || sep < 0)
+			return subFolder;
+		for (Folder<?, ?> candidate : folder.getSubFolders()) {
+			String name = candidate.getName();
+			if (!relPath.startsWith(name))
+				continue;
+			if (name.length() < relPath.length()
+					&& relPath.charAt(name.length()) != '/')
+				continue;
+			if (subFolder == null
+					|| name.length() > subFolder.getName().length())
+				subFolder = candidate;
+		}
+		return subFolder;
 	}
-	
-	private static final class StringReverseIterator {
-		private String string;
-		private int i = -1;
-		
-		public StringReverseIterator() {
-		}
-		
-		public StringReverseIterator(@NotNull String string) {
-			setString(string);
-		}
-		
-		public void setString(@NotNull String string) {
-			this.string = string;
-			i = string.length() - 1;
-		}
-		
-		public char next() {
-			if (i < 0)
-				throw new NoSuchElementException();
-			return string.charAt(i--);
-		}
-		
-		public boolean hasNext() {
-			return i >= 0;
-		}
+
+	private static boolean isChecked(	@NotNull IndexState state,
+										@NotNull Folder<?, ?> folder) {
+		Boolean isChecked = state.isChecked(folder.getFolderId());
+		if (isChecked == null) // folder was created after the snapshot
+			return folder.isChecked();
+		return isChecked;
 	}
 
 }
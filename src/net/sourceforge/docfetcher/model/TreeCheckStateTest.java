@@ -12,11 +12,16 @@
 package net.sourceforge.docfetcher.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 
 import net.sourceforge.docfetcher.model.index.file.FileFolder;
+import net.sourceforge.docfetcher.model.index.file.FileIndex;
 
 import org.junit.Test;
 
@@ -27,7 +32,8 @@ public final class TreeCheckStateTest {
 	
 	@Test
 	public void testCommonCase() {
-		FileFolder root = new FileFolder(new Path("../../Root"), null);
+		FileIndex index = new FileIndex(null, new File("Root"));
+		FileFolder root = index.getRootFolder();
 		FileFolder f1 = new FileFolder(root, "Folder1", null);
 		FileFolder f2 = new FileFolder(root, "Folder2", null);
 		FileFolder sf = new FileFolder(f1, "SubFolder", null);
@@ -37,12 +43,55 @@ public final class TreeCheckStateTest {
 		f2.setChecked(true);
 		sf.setChecked(false);
 		
-		TreeCheckState checkState = root.getTreeCheckState();
+		TreeCheckState checkState = index.getTreeCheckState();
+		assertFalse(checkState.isAllChecked());
+		assertFalse(checkState.isNoneChecked());
 		List<FileFolder> folders = Arrays.asList(root, f1, f2, sf);
 		for (FileFolder f : folders) {
 			boolean actualOutput = checkState.isChecked(f.getPath());
 			assertEquals(f.isChecked(), actualOutput);
+			int folderId = index.getFolderId(f);
+			assertEquals(f.isChecked(), checkState.isChecked(index, folderId));
+			assertEquals(f.isChecked(), checkState.getCheckedFolders(index).get(folderId));
 		}
+		assertFalse(checkState.isChecked(root.getPath().createSubPath("Missing")));
+		
+		// Folders created after the check state aren't covered by the bitsets
+		FileFolder newFolder = new FileFolder(f2, "NewFolder", null);
+		assertNull(checkState.isChecked(index, index.getFolderId(newFolder)));
+		assertTrue(checkState.isChecked(newFolder.getPath()));
+	}
+	
+	@Test
+	public void testFolderNamesWithSlashes() {
+		FileIndex index = new FileIndex(null, new File("Root"));
+		FileFolder root = index.getRootFolder();
+		FileFolder f1 = new FileFolder(root, "Inbox", null);
+		FileFolder f2 = new FileFolder(root, "Inbox/Archive", null);
+		FileFolder sf = new FileFolder(f2, "Sub/Folder", null);
+		
+		root.setChecked(true);
+		f1.setChecked(true);
+		f2.setChecked(false);
+		sf.setChecked(false);
+		
+		TreeCheckState checkState = index.getTreeCheckState();
+		for (FileFolder f : Arrays.asList(root, f1, f2, sf))
+			assertEquals(f.isChecked(), checkState.isChecked(f.getPath()));
+		assertFalse(checkState.isChecked(f1.getPath().createSubPath("Missing")));
+	}
+	
+	@Test
+	public void testClearResetsFolderIds() {
+		FileIndex index = new FileIndex(null, new File("Root"));
+		FileFolder root = index.getRootFolder();
+		new FileFolder(root, "Folder", null);
+		index.getTreeCheckState();
+		
+		index.clear();
+		FileFolder folder = new FileFolder(root, "Folder", null);
+		assertEquals(0, index.getFolderId(root));
+		assertEquals(1, index.getFolderId(folder));
 	}
 
 }
@@ -13,7 +13,9 @@ package net.sourceforge.docfetcher.model;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sourceforge.docfetcher.model.index.IndexingConfig;
 import net.sourceforge.docfetcher.model.index.IndexingReporter;
@@ -24,9 +26,14 @@ import net.sourceforge.docfetcher.util.annotations.NotNull;
 import net.sourceforge.docfetcher.util.annotations.Nullable;
 import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
 
 @VisibleForPackageGroup
 public abstract class TreeIndex <
@@ -54,6 +61,9 @@ public abstract class TreeIndex <
 	@Nullable private transient RAMDirectory ramIndexDir;
 	@Nullable private transient File indexParentDir;
 	
+	// The next folder ID to be assigned, see getFolderId(Folder)
+	private AtomicInteger nextFolderId = new AtomicInteger();
+	
 	// if indexDir is null, all content is written to a RAM index, which
 	// can be retrieved via getLuceneDir
 	protected TreeIndex(@Nullable File indexParentDir,
@@ -212,6 +222,10 @@ public abstract class TreeIndex <
 		 */
 		rootFolder.setLastModified(null);
 		rootFolder.removeChildren();
+		
+		// The folder IDs start over, since the Lucene index is empty now
+		rootFolder.setFolderId(Folder.NO_FOLDER_ID);
+		nextFolderId.set(0);
 	}
 	
 	public final boolean isChecked() {
@@ -222,9 +236,59 @@ public abstract class TreeIndex <
 		rootFolder.setChecked(isChecked);
 	}
 	
+	/**
+	 * Returns the ID of the given folder within the tree of this index,
+	 * assigning a new ID to the folder if it doesn't have one yet. This is
+	 * called during indexing for the parent folder of each indexed document.
+	 *
+	 * @see TreeCheckState
+	 */
+	public final int getFolderId(@NotNull Folder<?, ?> folder) {
+		return folder.assignFolderId(nextFolderId);
+	}
+	
+	/**
+	 * Makes sure that the folder IDs assigned from now on differ from the
+	 * folder IDs stored in the Lucene index. This is needed if the tree was
+	 * restored from a checkpoint, since the Lucene index may then contain
+	 * documents written after the checkpoint, with folder IDs that the
+	 * restored tree would otherwise assign again.
+	 */
+	public final void reserveLuceneFolderIds() throws IOException {
+		Directory luceneDir = getLuceneDir();
+		if (!DirectoryReader.indexExists(luceneDir))
+			return;
+		String field = Fields.FOLDER_ID.key();
+		int maxFolderId = Folder.NO_FOLDER_ID;
+		DirectoryReader reader = DirectoryReader.open(luceneDir);
+		try {
+			for (LeafReaderContext context : reader.leaves()) {
+				LeafReader leafReader = context.reader();
+				NumericDocValues folderIds = leafReader.getNumericDocValues(field);
+				if (folderIds == null)
+					continue;
+				Bits docsWithField = leafReader.getDocsWithField(field);
+				for (int doc = 0; doc < leafReader.maxDoc(); doc++)
+					if (docsWithField.get(doc))
+						maxFolderId = Math.max(maxFolderId, (int) folderIds.get(doc));
+			}
+		}
+		finally {
+			reader.close();
+		}
+		while (true) {
+			int next = nextFolderId.get();
+			if (next > maxFolderId
+					|| nextFolderId.compareAndSet(next, maxFolderId + 1))
+				return;
+		}
+	}
+	
 	@NotNull
 	public final TreeCheckState getTreeCheckState() {
-		return rootFolder.getTreeCheckState();
+		TreeCheckState state = new TreeCheckState();
+		state.add(this, rootFolder, nextFolderId);
+		return state;
 	}
 	
 	public final boolean isIndex() {
@@ -245,4 +309,13 @@ public abstract class TreeIndex <
 		return rootFolder.hasErrorsDeep();
 	}
 	
+	private void readObject(@NotNull ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		
+		// Indexes saved by earlier versions have no folder IDs
+		if (nextFolderId == null)
+			nextFolderId = new AtomicInteger();
+	}
+	
 }
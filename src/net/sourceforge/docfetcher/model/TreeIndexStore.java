@@ -0,0 +1,905 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.docfetcher.model.index.IndexingError;
+import net.sourceforge.docfetcher.model.index.IndexingError.ErrorType;
+import net.sourceforge.docfetcher.model.index.file.FileIndex;
+import net.sourceforge.docfetcher.model.index.outlook.OutlookIndex;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+
+/**
+ * Reads and writes the files in which the {@link IndexRegistry} stores the
+ * tree structure of each index. This replaces the former tree-index.ser files,
+ * which contained the entire index serialized with an ObjectOutputStream.
+ * <p>
+ * The folder and document tree is written in a compact binary format, with
+ * one record per folder in depth-first order. Both writing and reading are
+ * done iteratively, so they can't overflow the stack on deep folder
+ * hierarchies. The rest of the index (configuration, root path, etc.) is small
+ * and is still stored with Java serialization, but with all references to
+ * folders replaced by their record numbers.
+ * <p>
+ * The records are grouped into segments, and whether a segment ends after a
+ * folder only depends on that folder's name, so a change in one part of the
+ * tree leaves the segments covering the other parts byte-for-byte identical.
+ * On each save, only the segments that aren't already in the file are
+ * appended, followed by a new segment table. Finally the table offset in the
+ * file header is overwritten, so if saving is interrupted, the file still
+ * describes the previous version of the index. When the file has accumulated
+ * more stale data than live data, it is compacted by rewriting it.
+ *
+ * @author Tran Nam Quang
+ */
+@VisibleForPackageGroup
+public final class TreeIndexStore {
+
+	/**
+	 * Creates and inspects the tree nodes of a particular index type during
+	 * writing and reading.
+	 */
+	public interface NodeCodec<D extends Document<D, F>, F extends Folder<D, F>> {
+		/** Creates a root folder, or a folder attached to a document. */
+		@NotNull
+		public F createRootFolder(@NotNull Path path);
+
+		/**
+		 * Creates a folder via {@link Folder#Folder(String, Long)}, which will
+		 * be attached to its parent by the caller.
+		 */
+		@NotNull
+		public F createSubFolder(@NotNull String name, @Nullable Long lastModified);
+
+		@NotNull
+		public D createDocument(@NotNull F parent,
+								@NotNull String name,
+								@Nullable String displayName,
+								long lastModified);
+
+		/**
+		 * Returns the folder attached to the given document, or null. For
+		 * example, the folder of an HTML pair.
+		 */
+		@Nullable
+		public F getAttachedFolder(@NotNull D document);
+
+		/**
+		 * Attaches the given folder to the given document. This is only called
+		 * when reading a folder that {@link #getAttachedFolder(Document)}
+		 * returned on writing, so codecs whose documents never have attached
+		 * folders may ignore it.
+		 */
+		public void setAttachedFolder(@NotNull D document, @NotNull F folder);
+
+		/** Writes any data specific to the given folder's type. */
+		public void writeFolderData(@NotNull F folder, @NotNull DataOutput out)
+				throws IOException;
+
+		public void readFolderData(@NotNull F folder, @NotNull DataInput in)
+				throws IOException;
+	}
+
+	public static final String FILENAME = "tree-index.dat";
+
+	/**
+	 * The name of the file holding the tree of an index that is being built,
+	 * as of the last checkpoint of the build. This is a separate file so that
+	 * the registry doesn't pick up the unfinished index.
+	 */
+	public static final String CHECKPOINT_FILENAME = "tree-index-checkpoint.dat";
+
+	private static final int MAGIC = 0x44465449; // "DFTI"
+	private static final int VERSION = 2; // version 1 had no folder IDs
+	private static final int HEADER_SIZE = 16; // magic, version, table offset
+
+	private static final int MIN_SEGMENT_SIZE = 16 * 1024;
+	private static final int MAX_SEGMENT_SIZE = 1024 * 1024;
+	private static final int SEGMENT_CUT_MASK = 0x1F;
+	private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+	private static final byte RECORD_END = 0;
+	private static final byte RECORD_ROOT = 1;
+	private static final byte RECORD_SUBFOLDER = 2;
+	private static final byte RECORD_ATTACHED = 3;
+
+	private static final int FLAG_CHECKED = 1;
+	private static final int FLAG_LAST_MODIFIED = 2;
+	private static final int FLAG_ERRORS = 4;
+	private static final int FLAG_DISPLAY_NAME = 8;
+	private static final int FLAG_FOLDER_ID = 16;
+
+	private TreeIndexStore() {
+	}
+
+	private static final class Segment {
+		final long offset;
+		final int length;
+		@NotNull final byte[] digest;
+
+		Segment(long offset, int length, @NotNull byte[] digest) {
+			this.offset = offset;
+			this.length = length;
+			this.digest = digest;
+		}
+	}
+
+	private static final class Table {
+		final int version;
+		@NotNull final DocumentType type;
+		@NotNull final List<Segment> segments;
+		final long shellOffset;
+		final int shellLength;
+
+		Table(	int version,
+				@NotNull DocumentType type,
+				@NotNull List<Segment> segments,
+				long shellOffset,
+				int shellLength) {
+			this.version = version;
+			this.type = type;
+			this.segments = segments;
+			this.shellOffset = shellOffset;
+			this.shellLength = shellLength;
+		}
+
+		long getLiveSize() {
+			long size = HEADER_SIZE + shellLength;
+			for (Segment segment : segments)
+				size += segment.length;
+			return size;
+		}
+	}
+
+	@NotNull
+	private static NodeCodec<?, ?> getCodec(@NotNull DocumentType type) {
+		switch (type) {
+		case FILE: return FileIndex.nodeCodec;
+		case OUTLOOK: return OutlookIndex.nodeCodec;
+		default: throw new IllegalStateException();
+		}
+	}
+
+	// ----------------------------------------------------------------------
+	// Writing
+
+	/**
+	 * Writes the given index to the given file. If the file already contains
+	 * an earlier version of the index, only the changed parts of the tree are
+	 * appended to it.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static void write(@NotNull File file, @NotNull LuceneIndex index)
+			throws IOException {
+		Util.checkNotNull(file, index);
+		long fileSize;
+		long liveSize;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileLock lock = raf.getChannel().lock();
+			try {
+				Table oldTable = readTableQuietly(raf);
+				if (oldTable != null && oldTable.version != VERSION)
+					oldTable = null; // rewrite files of earlier versions
+				if (oldTable == null) {
+					raf.setLength(0);
+					raf.writeInt(MAGIC);
+					raf.writeInt(VERSION);
+					raf.writeLong(0);
+				}
+				Table newTable = append(raf, (TreeIndex) index, oldTable);
+				long tableOffset = raf.getFilePointer();
+				writeTable(raf, newTable);
+				raf.getChannel().force(false);
+				
+				// The new version of the index becomes valid here
+				raf.seek(8);
+				raf.writeLong(tableOffset);
+				raf.getChannel().force(false);
+				fileSize = raf.length();
+				liveSize = newTable.getLiveSize();
+			}
+			finally {
+				lock.release();
+			}
+		}
+		finally {
+			Closeables.close(raf, true);
+		}
+		if (fileSize > MIN_COMPACTION_SIZE && fileSize > 2 * liveSize)
+			compact(file);
+	}
+
+	@NotNull
+	@SuppressWarnings("unchecked")
+	private static <D extends Document<D, F>, F extends Folder<D, F>> Table append(
+			@NotNull final RandomAccessFile raf,
+			@NotNull TreeIndex<D, F> index,
+			@Nullable Table oldTable) throws IOException {
+		final Map<ByteBuffer, Segment> oldSegments = Maps.newHashMap();
+		if (oldTable != null && oldTable.type == index.getDocumentType())
+			for (Segment segment : oldTable.segments)
+				oldSegments.put(ByteBuffer.wrap(segment.digest), segment);
+
+		final MessageDigest md = createDigest();
+		final List<Segment> segments = new ArrayList<Segment>();
+		raf.seek(raf.length());
+
+		TreeEncoder<D, F> encoder = new TreeEncoder<D, F>(
+			(NodeCodec<D, F>) getCodec(index.getDocumentType())) {
+			protected void writeSegment(byte[] bytes, int length)
+					throws IOException {
+				md.update(bytes, 0, length);
+				byte[] digest = md.digest();
+				Segment segment = oldSegments.get(ByteBuffer.wrap(digest));
+				if (segment == null || segment.length != length) {
+					segment = new Segment(raf.getFilePointer(), length, digest);
+					raf.write(bytes, 0, length);
+				}
+				segments.add(segment);
+			}
+		};
+		encoder.encode(index.getRootFolder());
+
+		byte[] shell = encodeShell(index, encoder.folderIds);
+		long shellOffset = raf.getFilePointer();
+		raf.write(shell);
+
+		return new Table(
+			VERSION, index.getDocumentType(), segments, shellOffset,
+			shell.length);
+	}
+
+	/**
+	 * Rewrites the given file without the data that isn't referenced by the
+	 * segment table anymore. If the file can't be replaced, for example
+	 * because another process has it open, it is left as it is.
+	 */
+	private static void compact(@NotNull File file) {
+		File tempFile = new File(file.getPath() + ".tmp");
+		try {
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			RandomAccessFile out = null;
+			try {
+				FileLock lock = in.getChannel().lock(0, Long.MAX_VALUE, true);
+				try {
+					Table table = readTable(in);
+					out = new RandomAccessFile(tempFile, "rw");
+					out.setLength(0);
+					out.writeInt(MAGIC);
+					out.writeInt(table.version);
+					out.writeLong(0);
+					List<Segment> segments = new ArrayList<Segment>(table.segments.size());
+					for (Segment segment : table.segments) {
+						long offset = out.getFilePointer();
+						copy(in, segment.offset, segment.length, out);
+						segments.add(new Segment(offset, segment.length, segment.digest));
+					}
+					long shellOffset = out.getFilePointer();
+					copy(in, table.shellOffset, table.shellLength, out);
+					long tableOffset = out.getFilePointer();
+					writeTable(out, new Table(
+						table.version, table.type, segments, shellOffset,
+						table.shellLength));
+					out.seek(8);
+					out.writeLong(tableOffset);
+					out.getChannel().force(false);
+				}
+				finally {
+					lock.release();
+				}
+			}
+			finally {
+				Closeables.close(out, true);
+				Closeables.close(in, true);
+			}
+			Files.move(
+				tempFile.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e) {
+			Util.printErr(e);
+			tempFile.delete();
+		}
+	}
+
+	private static void copy(	@NotNull RandomAccessFile in,
+								long offset,
+								int length,
+								@NotNull RandomAccessFile out)
+			throws IOException {
+		byte[] buffer = new byte[Math.min(length, 64 * 1024)];
+		in.seek(offset);
+		while (length > 0) {
+			int n = Math.min(length, buffer.length);
+			in.readFully(buffer, 0, n);
+			out.write(buffer, 0, n);
+			length -= n;
+		}
+	}
+
+	private static void writeTable(	@NotNull RandomAccessFile raf,
+									@NotNull Table table) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(getTableSize(table));
+		DataOutputStream out = new DataOutputStream(bout);
+		out.writeByte(table.type.ordinal());
+		out.writeInt(table.segments.size());
+		for (Segment segment : table.segments) {
+			out.writeLong(segment.offset);
+			out.writeInt(segment.length);
+			out.write(segment.digest);
+		}
+		out.writeLong(table.shellOffset);
+		out.writeInt(table.shellLength);
+		out.flush();
+		raf.write(bout.toByteArray());
+	}
+
+	private static int getTableSize(@NotNull Table table) {
+		int digestLength = createDigest().getDigestLength();
+		return 1 + 4 + table.segments.size() * (8 + 4 + digestLength) + 8 + 4;
+	}
+
+	@NotNull
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // MD5 is always available
+		}
+	}
+
+	/**
+	 * Writes the records of a folder tree, and cuts them into segments.
+	 */
+	private static abstract class TreeEncoder<D extends Document<D, F>, F extends Folder<D, F>> {
+		private final NodeCodec<D, F> codec;
+		private final SegmentBuffer bout = new SegmentBuffer();
+		private final DataOutputStream out = new DataOutputStream(bout);
+		final Map<Folder<?, ?>, Integer> folderIds = new IdentityHashMap<Folder<?, ?>, Integer>();
+
+		TreeEncoder(@NotNull NodeCodec<D, F> codec) {
+			this.codec = codec;
+		}
+
+		private final class Entry {
+			final F folder;
+			final int depth;
+			final byte recordType;
+			@Nullable final String documentName;
+
+			Entry(F folder, int depth, byte recordType, @Nullable String documentName) {
+				this.folder = folder;
+				this.depth = depth;
+				this.recordType = recordType;
+				this.documentName = documentName;
+			}
+		}
+
+		public final void encode(@NotNull F rootFolder) throws IOException {
+			/*
+			 * The records are written in depth-first order, so that the reader
+			 * can find the parent of each folder by its depth alone.
+			 */
+			Deque<Entry> stack = new ArrayDeque<Entry>();
+			stack.push(new Entry(rootFolder, 0, RECORD_ROOT, null));
+			while (!stack.isEmpty()) {
+				Entry entry = stack.pop();
+				F folder = entry.folder;
+				folderIds.put(folder, folderIds.size());
+
+				out.writeByte(entry.recordType);
+				writeVInt(out, entry.depth);
+				if (entry.recordType == RECORD_SUBFOLDER) {
+					writeString(out, folder.getName());
+				}
+				else {
+					writeString(out, folder.getPath().getPath());
+					if (entry.recordType == RECORD_ATTACHED)
+						writeString(out, entry.documentName);
+				}
+
+				Long lastModified = folder.getLastModified();
+				List<IndexingError> errors = folder.getErrors();
+				int folderId = folder.getFolderId();
+				int flags = 0;
+				if (folder.isChecked()) flags |= FLAG_CHECKED;
+				if (lastModified != null) flags |= FLAG_LAST_MODIFIED;
+				if (!errors.isEmpty()) flags |= FLAG_ERRORS;
+				if (folderId != Folder.NO_FOLDER_ID) flags |= FLAG_FOLDER_ID;
+				out.writeByte(flags);
+				if (lastModified != null)
+					out.writeLong(lastModified);
+				if (folderId != Folder.NO_FOLDER_ID)
+					writeVInt(out, folderId);
+				if (!errors.isEmpty())
+					writeErrors(out, errors);
+				codec.writeFolderData(folder, out);
+
+				List<D> documents = folder.getDocuments();
+				writeVInt(out, documents.size());
+				for (D document : documents) {
+					String name = document.getName();
+					String displayName = document.getDisplayName();
+					errors = document.getErrors();
+					flags = 0;
+					if (!displayName.equals(name)) flags |= FLAG_DISPLAY_NAME;
+					if (!errors.isEmpty()) flags |= FLAG_ERRORS;
+					writeString(out, name);
+					out.writeByte(flags);
+					out.writeLong(document.getLastModified());
+					if (!displayName.equals(name))
+						writeString(out, displayName);
+					if (!errors.isEmpty())
+						writeErrors(out, errors);
+
+					F attachedFolder = codec.getAttachedFolder(document);
+					if (attachedFolder != null)
+						stack.push(new Entry(
+							attachedFolder, entry.depth + 1, RECORD_ATTACHED,
+							name));
+				}
+				for (F subFolder : folder.getSubFolders())
+					stack.push(new Entry(
+						subFolder, entry.depth + 1, RECORD_SUBFOLDER, null));
+
+				/*
+				 * Whether the segment is cut here depends on the folder name
+				 * rather than the position in the tree, so that adding or
+				 * removing folders elsewhere doesn't shift the boundaries.
+				 */
+				int size = bout.size();
+				if (size >= MAX_SEGMENT_SIZE || size >= MIN_SEGMENT_SIZE
+						&& (folder.getName().hashCode() & SEGMENT_CUT_MASK) == 0)
+					flush();
+			}
+			out.writeByte(RECORD_END);
+			flush();
+		}
+
+		private void flush() throws IOException {
+			out.flush();
+			if (bout.size() == 0)
+				return;
+			writeSegment(bout.getBuffer(), bout.size());
+			bout.reset();
+		}
+
+		protected abstract void writeSegment(@NotNull byte[] bytes, int length)
+				throws IOException;
+	}
+
+	private static final class SegmentBuffer extends ByteArrayOutputStream {
+		SegmentBuffer() {
+			super(MIN_SEGMENT_SIZE * 2);
+		}
+
+		// Returns the internal buffer without copying it
+		@NotNull
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+
+	private static void writeErrors(@NotNull DataOutput out,
+									@NotNull List<IndexingError> errors)
+			throws IOException {
+		writeVInt(out, errors.size());
+		for (IndexingError error : errors) {
+			writeString(out, error.getErrorType().name());
+			byte[] throwable = serializeThrowable(error.getThrowable());
+			if (throwable == null) {
+				writeVInt(out, 0);
+			}
+			else {
+				writeVInt(out, throwable.length + 1);
+				out.write(throwable);
+			}
+		}
+	}
+
+	@Nullable
+	private static byte[] serializeThrowable(@Nullable Throwable throwable) {
+		if (throwable == null)
+			return null;
+		try {
+			ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bout);
+			out.writeObject(throwable);
+			out.close();
+			return bout.toByteArray();
+		}
+		catch (IOException e) {
+			return null; // Not serializable; only the error type is kept
+		}
+	}
+
+	/**
+	 * A placeholder for a folder referenced by the serialized part of an
+	 * index.
+	 */
+	private static final class FolderRef implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final int id;
+
+		FolderRef(int id) {
+			this.id = id;
+		}
+	}
+
+	@NotNull
+	private static byte[] encodeShell(	@NotNull TreeIndex<?, ?> index,
+										@NotNull final Map<Folder<?, ?>, Integer> folderIds)
+			throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bout) {
+			{
+				enableReplaceObject(true);
+			}
+			protected Object replaceObject(Object obj) throws IOException {
+				if (!(obj instanceof TreeNode))
+					return obj;
+				Integer id = folderIds.get(obj);
+				if (id == null)
+					throw new NotSerializableException(obj.getClass().getName());
+				return new FolderRef(id);
+			}
+		};
+		out.writeObject(index);
+		out.close();
+		return bout.toByteArray();
+	}
+
+	// ----------------------------------------------------------------------
+	// Reading
+
+	/**
+	 * Reads the index stored in the given file.
+	 */
+	@NotNull
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static LuceneIndex read(@NotNull File file) throws IOException {
+		Util.checkNotNull(file);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileLock lock = raf.getChannel().lock(0, Long.MAX_VALUE, true);
+			try {
+				Table table = readTable(raf);
+
+				/*
+				 * Without the BufferedInputStream, there can be noticeable
+				 * performance problems if the index resides on a network drive.
+				 */
+				DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new SegmentInputStream(raf, table.segments), 64 * 1024));
+				List<Folder<?, ?>> folders = decodeTree(
+					(NodeCodec) getCodec(table.type), in);
+
+				byte[] shell = new byte[table.shellLength];
+				raf.seek(table.shellOffset);
+				raf.readFully(shell);
+				return decodeShell(shell, folders);
+			}
+			finally {
+				lock.release();
+			}
+		}
+		finally {
+			Closeables.close(raf, true);
+		}
+	}
+
+	@NotNull
+	private static Table readTable(@NotNull RandomAccessFile raf)
+			throws IOException {
+		raf.seek(0);
+		if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC)
+			throw new IOException("Not a tree index file.");
+		int version = raf.readInt();
+		if (version < 1 || version > VERSION)
+			throw new IOException("Unsupported tree index version: " + version);
+		long tableOffset = raf.readLong();
+		if (tableOffset < HEADER_SIZE || tableOffset >= raf.length())
+			throw new IOException("Incomplete tree index file.");
+
+		raf.seek(tableOffset);
+		int typeOrdinal = raf.readUnsignedByte();
+		DocumentType[] types = DocumentType.values();
+		if (typeOrdinal >= types.length)
+			throw new IOException("Unknown index type: " + typeOrdinal);
+		int segmentCount = raf.readInt();
+		int digestLength = createDigest().getDigestLength();
+		List<Segment> segments = new ArrayList<Segment>(segmentCount);
+		for (int i = 0; i < segmentCount; i++) {
+			long offset = raf.readLong();
+			int length = raf.readInt();
+			byte[] digest = new byte[digestLength];
+			raf.readFully(digest);
+			segments.add(new Segment(offset, length, digest));
+		}
+		long shellOffset = raf.readLong();
+		int shellLength = raf.readInt();
+		return new Table(
+			version, types[typeOrdinal], segments, shellOffset, shellLength);
+	}
+
+	@Nullable
+	private static Table readTableQuietly(@NotNull RandomAccessFile raf) {
+		try {
+			return raf.length() == 0 ? null : readTable(raf);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the segments of a file one after another, as if they were stored
+	 * contiguously.
+	 */
+	private static final class SegmentInputStream extends InputStream {
+		private final RandomAccessFile raf;
+		private final List<Segment> segments;
+		private int segmentIndex = -1;
+		private int remaining = 0;
+
+		SegmentInputStream(	@NotNull RandomAccessFile raf,
+							@NotNull List<Segment> segments) {
+			this.raf = raf;
+			this.segments = segments;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			while (remaining == 0) {
+				if (segmentIndex + 1 >= segments.size())
+					return -1;
+				Segment segment = segments.get(++segmentIndex);
+				raf.seek(segment.offset);
+				remaining = segment.length;
+			}
+			int n = raf.read(b, off, Math.min(len, remaining));
+			if (n == -1)
+				throw new EOFException();
+			remaining -= n;
+			return n;
+		}
+	}
+
+	@NotNull
+	@SuppressWarnings("unchecked")
+	private static <D extends Document<D, F>, F extends Folder<D, F>> List<Folder<?, ?>> decodeTree(
+			@NotNull NodeCodec<D, F> codec, @NotNull DataInputStream in)
+			throws IOException {
+		List<Folder<?, ?>> folders = new ArrayList<Folder<?, ?>>();
+		List<F> stack = new ArrayList<F>(); // the current folder's ancestors and itself
+		while (true) {
+			byte recordType = in.readByte();
+			if (recordType == RECORD_END)
+				break;
+			int depth = readVInt(in);
+			if (depth > stack.size() || (depth == 0) != (recordType == RECORD_ROOT))
+				throw new IOException("Corrupted tree index file.");
+			while (stack.size() > depth)
+				stack.remove(stack.size() - 1);
+			F parent = depth == 0 ? null : stack.get(depth - 1);
+
+			F folder;
+			switch (recordType) {
+			case RECORD_ROOT:
+				folder = codec.createRootFolder(new Path(readString(in)));
+				break;
+			case RECORD_SUBFOLDER:
+				folder = codec.createSubFolder(readString(in), null);
+				parent.attachLoadedSubFolder(folder);
+				break;
+			case RECORD_ATTACHED:
+				folder = codec.createRootFolder(new Path(readString(in)));
+				D document = parent.getDocument(readString(in));
+				if (document == null)
+					throw new IOException("Corrupted tree index file.");
+				codec.setAttachedFolder(document, folder);
+				break;
+			default:
+				throw new IOException("Corrupted tree index file.");
+			}
+
+			int flags = in.readUnsignedByte();
+			folder.setChecked((flags & FLAG_CHECKED) != 0);
+			if ((flags & FLAG_LAST_MODIFIED) != 0)
+				folder.setLastModified(in.readLong());
+			if ((flags & FLAG_FOLDER_ID) != 0)
+				folder.setFolderId(readVInt(in));
+			if ((flags & FLAG_ERRORS) != 0)
+				folder.setErrors(readErrors(in, folder));
+			codec.readFolderData(folder, in);
+
+			int documentCount = readVInt(in);
+			for (int i = 0; i < documentCount; i++) {
+				String name = readString(in);
+				int docFlags = in.readUnsignedByte();
+				long lastModified = in.readLong();
+				String displayName = (docFlags & FLAG_DISPLAY_NAME) != 0
+					? readString(in)
+					: null;
+				D document = codec.createDocument(
+					folder, name, displayName, lastModified);
+				if ((docFlags & FLAG_ERRORS) != 0)
+					document.setErrors(readErrors(in, document));
+			}
+
+			folders.add(folder);
+			stack.add(folder);
+		}
+		if (folders.isEmpty())
+			throw new IOException("Corrupted tree index file.");
+		return folders;
+	}
+
+	@NotNull
+	private static List<IndexingError> readErrors(	@NotNull DataInput in,
+													@NotNull TreeNode treeNode)
+			throws IOException {
+		int count = readVInt(in);
+		List<IndexingError> errors = new ArrayList<IndexingError>(count);
+		for (int i = 0; i < count; i++) {
+			String typeName = readString(in);
+			int length = readVInt(in);
+			Throwable throwable = null;
+			if (length > 0) {
+				byte[] bytes = new byte[length - 1];
+				in.readFully(bytes);
+				throwable = deserializeThrowable(bytes);
+			}
+			try {
+				ErrorType type = ErrorType.valueOf(typeName);
+				errors.add(new IndexingError(type, treeNode, throwable));
+			}
+			catch (IllegalArgumentException e) {
+				// Error type was removed in the meantime; drop the error
+			}
+		}
+		return errors.isEmpty() ? Collections.<IndexingError>emptyList() : errors;
+	}
+
+	@Nullable
+	private static Throwable deserializeThrowable(@NotNull byte[] bytes) {
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			return (Throwable) in.readObject();
+		}
+		catch (Exception e) {
+			return null;
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+
+	@NotNull
+	private static LuceneIndex decodeShell(	@NotNull byte[] shell,
+											@NotNull final List<Folder<?, ?>> folders)
+			throws IOException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(shell)) {
+			{
+				enableResolveObject(true);
+			}
+			protected Object resolveObject(Object obj) throws IOException {
+				if (!(obj instanceof FolderRef))
+					return obj;
+				int id = ((FolderRef) obj).id;
+				if (id < 0 || id >= folders.size())
+					throw new InvalidFolderRefException();
+				return folders.get(id);
+			}
+		};
+		try {
+			return (LuceneIndex) in.readObject();
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+
+	private static final class InvalidFolderRefException extends ObjectStreamException {
+		private static final long serialVersionUID = 1L;
+
+		InvalidFolderRefException() {
+			super("Corrupted tree index file.");
+		}
+	}
+
+	// ----------------------------------------------------------------------
+	// Primitives
+
+	private static void writeVInt(@NotNull DataOutput out, int value)
+			throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVInt(@NotNull DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Corrupted tree index file.");
+	}
+
+	// Unlike DataOutput.writeUTF, this isn't limited to 64 KB
+	private static void writeString(@NotNull DataOutput out, @NotNull String str)
+			throws IOException {
+		byte[] bytes = str.getBytes(Charsets.UTF_8);
+		writeVInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	@NotNull
+	private static String readString(@NotNull DataInput in) throws IOException {
+		byte[] bytes = new byte[readVInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, Charsets.UTF_8);
+	}
+
+}
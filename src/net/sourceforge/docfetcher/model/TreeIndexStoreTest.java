@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.sourceforge.docfetcher.model.index.IndexingError;
+import net.sourceforge.docfetcher.model.index.IndexingError.ErrorType;
+import net.sourceforge.docfetcher.model.index.file.FileDocument;
+import net.sourceforge.docfetcher.model.index.file.FileFolder;
+import net.sourceforge.docfetcher.model.index.file.FileIndex;
+import net.sourceforge.docfetcher.util.Util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class TreeIndexStoreTest {
+
+	private File tempDir;
+	private File storeFile;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Util.createTempDir();
+		storeFile = new File(tempDir, TreeIndexStore.FILENAME);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Util.deleteRecursively(tempDir);
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		FileIndex index = new FileIndex(null, tempDir);
+		FileFolder root = index.getRootFolder();
+		FileFolder sub = new FileFolder(root, "sub", null);
+		sub.setChecked(false);
+		FileFolder archive = new FileFolder(sub, "archive.zip", 42L);
+		new FileDocument(archive, "inner.txt", 3);
+
+		FileDocument html = new FileDocument(sub, "page.html", 1);
+		Path htmlPath = sub.getPath().createSubPath("page_files");
+		FileFolder htmlFolder = new FileFolder(htmlPath, null);
+		new FileDocument(htmlFolder, "image.txt", 2);
+		html.setHtmlFolder(htmlFolder);
+
+		FileDocument failed = new FileDocument(root, "failed.pdf", 4);
+		failed.setError(new IndexingError(
+			ErrorType.PARSING, failed, new IOException("broken")));
+
+		TreeIndexStore.write(storeFile, index);
+		FileIndex loaded = (FileIndex) TreeIndexStore.read(storeFile);
+
+		FileFolder loadedRoot = loaded.getRootFolder();
+		assertEquals(root.getPath(), loadedRoot.getPath());
+		assertEquals(index.getCreated(), loaded.getCreated());
+		assertTrue(loadedRoot.isChecked());
+
+		FileFolder loadedSub = loadedRoot.getSubFolder("sub");
+		assertNotNull(loadedSub);
+		assertFalse(loadedSub.isChecked());
+		assertEquals(sub.getPath(), loadedSub.getPath());
+
+		FileFolder loadedArchive = loadedSub.getSubFolder("archive.zip");
+		assertEquals(Long.valueOf(42L), loadedArchive.getLastModified());
+		assertTrue(loadedArchive.isArchive());
+		assertEquals(3, loadedArchive.getDocument("inner.txt").getLastModified());
+
+		FileFolder loadedHtmlFolder = loadedSub.getDocument("page.html").getHtmlFolder();
+		assertNotNull(loadedHtmlFolder);
+		assertNull(loadedHtmlFolder.getParent());
+		assertEquals(htmlPath, loadedHtmlFolder.getPath());
+		assertEquals(2, loadedHtmlFolder.getDocument("image.txt").getLastModified());
+
+		FileDocument loadedFailed = loadedRoot.getDocument("failed.pdf");
+		assertEquals(1, loadedFailed.getErrors().size());
+		IndexingError error = loadedFailed.getErrors().get(0);
+		assertEquals(ErrorType.PARSING, error.getErrorType());
+		assertTrue(error.getTreeNode() == loadedFailed);
+		assertEquals("broken", error.getThrowable().getMessage());
+	}
+
+	@Test
+	public void testFolderIds() throws Exception {
+		FileIndex index = new FileIndex(null, tempDir);
+		FileFolder root = index.getRootFolder();
+		FileFolder sub = new FileFolder(root, "sub", null);
+		FileFolder other = new FileFolder(root, "other", null);
+		int subId = index.getFolderId(sub);
+		assertEquals(Folder.NO_FOLDER_ID, other.getFolderId());
+
+		TreeIndexStore.write(storeFile, index);
+		FileIndex loaded = (FileIndex) TreeIndexStore.read(storeFile);
+
+		FileFolder loadedRoot = loaded.getRootFolder();
+		assertEquals(subId, loadedRoot.getSubFolder("sub").getFolderId());
+		assertEquals(
+			Folder.NO_FOLDER_ID, loadedRoot.getSubFolder("other").getFolderId());
+
+		// IDs assigned after loading must not collide with the stored ones
+		int otherId = loaded.getFolderId(loadedRoot.getSubFolder("other"));
+		assertTrue(otherId > subId);
+	}
+
+	@Test
+	public void testIncrementalWrite() throws Exception {
+		FileIndex index = new FileIndex(null, tempDir);
+		FileFolder root = index.getRootFolder();
+		FileFolder lastFolder = null;
+		FileDocument lastDoc = null;
+		for (int i = 0; i < 2000; i++) {
+			lastFolder = new FileFolder(root, "folder" + i, null);
+			for (int j = 0; j < 5; j++)
+				lastDoc = new FileDocument(lastFolder, "document-with-a-long-name-" + j + ".txt", j);
+		}
+
+		TreeIndexStore.write(storeFile, index);
+		long initialSize = storeFile.length();
+
+		lastDoc.setLastModified(1234);
+		TreeIndexStore.write(storeFile, index);
+		long growth = storeFile.length() - initialSize;
+		assertTrue(growth < initialSize / 4);
+
+		FileIndex loaded = (FileIndex) TreeIndexStore.read(storeFile);
+		FileFolder loadedFolder = loaded.getRootFolder().getSubFolder(
+			lastFolder.getName());
+		assertEquals(1234, loadedFolder.getDocument(lastDoc.getName()).getLastModified());
+		assertEquals(2000, loaded.getRootFolder().getSubFolderCount());
+	}
+
+	@Test
+	public void testDeepHierarchy() throws Exception {
+		FileIndex index = new FileIndex(null, tempDir);
+		FileFolder folder = index.getRootFolder();
+		int depth = 3000;
+		for (int i = 0; i < depth; i++)
+			folder = new FileFolder(folder, "f", null);
+		new FileDocument(folder, "leaf.txt", 1);
+
+		TreeIndexStore.write(storeFile, index);
+		FileIndex loaded = (FileIndex) TreeIndexStore.read(storeFile);
+
+		FileFolder loadedFolder = loaded.getRootFolder();
+		for (int i = 0; i < depth; i++)
+			loadedFolder = loadedFolder.getSubFolder("f");
+		assertNotNull(loadedFolder.getDocument("leaf.txt"));
+	}
+
+}
@@ -13,19 +13,28 @@ package net.sourceforge.docfetcher.model.index;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.Reader;
 
+import net.sourceforge.docfetcher.enums.ProgramConf;
 import net.sourceforge.docfetcher.model.Fields;
 import net.sourceforge.docfetcher.model.IndexRegistry;
+import net.sourceforge.docfetcher.model.search.ReversedTermsAnalyzer;
 import net.sourceforge.docfetcher.util.CheckedOutOfMemoryError;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
 import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.store.Directory;
 
+import com.google.common.io.CharStreams;
 import com.google.common.io.Closeables;
 
 /**
@@ -39,17 +48,74 @@ public final class IndexWriterAdapter implements Closeable {
 	public static final Term idTerm = new Term(Fields.UID.key());
 	
 	@NotNull private IndexWriter writer;
+	private final boolean indexReversedTerms;
+	private final boolean bulkLoad;
 
 	public IndexWriterAdapter(@NotNull Directory luceneDir) throws IOException {
-		IndexWriterConfig config
-				= new IndexWriterConfig(IndexRegistry.getAnalyzer());
-		writer = new IndexWriter(luceneDir, config);
+		this(luceneDir, false);
+	}
+
+	/**
+	 * If <tt>indexReversedTerms</tt> is true, the words of the content field
+	 * are additionally indexed in reversed form, in a separate field. Content
+	 * fields that are given as readers are then read into memory, since they
+	 * can only be read once.
+	 * 
+	 * @see ReversedTermsAnalyzer
+	 */
+	public IndexWriterAdapter(	@NotNull Directory luceneDir,
+								boolean indexReversedTerms) throws IOException {
+		this(luceneDir, indexReversedTerms, false);
+	}
+
+	/**
+	 * If <tt>bulkLoad</tt> is true, the writer is tuned for adding a large
+	 * number of documents to an empty index, with the RAM buffer size, merge
+	 * policy and merge threads specified in the program configuration.
+	 */
+	public IndexWriterAdapter(	@NotNull Directory luceneDir,
+								boolean indexReversedTerms,
+								boolean bulkLoad) throws IOException {
+		this.indexReversedTerms = indexReversedTerms;
+		this.bulkLoad = bulkLoad;
+		writer = new IndexWriter(luceneDir, createConfig());
+	}
+
+	@NotNull
+	private IndexWriterConfig createConfig() {
+		IndexWriterConfig config = new IndexWriterConfig(indexReversedTerms
+			? IndexRegistry.getReversedTermsAnalyzer()
+			: IndexRegistry.getAnalyzer());
+		if (!bulkLoad)
+			return config;
+		
+		/*
+		 * A large RAM buffer results in fewer and larger initial segments, and
+		 * letting more segments accumulate per tier reduces the number of
+		 * times the same documents are merged over again while the index
+		 * grows. The merges run on background threads, so that adding
+		 * documents isn't blocked by them.
+		 */
+		config.setRAMBufferSizeMB(ProgramConf.Int.BulkLoadRAMBufferMB.get());
+		TieredMergePolicy mergePolicy = new TieredMergePolicy();
+		int segmentsPerTier = ProgramConf.Int.BulkLoadSegmentsPerTier.get();
+		mergePolicy.setSegmentsPerTier(segmentsPerTier);
+		mergePolicy.setMaxMergeAtOnce(segmentsPerTier);
+		config.setMergePolicy(mergePolicy);
+		ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+		int mergeThreads = ProgramConf.Int.BulkLoadMergeThreads.get();
+		if (mergeThreads > 0)
+			mergeScheduler.setMaxMergesAndThreads(mergeThreads + 5, mergeThreads);
+		config.setMergeScheduler(mergeScheduler);
+		return config;
 	}
 
 	// may throw OutOfMemoryError
 	public void add(@NotNull Document document) throws IOException,
 			CheckedOutOfMemoryError {
 		try {
+			if (indexReversedTerms)
+				document = addReversedContent(document);
 			writer.addDocument(document);
 		}
 		catch (OutOfMemoryError e) {
@@ -68,6 +134,8 @@ public final class IndexWriterAdapter implements Closeable {
 	public void update(@NotNull String uid, @NotNull Document document)
 			throws IOException, CheckedOutOfMemoryError {
 		try {
+			if (indexReversedTerms)
+				document = addReversedContent(document);
 			writer.updateDocument(new Term(idTerm.field(), uid), document);
 		}
 		catch (OutOfMemoryError e) {
@@ -82,6 +150,35 @@ public final class IndexWriterAdapter implements Closeable {
 		}
 	}
 	
+	/*
+	 * Returns a copy of the given document in which each content field is
+	 * followed by a copy in the field of reversed terms.
+	 */
+	@NotNull
+	private static Document addReversedContent(@NotNull Document document)
+			throws IOException {
+		Document newDocument = new Document();
+		for (IndexableField field : document) {
+			if (!field.name().equals(Fields.CONTENT.key())) {
+				newDocument.add(field);
+				continue;
+			}
+			String text = field.stringValue();
+			Reader reader = field.readerValue();
+			if (text == null && reader != null) {
+				text = CharStreams.toString(reader);
+				FieldType type = (FieldType) field.fieldType();
+				newDocument.add(new Field(field.name(), text, type));
+			}
+			else {
+				newDocument.add(field);
+			}
+			if (text != null)
+				newDocument.add(Fields.CONTENT_REV.create(text));
+		}
+		return newDocument;
+	}
+	
 	private void reopenWriterAndThrow(@NotNull Throwable t)
 			throws IOException, CheckedOutOfMemoryError {
 		/*
@@ -91,9 +188,7 @@ public final class IndexWriterAdapter implements Closeable {
 		 */
 		Directory indexDir = writer.getDirectory();
 		Closeables.closeQuietly(writer);
-		IndexWriterConfig config
-				= new IndexWriterConfig(IndexRegistry.getAnalyzer());
-		writer = new IndexWriter(indexDir, config);
+		writer = new IndexWriter(indexDir, createConfig());
 		throw new CheckedOutOfMemoryError(t);
 	}
 
@@ -101,6 +196,13 @@ public final class IndexWriterAdapter implements Closeable {
 		writer.deleteDocuments(new Term(idTerm.field(),uid));
 	}
 	
+	/**
+	 * Makes all changes so far durable, without closing the writer.
+	 */
+	public void commit() throws IOException {
+		writer.commit();
+	}
+	
 	public void close() throws IOException {
 		writer.close();
 	}
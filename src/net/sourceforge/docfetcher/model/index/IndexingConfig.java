@@ -86,6 +86,7 @@ public class IndexingConfig implements Serializable {
 	private boolean storeRelativePaths = false;
 	private boolean watchFolders = true;
 	private boolean skipTarArchives = false;
+	private boolean indexReversedTerms = false;
 	
 	public final boolean isDetectExecutableArchives() {
 		return detectExecutableArchives;
@@ -384,5 +385,19 @@ public class IndexingConfig implements Serializable {
 	public void setSkipTarArchives(boolean skipTarArchives) {
 		this.skipTarArchives = skipTarArchives;
 	}
+	
+	/**
+	 * Returns whether the words of the content are additionally indexed in
+	 * reversed form, which speeds up searches for words with leading
+	 * wildcards at the expense of a larger index. Changing this setting only
+	 * takes effect when the index is rebuilt.
+	 */
+	public boolean isIndexReversedTerms() {
+		return indexReversedTerms;
+	}
+	
+	public void setIndexReversedTerms(boolean indexReversedTerms) {
+		this.indexReversedTerms = indexReversedTerms;
+	}
 
 }
@@ -12,6 +12,7 @@
 package net.sourceforge.docfetcher.model.index;
 
 import java.io.File;
+import java.nio.file.FileStore;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -19,6 +20,7 @@ import java.util.List;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 
+import net.sourceforge.docfetcher.enums.ProgramConf;
 import net.sourceforge.docfetcher.model.IndexRegistry;
 import net.sourceforge.docfetcher.model.LuceneIndex;
 import net.sourceforge.docfetcher.model.PendingDeletion;
@@ -41,6 +43,14 @@ import net.sourceforge.docfetcher.util.collect.LazyList;
 import com.google.common.collect.ImmutableList;
 
 /**
+ * The queue of indexing tasks. The tasks are processed by one or more worker
+ * threads, depending on the program setting
+ * {@link ProgramConf.Int#ConcurrentIndexingTasks}. Two tasks are never run at
+ * the same time if their targets overlap, and by default also not if their
+ * targets are on the same file store (i.e. the same disk partition or network
+ * share), since concurrent reading from the same disk is usually slower than
+ * sequential reading.
+ * 
  * @author Tran Nam Quang
  */
 public final class IndexingQueue {
@@ -66,9 +76,17 @@ public final class IndexingQueue {
 	private final Event<Task> evtAdded = new Event<Task>();
 	private final Event<Task> evtRemoved = new Event<Task>();
 
-	private final Thread thread;
 	private final IndexRegistry indexRegistry;
 	private final LinkedList<Task> tasks = new LinkedList<Task>(); // guarded by lock
+	
+	/*
+	 * The tasks that are currently being processed by the worker threads. Note
+	 * that these aren't necessarily contained in the task list above, since
+	 * tasks in indexing state can be removed from the task list before the
+	 * indexing has finished.
+	 */
+	private final List<Task> activeTasks = new LinkedList<Task>(); // guarded by lock
+	private int workerCount; // guarded by lock
 
 	private volatile boolean shutdown = false; // guarded by lock
 	final Lock readLock;
@@ -113,13 +131,31 @@ public final class IndexingQueue {
 			}
 		});
 		
-		thread = new Thread(IndexingQueue.class.getName()) {
-			public void run() {
-				while (threadLoop());
-				evtWorkerThreadTerminated.fire(null);
-			}
-		};
-		thread.start();
+		int threadCount = ProgramConf.Int.ConcurrentIndexingTasks.get();
+		workerCount = threadCount;
+		for (int i = 0; i < threadCount; i++) {
+			String name = IndexingQueue.class.getName();
+			if (threadCount > 1)
+				name += " (worker " + (i + 1) + ")";
+			new Thread(name) {
+				public void run() {
+					while (threadLoop());
+					
+					// Notify listeners only after the last worker has finished
+					boolean isLast;
+					writeLock.lock();
+					try {
+						workerCount--;
+						isLast = workerCount == 0;
+					}
+					finally {
+						writeLock.unlock();
+					}
+					if (isLast)
+						evtWorkerThreadTerminated.fire(null);
+				}
+			}.start();
+		}
 	}
 	
 	// returns whether the loop should continue
@@ -167,6 +203,10 @@ public final class IndexingQueue {
 			 * between user-triggered index deletions and automatic index
 			 * updating. */
 			assertValidRegistryState(indexRegistry, task);
+			
+			// Must be done under the same lock as getReadyTask()
+			task.set(TaskState.INDEXING);
+			activeTasks.add(task);
 		}
 		catch (InterruptedException e) {
 			// Do not interrupt this thread, call Condition.signal*() instead.
@@ -177,7 +217,6 @@ public final class IndexingQueue {
 		}
 		
 		// Indexing
-		task.set(TaskState.INDEXING);
 		LuceneIndex luceneIndex = task.getLuceneIndex();
 		if (task.is(IndexAction.REBUILD)) {
 			/*
@@ -185,9 +224,10 @@ public final class IndexingQueue {
 			 * underlying index at this point, since it doesn't care whether the
 			 * index was removed from the registry or not. Therefore, before
 			 * clearing the index, we must signal the searcher to let go of it
-			 * by refreshing the searcher's internal Lucene searcher.
+			 * by refreshing the searcher's internal Lucene searcher, and wait
+			 * for any searches still running on the index to finish.
 			 */
-			indexRegistry.getSearcher().replaceLuceneSearcher();
+			indexRegistry.getSearcher().replaceLuceneSearcherAndWait();
 			luceneIndex.clear();
 		}
 		IndexingResult result = task.update(); // Long-running process
@@ -226,7 +266,7 @@ public final class IndexingQueue {
 					 */
 					if (indexRegistry.getIndexes().contains(luceneIndex)) {
 						indexRegistry.save(luceneIndex);
-						indexRegistry.getSearcher().replaceLuceneSearcher();
+						indexRegistry.getSearcher().replaceLuceneSearcher(luceneIndex);
 					}
 					
 					// Output for index updates from the command-line
@@ -254,6 +294,13 @@ public final class IndexingQueue {
 					fireRemoved = tasks.remove(task);
 			}
 			task.set(TaskState.FINISHED);
+			activeTasks.remove(task);
+			
+			/*
+			 * Tasks that were held back because of the finished task may be
+			 * ready to run now.
+			 */
+			readyTaskAvailable.signalAll();
 		}
 		finally {
 			writeLock.unlock();
@@ -295,10 +342,34 @@ public final class IndexingQueue {
 	@Nullable
 	private Task getReadyTask() {
 		for (Task task : tasks)
-			if (task.is(TaskState.READY) && task.cancelAction == null)
+			if (task.is(TaskState.READY) && task.cancelAction == null
+					&& !conflictsWithActiveTask(task))
 				return task;
 		return null;
 	}
+	
+	/**
+	 * Returns whether the given task must not be run yet because of one of the
+	 * tasks that are currently being processed.
+	 */
+	@NotThreadSafe
+	private boolean conflictsWithActiveTask(@NotNull Task task) {
+		if (activeTasks.isEmpty())
+			return false;
+		File target = task.getLuceneIndex().getCanonicalRootFile();
+		boolean sameDiskAllowed = ProgramConf.Bool.ConcurrentIndexingOnSameDisk.get();
+		for (Task activeTask : activeTasks) {
+			File activeTarget = activeTask.getLuceneIndex().getCanonicalRootFile();
+			if (activeTarget.equals(target) || isOverlapping(activeTarget, target))
+				return true;
+			if (sameDiskAllowed)
+				continue;
+			FileStore fileStore = task.getFileStore();
+			if (fileStore != null && fileStore.equals(activeTask.getFileStore()))
+				return true;
+		}
+		return false;
+	}
 
 	@NotThreadSafe
 	private void assertValidRegistryState(	@NotNull IndexRegistry indexRegistry,
@@ -471,7 +542,7 @@ public final class IndexingQueue {
 
 			tasks.add(task);
 			if (task.is(TaskState.READY))
-				readyTaskAvailable.signal();
+				readyTaskAvailable.signalAll();
 		}
 		finally {
 			writeLock.unlock();
@@ -536,20 +607,30 @@ public final class IndexingQueue {
 	private boolean removeAll(	@NotNull CancelHandler handler,
 								@NotNull LazyList<Task> removedTasks) {
 		/*
-		 * Cancel active task if there is one. Note that if the cancel
-		 * handler returns null, no tasks are removed.
+		 * Cancel active tasks if there are any. Note that if the cancel
+		 * handler returns null, no tasks are removed. The cancel handler is
+		 * called at most once, and its answer is applied to all active
+		 * creation and rebuild tasks.
 		 */
+		boolean handlerCalled = false;
+		CancelAction cancelAction = null;
+		for (Task task : tasks) {
+			if (!task.is(TaskState.INDEXING) || task.is(IndexAction.UPDATE))
+				continue;
+			if (!handlerCalled) {
+				cancelAction = handler.cancel();
+				handlerCalled = true;
+			}
+			if (cancelAction == null)
+				return false;
+		}
 		for (Task task : tasks) {
 			if (!task.is(TaskState.INDEXING))
 				continue;
-			if (task.is(IndexAction.UPDATE)) {
+			if (task.is(IndexAction.UPDATE))
 				task.cancelAction = CancelAction.KEEP;
-			}
-			else {
-				task.cancelAction = handler.cancel();
-				if (task.cancelAction == null)
-					return false;
-			}
+			else
+				task.cancelAction = cancelAction;
 		}
 
 		// Remove all tasks (including active task)
@@ -643,7 +724,7 @@ public final class IndexingQueue {
 				}
 			}
 
-			readyTaskAvailable.signal();
+			readyTaskAvailable.signalAll();
 		}
 		finally {
 			writeLock.unlock();
@@ -726,11 +807,12 @@ public final class IndexingQueue {
 			shutdown = true;
 			
 			/*
-			 * Wake up and terminate worker thread if it was waiting. Do *not*
-			 * call thread.interrupt here, otherwise we'll get an exception when
-			 * trying to close the current Lucene index, if there is one.
+			 * Wake up and terminate worker threads if they were waiting. Do
+			 * *not* call Thread.interrupt here, otherwise we'll get an
+			 * exception when trying to close the current Lucene indexes, if
+			 * there are any.
 			 */
-			readyTaskAvailable.signal();
+			readyTaskAvailable.signalAll();
 		}
 		finally {
 			writeLock.unlock();
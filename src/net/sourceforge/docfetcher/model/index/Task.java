@@ -11,6 +11,11 @@
 
 package net.sourceforge.docfetcher.model.index;
 
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+
+import net.sourceforge.docfetcher.enums.ProgramConf;
 import net.sourceforge.docfetcher.model.Cancelable;
 import net.sourceforge.docfetcher.model.LuceneIndex;
 import net.sourceforge.docfetcher.model.PendingDeletion;
@@ -62,6 +67,7 @@ public final class Task {
 	@Nullable private volatile PendingDeletion deletion;
 	private final DelegatingReporter reporter;
 	@Nullable volatile CancelAction cancelAction;
+	@Nullable private final FileStore fileStore;
 
 	Task(	@NotNull IndexingQueue queue,
 			@NotNull LuceneIndex index,
@@ -72,6 +78,15 @@ public final class Task {
 		this.indexAction = indexAction;
 		state = is(IndexAction.UPDATE) ? TaskState.READY : TaskState.NOT_READY;
 		reporter = new DelegatingReporter(queue.reporterCapacity);
+		
+		/*
+		 * The file store is looked up here rather than when the queue decides
+		 * which task to run next, since the lookup may take a long time on an
+		 * unreachable network share and the queue does this under lock.
+		 */
+		fileStore = ProgramConf.Bool.ConcurrentIndexingOnSameDisk.get()
+			? null
+			: lookUpFileStore(index);
 	}
 
 	// If the task is not in indexing state, the task is simply removed.
@@ -179,6 +194,31 @@ public final class Task {
 		}
 	}
 	
+	/**
+	 * Returns the file store (i.e. disk partition or network share) of the
+	 * task's target, or null if it could not be determined or isn't needed
+	 * because concurrent indexing on the same disk is allowed.
+	 */
+	@Nullable
+	@ThreadSafe
+	FileStore getFileStore() {
+		return fileStore;
+	}
+	
+	@Nullable
+	private static FileStore lookUpFileStore(@NotNull LuceneIndex index) {
+		try {
+			return Files.getFileStore(index.getCanonicalRootFile().toPath());
+		}
+		catch (IOException e) {
+			// Treat the target as being on its own file store
+		}
+		catch (RuntimeException e) {
+			// Same as above
+		}
+		return null;
+	}
+	
 	public String toString() {
 		return String.format("Task [%s %s] %s", indexAction.name(), state
 				.name(), index.getCanonicalRootFile().toString());
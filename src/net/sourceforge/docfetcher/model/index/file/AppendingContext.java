@@ -39,7 +39,9 @@ final class AppendingContext extends FileContext {
 				context.getOriginalPath(),
 				context.getStopper(),
 				context.getFileCount(),
-				context.getIndexParentDir()
+				context.getStatCounter(),
+				context.getIndexParentDir(),
+				null // Appending requires the parsing to be done on the current thread
 		);
 		this.outerContext = context;
 	}
@@ -11,7 +11,6 @@
 
 package net.sourceforge.docfetcher.model.index.file;
 
-import java.io.File;
 import java.io.IOException;
 
 import net.sourceforge.docfetcher.model.Fields;
@@ -34,6 +33,11 @@ final class AppendingDocWriter extends LuceneDocWriter {
 		return luceneDoc == null;
 	}
 	
+	protected boolean supportsStreaming() {
+		// The documents are only written when the outer context is written
+		return false;
+	}
+	
 	public void write(	@NotNull FileDocument doc,
 						@NotNull Document luceneDoc,
 						boolean added) throws IOException {
@@ -45,7 +49,7 @@ final class AppendingDocWriter extends LuceneDocWriter {
 	}
 
 	public void update(	@NotNull FileDocument doc,
-						@NotNull File file,
+						long fileSize,
 						@NotNull ParseResult parseResult) throws IOException {
 		throw new UnsupportedOperationException();
 	}
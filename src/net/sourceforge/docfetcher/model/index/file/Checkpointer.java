@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.index.file;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.sourceforge.docfetcher.enums.ProgramConf;
+import net.sourceforge.docfetcher.model.Path;
+import net.sourceforge.docfetcher.model.TreeIndexStore;
+import net.sourceforge.docfetcher.model.index.IndexingException;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+
+/**
+ * Saves the state of a file index that is being built from scratch at regular
+ * intervals: The documents written so far are committed to the Lucene index,
+ * and the tree of the index is written to a checkpoint file next to it. If
+ * the program crashes or is killed during the build, the registry loads the
+ * index from the checkpoint file on the next start, and the next index update
+ * only has to index the files that were added after the checkpoint. If the
+ * build has an {@link IndexingJournal}, the journal is saved as well, so that
+ * the next update can skip the folders that were completed before the
+ * checkpoint.
+ * <p>
+ * Checkpoints must only be made on the thread walking the file tree, and only
+ * at points where the tree contains no partially visited archives, since
+ * archives are not visited again if their last-modified value hasn't
+ * changed. Before the checkpoint is made, the files still being parsed by the
+ * parse pipeline are waited for, so that the saved tree doesn't contain
+ * documents that are missing from the Lucene commit.
+ *
+ * @author Tran Nam Quang
+ */
+final class Checkpointer {
+
+	private final FileIndex index;
+	private final SimpleDocWriter writer;
+	@Nullable private final ParsePipeline pipeline;
+	@Nullable private final IndexingJournal journal;
+	private final File checkpointFile;
+	private final long docInterval;
+	private final long timeInterval; // ms
+
+	private long lastDocCount = 0;
+	private long lastTime = System.currentTimeMillis();
+
+	private Checkpointer(	@NotNull FileIndex index,
+							@NotNull SimpleDocWriter writer,
+							@Nullable ParsePipeline pipeline,
+							@Nullable IndexingJournal journal,
+							@NotNull File checkpointFile,
+							long docInterval,
+							long timeInterval) {
+		this.index = index;
+		this.writer = writer;
+		this.pipeline = pipeline;
+		this.journal = journal;
+		this.checkpointFile = checkpointFile;
+		this.docInterval = docInterval;
+		this.timeInterval = timeInterval;
+	}
+
+	/**
+	 * Returns a checkpointer for the given index with the intervals specified
+	 * in the program configuration, or null if checkpoints are disabled or if
+	 * the index only exists in RAM.
+	 */
+	@Nullable
+	public static Checkpointer create(	@NotNull FileIndex index,
+										@NotNull SimpleDocWriter writer,
+										@Nullable ParsePipeline pipeline,
+										@Nullable IndexingJournal journal) {
+		Util.checkNotNull(index, writer);
+		Path indexDirPath = index.getIndexDirPath();
+		if (indexDirPath == null)
+			return null;
+		long docInterval = ProgramConf.Int.CheckpointDocs.get();
+		long timeInterval = ProgramConf.Int.CheckpointMinutes.get() * 60 * 1000L;
+		if (docInterval == 0 && timeInterval == 0)
+			return null;
+		File checkpointFile = new File(
+			indexDirPath.getCanonicalFile(), TreeIndexStore.CHECKPOINT_FILENAME);
+		return new Checkpointer(
+			index, writer, pipeline, journal, checkpointFile,
+			docInterval == 0 ? Long.MAX_VALUE : docInterval,
+			timeInterval == 0 ? Long.MAX_VALUE : timeInterval);
+	}
+
+	/**
+	 * Makes a checkpoint if the configured number of documents has been
+	 * written or the configured time has passed since the last one.
+	 */
+	public void checkpointIfDue() throws IndexingException {
+		long docCount = writer.getWrittenCount();
+		long now = System.currentTimeMillis();
+		if (docCount - lastDocCount < docInterval && now - lastTime < timeInterval)
+			return;
+		if (pipeline != null)
+			pipeline.awaitCompletion();
+		try {
+			/*
+			 * The tree is written after the commit: If the program crashes in
+			 * between, the Lucene index contains documents that the tree
+			 * restored from the previous checkpoint doesn't know about, which
+			 * is preferable to the tree containing documents missing from the
+			 * Lucene index. The resumed update writes these documents again,
+			 * replacing them by UID (see SimpleDocWriter#setReplaceOnAdd).
+			 */
+			writer.commit();
+			checkpointFile.getParentFile().mkdirs();
+			TreeIndexStore.write(checkpointFile, index);
+			if (journal != null)
+				journal.save();
+		}
+		catch (IOException e) {
+			throw new IndexingException(e);
+		}
+		lastDocCount = writer.getWrittenCount();
+		lastTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Deletes the checkpoint file. This should be called when the build has
+	 * ended without crashing, whether it was successful or not, since the
+	 * index is then saved or discarded as a whole.
+	 */
+	public void discard() {
+		checkpointFile.delete();
+	}
+
+}
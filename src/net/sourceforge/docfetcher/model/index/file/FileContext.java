@@ -13,6 +13,7 @@ package net.sourceforge.docfetcher.model.index.file;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import net.sourceforge.docfetcher.model.Cancelable;
 import net.sourceforge.docfetcher.model.Path;
@@ -28,6 +29,7 @@ import net.sourceforge.docfetcher.model.index.MutableInt;
 import net.sourceforge.docfetcher.model.index.PatternAction;
 import net.sourceforge.docfetcher.model.parse.ParseException;
 import net.sourceforge.docfetcher.model.parse.ParseResult;
+import net.sourceforge.docfetcher.model.parse.ParseResultCache;
 import net.sourceforge.docfetcher.model.parse.ParseService;
 import net.sourceforge.docfetcher.util.CheckedOutOfMemoryError;
 import net.sourceforge.docfetcher.util.Util;
@@ -48,7 +50,12 @@ class FileContext {
 	@Nullable private final Path originalPath;
 	private final Cancelable cancelable;
 	private final MutableInt fileCount;
+	private final StatCounter statCounter;
 	@Nullable private final File indexParentDir; // null if index only exists in RAM
+	@Nullable private final ParsePipeline pipeline; // null if parsing on the current thread
+	@Nullable private final ParseResultCache parseCache;
+	@Nullable private Checkpointer checkpointer; // not passed on to sub-contexts
+	@Nullable private IndexingJournal journal; // not passed on to sub-contexts
 
 	protected FileContext(	@NotNull IndexingConfig config,
 							@NotNull TArchiveDetector zipDetector,
@@ -57,15 +64,20 @@ class FileContext {
 							@Nullable Path originalPath,
 							@NotNull Cancelable cancelable,
 							@NotNull MutableInt fileCount,
-							@Nullable File indexParentDir) {
-		Util.checkNotNull(config, zipDetector, writer, cancelable, fileCount);
+							@NotNull StatCounter statCounter,
+							@Nullable File indexParentDir,
+							@Nullable ParsePipeline pipeline) {
+		Util.checkNotNull(config, zipDetector, writer, cancelable, fileCount, statCounter);
 		this.config = config;
 		this.zipDetector = zipDetector;
 		this.writer = writer;
 		this.originalPath = originalPath;
 		this.cancelable = cancelable;
 		this.fileCount = fileCount;
+		this.statCounter = statCounter;
 		this.indexParentDir = indexParentDir;
+		this.pipeline = pipeline;
+		this.parseCache = ParseResultCache.getInstance(indexParentDir);
 		setReporter(reporter);
 	}
 	
@@ -79,7 +91,9 @@ class FileContext {
 				originalPath,
 				superContext.cancelable,
 				superContext.fileCount,
-				superContext.indexParentDir
+				superContext.statCounter,
+				superContext.indexParentDir,
+				superContext.pipeline
 		);
 	}
 	
@@ -129,22 +143,99 @@ class FileContext {
 		return fileCount;
 	}
 	
+	@NotNull
+	protected final StatCounter getStatCounter() {
+		return statCounter;
+	}
+	
+	/**
+	 * Returns the last-modified value of the given file, taking it from the
+	 * given attributes if they're not null.
+	 */
+	public final long getLastModified(	@NotNull File file,
+										@Nullable BasicFileAttributes attrs) {
+		if (attrs == null)
+			return file.lastModified();
+		statCounter.countAvoidedCalls(1);
+		return attrs.lastModifiedTime().toMillis();
+	}
+	
 	@Nullable
 	protected final File getIndexParentDir() {
 		return indexParentDir;
 	}
 	
+	@Nullable
+	protected final ParsePipeline getPipeline() {
+		return pipeline;
+	}
+	
+	public final void setCheckpointer(@Nullable Checkpointer checkpointer) {
+		this.checkpointer = checkpointer;
+	}
+	
+	/**
+	 * Makes a checkpoint if this context has a checkpointer and a checkpoint
+	 * is due. See {@link Checkpointer} for when this may be called.
+	 */
+	public final void checkpointIfDue() throws IndexingException {
+		if (checkpointer != null && !isStopped())
+			checkpointer.checkpointIfDue();
+	}
+	
+	public final void setJournal(@Nullable IndexingJournal journal) {
+		this.journal = journal;
+	}
+	
+	/**
+	 * Returns whether the given folder was completed by an earlier,
+	 * interrupted index update, according to the journal of this context.
+	 */
+	public final boolean isCompleted(@NotNull FileFolder folder) {
+		return journal != null && journal.isCompleted(folder);
+	}
+	
+	/**
+	 * Records the given folder as completed in the journal of this context,
+	 * if there is one and the indexing hasn't been canceled.
+	 */
+	public final void setCompleted(@NotNull FileFolder folder) {
+		if (journal != null && !isStopped())
+			journal.setCompleted(folder);
+	}
+	
 	// returns success
 	// if the indexing is canceled before or during the execution of this method,
 	// the last-modified value of the given document will be set to -1.
 	public final boolean index(	@NotNull FileDocument doc,
 								@NotNull File file,
 								boolean isAdded) throws IndexingException {
+		return index(doc, file, null, isAdded);
+	}
+	
+	/**
+	 * Indexes the given file like {@link #index(FileDocument, File, boolean)},
+	 * but takes the file size from the given attributes if they're not null.
+	 */
+	public final boolean index(	@NotNull FileDocument doc,
+								@NotNull File file,
+								@Nullable BasicFileAttributes attrs,
+								boolean isAdded) throws IndexingException {
 		info(InfoType.EXTRACTING, doc);
+		ParseResult parseResult = null;
 		try {
 			// Text extraction; may throw OutOfMemoryErrors
-			ParseResult parseResult = ParseService.parse(
-				config, file, doc.getName(), doc.getPath(), reporter, cancelable);
+			parseResult = ParseService.parse(
+				config, file, doc.getName(), doc.getPath(), reporter,
+				cancelable, parseCache);
+			if (parseResult.isStreaming() && !writer.supportsStreaming()) {
+				try {
+					parseResult.readContent();
+				}
+				catch (IOException e) {
+					throw new ParseException(e);
+				}
+			}
 			
 			/*
 			 * If we detect a cancel request at this point, the request probably
@@ -156,11 +247,40 @@ class FileContext {
 			if (cancelable.isCanceled())
 				doc.setLastModified(-1);
 
+			long fileSize;
+			if (attrs == null) {
+				fileSize = file.length();
+			}
+			else {
+				fileSize = attrs.size();
+				statCounter.countAvoidedCalls(1);
+			}
+
 			// Add to index or update in index; may also throw OutOfMemoryErrors
 			if (isAdded)
-				writer.add(doc, file, parseResult);
+				writer.add(doc, fileSize, parseResult, cancelable);
 			else
-				writer.update(doc, file, parseResult);
+				writer.update(doc, fileSize, parseResult, cancelable);
+			
+			/*
+			 * The content of a streaming parse result is cut short if the
+			 * indexing is canceled while the index writer is reading it, so
+			 * as above, make sure the file will be reindexed.
+			 */
+			if (cancelable.isCanceled())
+				doc.setLastModified(-1);
+			
+			/*
+			 * If the content of a streaming parse result couldn't be read to
+			 * the end, remove the incomplete document from the index and
+			 * treat the file as unparsable.
+			 */
+			IOException readError = parseResult.getReadError();
+			if (readError != null) {
+				deleteFromIndex(doc.getUniqueId());
+				fail(ErrorType.PARSING, doc, readError);
+				return false;
+			}
 			
 			// Clear errors from previous indexing operations
 			doc.setError(null);
@@ -176,9 +296,64 @@ class FileContext {
 		catch (CheckedOutOfMemoryError e) {
 			fail(ErrorType.OUT_OF_MEMORY, doc, e.getCause());
 		}
+		finally {
+			if (parseResult != null)
+				parseResult.close();
+		}
 		return false;
 	}
 	
+	/**
+	 * Indexes the given file like
+	 * {@link #index(FileDocument, File, BasicFileAttributes, boolean)}, but
+	 * possibly on one of the worker threads of the parse pipeline, in
+	 * which case this method returns before the indexing has finished. If the
+	 * indexing of a modified file fails, the file is removed from the Lucene
+	 * index, but kept in the tree.
+	 * <p>
+	 * Entries of zip archives are always indexed on the current thread, since
+	 * the enclosing archive is unmounted as soon as the caller has finished
+	 * visiting it.
+	 */
+	public final void indexInBackground(@NotNull final FileDocument doc,
+										@NotNull final File file,
+										@Nullable final BasicFileAttributes attrs,
+										final boolean isAdded)
+			throws IndexingException {
+		if (pipeline == null || (file instanceof TFile && ((TFile) file).isEntry())) {
+			if (!index(doc, file, attrs, isAdded) && !isAdded)
+				deleteFromIndex(doc.getUniqueId());
+			return;
+		}
+		pipeline.submit(new ParsePipeline.Job() {
+			public void run() throws IndexingException {
+				/*
+				 * If the indexing was canceled while the file was waiting in
+				 * the queue, mark the document as modified so that it will be
+				 * indexed on the next index update.
+				 */
+				try {
+					if (cancelable.isCanceled()) {
+						doc.setLastModified(-1);
+						return;
+					}
+					if (!index(doc, file, attrs, isAdded) && !isAdded)
+						deleteFromIndex(doc.getUniqueId());
+				}
+				finally {
+					/*
+					 * The tree walk may already have recorded the folder of
+					 * the file as completed. If the file wasn't fully indexed
+					 * due to the cancellation, the next update must visit the
+					 * folder again.
+					 */
+					if (journal != null && cancelable.isCanceled())
+						journal.setIncomplete(doc.getPath());
+				}
+			}
+		});
+	}
+	
 	public final boolean indexAndDeleteFile(@NotNull FileDocument doc,
 											@NotNull File file,
 											boolean added)
@@ -202,8 +377,11 @@ class FileContext {
 	}
 	
 	public void info(@NotNull InfoType type, @NotNull TreeNode treeNode) {
-		fileCount.increment();
-		reporter.info(new IndexingInfo(type, treeNode, fileCount.get()));
+		// Synchronized because the parse pipeline may call this concurrently
+		synchronized (fileCount) {
+			fileCount.increment();
+			reporter.info(new IndexingInfo(type, treeNode, fileCount.get()));
+		}
 	}
 	
 	// Reports the given error and saves it in the given tree node
@@ -233,10 +411,26 @@ class FileContext {
 	 * given the various settings of the receiver.
 	 */
 	public final boolean skip(@NotNull TFile fileOrDir) {
+		return skip(fileOrDir, null);
+	}
+	
+	/**
+	 * Works like {@link #skip(TFile)}, but takes the file type from the given
+	 * attributes if they're not null.
+	 */
+	public final boolean skip(	@NotNull TFile fileOrDir,
+								@Nullable BasicFileAttributes attrs) {
 		String filename = fileOrDir.getName();
 		Path filepath = getDirOrZipPath(fileOrDir);
 		
-		boolean isFileOrSolidArchive = fileOrDir.isFile();
+		boolean isFileOrSolidArchive;
+		if (attrs == null) {
+			isFileOrSolidArchive = fileOrDir.isFile();
+		}
+		else {
+			isFileOrSolidArchive = attrs.isRegularFile();
+			statCounter.countAvoidedCalls(1);
+		}
 		boolean isZipArchiveOrFolder = !isFileOrSolidArchive;
 		boolean isZipArchive = isZipArchiveOrFolder
 			? UtilModel.isZipArchive(fileOrDir)
@@ -12,6 +12,7 @@
 package net.sourceforge.docfetcher.model.index.file;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Map;
 
 import net.sourceforge.docfetcher.model.Document;
@@ -55,11 +56,17 @@ public final class FileDocument extends Document<FileDocument, FileFolder> {
 		this.htmlFolder = htmlFolder;
 	}
 	
+	/**
+	 * Returns whether the given file or the given HTML folder differ from the
+	 * receiver. The last-modified value of the file is taken from the given
+	 * attributes if they're not null.
+	 */
 	public boolean isModified(	@NotNull FileContext context,
 	                          	@NotNull File file,
+	                          	@Nullable BasicFileAttributes attrs,
 								@Nullable File htmlFolder) {
 		Util.checkThat(getName().equals(file.getName()));
-		if (getLastModified() != file.lastModified())
+		if (getLastModified() != context.getLastModified(file, attrs))
 			return true;
 		return isFolderModified(context, this.htmlFolder, htmlFolder);
 	}
@@ -80,22 +87,23 @@ public final class FileDocument extends Document<FileDocument, FileFolder> {
 		final Map<String, FileFolder> unseenSubFolders = Maps.newHashMap(oldFolder.getSubFolderMap());
 		final boolean[] modificationFound = { false };
 		
-		new HtmlFileLister <Exception> (newFolder, config, null) {
+		new HtmlFileLister <Exception> (newFolder, config, null, context.getStatCounter()) {
 			protected void handleFile(File file) {
+				long lastModified = context.getLastModified(file, getAttributes(file));
 				if (config.isSolidArchive(file.getName())) {
 					FileFolder subFolder = unseenSubFolders.remove(file.getName());
-					if (subFolder == null || !Objects.equal(subFolder.getLastModified(), file.lastModified()))
+					if (subFolder == null || !Objects.equal(subFolder.getLastModified(), lastModified))
 						modified();
 				}
 				else {
 					FileDocument doc = unseenDocs.remove(file.getName());
-					if (doc == null || doc.getLastModified() != file.lastModified())
+					if (doc == null || doc.getLastModified() != lastModified)
 						modified();
 				}
 			}
 			protected void handleHtmlPair(File htmlFile, File htmlDir) {
 				FileDocument doc = unseenDocs.remove(htmlFile.getName());
-				if (doc == null || doc.isModified(context, htmlFile, htmlDir))
+				if (doc == null || doc.isModified(context, htmlFile, getAttributes(htmlFile), htmlDir))
 					modified();
 			}
 			protected void handleDir(File dir) {
@@ -104,7 +112,7 @@ public final class FileDocument extends Document<FileDocument, FileFolder> {
 					modified();
 			}
 			protected boolean skip(File fileOrDir) {
-				return context.skip((TFile) fileOrDir);
+				return context.skip((TFile) fileOrDir, getAttributes(fileOrDir));
 			}
 			private void modified() {
 				modificationFound[0] = true;
@@ -47,6 +47,11 @@ public class FileFolder extends Folder<FileDocument, FileFolder> {
 		super(path, lastModified);
 	}
 	
+	// Only for loading stored indexes, see FileIndex.nodeCodec
+	FileFolder(@NotNull String name, @Nullable Long lastModified) {
+		super(name, lastModified);
+	}
+	
 	public final boolean isArchive() {
 		return getLastModified() != null;
 	}
@@ -11,16 +11,24 @@
 
 package net.sourceforge.docfetcher.model.index.file;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Logger;
 
 import net.sourceforge.docfetcher.enums.Msg;
+import net.sourceforge.docfetcher.enums.ProgramConf;
 import net.sourceforge.docfetcher.model.Cancelable;
 import net.sourceforge.docfetcher.model.DocumentType;
 import net.sourceforge.docfetcher.model.Path;
+import net.sourceforge.docfetcher.model.TextCache;
 import net.sourceforge.docfetcher.model.TreeIndex;
+import net.sourceforge.docfetcher.model.TreeIndexStore;
+import net.sourceforge.docfetcher.model.TreeIndexStore.NodeCodec;
 import net.sourceforge.docfetcher.model.TreeNode;
 import net.sourceforge.docfetcher.model.UtilModel;
 import net.sourceforge.docfetcher.model.index.DiskSpaceException;
@@ -36,6 +44,7 @@ import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
 import net.sourceforge.docfetcher.util.annotations.Nullable;
 import net.sourceforge.docfetcher.util.annotations.RecursiveMethod;
+import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 
 import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
@@ -71,6 +80,39 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 	 */
 	
 	private static final long serialVersionUID = 1L;
+	
+	// Whether the next update should skip the folders recorded in the journal
+	private transient volatile boolean resumeRequested = false;
+	
+	/**
+	 * Creates and inspects the tree nodes of file indexes when they're written
+	 * to or read from disk by the {@link TreeIndexStore}.
+	 */
+	@VisibleForPackageGroup
+	public static final NodeCodec<FileDocument, FileFolder> nodeCodec = new NodeCodec<FileDocument, FileFolder>() {
+		public FileFolder createRootFolder(Path path) {
+			return new FileFolder(path, null);
+		}
+		public FileFolder createSubFolder(String name, Long lastModified) {
+			return new FileFolder(name, lastModified);
+		}
+		public FileDocument createDocument(	FileFolder parent,
+											String name,
+											String displayName,
+											long lastModified) {
+			return new FileDocument(parent, name, lastModified);
+		}
+		public FileFolder getAttachedFolder(FileDocument document) {
+			return document.getHtmlFolder();
+		}
+		public void setAttachedFolder(FileDocument document, FileFolder folder) {
+			document.setHtmlFolder(folder);
+		}
+		public void writeFolderData(FileFolder folder, DataOutput out) {
+		}
+		public void readFolderData(FileFolder folder, DataInput in) {
+		}
+	};
 
 	// if indexParentDir is null, all content is written to a RAM index, which
 	// can be retrieved via getLuceneDir
@@ -116,6 +158,16 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 	public DocumentType getDocumentType() {
 		return DocumentType.FILE;
 	}
+	
+	/**
+	 * Makes the next update of this index resume the interrupted update
+	 * recorded in the {@link IndexingJournal}, i.e. skip the folders that the
+	 * interrupted update has completed. Other updates ignore the journal,
+	 * since the skipped folders may have been modified in the meantime.
+	 */
+	public void requestResume() {
+		resumeRequested = true;
+	}
 
 	public IndexingResult doUpdate(	@NotNull IndexingReporter reporter,
 									@NotNull Cancelable cancelable) {
@@ -124,6 +176,18 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 		FileFolder rootFolder = getRootFolder();
 		rootFolder.setError(null);
 		SimpleDocWriter writer = null;
+		ParsePipeline pipeline = null;
+		Checkpointer checkpointer = null;
+		IndexingJournal journal = null;
+		boolean journalSaved = false;
+		boolean resume = resumeRequested;
+		resumeRequested = false;
+		
+		/*
+		 * If the tree is empty, the index is being created or rebuilt, so the
+		 * Lucene index is built from scratch.
+		 */
+		boolean bulkLoad = rootFolder.getChildCount() == 0;
 
 		/*
 		 * Wrap the stored root file in a TFile to enable zip archive support.
@@ -152,11 +216,71 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 					return IndexingResult.SUCCESS_UNCHANGED;
 				rootFolder.setLastModified(newLastModified);
 				
-				writer = new SimpleDocWriter(getLuceneDir());
+				/*
+				 * If an earlier update was interrupted by a crash, the tree
+				 * may have been restored from a checkpoint, while the Lucene
+				 * index may contain documents committed after the checkpoint.
+				 * The resumed update replaces these documents by UID instead
+				 * of adding them a second time, and doesn't assign the folder
+				 * IDs stored in them again.
+				 */
+				boolean resuming = !bulkLoad && IndexingJournal.exists(this);
+				if (resuming)
+					reserveLuceneFolderIds();
+				
+				writer = new SimpleDocWriter(
+					this, getLuceneDir(), getIndexingTextCache(),
+					config.isIndexReversedTerms(), bulkLoad);
+				writer.setReplaceOnAdd(resuming);
+				pipeline = ParsePipeline.create();
+				IndexingReporter contextReporter = pipeline == null
+					? reporter
+					: ParsePipeline.synchronize(reporter);
+				StatCounter statCounter = new StatCounter();
 				FileContext context = new FileContext(
-					config, zipDetector, writer, reporter, null, cancelable,
-					new MutableInt(0), getIndexParentDir());
+					config, zipDetector, writer, contextReporter, null,
+					cancelable, new MutableInt(0), statCounter,
+					getIndexParentDir(), pipeline);
+				
+				/*
+				 * Checkpoints are only made in folders, not in zip archives.
+				 * The same goes for the journal, which allows resuming an
+				 * interrupted update.
+				 */
+				if (newLastModified == null) {
+					journal = IndexingJournal.load(this, resume);
+					context.setJournal(journal);
+					if (bulkLoad) {
+						checkpointer = Checkpointer.create(
+							this, writer, pipeline, journal);
+						context.setCheckpointer(checkpointer);
+					}
+				}
 				visitDirOrZip(context, rootFolder, rootFile);
+				if (pipeline != null)
+					pipeline.awaitCompletion();
+				
+				/*
+				 * Save the progress if the update was canceled, so that the
+				 * next update can resume from here. The tree and the Lucene
+				 * index are saved as well, unless the index is discarded.
+				 * Otherwise, the journal is deleted below.
+				 */
+				if (journal != null && cancelable.isCanceled()) {
+					try {
+						journal.save();
+						journalSaved = true;
+					}
+					catch (IOException e) {
+						Util.printErr(e);
+					}
+				}
+				
+				// Logged for verifying the file system savings on network shares
+				if (ProgramConf.Bool.ReportFileSystemCalls.get()
+						&& statCounter.getAttributeReads() > 0)
+					Logger.getLogger(FileIndex.class.getName()).info(
+						"Walked " + rootFile + ": " + statCounter);
 			}
 			else {
 				// Return immediately if the root file wasn't modified
@@ -179,10 +303,13 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 					return IndexingResult.FAILURE;
 				}
 				
-				writer = new SimpleDocWriter(getLuceneDir());
+				writer = new SimpleDocWriter(
+					this, getLuceneDir(), getIndexingTextCache(),
+					config.isIndexReversedTerms(), bulkLoad);
 				SolidArchiveContext context = new SolidArchiveContext(
 					config, zipDetector, writer, reporter, null, cancelable,
-					new MutableInt(0), false, getIndexParentDir());
+					new MutableInt(0), new StatCounter(), false,
+					getIndexParentDir(), null);
 				SolidArchiveTree<?> archiveTree = factory.createSolidArchiveTree(
 					context, rootFile);
 				visitSolidArchive(context, rootFolder, archiveTree);
@@ -206,7 +333,23 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 			report(ErrorType.STACK_OVERFLOW, reporter, e);
 		}
 		finally {
+			/*
+			 * The workers of the parse pipeline must have finished before the
+			 * writer can be closed.
+			 */
+			if (pipeline != null)
+				pipeline.close();
 			Closeables.closeQuietly(writer);
+			if (checkpointer != null)
+				checkpointer.discard();
+			
+			/*
+			 * A journal left by an earlier interruption or written at a
+			 * checkpoint is obsolete once an update has finished without
+			 * being canceled, even if it failed.
+			 */
+			if (journal != null && !journalSaved)
+				journal.delete();
 			reporter.setEndTime(System.currentTimeMillis());
 		}
 		return IndexingResult.FAILURE;
@@ -221,6 +364,14 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 		reporter.fail(error);
 	}
 
+	// Returns null if the text cache shouldn't be filled during indexing
+	@Nullable
+	private TextCache getIndexingTextCache() {
+		if (!ProgramConf.Bool.CacheTextOnIndexing.get())
+			return null;
+		return TextCache.getInstance(getIndexParentDir());
+	}
+
 	/**
 	 * Returns the last-modified attribute of the given zip archive, or null if
 	 * the given file is not a zip archive. This method does not work for files
@@ -244,9 +395,12 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 	}
 
 	@NotNull
-	private static FileDocument createFileDoc(	@NotNull FileFolder parentFolder,
-												@NotNull File file) {
-		return new FileDocument(parentFolder, file.getName(), file.lastModified());
+	private static FileDocument createFileDoc(	@NotNull FileContext context,
+												@NotNull FileFolder parentFolder,
+												@NotNull File file,
+												@Nullable BasicFileAttributes attrs) {
+		long lastModified = context.getLastModified(file, attrs);
+		return new FileDocument(parentFolder, file.getName(), lastModified);
 	}
 
 	// Will clean up temporary zip files
@@ -274,13 +428,18 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 		
 		final Map<String, FileDocument> unseenDocs = Maps.newHashMap(folder.getDocumentMap());
 		final Map<String, FileFolder> unseenSubFolders = Maps.newHashMap(folder.getSubFolderMap());
+		
+		// Checkpoints can't be made inside zip archives, see Checkpointer
+		final boolean canCheckpoint = !(dirOrZip instanceof TFile)
+			|| !((TFile) dirOrZip).isArchive() && !((TFile) dirOrZip).isEntry();
 
 		/*
 		 * Note: If the user aborts the indexing, the file tree must be left in
 		 * a consistent state, so that the user can continue indexing later.
 		 */
 		new HtmlFileLister<IndexingException>(
-			dirOrZip, context.getConfig(), context.getReporter()) {
+			dirOrZip, context.getConfig(), context.getReporter(),
+			context.getStatCounter()) {
 			protected void handleFile(@NotNull File file) {
 				if (context.isStopped()) stop();
 				try {
@@ -288,15 +447,16 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 						unseenSubFolders.remove(file.getName());
 						return;
 					}
+					BasicFileAttributes attrs = getAttributes(file);
 					FileDocument doc = unseenDocs.remove(file.getName());
 					// File added
 					if (doc == null) {
-						doc = createFileDoc(folder, file);
-						context.index(doc, file, true);
+						doc = createFileDoc(context, folder, file, attrs);
+						context.indexInBackground(doc, file, attrs, true);
 					}
 					// File modified
-					else if (doc.isModified(context, file, null)) {
-						doc.setLastModified(file.lastModified());
+					else if (doc.isModified(context, file, attrs, null)) {
+						doc.setLastModified(context.getLastModified(file, attrs));
 						doc.setHtmlFolder(null);
 						
 						/*
@@ -304,9 +464,10 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 						 * the Lucene index, but keep it in the tree so we won't
 						 * index it again on the next index update.
 						 */
-						if (!context.index(doc, file, false))
-							context.deleteFromIndex(doc.getUniqueId());
+						context.indexInBackground(doc, file, attrs, false);
 					}
+					if (canCheckpoint)
+						context.checkpointIfDue();
 				}
 				catch (IndexingException e) {
 					stop(e);
@@ -317,10 +478,11 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 											@Nullable File htmlDir) {
 				if (context.isStopped()) stop();
 				try {
+					BasicFileAttributes attrs = getAttributes(htmlFile);
 					FileDocument doc = unseenDocs.remove(htmlFile.getName());
 					// HTML pair added
 					if (doc == null) {
-						doc = createFileDoc(folder, htmlFile);
+						doc = createFileDoc(context, folder, htmlFile, attrs);
 						FileFolder htmlFolder = htmlDir == null
 							? null
 							: new FileFolder(
@@ -328,7 +490,7 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 						doc.setHtmlFolder(htmlFolder);
 						AppendingContext subContext = new AppendingContext(
 							context);
-						if (!subContext.index(doc, htmlFile, true)) return;
+						if (!subContext.index(doc, htmlFile, attrs, true)) return;
 						if (htmlDir != null) {
 							subContext.setReporter(null);
 							visitDirOrZip(
@@ -337,8 +499,8 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 						subContext.appendToOuter(doc, true);
 					}
 					// HTML pair modified
-					else if (doc.isModified(context, htmlFile, htmlDir)) {
-						doc.setLastModified(htmlFile.lastModified());
+					else if (doc.isModified(context, htmlFile, attrs, htmlDir)) {
+						doc.setLastModified(context.getLastModified(htmlFile, attrs));
 						/*
 						 * Here, we replace any previous HTML folder with a new
 						 * empty one, which effectively causes all files
@@ -352,7 +514,7 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 						doc.setHtmlFolder(htmlFolder);
 						AppendingContext subContext = new AppendingContext(
 							context);
-						if (subContext.index(doc, htmlFile, true)) {
+						if (subContext.index(doc, htmlFile, attrs, true)) {
 							if (htmlDir != null) {
 								subContext.setReporter(null);
 								visitDirOrZip(
@@ -364,6 +526,8 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 							context.deleteFromIndex(doc.getUniqueId());
 						}
 					}
+					if (canCheckpoint)
+						context.checkpointIfDue();
 				}
 				catch (IndexingException e) {
 					stop(e);
@@ -386,11 +550,18 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 				else { // Folder already registered, check modification state
 					if (UtilModel.isUnmodifiedArchive(subFolder, newLastModified))
 						return;
+					// Folder completed by an interrupted update
+					if (canCheckpoint && context.isCompleted(subFolder))
+						return;
 					subFolder.setLastModified(newLastModified);
 					subFolder.setError(null);
 				}
 				try {
 					visitDirOrZip(context, subFolder, dir);
+					if (canCheckpoint) {
+						context.setCompleted(subFolder);
+						context.checkpointIfDue();
+					}
 				}
 				catch (StackOverflowError e) {
 					/*
@@ -408,7 +579,7 @@ public final class FileIndex extends TreeIndex<FileDocument, FileFolder> {
 			}
 
 			protected boolean skip(@NotNull File fileOrDir) {
-				return context.skip((TFile) fileOrDir);
+				return context.skip((TFile) fileOrDir, getAttributes(fileOrDir));
 			}
 
 			protected void runFinally() {
@@ -12,6 +12,7 @@
 package net.sourceforge.docfetcher.model.index.file;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -184,6 +185,51 @@ public final class FileIndexTest {
 		Util.deleteRecursively(tempDir);
 	}
 	
+	/**
+	 * Checks that the folders recorded in the indexing journal are only
+	 * skipped by an update that resumes an interrupted update, as in the
+	 * headless mode, and that the journal is deleted afterwards.
+	 */
+	@Test
+	public void testResumeFromJournal() throws Exception {
+		File tempDir = Util.createTempDir();
+		File indexParentDir = Util.createTempDir();
+		File file1 = new File(tempDir, "sub1/a.txt");
+		File file2 = new File(tempDir, "sub2/b.txt");
+		for (File file : new File[] {file1, file2}) {
+			file.getParentFile().mkdirs();
+			Files.write("lorem ipsum", file, Charsets.UTF_8);
+		}
+		
+		FileIndex index = new FileIndex(indexParentDir, tempDir);
+		index.getConfig().setIndexFilenames(false);
+		index.update(null, null);
+		String completedPath = index.getRootFolder().getSubFolder("sub1")
+			.getPath().getPath();
+		File journalFile = new File(
+			index.getIndexDirPath().getCanonicalFile(),
+			IndexingJournal.FILENAME);
+		
+		// Without a resume request, the journal is ignored
+		for (boolean resume : new boolean[] {false, true}) {
+			Files.write(completedPath, journalFile, Charsets.UTF_8);
+			long lastModified = System.currentTimeMillis() + (resume ? 2000 : 1000);
+			file1.setLastModified(lastModified);
+			file2.setLastModified(lastModified);
+			if (resume)
+				assertTrue(IndexingJournal.requestResume(index));
+			
+			CountingReporter reporter = new CountingReporter();
+			index.update(reporter, null);
+			assertEquals(resume ? 1 : 2, reporter.extractCount);
+			assertFalse(journalFile.exists());
+		}
+		assertFalse(IndexingJournal.requestResume(index));
+		
+		Util.deleteRecursively(tempDir);
+		Util.deleteRecursively(indexParentDir);
+	}
+	
 	private static class CountingReporter extends IndexingReporter {
 		private int extractCount = 0;
 		private int errorCount = 0;
@@ -12,11 +12,20 @@
 package net.sourceforge.docfetcher.model.index.file;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import net.sourceforge.docfetcher.enums.ProgramConf;
 import net.sourceforge.docfetcher.model.Path;
@@ -30,7 +39,21 @@ import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
 import net.sourceforge.docfetcher.util.annotations.Nullable;
 
+import com.google.common.io.Closeables;
+
+import de.schlichtherle.truezip.file.TFile;
+
 /**
+ * Lists the files and directories in a given directory, pairing HTML files
+ * with their HTML folders if HTML pairing is enabled.
+ * <p>
+ * If the given directory is a real directory and not inside an archive, the
+ * basic attributes of each entry are read in a single call while listing the
+ * directory. These are used for the symlink and file type checks, and can be
+ * retrieved by subclasses via {@link #getAttributes(File)} to avoid further
+ * calls to the file system. This matters on network shares, where each call
+ * is a round trip to the server.
+ * 
  * @author Tran Nam Quang
  */
 abstract class HtmlFileLister<T extends Throwable> extends Stoppable<T> {
@@ -40,16 +63,26 @@ abstract class HtmlFileLister<T extends Throwable> extends Stoppable<T> {
 	private final Collection<String> htmlExtensions;
 	private final boolean htmlPairing;
 	@Nullable private final IndexingReporter reporter;
+	@Nullable private final StatCounter statCounter;
+	private Map<String, BasicFileAttributes> attributes = Collections.emptyMap();
 	
 	public HtmlFileLister(	@NotNull File parentDir,
 							@NotNull IndexingConfig config,
 							@Nullable IndexingReporter reporter) {
+		this(parentDir, config, reporter, null);
+	}
+	
+	public HtmlFileLister(	@NotNull File parentDir,
+							@NotNull IndexingConfig config,
+							@Nullable IndexingReporter reporter,
+							@Nullable StatCounter statCounter) {
 		Util.checkNotNull(parentDir, config);
 		this.parentDir = parentDir;
 		this.config = config;
 		this.htmlExtensions = config.getHtmlExtensions();
 		this.htmlPairing = config.isHtmlPairing();
 		this.reporter = reporter;
+		this.statCounter = statCounter;
 	}
 	
 	protected final void doRun() {
@@ -60,19 +93,20 @@ abstract class HtmlFileLister<T extends Throwable> extends Stoppable<T> {
 	}
 	
 	private void runWithoutHtmlPairing() {
-		for (File fileOrDir : Util.listFiles(parentDir)) {
+		for (File fileOrDir : listFiles()) {
 			if (isStopped())
 				return;
 			
+			BasicFileAttributes attrs = attributes.get(fileOrDir.getName());
 			boolean isFile;
 			try {
-				if (Util.isSymLink(fileOrDir))
+				if (isSymLink(fileOrDir, attrs))
 					continue;
 				if (skip(fileOrDir))
 					continue;
-				isFile = fileOrDir.isFile();
+				isFile = isFile(fileOrDir, attrs);
 				if (ProgramConf.Bool.IgnoreJunctionsAndSymlinks.get()
-						&& !isFile && Util.isJunctionOrSymlink(fileOrDir))
+						&& !isFile && isJunctionOrSymlink(fileOrDir, attrs))
 					continue;
 			}
 			catch (Throwable t) {
@@ -85,14 +119,14 @@ abstract class HtmlFileLister<T extends Throwable> extends Stoppable<T> {
 					handleHtmlPair(fileOrDir, null);
 				else
 					handleFile(fileOrDir);
-			} else if (fileOrDir.isDirectory()) {
+			} else if (isDirectory(fileOrDir, attrs)) {
 				handleDir(fileOrDir);
 			}
 		}
 	}
 	
 	private void runWithHtmlPairing() {
-		File[] filesOrDirs = Util.listFiles(parentDir);
+		File[] filesOrDirs = listFiles();
 		if (filesOrDirs.length == 0)
 			return; // Returning early avoids allocating the two lists below
 		
@@ -105,13 +139,14 @@ abstract class HtmlFileLister<T extends Throwable> extends Stoppable<T> {
 			if (isStopped())
 				return;
 			
+			BasicFileAttributes attrs = attributes.get(fileOrDir.getName());
 			boolean isFile;
 			try {
-				if (Util.isSymLink(fileOrDir))
+				if (isSymLink(fileOrDir, attrs))
 					continue;
-				isFile = fileOrDir.isFile();
+				isFile = isFile(fileOrDir, attrs);
 				if (ProgramConf.Bool.IgnoreJunctionsAndSymlinks.get()
-						&& !isFile && Util.isJunctionOrSymlink(fileOrDir))
+						&& !isFile && isJunctionOrSymlink(fileOrDir, attrs))
 					continue;
 			}
 			catch (Throwable t) {
@@ -125,7 +160,7 @@ abstract class HtmlFileLister<T extends Throwable> extends Stoppable<T> {
 				else if (!skip(fileOrDir))
 					handleFile(fileOrDir);
 			}
-			else if (fileOrDir.isDirectory()) {
+			else if (isDirectory(fileOrDir, attrs)) {
 				tempDirs.add(fileOrDir);
 			}
 		}
@@ -173,6 +208,120 @@ abstract class HtmlFileLister<T extends Throwable> extends Stoppable<T> {
 		}
 	}
 
+	/**
+	 * Lists the entries of the parent directory and reads their basic
+	 * attributes along the way. Falls back to {@link Util#listFiles(File)}
+	 * without attributes for directories inside archives, which are only
+	 * accessible through TrueZIP, and if the directory can't be read with
+	 * NIO.
+	 */
+	@NotNull
+	private File[] listFiles() {
+		if (parentDir instanceof TFile) {
+			TFile tzDir = (TFile) parentDir;
+			if (tzDir.isArchive() || tzDir.getEnclArchive() != null)
+				return Util.listFiles(parentDir);
+		}
+		
+		// Wrap in java.io.File to shield against TFile instances
+		java.nio.file.Path dirPath = new File(parentDir.getPath()).toPath();
+		List<File> filesOrDirs = new ArrayList<File>();
+		Map<String, BasicFileAttributes> attributes = new HashMap<String, BasicFileAttributes>();
+		DirectoryStream<java.nio.file.Path> stream = null;
+		try {
+			stream = Files.newDirectoryStream(dirPath);
+			for (java.nio.file.Path path : stream) {
+				String name = path.getFileName().toString();
+				File fileOrDir = parentDir instanceof TFile
+					? new TFile(parentDir, name)
+					: new File(parentDir, name);
+				filesOrDirs.add(fileOrDir);
+				
+				/*
+				 * TrueZIP treats zip archives as directories, so their file
+				 * type must be queried through TrueZIP.
+				 */
+				if (fileOrDir instanceof TFile && ((TFile) fileOrDir).isArchive())
+					continue;
+				try {
+					attributes.put(name, Files.readAttributes(
+						path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+					if (statCounter != null)
+						statCounter.countAttributeRead();
+				}
+				catch (IOException e) {
+					// Fall back to querying this entry through java.io.File
+				}
+			}
+		}
+		catch (IOException e) {
+			return Util.listFiles(parentDir);
+		}
+		catch (DirectoryIteratorException e) {
+			return Util.listFiles(parentDir);
+		}
+		finally {
+			Closeables.closeQuietly(stream);
+		}
+		this.attributes = attributes;
+		return filesOrDirs.toArray(new File[filesOrDirs.size()]);
+	}
+	
+	/**
+	 * Returns the basic attributes that were read for the given entry of the
+	 * parent directory while listing the latter, or null if no attributes are
+	 * available for it. Subclasses can use this in the handle methods to avoid
+	 * calling <code>lastModified()</code> and <code>length()</code> on the
+	 * given files. The returned attributes are a snapshot and don't reflect
+	 * later changes to the file.
+	 */
+	@Nullable
+	protected final BasicFileAttributes getAttributes(@NotNull File fileOrDir) {
+		return attributes.get(fileOrDir.getName());
+	}
+	
+	private boolean isSymLink(	@NotNull File fileOrDir,
+								@Nullable BasicFileAttributes attrs) {
+		if (attrs == null)
+			return Util.isSymLink(fileOrDir);
+		countAvoidedCalls(2); // Util.isSymLink resolves two canonical paths
+		return attrs.isSymbolicLink();
+	}
+	
+	private boolean isJunctionOrSymlink(@NotNull File fileOrDir,
+										@Nullable BasicFileAttributes attrs) {
+		if (attrs == null || !Util.IS_WINDOWS)
+			return Util.isJunctionOrSymlink(fileOrDir);
+		countAvoidedCalls(1);
+		/*
+		 * Directory junctions are reparse points that are neither symlinks
+		 * nor directories, and are therefore reported as 'other'.
+		 */
+		return attrs.isSymbolicLink() || attrs.isOther();
+	}
+	
+	private boolean isFile(	@NotNull File fileOrDir,
+							@Nullable BasicFileAttributes attrs) {
+		if (attrs == null)
+			return fileOrDir.isFile();
+		countAvoidedCalls(1);
+		return attrs.isRegularFile();
+	}
+	
+	private boolean isDirectory(@NotNull File fileOrDir,
+								@Nullable BasicFileAttributes attrs) {
+		// Junctions must be followed unless they're ignored
+		if (attrs == null || attrs.isOther())
+			return fileOrDir.isDirectory();
+		countAvoidedCalls(1);
+		return attrs.isDirectory();
+	}
+	
+	private void countAvoidedCalls(int count) {
+		if (statCounter != null)
+			statCounter.countAvoidedCalls(count);
+	}
+
 	private boolean isHtmlFile(@NotNull File file) {
 		return Util.hasExtension(file.getName(), htmlExtensions);
 	}
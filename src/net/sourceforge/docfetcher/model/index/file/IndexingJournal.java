@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.index.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import net.sourceforge.docfetcher.model.LuceneIndex;
+import net.sourceforge.docfetcher.model.Path;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Records the progress of an index update that was interrupted, so that the
+ * next update can resume where the interrupted one stopped instead of walking
+ * the whole file tree again.
+ * <p>
+ * The journal holds the paths of the folders whose subtrees were completely
+ * visited. When a folder is completed, the paths of its subfolders are
+ * replaced by its own path, so the journal only holds the topmost completed
+ * folders. The update that resumes the interrupted one skips these folders.
+ * The journal is deleted when an update finishes without being canceled.
+ * <p>
+ * The journal is saved next to the Lucene index when the update is canceled
+ * and at each checkpoint (see {@link Checkpointer}), i.e. only at points where
+ * the Lucene index and the tree of the index are written to disk as well.
+ * Archives are recorded as a whole, like folders, and only plain folders
+ * outside of archives are recorded: An archive that was only partially
+ * visited is unpacked and visited again.
+ * <p>
+ * Folders are recorded as completed as soon as the tree walk leaves them,
+ * while some of their files may still be waiting in the parse pipeline. If
+ * the indexing is canceled before these files are indexed, the folders
+ * containing them are removed from the journal again (see
+ * {@link #setIncomplete(Path)}).
+ *
+ * @author Tran Nam Quang
+ */
+@ThreadSafe
+public final class IndexingJournal {
+
+	public static final String FILENAME = "indexing-journal.txt";
+
+	private final File file;
+	private final Set<String> completed = new HashSet<String>(); // guarded by 'this' lock
+
+	private IndexingJournal(@NotNull File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Returns the journal of the given index, or null if the index only exists
+	 * in RAM. If <tt>resume</tt> is true, the returned journal contains the
+	 * progress of the last interrupted update if there was one. Otherwise, it
+	 * is empty, and the progress on disk is only replaced once the journal is
+	 * saved or deleted.
+	 */
+	@Nullable
+	static IndexingJournal load(@NotNull FileIndex index, boolean resume) {
+		File file = getFile(index);
+		if (file == null)
+			return null;
+		IndexingJournal journal = new IndexingJournal(file);
+		if (resume && file.isFile()) {
+			try {
+				for (String line : Files.readAllLines(file.toPath(), Charsets.UTF_8))
+					if (!line.isEmpty())
+						journal.completed.add(line);
+			}
+			catch (IOException e) {
+				// Start over with an empty journal
+				Util.printErr(e);
+				journal.completed.clear();
+			}
+		}
+		return journal;
+	}
+
+	/**
+	 * Returns whether the last update of the given index was interrupted and
+	 * left a journal, in which case the index should be updated again.
+	 */
+	public static boolean exists(@NotNull LuceneIndex index) {
+		File file = getFile(index);
+		return file != null && file.isFile();
+	}
+
+	/**
+	 * If the last update of the given index was interrupted and left a
+	 * journal, makes the next update of the index resume it (see
+	 * {@link FileIndex#requestResume()}) and returns true. Otherwise, returns
+	 * false.
+	 */
+	public static boolean requestResume(@NotNull LuceneIndex index) {
+		if (!exists(index))
+			return false;
+		if (index instanceof FileIndex)
+			((FileIndex) index).requestResume();
+		return true;
+	}
+
+	@Nullable
+	private static File getFile(@NotNull LuceneIndex index) {
+		Path indexDirPath = index.getIndexDirPath();
+		if (indexDirPath == null)
+			return null;
+		return new File(indexDirPath.getCanonicalFile(), FILENAME);
+	}
+
+	/**
+	 * Returns whether the given folder was completely visited by an earlier
+	 * update and can be skipped.
+	 */
+	public synchronized boolean isCompleted(@NotNull FileFolder folder) {
+		return !completed.isEmpty()
+			&& completed.contains(folder.getPath().getPath());
+	}
+
+	/**
+	 * Records that the given folder and all of its subfolders have been
+	 * completely visited.
+	 */
+	public synchronized void setCompleted(@NotNull FileFolder folder) {
+		for (FileFolder subFolder : folder.getSubFolders())
+			completed.remove(subFolder.getPath().getPath());
+		completed.add(folder.getPath().getPath());
+	}
+
+	/**
+	 * Removes the folders containing the file at the given path from the
+	 * journal, so that the next update will visit them again. This should be
+	 * called for files that haven't been indexed because the indexing was
+	 * canceled.
+	 */
+	public synchronized void setIncomplete(@NotNull Path filePath) {
+		String path = filePath.getPath();
+		Iterator<String> it = completed.iterator();
+		while (it.hasNext())
+			if (path.startsWith(it.next() + "/"))
+				it.remove();
+	}
+
+	/**
+	 * Writes the journal to disk, replacing the previously written one.
+	 */
+	public synchronized void save() throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+		file.getParentFile().mkdirs();
+		Files.write(tempFile.toPath(), completed, Charsets.UTF_8);
+		Files.move(
+			tempFile.toPath(), file.toPath(),
+			StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Deletes the journal from disk and forgets the recorded folders. This
+	 * should be called when an update has walked the whole tree.
+	 */
+	public synchronized void delete() {
+		completed.clear();
+		file.delete();
+	}
+
+}
@@ -11,15 +11,20 @@
 
 package net.sourceforge.docfetcher.model.index.file;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 
+import net.sourceforge.docfetcher.enums.ProgramConf;
+import net.sourceforge.docfetcher.model.Cancelable;
 import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.TextCache;
 import net.sourceforge.docfetcher.model.parse.ParseResult;
+import net.sourceforge.docfetcher.model.parse.ParseService;
 import net.sourceforge.docfetcher.util.CheckedOutOfMemoryError;
 import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
 
 import org.apache.lucene.document.Document;
 
@@ -28,28 +33,65 @@ import org.apache.lucene.document.Document;
  */
 abstract class LuceneDocWriter {
 	
+	@Nullable private final TextCache textCache;
+	
+	protected LuceneDocWriter() {
+		this(null);
+	}
+	
+	/**
+	 * If the given text cache is not null, the extracted text of each written
+	 * document is also put into the cache, provided that it is identical to
+	 * the text shown in the preview pane.
+	 */
+	protected LuceneDocWriter(@Nullable TextCache textCache) {
+		this.textCache = textCache;
+	}
+	
 	public final void add(	@NotNull FileDocument doc,
-							@NotNull File file,
-							@NotNull ParseResult parseResult)
+							long fileSize,
+							@NotNull ParseResult parseResult,
+							@NotNull Cancelable cancelable)
 			throws IOException, CheckedOutOfMemoryError {
-		Document luceneDoc = createLuceneDoc(doc, file, parseResult);
+		Document luceneDoc = createLuceneDoc(
+			doc, fileSize, parseResult, cancelable);
+		cacheText(doc, parseResult);
 		write(doc, luceneDoc, true);
 	}
 	
 	public void update(	@NotNull FileDocument doc,
-						@NotNull File file,
-						@NotNull ParseResult parseResult)
+						long fileSize,
+						@NotNull ParseResult parseResult,
+						@NotNull Cancelable cancelable)
 			throws IOException, CheckedOutOfMemoryError {
-		Document luceneDoc = createLuceneDoc(doc, file, parseResult);
+		Document luceneDoc = createLuceneDoc(
+			doc, fileSize, parseResult, cancelable);
+		cacheText(doc, parseResult);
 		write(doc, luceneDoc, false);
 	}
+	
+	/*
+	 * This is called before the synchronized write method, so that with
+	 * several parser threads, the compression of the text doesn't hold up the
+	 * Lucene index writer.
+	 */
+	private void cacheText(	@NotNull FileDocument doc,
+							@NotNull ParseResult parseResult) {
+		if (textCache == null || !appendMetadata() || parseResult.isStreaming())
+			return;
+		if (!ParseService.isRenderedTextIndexed(parseResult.getParserName()))
+			return;
+		textCache.put(
+			doc.getUniqueId(), doc.getLastModified(), parseResult.getContent());
+	}
 
 	@NotNull
 	private Document createLuceneDoc(	@NotNull FileDocument doc,
-										@NotNull File file,
-										@NotNull ParseResult parseResult) {
+										long fileSize,
+										@NotNull ParseResult parseResult,
+										@NotNull Cancelable cancelable) {
 		/*
-		 * The given file might be a temporary one, so we'll have to get the
+		 * The parsed file might be a temporary one, so we'll have to get the
 		 * original filename and last-modified value from the document.
 		 */
 		Document luceneDoc = new Document();
@@ -66,8 +108,14 @@ abstract class LuceneDocWriter {
 				luceneDoc.add(Fields.TITLE.create(Util.splitFilename(filename)[0]));
 			else
 				luceneDoc.add(Fields.TITLE.create(title));
-			luceneDoc.add(Fields.SIZE.create(file.length()));
+			luceneDoc.add(Fields.SIZE.create(fileSize));
 			luceneDoc.add(Fields.LAST_MODIFIED.create(String.valueOf(doc.getLastModified())));
+			
+			// Columns of the result table
+			luceneDoc.add(Fields.FILENAME.createDocValue(filename));
+			luceneDoc.add(Fields.TYPE.createDocValue(extension));
+			luceneDoc.add(Fields.SIZE.createDocValue(fileSize));
+			luceneDoc.add(Fields.LAST_MODIFIED.createDocValue(doc.getLastModified()));
 			List<String> authors = parseResult.getAuthors();
 			if (authors != null)
 				for (String author : authors)
@@ -82,7 +130,18 @@ abstract class LuceneDocWriter {
 		 * user wouldn't find the file if we store only the full filename and
 		 * the user searches for the filename without extension.
 		 */
-		luceneDoc.add(Fields.createContent(parseResult.getContent()));
+		int maxChars = ProgramConf.Int.MaxIndexedChars.get();
+		if (parseResult.isStreaming()) {
+			// The content will be read when the document is written
+			Reader reader = parseResult.getContentReader(maxChars, cancelable);
+			luceneDoc.add(Fields.createContent(reader));
+		}
+		else {
+			CharSequence content = parseResult.getContent();
+			if (maxChars > 0 && content.length() > maxChars)
+				content = content.subSequence(0, maxChars);
+			luceneDoc.add(Fields.createContent(content));
+		}
 		StringBuilder metadata = parseResult.getMetadata();
 		metadata.append(filename);
 		String basename = Util.splitFilename(filename)[0];
@@ -96,6 +155,22 @@ abstract class LuceneDocWriter {
 	
 	protected abstract boolean appendMetadata();
 	
+	/**
+	 * Returns whether the documents given to this writer are written before
+	 * the add and update methods return, so that the content of streaming
+	 * parse results can be read directly by the Lucene index writer. If this
+	 * returns false, streaming parse results must be read into memory before
+	 * they're handed over to this writer.
+	 */
+	protected boolean supportsStreaming() {
+		return true;
+	}
+	
+	/**
+	 * Writes the given Lucene document. If the document was created from a
+	 * streaming parse result, its content is read by the Lucene index writer
+	 * during this call.
+	 */
 	public abstract void write(	@NotNull FileDocument doc,
 								@NotNull Document luceneDoc,
 								boolean added) throws IOException,
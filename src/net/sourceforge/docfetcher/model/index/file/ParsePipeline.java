@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.index.file;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.docfetcher.enums.ProgramConf;
+import net.sourceforge.docfetcher.model.index.IndexingError;
+import net.sourceforge.docfetcher.model.index.IndexingException;
+import net.sourceforge.docfetcher.model.index.IndexingInfo;
+import net.sourceforge.docfetcher.model.index.IndexingReporter;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+
+/**
+ * The parsing stage of the indexing pipeline: The directory walk in
+ * {@link FileIndex} runs on the indexing thread and submits the files to parse
+ * to this class, which runs the text extraction on a fixed number of worker
+ * threads. The extracted documents then go into a single
+ * {@link SimpleDocWriter}, whose methods are synchronized, so the Lucene
+ * index is still written by one thread at a time.
+ * <p>
+ * The number of files that can be queued or in progress at any given time is
+ * bounded; if the workers can't keep up, the directory walk is blocked until
+ * one of them has finished.
+ * <p>
+ * If a worker encounters an unrecoverable {@link IndexingException}, no
+ * further work is accepted, and the exception is rethrown on the indexing
+ * thread the next time it calls {@link #submit(Job)} or
+ * {@link #awaitCompletion()}.
+ *
+ * @author Tran Nam Quang
+ */
+final class ParsePipeline implements Closeable {
+
+	public interface Job {
+		public void run() throws IndexingException;
+	}
+
+	private final ExecutorService executor;
+	private final Semaphore slots;
+	private final int capacity;
+	@Nullable private volatile Throwable failure;
+
+	private ParsePipeline(int threadCount) {
+		capacity = threadCount * 2;
+		slots = new Semaphore(capacity);
+		executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				String name = ParsePipeline.class.getName() + "-" + count.incrementAndGet();
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Returns a new pipeline with the number of worker threads specified in
+	 * the program configuration, or null if the configuration asks for
+	 * single-threaded parsing, in which case files should be parsed directly
+	 * on the indexing thread.
+	 */
+	@Nullable
+	public static ParsePipeline create() {
+		int threadCount = ProgramConf.Int.ParserThreads.get();
+		if (threadCount == 0)
+			threadCount = Runtime.getRuntime().availableProcessors();
+		if (threadCount <= 1)
+			return null;
+		return new ParsePipeline(threadCount);
+	}
+
+	/**
+	 * Returns a reporter that forwards to the given reporter under a common
+	 * lock, so that it can be called from the worker threads. Progress
+	 * information on individual files is discarded, since with several files
+	 * being parsed at once it cannot be attributed to the last reported file.
+	 */
+	@NotNull
+	public static IndexingReporter synchronize(@NotNull final IndexingReporter reporter) {
+		Util.checkNotNull(reporter);
+		if (reporter == IndexingReporter.nullReporter)
+			return reporter;
+		return new IndexingReporter() {
+			public synchronized void setStartTime(long time) {
+				reporter.setStartTime(time);
+			}
+			public synchronized void setEndTime(long time) {
+				reporter.setEndTime(time);
+			}
+			public synchronized void info(@NotNull IndexingInfo info) {
+				reporter.info(info);
+			}
+			public void subInfo(int current, int total) {
+			}
+			public synchronized void fail(@NotNull IndexingError error) {
+				reporter.fail(error);
+			}
+		};
+	}
+
+	/**
+	 * Hands the given job over to the worker threads. Blocks if the maximum
+	 * number of pending jobs has been reached.
+	 */
+	public void submit(@NotNull final Job job) throws IndexingException {
+		Util.checkNotNull(job);
+		checkFailure();
+		slots.acquireUninterruptibly();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						if (failure == null)
+							job.run();
+					}
+					catch (IndexingException e) {
+						failure = e;
+					}
+					catch (RuntimeException e) {
+						failure = e;
+					}
+					catch (Error e) {
+						failure = e;
+					}
+					finally {
+						slots.release();
+					}
+				}
+			});
+		}
+		catch (RuntimeException e) {
+			slots.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Blocks until all submitted jobs have finished.
+	 */
+	public void awaitCompletion() throws IndexingException {
+		slots.acquireUninterruptibly(capacity);
+		slots.release(capacity);
+		checkFailure();
+	}
+
+	private void checkFailure() throws IndexingException {
+		Throwable t = failure;
+		if (t == null)
+			return;
+		if (t instanceof IndexingException)
+			throw (IndexingException) t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		throw (Error) t;
+	}
+
+	/**
+	 * Waits for all running jobs to finish, then terminates the worker
+	 * threads. Any failures of the jobs are ignored.
+	 */
+	@ThreadSafe
+	public void close() {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS));
+		}
+		catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
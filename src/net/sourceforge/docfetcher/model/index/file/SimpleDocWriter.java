@@ -14,43 +14,110 @@ package net.sourceforge.docfetcher.model.index.file;
 import java.io.Closeable;
 import java.io.IOException;
 
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.TextCache;
+import net.sourceforge.docfetcher.model.TreeIndex;
 import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
 import net.sourceforge.docfetcher.util.CheckedOutOfMemoryError;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.store.Directory;
 
 /**
+ * The methods of this class are synchronized so that it can serve as the
+ * common sink for the worker threads of the {@link ParsePipeline}.
+ * 
  * @author Tran Nam Quang
  */
 final class SimpleDocWriter extends LuceneDocWriter implements Closeable {
 	
+	private final TreeIndex<?, ?> index;
 	private final IndexWriterAdapter writer;
+	private final boolean indexReversedTerms;
+	private long writtenCount = 0;
+	private boolean replaceOnAdd = false;
 	
-	public SimpleDocWriter(@NotNull Directory luceneDir) throws IOException {
-		writer = new IndexWriterAdapter(luceneDir);
+	/**
+	 * The given index is used for assigning folder IDs to the parent folders
+	 * of the written documents.
+	 * 
+	 * @see IndexWriterAdapter#IndexWriterAdapter(Directory, boolean, boolean)
+	 */
+	public SimpleDocWriter(	@NotNull TreeIndex<?, ?> index,
+							@NotNull Directory luceneDir,
+							@Nullable TextCache textCache,
+							boolean indexReversedTerms,
+							boolean bulkLoad) throws IOException {
+		super(textCache);
+		this.index = index;
+		this.indexReversedTerms = indexReversedTerms;
+		writer = new IndexWriterAdapter(luceneDir, indexReversedTerms, bulkLoad);
 	}
 	
 	protected boolean appendMetadata() {
 		return true;
 	}
 	
-	public void write(	@NotNull FileDocument doc,
+	/*
+	 * If reversed terms are indexed, the content is indexed twice, so the
+	 * index writer would read streaming content into memory anyway. Letting
+	 * the caller do it avoids doing so while holding the lock of this writer.
+	 */
+	protected boolean supportsStreaming() {
+		return !indexReversedTerms;
+	}
+	
+	/**
+	 * Note that the content of streaming parse results is read while the lock
+	 * of this writer is held, so a very large file will hold up the other
+	 * parser threads until it has been read. Reading the content stops early
+	 * when the indexing is canceled.
+	 */
+	public synchronized void write(	@NotNull FileDocument doc,
 						@NotNull Document luceneDoc,
 						@NotNull boolean added) throws IOException,
 			CheckedOutOfMemoryError {
-		if (added)
+		/*
+		 * The folder ID is added here rather than in createLuceneDoc, since
+		 * the Lucene documents of HTML pairs are created by another writer.
+		 */
+		int folderId = index.getFolderId(doc.getParent());
+		luceneDoc.add(Fields.FOLDER_ID.createDocValue(folderId));
+		if (added && !replaceOnAdd)
 			writer.add(luceneDoc);
 		else
 			writer.update(doc.getUniqueId(), luceneDoc);
+		writtenCount++;
+	}
+	
+	/**
+	 * Sets whether added documents replace the documents with the same UID
+	 * in the Lucene index, like updated documents. This is needed when an
+	 * interrupted update is resumed, since the Lucene index may then contain
+	 * documents that the tree of the index doesn't know about.
+	 */
+	public synchronized void setReplaceOnAdd(boolean replaceOnAdd) {
+		this.replaceOnAdd = replaceOnAdd;
+	}
+	
+	/**
+	 * Returns the number of documents added or updated so far.
+	 */
+	public synchronized long getWrittenCount() {
+		return writtenCount;
+	}
+	
+	public synchronized void commit() throws IOException {
+		writer.commit();
 	}
 
-	public void delete(String uid) throws IOException {
+	public synchronized void delete(String uid) throws IOException {
 		writer.delete(uid);
 	}
 
-	public final void close() throws IOException {
+	public synchronized final void close() throws IOException {
 		writer.close();
 	}
 
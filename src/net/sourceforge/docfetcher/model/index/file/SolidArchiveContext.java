@@ -52,10 +52,12 @@ final class SolidArchiveContext extends FileContext implements FailReporter {
 	                              	@Nullable Path originalPath,
 	                              	@NotNull Cancelable cancelable,
 	                              	@NotNull MutableInt fileCount,
+	                              	@NotNull StatCounter statCounter,
 	                              	boolean isTempArchive,
-	                              	@Nullable File indexParentDir) {
+	                              	@Nullable File indexParentDir,
+	                              	@Nullable ParsePipeline pipeline) {
 		super(config, zipDetector, writer, reporter, originalPath, cancelable,
-			fileCount, indexParentDir);
+			fileCount, statCounter, indexParentDir, pipeline);
 		this.isTempArchive = isTempArchive;
 	}
 	
@@ -71,8 +73,10 @@ final class SolidArchiveContext extends FileContext implements FailReporter {
 				originalPath,
 				superContext.getStopper(),
 				superContext.getFileCount(),
+				superContext.getStatCounter(),
 				isTempArchive,
-				indexParentDir
+				indexParentDir,
+				superContext.getPipeline()
 		);
 	}
 	
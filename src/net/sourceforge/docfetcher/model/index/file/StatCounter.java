@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.index.file;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+
+/**
+ * Counts the file system calls made and avoided during a directory walk. The
+ * walk reads the basic attributes of each directory entry in a single call
+ * and then answers queries like <code>isFile()</code>,
+ * <code>lastModified()</code> and <code>length()</code> from these
+ * attributes. Each query answered this way is counted as an avoided call, and
+ * the difference between avoided calls and attribute reads is the number of
+ * calls saved compared to querying the files one attribute at a time.
+ *
+ * @author Tran Nam Quang
+ */
+@ThreadSafe
+final class StatCounter {
+
+	private final AtomicLong attributeReads = new AtomicLong();
+	private final AtomicLong avoidedCalls = new AtomicLong();
+
+	public void countAttributeRead() {
+		attributeReads.incrementAndGet();
+	}
+
+	public void countAvoidedCalls(int count) {
+		avoidedCalls.addAndGet(count);
+	}
+
+	public long getAttributeReads() {
+		return attributeReads.get();
+	}
+
+	public long getAvoidedCalls() {
+		return avoidedCalls.get();
+	}
+
+	public long getSavedCalls() {
+		return avoidedCalls.get() - attributeReads.get();
+	}
+
+	public String toString() {
+		return String.format(
+			"%d attribute reads, %d file system calls avoided, %d saved",
+			getAttributeReads(), getAvoidedCalls(), getSavedCalls());
+	}
+
+}
@@ -14,6 +14,7 @@ package net.sourceforge.docfetcher.model.index.outlook;
 import net.sourceforge.docfetcher.model.Folder;
 import net.sourceforge.docfetcher.model.Path;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
 
 /**
  * This class is intended to be a generics-free middleman for the Folder class,
@@ -36,6 +37,11 @@ final class MailFolder extends Folder<MailDocument, MailFolder> {
 		super(path, null);
 	}
 	
+	// Only for loading stored indexes, see OutlookIndex.nodeCodec
+	MailFolder(@NotNull String name, @Nullable Long lastModified) {
+		super(name, lastModified);
+	}
+	
 	public void setHasDeepContent(boolean hasDeepContent) {
 		this.hasDeepContent = hasDeepContent;
 	}
@@ -37,17 +37,20 @@ import com.pff.PSTRecipient;
 
 final class OutlookContext {
 	
+	private final OutlookIndex index;
 	private final IndexingConfig config;
 	private final IndexWriterAdapter writer;
 	private final IndexingReporter reporter;
 	private final Cancelable cancelable;
 	private final MutableInt fileCount = new MutableInt(0);
 
-	public OutlookContext(	@NotNull IndexingConfig config,
+	public OutlookContext(	@NotNull OutlookIndex index,
+	                      	@NotNull IndexingConfig config,
 	                      	@NotNull IndexWriterAdapter writer,
 							@NotNull IndexingReporter reporter,
 							@NotNull Cancelable cancelable) {
-		Util.checkNotNull(config, writer, reporter, cancelable);
+		Util.checkNotNull(index, config, writer, reporter, cancelable);
+		this.index = index;
 		this.config = config;
 		this.writer = writer;
 		this.reporter = reporter;
@@ -105,6 +108,10 @@ final class OutlookContext {
 		luceneDoc.add(Fields.RECIPIENTS.create(recipients));
 		luceneDoc.add(Fields.SIZE.create(size));
 		luceneDoc.add(Fields.PARSER.create(Fields.EMAIL_PARSER));
+		luceneDoc.add(Fields.TYPE.createDocValue("outlook")); //$NON-NLS-1$
+		luceneDoc.add(Fields.SIZE.createDocValue(size));
+		luceneDoc.add(Fields.FOLDER_ID.createDocValue(
+			index.getFolderId(doc.getParent())));
 
 		/*
 		 * The date returned by getMessageDeliveryTime can be null. See bug
@@ -140,7 +147,19 @@ final class OutlookContext {
 				Path path = doc.getPath().createSubPath(filename);
 				ParseResult parseResult = ParseService.parse(
 					config, tempFile, filename, path, reporter, cancelable);
-				luceneDoc.add(Fields.createContent(parseResult.getContent()));
+				
+				// The temporary file is deleted after this method returns
+				CharSequence content;
+				try {
+					content = parseResult.readContent();
+				}
+				catch (IOException e) {
+					throw new ParseException(e);
+				}
+				finally {
+					parseResult.close();
+				}
+				luceneDoc.add(Fields.createContent(content));
 				StringBuilder metadata = parseResult.getMetadata();
 				metadata.append(filename);
 				luceneDoc.add(Fields.createContent(metadata));
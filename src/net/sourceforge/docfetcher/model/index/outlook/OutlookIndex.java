@@ -11,6 +11,8 @@
 
 package net.sourceforge.docfetcher.model.index.outlook;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
@@ -23,6 +25,8 @@ import net.sourceforge.docfetcher.model.Cancelable;
 import net.sourceforge.docfetcher.model.DocumentType;
 import net.sourceforge.docfetcher.model.Path;
 import net.sourceforge.docfetcher.model.TreeIndex;
+import net.sourceforge.docfetcher.model.TreeIndexStore;
+import net.sourceforge.docfetcher.model.TreeIndexStore.NodeCodec;
 import net.sourceforge.docfetcher.model.UtilModel;
 import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
 import net.sourceforge.docfetcher.model.index.IndexingError;
@@ -33,6 +37,7 @@ import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
 import net.sourceforge.docfetcher.util.annotations.Nullable;
 import net.sourceforge.docfetcher.util.annotations.RecursiveMethod;
+import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 
 import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
@@ -60,6 +65,42 @@ public final class OutlookIndex extends TreeIndex<MailDocument, MailFolder> {
 	
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * Creates and inspects the tree nodes of Outlook indexes when they're
+	 * written to or read from disk by the {@link TreeIndexStore}.
+	 */
+	@VisibleForPackageGroup
+	public static final NodeCodec<?, ?> nodeCodec = new NodeCodec<MailDocument, MailFolder>() {
+		public MailFolder createRootFolder(Path path) {
+			return new MailFolder(path);
+		}
+		public MailFolder createSubFolder(String name, Long lastModified) {
+			return new MailFolder(name, lastModified);
+		}
+		public MailDocument createDocument(	MailFolder parent,
+											String name,
+											String displayName,
+											long lastModified) {
+			return new MailDocument(
+				parent, name, displayName == null ? name : displayName,
+				lastModified);
+		}
+		public MailFolder getAttachedFolder(MailDocument document) {
+			return null;
+		}
+		public void setAttachedFolder(MailDocument document, MailFolder folder) {
+			// Mails have no attached folders, so this is never called
+		}
+		public void writeFolderData(MailFolder folder, DataOutput out)
+				throws IOException {
+			out.writeBoolean(folder.hasDeepContent());
+		}
+		public void readFolderData(MailFolder folder, DataInput in)
+				throws IOException {
+			folder.setHasDeepContent(in.readBoolean());
+		}
+	};
+	
 	private MailFolder simplifiedRootFolder;
 	
 	public OutlookIndex(@Nullable File indexParentDir, @NotNull File pstFile) {
@@ -103,9 +144,10 @@ public final class OutlookIndex extends TreeIndex<MailDocument, MailFolder> {
 				return IndexingResult.SUCCESS_UNCHANGED;
 			rootFolder.setLastModified(newLastModified);
 			
-			writer = new IndexWriterAdapter(getLuceneDir());
+			writer = new IndexWriterAdapter(
+				getLuceneDir(), getConfig().isIndexReversedTerms());
 			OutlookContext context = new OutlookContext(
-					getConfig(), writer, reporter, cancelable
+					this, getConfig(), writer, reporter, cancelable
 			);
 			pstFile = new PSTFile(rootFile.getPath());
 			visitFolder(context, rootFolder, pstFile.getRootFolder());
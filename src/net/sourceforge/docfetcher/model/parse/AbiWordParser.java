@@ -61,6 +61,11 @@ final class AbiWordParser extends StreamParser {
 		return metaElement.getTextExtractor().toString();
 	}
 	
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false; // renderText is overridden
+	}
+	
 	@Override
 	protected String renderText(InputStream in, String filename)
 			throws ParseException {
@@ -79,6 +79,11 @@ public final class ChmParser extends StreamParser {
 		return new ParseResult(contents.toString());
 	}
 	
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false; // renderText is overridden
+	}
+	
 	@Override
 	protected String renderText(InputStream in, String filename)
 			throws ParseException {
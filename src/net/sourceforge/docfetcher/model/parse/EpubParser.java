@@ -44,6 +44,11 @@ public final class EpubParser extends FileParser {
 		return parse(file, context, false);
 	}
 	
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false; // renderText is overridden
+	}
+	
 	protected String renderText(File file, String filename)
 			throws ParseException {
 		ParseContext context = new ParseContext(filename);
@@ -51,6 +51,11 @@ final class ExifParser extends StreamParser {
 		return new ParseResult(sb.toString());
 	}
 	
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false; // renderText is overridden
+	}
+	
 	@Override
 	protected String renderText(InputStream in, String filename)
 			throws ParseException {
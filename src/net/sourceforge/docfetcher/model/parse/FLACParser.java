@@ -90,6 +90,11 @@ final class FLACParser extends StreamParser {
 		return new ParseResult(text);
 	}
 	
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false; // renderText is overridden
+	}
+	
 	@Override
 	protected String renderText(InputStream in, String filename)
 			throws ParseException {
@@ -12,6 +12,7 @@
 package net.sourceforge.docfetcher.model.parse;
 
 import java.io.File;
+import java.io.IOException;
 
 import net.sourceforge.docfetcher.util.annotations.NotNull;
 
@@ -47,7 +48,12 @@ abstract class FileParser extends Parser {
 								@NotNull String filename)
 			throws ParseException {
 		ParseContext context = new ParseContext(filename);
-		return parse(file, context).getContent().toString();
+		try {
+			return parse(file, context).readContent().toString();
+		}
+		catch (IOException e) {
+			throw new ParseException(e);
+		}
 	}
 
 }
@@ -102,6 +102,11 @@ public final class HtmlParser extends StreamParser {
 		return null;
 	}
 	
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false; // renderText is overridden
+	}
+	
 	@Override
 	protected String renderText(InputStream in, String filename)
 			throws ParseException {
@@ -44,6 +44,11 @@ final class MSExcelParser extends MSOfficeParser {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false; // renderText is overridden
+	}
+	
 	protected String renderText(File file, String filename)
 			throws ParseException {
 		InputStream in = null;
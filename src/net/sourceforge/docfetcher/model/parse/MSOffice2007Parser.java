@@ -170,6 +170,11 @@ abstract class MSOffice2007Parser extends FileParser {
 		}
 	}
 	
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false; // renderText is overridden
+	}
+	
 	@Override
 	protected final String renderText(File file, String filename)
 			throws ParseException {
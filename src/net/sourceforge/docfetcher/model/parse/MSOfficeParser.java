@@ -155,6 +155,11 @@ abstract class MSOfficeParser extends FileParser {
 		return parseResult;
 	}
 	
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false; // renderText is overridden
+	}
+	
 	protected String renderText(File file, String filename)
 			throws ParseException {
 		InputStream in = null;
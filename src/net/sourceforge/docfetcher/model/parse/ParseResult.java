@@ -11,23 +11,94 @@
 
 package net.sourceforge.docfetcher.model.parse;
 
+import java.io.Closeable;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 
+import javolution.io.CharSequenceReader;
+import net.sourceforge.docfetcher.model.Cancelable;
 import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.MutableCopy;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
 import net.sourceforge.docfetcher.util.annotations.Nullable;
 
+import com.google.common.io.Closeables;
+
 /**
  * TODO doc: simplifies creation of Lucene Document objects for the parsers.
  * allows method chaining
+ * <p>
+ * For very large documents, parsers can create a <em>streaming</em> parse
+ * result, whose content is not held in memory, but read incrementally from a
+ * reader when the document is added to the index. A streaming parse result
+ * must be closed after usage.
  * 
  * @author Tran Nam Quang
  */
-public final class ParseResult {
+public final class ParseResult implements Closeable {
+	
+	/**
+	 * Wraps the reader of a streaming parse result so that the Lucene index
+	 * writer stops reading after a maximum number of characters, and so that
+	 * read errors don't surface inside the index writer, where they would
+	 * abort the entire indexing. Instead, a read error ends the content, and
+	 * the error can be retrieved afterwards. A cancel request also ends the
+	 * content, since the reader is drained while other parser threads are
+	 * waiting for the index writer.
+	 */
+	private static final class ContentReader extends FilterReader {
+		private final long maxChars;
+		private final Cancelable cancelable;
+		private long charCount = 0;
+		@Nullable private IOException error;
+		
+		public ContentReader(	@NotNull Reader in,
+								long maxChars,
+								@NotNull Cancelable cancelable) {
+			super(in);
+			this.maxChars = maxChars;
+			this.cancelable = cancelable;
+		}
+		
+		public int read() throws IOException {
+			char[] c = new char[1];
+			return read(c, 0, 1) == -1 ? -1 : c[0];
+		}
+		
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (error != null || (maxChars > 0 && charCount >= maxChars))
+				return -1;
+			if (cancelable.isCanceled())
+				return -1;
+			if (maxChars > 0)
+				len = (int) Math.min(len, maxChars - charCount);
+			try {
+				int n = in.read(cbuf, off, len);
+				if (n > 0)
+					charCount += n;
+				return n;
+			}
+			catch (IOException e) {
+				error = e;
+				return -1;
+			}
+		}
+		
+		public long skip(long n) throws IOException {
+			throw new IOException("Skipping not supported.");
+		}
+		
+		public boolean markSupported() {
+			return false;
+		}
+	}
 	
 	@NotNull private CharSequence content;
+	@Nullable private Reader contentReader; // Non-null for streaming results
+	@Nullable private ContentReader limitedReader;
 	@Nullable private String title;
 	@Nullable private List<String> authors;
 	@Nullable private List<String> miscMetadata;
@@ -37,17 +108,100 @@ public final class ParseResult {
 		setContent(content);
 	}
 	
+	/**
+	 * Creates a streaming parse result whose content will be read from the
+	 * given reader. The reader is closed when the parse result is closed.
+	 */
+	public ParseResult(@NotNull Reader contentReader) {
+		this.content = "";
+		this.contentReader = Util.checkNotNull(contentReader);
+	}
+	
+	public boolean isStreaming() {
+		return contentReader != null;
+	}
+	
+	/**
+	 * Returns the content of a parse result that is not streaming.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the parse result is streaming.
+	 * @see #readContent()
+	 */
 	@NotNull
 	public CharSequence getContent() {
+		if (contentReader != null)
+			throw new IllegalStateException("Parse result is streaming.");
 		return content;
 	}
 	
 	@NotNull
 	public ParseResult setContent(@Nullable CharSequence content) {
 		this.content = content == null ? "" : content;
+		this.contentReader = null;
 		return this;
 	}
 	
+	/**
+	 * Returns the content of the parse result. If the parse result is
+	 * streaming, the content is read into memory in its entirety, after which
+	 * the parse result is no longer streaming. This should therefore be
+	 * avoided for large documents.
+	 */
+	@NotNull
+	public CharSequence readContent() throws IOException {
+		if (contentReader == null)
+			return content;
+		StringBuilder sb = new StringBuilder();
+		char[] buf = new char[8192];
+		int n;
+		while ((n = contentReader.read(buf)) != -1)
+			sb.append(buf, 0, n);
+		contentReader.close();
+		return setContent(sb).content;
+	}
+	
+	/**
+	 * Returns a reader over the content, which stops after the given maximum
+	 * number of characters, or reads the entire content if the maximum is
+	 * zero or less. For streaming parse results, this may only be called once,
+	 * read errors are not thrown by the reader, but can be retrieved
+	 * afterwards via {@link #getReadError()}, and the reader stops as soon as
+	 * the given cancelable is canceled.
+	 */
+	@NotNull
+	public Reader getContentReader(	long maxChars,
+									@NotNull Cancelable cancelable) {
+		if (contentReader == null) {
+			CharSequence limited = maxChars > 0 && content.length() > maxChars
+				? content.subSequence(0, (int) maxChars)
+				: content;
+			return new CharSequenceReader().setInput(limited);
+		}
+		Util.checkThat(limitedReader == null);
+		limitedReader = new ContentReader(contentReader, maxChars, cancelable);
+		return limitedReader;
+	}
+	
+	/**
+	 * Returns the error that occurred while the reader returned by
+	 * {@link #getContentReader(long, Cancelable)} was being read, or null if
+	 * there was none.
+	 */
+	@Nullable
+	public IOException getReadError() {
+		return limitedReader == null ? null : limitedReader.error;
+	}
+	
+	/**
+	 * Closes the content reader of a streaming parse result. Does nothing if
+	 * the parse result is not streaming.
+	 */
+	public void close() {
+		if (contentReader != null)
+			Closeables.closeQuietly(contentReader);
+	}
+	
 	@Nullable
 	public String getTitle() {
 		return title;
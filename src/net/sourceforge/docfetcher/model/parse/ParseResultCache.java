@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.parse;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.List;
+
+import net.sourceforge.docfetcher.enums.ProgramConf;
+import net.sourceforge.docfetcher.model.DiskCache;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+
+import de.schlichtherle.truezip.file.TFile;
+import de.schlichtherle.truezip.file.TFileInputStream;
+
+/**
+ * An on-disk cache for parse results, keyed by the content of the parsed
+ * files rather than by their paths. When an index is rebuilt, or when a
+ * folder is moved and thus indexed under a new path, the files only have to
+ * be hashed instead of being parsed again.
+ * <p>
+ * The key of an entry is computed from the name of the parser, the file size
+ * and a hash of the file content. The entries are kept in a
+ * {@link DiskCache}, which bounds the total size of the cache directory,
+ * deleting the least recently used entries first, and which also deletes
+ * entries that haven't been used for a certain number of days.
+ * <p>
+ * Streaming parse results are never cached.
+ *
+ * @author Tran Nam Quang
+ */
+@ThreadSafe
+public final class ParseResultCache {
+
+	public static final String DIRNAME = "parse-cache";
+
+	private static final int VERSION = 1;
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	private final DiskCache store;
+
+	public ParseResultCache(@NotNull File cacheDir, long maxSize, long maxAge) {
+		this(new DiskCache(cacheDir, maxSize, maxAge));
+	}
+
+	private ParseResultCache(@NotNull DiskCache store) {
+		this.store = store;
+	}
+
+	/**
+	 * Returns the parse result cache for the indexes in the given index parent
+	 * directory, or null if the given directory is null or if the cache has
+	 * been disabled in the program configuration.
+	 */
+	@Nullable
+	public static ParseResultCache getInstance(@Nullable File indexParentDir) {
+		if (indexParentDir == null)
+			return null;
+		long maxSize = ProgramConf.Int.ParseCacheSize.get() * 1024L * 1024L;
+		if (maxSize <= 0)
+			return null;
+		long maxAge = ProgramConf.Int.ParseCacheMaxAge.get() * DAY;
+		File cacheDir = new File(indexParentDir, DIRNAME);
+		return new ParseResultCache(DiskCache.getInstance(cacheDir, maxSize, maxAge));
+	}
+
+	/**
+	 * Computes the key under which the result of parsing the given file with
+	 * the given parser is stored. This reads the entire file, but is still
+	 * much cheaper than parsing it. Accepts TrueZIP files.
+	 */
+	@NotNull
+	public static String computeKey(@NotNull String parserName,
+									@NotNull File file) throws IOException {
+		MessageDigest md = DiskCache.newDigest();
+		md.update(parserName.getBytes(Charsets.UTF_8));
+		md.update((byte) 0);
+
+		// The output of the text parser depends on the encoding override
+		String encodingOverride = ProgramConf.Str.TextEncodingOverride.get().trim();
+		md.update(encodingOverride.getBytes(Charsets.UTF_8));
+		md.update((byte) 0);
+
+		InputStream in = null;
+		try {
+			if (file instanceof TFile && ((TFile) file).isEntry())
+				in = new TFileInputStream(file);
+			else
+				in = new FileInputStream(file);
+			byte[] buf = new byte[65536];
+			long size = 0;
+			int nread;
+			while ((nread = in.read(buf)) != -1) {
+				md.update(buf, 0, nread);
+				size += nread;
+			}
+			md.update(String.valueOf(size).getBytes(Charsets.UTF_8));
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
+		return DiskCache.toKey(md);
+	}
+
+	/**
+	 * Returns the parse result stored under the given key, or null if the
+	 * cache has no such entry. The parser name of the returned parse result
+	 * is not set.
+	 */
+	@Nullable
+	public ParseResult get(@NotNull String key) {
+		Util.checkNotNull(key);
+		return store.get(key, new DiskCache.EntryReader<ParseResult>() {
+			public ParseResult read(DataInputStream in) throws IOException {
+				if (in.readInt() != VERSION)
+					return null;
+				ParseResult result = new ParseResult(readString(in));
+				if (in.readBoolean())
+					result.setTitle(readString(in));
+				for (int i = in.readInt(); i > 0; i--)
+					result.addAuthor(readString(in));
+				for (int i = in.readInt(); i > 0; i--)
+					result.addMiscMetadata(readString(in));
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Stores the given parse result under the given key, replacing any
+	 * previous entry. Streaming parse results are ignored. Failures are not
+	 * reported, since the cache is only an optimization.
+	 */
+	public void put(@NotNull String key, @NotNull final ParseResult result) {
+		Util.checkNotNull(key, result);
+		if (result.isStreaming())
+			return;
+		store.put(key, new DiskCache.EntryWriter() {
+			public void write(DataOutputStream out) throws IOException {
+				out.writeInt(VERSION);
+				writeString(out, result.getContent().toString());
+				String title = result.getTitle();
+				out.writeBoolean(title != null);
+				if (title != null)
+					writeString(out, title);
+				writeStrings(out, result.getAuthors());
+				writeStrings(out, result.getMiscMetadata());
+			}
+		});
+	}
+
+	@NotNull
+	private static String readString(@NotNull DataInputStream in)
+			throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, Charsets.UTF_8);
+	}
+
+	private static void writeString(@NotNull DataOutputStream out,
+									@NotNull String str) throws IOException {
+		byte[] bytes = str.getBytes(Charsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeStrings(	@NotNull DataOutputStream out,
+										@Nullable List<String> strings)
+			throws IOException {
+		if (strings == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(strings.size());
+		for (String str : strings)
+			writeString(out, str);
+	}
+
+}
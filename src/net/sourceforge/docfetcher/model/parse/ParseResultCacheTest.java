@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import net.sourceforge.docfetcher.TestFiles;
+import net.sourceforge.docfetcher.model.Cancelable;
+import net.sourceforge.docfetcher.model.Path;
+import net.sourceforge.docfetcher.model.index.IndexingConfig;
+import net.sourceforge.docfetcher.model.index.IndexingReporter;
+import net.sourceforge.docfetcher.util.Util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class ParseResultCacheTest {
+
+	private File tempDir;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Util.createTempDir();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Util.deleteRecursively(tempDir);
+	}
+
+	@Test
+	public void testKeyedByContent() throws Exception {
+		File file1 = new File(tempDir, "a.txt");
+		File file2 = new File(tempDir, "moved.txt");
+		File file3 = new File(tempDir, "b.txt");
+		Files.write("same content", file1, Charsets.UTF_8);
+		Files.write("same content", file2, Charsets.UTF_8);
+		Files.write("other content", file3, Charsets.UTF_8);
+
+		String key = ParseResultCache.computeKey("TextParser", file1);
+		assertEquals(key, ParseResultCache.computeKey("TextParser", file2));
+		assertFalse(key.equals(ParseResultCache.computeKey("TextParser", file3)));
+		assertFalse(key.equals(ParseResultCache.computeKey("HtmlParser", file1)));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		File cacheDir = new File(tempDir, ParseResultCache.DIRNAME);
+		ParseResultCache cache = new ParseResultCache(cacheDir, 1024 * 1024, 1000 * 60);
+		assertNull(cache.get("missing"));
+
+		ParseResult result = new ParseResult("content")
+			.setTitle("title")
+			.addAuthor("author 1")
+			.addAuthor("author 2")
+			.addMiscMetadata("misc");
+		cache.put("key", result);
+
+		ParseResult loaded = cache.get("key");
+		assertEquals("content", loaded.getContent().toString());
+		assertEquals("title", loaded.getTitle());
+		assertEquals(Arrays.asList("author 1", "author 2"), loaded.getAuthors());
+		assertEquals(Arrays.asList("misc"), loaded.getMiscMetadata());
+
+		// Entries are found again after a restart
+		cache = new ParseResultCache(cacheDir, 1024 * 1024, 1000 * 60);
+		assertEquals("content", cache.get("key").getContent().toString());
+	}
+
+	@Test
+	public void testCanceledParseNotCached() throws Exception {
+		File cacheDir = new File(tempDir, ParseResultCache.DIRNAME);
+		ParseResultCache cache = new ParseResultCache(cacheDir, 1024 * 1024, 1000 * 60);
+		IndexingConfig config = new IndexingConfig();
+		File file = TestFiles.multi_page_pdf.get();
+		Path path = new Path(file);
+		String fullText = ParseService.parse(
+			config, file, file.getName(), path, IndexingReporter.nullReporter,
+			Cancelable.nullCancelable).getContent().toString();
+
+		// Cancel after the first page
+		Cancelable cancelable = new Cancelable() {
+			private int count = 0;
+			public boolean isCanceled() {
+				return ++count > 1;
+			}
+		};
+		String partialText = ParseService.parse(
+			config, file, file.getName(), path, IndexingReporter.nullReporter,
+			cancelable, cache).getContent().toString();
+		assertTrue(partialText.length() < fullText.length());
+
+		String text = ParseService.parse(
+			config, file, file.getName(), path, IndexingReporter.nullReporter,
+			Cancelable.nullCancelable, cache).getContent().toString();
+		assertEquals(fullText, text);
+		String key = ParseResultCache.computeKey("PdfParser", file);
+		assertEquals(fullText, cache.get(key).getContent().toString());
+	}
+
+}
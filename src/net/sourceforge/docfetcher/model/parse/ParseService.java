@@ -202,6 +202,26 @@ public final class ParseService {
 	                                @NotNull IndexingReporter reporter,
 	                                @NotNull Cancelable cancelable)
 			throws ParseException, CheckedOutOfMemoryError {
+		return parse(config, file, filename, filepath, reporter, cancelable, null);
+	}
+	
+	/**
+	 * Parses the given file like
+	 * {@link #parse(IndexingConfig, File, String, Path, IndexingReporter, Cancelable)},
+	 * but first looks up the parse result in the given cache, if the latter
+	 * is not null. The parser is selected as usual, but is only invoked if the
+	 * cache has no entry for the content of the file. New parse results are
+	 * added to the cache, unless the parsing was canceled.
+	 */
+	@NotNull
+	public static ParseResult parse(@NotNull IndexingConfig config,
+	                                @NotNull File file,
+	                                @NotNull String filename,
+	                                @NotNull Path filepath,
+	                                @NotNull IndexingReporter reporter,
+	                                @NotNull Cancelable cancelable,
+	                                @Nullable ParseResultCache cache)
+			throws ParseException, CheckedOutOfMemoryError {
 		ParseContext context = new ParseContext(filename, reporter, cancelable);
 		
 		// Search for appropriate parser by mimetype
@@ -215,7 +235,7 @@ public final class ParseService {
 					config, file, filename);
 				for (Parser parser : matchingParsers) {
 					try {
-						return doParse(config, parser, file, context);
+						return doParse(config, parser, file, context, cache);
 					}
 					catch (ParseException e) {
 						// Try next parser
@@ -230,7 +250,7 @@ public final class ParseService {
 		// Search for appropriate parser by filename
 		Parser parser = findParserByName(config, file.getName());
 		if (parser != null)
-			return doParse(config, parser, file, context);
+			return doParse(config, parser, file, context, cache);
 		
 		/*
 		 * Fall back to filename parser if allowed. The filename will be added
@@ -247,11 +267,28 @@ public final class ParseService {
 	private static ParseResult doParse(	@NotNull IndexingConfig config,
 										@NotNull Parser parser,
 										@NotNull final File file,
-										@NotNull ParseContext context)
+										@NotNull ParseContext context,
+										@Nullable ParseResultCache cache)
 			throws ParseException, CheckedOutOfMemoryError {
+		String parserName = parser.getClass().getSimpleName();
 		try {
 			ParseResult result = null;
-			if (ProgramConf.Bool.DryRun.get()) {
+			String cacheKey = null;
+			if (cache != null && !ProgramConf.Bool.DryRun.get()) {
+				try {
+					cacheKey = ParseResultCache.computeKey(parserName, file);
+					result = cache.get(cacheKey);
+				}
+				catch (IOException e) {
+					// Parse the file without the cache
+				}
+			}
+			
+			boolean isCached = result != null;
+			if (isCached) {
+				// Nothing to parse
+			}
+			else if (ProgramConf.Bool.DryRun.get()) {
 				result = new ParseResult("");
 			}
 			else if (parser instanceof StreamParser) {
@@ -268,7 +305,9 @@ public final class ParseService {
 					throw new ParseException(e);
 				}
 				finally {
-					Closeables.closeQuietly(in);
+					// Streaming results are still reading from the stream
+					if (result == null || !result.isStreaming())
+						Closeables.closeQuietly(in);
 				}
 			}
 			else if (parser instanceof FileParser) {
@@ -312,7 +351,15 @@ public final class ParseService {
 			else {
 				throw new IllegalStateException();
 			}
-			String parserName = parser.getClass().getSimpleName();
+			/*
+			 * Parsers return the text extracted so far when the indexing is
+			 * canceled. Such partial results must not be cached, since the
+			 * file would otherwise keep its truncated text when it is indexed
+			 * again.
+			 */
+			if (cacheKey != null && !isCached
+					&& !context.getCancelable().isCanceled())
+				cache.put(cacheKey, result);
 			return result.setParserName(parserName);
 		}
 		catch (final RuntimeException e) {
@@ -386,6 +433,20 @@ public final class ParseService {
 //		throw new IllegalArgumentException();
 	}
 	
+	/**
+	 * Returns whether the text that the given parser extracts for indexing is
+	 * the same as the text it renders for the preview pane, so that the former
+	 * can be used in place of the latter.
+	 *
+	 * @see Parser#isRenderedTextIndexed()
+	 */
+	public static boolean isRenderedTextIndexed(@NotNull String parserName) {
+		for (Parser parser : parsers)
+			if (parser.getClass().getSimpleName().equals(parserName))
+				return parser.isRenderedTextIndexed();
+		return false; // e.g. the filename parser
+	}
+	
 	@Nullable
 	private static Parser findParserByName(	@NotNull IndexingConfig config,
 											@NotNull String filename) {
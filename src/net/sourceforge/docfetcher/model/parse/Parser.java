@@ -30,5 +30,16 @@ public abstract class Parser {
 	
 	@NotNull
 	public abstract String getTypeLabel();
+	
+	/**
+	 * Returns whether the text this parser extracts for indexing is the same
+	 * as the text it renders for the preview pane, so that the former can be
+	 * used in place of the latter. Subclasses that override
+	 * <code>renderText</code> with a different output must override this
+	 * method to return false.
+	 */
+	protected boolean isRenderedTextIndexed() {
+		return true;
+	}
 
 }
@@ -158,6 +158,15 @@ public final class PdfParser extends StreamParser {
 		}
 	}
 	
+	/*
+	 * The preview is rendered page by page and with different text stripping
+	 * settings, so it differs from the indexed text.
+	 */
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false;
+	}
+	
 	protected Collection<String> getExtensions() {
 		return extensions;
 	}
@@ -82,6 +82,11 @@ final class RtfParser extends StreamParser {
 		}
 	}
 	
+	@Override
+	protected boolean isRenderedTextIndexed() {
+		return false; // renderText is overridden
+	}
+	
 	protected String renderText(InputStream in, String filename)
 			throws ParseException {
 		BodyContentHandler bodyHandler = new BodyContentHandler(-1);
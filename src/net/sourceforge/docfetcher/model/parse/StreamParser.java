@@ -11,6 +11,7 @@
 
 package net.sourceforge.docfetcher.model.parse;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 import net.sourceforge.docfetcher.util.annotations.NotNull;
@@ -53,7 +54,12 @@ abstract class StreamParser extends Parser {
 	                            @NotNull String filename)
 			throws ParseException {
 		ParseContext context = new ParseContext(filename);
-		return parse(in, context).getContent().toString();
+		try {
+			return parse(in, context).readContent().toString();
+		}
+		catch (IOException e) {
+			throw new ParseException(e);
+		}
 	}
 
 }
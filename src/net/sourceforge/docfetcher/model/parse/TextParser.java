@@ -13,6 +13,7 @@ package net.sourceforge.docfetcher.model.parse;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.util.Collection;
 
 import net.sourceforge.docfetcher.enums.Msg;
@@ -24,6 +25,46 @@ import net.sourceforge.docfetcher.util.CharsetDetectorHelper;
  */
 public final class TextParser extends StreamParser {
 	
+	/**
+	 * Text files with more than this number of characters are not read into
+	 * memory, but streamed into the index.
+	 */
+	private static final int STREAMING_THRESHOLD = 1024 * 1024;
+	
+	/**
+	 * The maximum number of bytes at the beginning of a text file from which
+	 * the charset is detected.
+	 */
+	private static final int DETECTION_LIMIT = 1024 * 1024;
+	
+	/**
+	 * Returns the given prefix of the content, followed by the remaining
+	 * content from the given reader.
+	 */
+	private static final class PrefixedReader extends Reader {
+		private final CharSequence prefix;
+		private final Reader in;
+		private int pos = 0;
+		
+		public PrefixedReader(CharSequence prefix, Reader in) {
+			this.prefix = prefix;
+			this.in = in;
+		}
+		
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (pos >= prefix.length())
+				return in.read(cbuf, off, len);
+			int n = Math.min(len, prefix.length() - pos);
+			for (int i = 0; i < n; i++)
+				cbuf[off + i] = prefix.charAt(pos++);
+			return n;
+		}
+		
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+	
 	private final Collection<String> types = MediaType.Col.text("plain");
 	
 	TextParser() {
@@ -34,8 +75,25 @@ public final class TextParser extends StreamParser {
 	                            ParseContext context) throws ParseException {
 		try {
 			CharsetDetectorHelper.charsetOverride = ProgramConf.Str.TextEncodingOverride.get().trim();
-			String contents = CharsetDetectorHelper.toString(in);
-			return new ParseResult(contents);
+			
+			/*
+			 * The charset is detected from a bounded prefix of the file, and
+			 * the file is then decoded incrementally, so that the raw bytes
+			 * are never held in memory as a whole.
+			 */
+			Reader reader = CharsetDetectorHelper.toReader(in, DETECTION_LIMIT);
+			
+			// Decode up to the streaming threshold
+			StringBuilder head = new StringBuilder();
+			char[] buf = new char[8192];
+			int nread;
+			while (head.length() <= STREAMING_THRESHOLD) {
+				nread = reader.read(buf);
+				if (nread == -1)
+					return new ParseResult(head.toString());
+				head.append(buf, 0, nread);
+			}
+			return new ParseResult(new PrefixedReader(head, reader));
 		}
 		catch (IOException e) {
 			throw new ParseException(e);
@@ -12,44 +12,66 @@
 package net.sourceforge.docfetcher.model.search;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import net.sourceforge.docfetcher.model.Fields;
 import net.sourceforge.docfetcher.model.IndexRegistry;
-import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
+import net.sourceforge.docfetcher.model.search.ResultDocument.PreviewPageHandler;
 import net.sourceforge.docfetcher.util.CheckedOutOfMemoryError;
 import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.MutableCopy;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.RecursiveMethod;
 import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 
-import org.apache.lucene.analysis.Token;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.memory.MemoryIndex;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.MultiTermQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.highlight.Formatter;
-import org.apache.lucene.search.highlight.Highlighter;
-import org.apache.lucene.search.highlight.NullFragmenter;
-import org.apache.lucene.search.highlight.QueryScorer;
-import org.apache.lucene.search.highlight.TokenGroup;
 import org.apache.lucene.search.vectorhighlight.FastVectorHighlighter;
 import org.apache.lucene.search.vectorhighlight.FieldPhraseList;
 import org.apache.lucene.search.vectorhighlight.FieldPhraseList.WeightedPhraseInfo;
 import org.apache.lucene.search.vectorhighlight.FieldQuery;
 import org.apache.lucene.search.vectorhighlight.FieldTermStack;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.RAMDirectory;
-
-import com.google.common.io.Closeables;
+import org.apache.lucene.search.vectorhighlight.FieldTermStack.TermInfo;
 
 /**
+ * Computes the ranges of the search terms in texts shown on the preview panel.
+ * <p>
+ * The text is put into a single-document in-memory index that records token
+ * offsets, and the offsets of the query terms are read from the term vectors
+ * of that index. The in-memory index is reused across calls on the same
+ * thread. Texts longer than {@link #FIRST_CHUNK_SIZE} can be highlighted
+ * chunk-wise via {@link #highlight(Query, boolean, String, PreviewPageHandler)},
+ * so that the beginning of a very large text can be shown before the rest of
+ * it has been highlighted.
+ * 
  * @author Tran Nam Quang
  */
 @VisibleForPackageGroup
 public final class HighlightService {
 	
+	/**
+	 * The approximate length of the first chunk of a text that is
+	 * highlighted chunk-wise, which should cover the first few screens of the
+	 * text preview.
+	 */
+	static final int FIRST_CHUNK_SIZE = 64 * 1024;
+	
+	/** The approximate length of the subsequent chunks. */
+	static final int CHUNK_SIZE = 1024 * 1024;
+	
+	private static final ThreadLocal<MemoryIndex> memoryIndex = new ThreadLocal<MemoryIndex>() {
+		protected MemoryIndex initialValue() {
+			return new MemoryIndex(true); // must store token offsets
+		}
+	};
+	
 	private HighlightService() {
 	}
 	
@@ -60,12 +82,49 @@ public final class HighlightService {
 												@NotNull String text)
 			throws CheckedOutOfMemoryError {
 		text = trimDocument(text);
-		List<Range> ranges;
-		if (isPhraseQuery)
-			ranges = highlightPhrases(query, text);
-		else
-			ranges = highlight(query, text);
-		return new HighlightedString(text, ranges);
+		return new HighlightedString(text, getRanges(query, isPhraseQuery, text));
+	}
+	
+	/**
+	 * Trims the given text like {@link #highlight(Query, boolean, String)},
+	 * splits it into chunks at line breaks, and passes the highlighted chunks
+	 * to the given handler in order. The first chunk is short, so that it can
+	 * be displayed quickly. Returns early if the handler has been stopped.
+	 * <p>
+	 * Since the chunks are highlighted separately, phrases spanning a chunk
+	 * boundary are not highlighted.
+	 */
+	public static void highlight(	@NotNull Query query,
+									boolean isPhraseQuery,
+									@NotNull String text,
+									@NotNull PreviewPageHandler handler)
+			throws CheckedOutOfMemoryError {
+		text = trimDocument(text);
+		int start = 0;
+		int chunkSize = FIRST_CHUNK_SIZE;
+		do {
+			int end = getChunkEnd(text, start, chunkSize);
+			String chunk = text.substring(start, end);
+			List<Range> ranges = getRanges(query, isPhraseQuery, chunk);
+			handler.handlePage(new HighlightedString(chunk, ranges));
+			start = end;
+			chunkSize = CHUNK_SIZE;
+		}
+		while (start < text.length() && !handler.isStopped());
+	}
+	
+	// Returns the end of the chunk, preferably right after a line break
+	private static int getChunkEnd(@NotNull String text, int start, int chunkSize) {
+		int end = start + chunkSize;
+		if (end >= text.length())
+			return text.length();
+		int lineBreak = text.lastIndexOf('\n', end - 1);
+		if (lineBreak >= start + chunkSize / 2)
+			return lineBreak + 1;
+		for (int i = end - 1; i >= start + chunkSize / 2; i--)
+			if (Character.isWhitespace(text.charAt(i)))
+				return i + 1;
+		return end;
 	}
 	
 	/**
@@ -95,95 +154,111 @@ public final class HighlightService {
 	
 	@MutableCopy
 	@NotNull
-	@SuppressWarnings("unchecked")
-	private static List<Range> highlightPhrases(@NotNull Query query,
-												@NotNull String text)
+	private static List<Range> getRanges(	@NotNull Query query,
+											boolean isPhraseQuery,
+											@NotNull String text)
 			throws CheckedOutOfMemoryError {
-		// FastVectorHighlighter only supports TermQuery, PhraseQuery and BooleanQuery
-		FastVectorHighlighter highlighter = new FastVectorHighlighter(true, true, null, null);
-		FieldQuery fieldQuery = highlighter.getFieldQuery(query);
-		Directory directory = new RAMDirectory();
+		MemoryIndex index = memoryIndex.get();
 		try {
+			// This might throw an OutOfMemoryError
+			index.addField(Fields.CONTENT.key(), text, IndexRegistry.getAnalyzer());
+			
 			/*
-			 * Hack: We have to put the given text in a RAM index, because the
-			 * fast-vector highlighter can only work on index readers
+			 * The reversed terms are only added if leading wildcards were
+			 * rewritten into queries on the reversed terms, so that these are
+			 * highlighted as well.
 			 */
-			IndexWriterAdapter writer = new IndexWriterAdapter(directory);
-			Document doc = new Document();
-			doc.add(Fields.createContent(text, true)); // must store token positions and offsets
-			writer.add(doc);
-			Closeables.closeQuietly(writer); // flush unwritten documents into index
-			IndexReader indexReader = DirectoryReader.open(directory);
+			boolean hasReversedTerms = isOnReversedTerms(query);
+			if (hasReversedTerms)
+				index.addField(
+					Fields.CONTENT_REV.key(), text,
+					IndexRegistry.getReversedTermsAnalyzer());
+			IndexReader reader = index.createSearcher().getIndexReader();
 			
-			// This might throw an OutOfMemoryError
+			/*
+			 * Passing the reader to the highlighter causes wildcard and other
+			 * multi-term queries to be expanded to the terms in the text.
+			 */
+			FastVectorHighlighter highlighter = new FastVectorHighlighter(true, true, null, null);
+			FieldQuery fieldQuery = highlighter.getFieldQuery(query, reader);
 			FieldTermStack fieldTermStack = new FieldTermStack(
-				indexReader, 0, Fields.CONTENT.key(), fieldQuery);
+				reader, 0, Fields.CONTENT.key(), fieldQuery);
 			
-			FieldPhraseList fieldPhraseList = new FieldPhraseList(fieldTermStack, fieldQuery);
-			
-			// Hack: We'll use reflection to access a private field
-			java.lang.reflect.Field field = fieldPhraseList.getClass().getDeclaredField("phraseList");
-			field.setAccessible(true);
-			LinkedList<WeightedPhraseInfo> infoList = (LinkedList<WeightedPhraseInfo>) field.get(fieldPhraseList);
-			
-			List<Range> ranges = new ArrayList<Range> (infoList.size());
-			for (WeightedPhraseInfo phraseInfo : infoList) {
-				int start = phraseInfo.getStartOffset();
-				int end = phraseInfo.getEndOffset();
-				ranges.add(new Range(start, end - start));
+			List<Range> ranges = new ArrayList<Range> ();
+			if (isPhraseQuery) {
+				FieldPhraseList fieldPhraseList = new FieldPhraseList(fieldTermStack, fieldQuery);
+				for (WeightedPhraseInfo phraseInfo : fieldPhraseList.getPhraseList()) {
+					int start = phraseInfo.getStartOffset();
+					int end = phraseInfo.getEndOffset();
+					ranges.add(new Range(start, end - start));
+				}
 			}
-			return ranges;
-		}
-		catch (OutOfMemoryError e) {
-			throw new CheckedOutOfMemoryError(e);
-		}
-		catch (Exception e) {
-			return new ArrayList<Range> (0);
-		}
-	}
-	
-	@MutableCopy
-	@NotNull
-	private static List<Range> highlight(	@NotNull Query query,
-											@NotNull String text)
-			throws CheckedOutOfMemoryError {
-		final List<Range> ranges = new ArrayList<Range> ();
-		/*
-		 * A formatter is supposed to return formatted text, but since we're
-		 * only interested in the start and end offsets of the search terms, we
-		 * return null and store the offsets in a list.
-		 */
-		Formatter nullFormatter = new Formatter() {
-			public String highlightTerm(String originalText, TokenGroup tokenGroup) {
-				for (int i = 0; i < tokenGroup.getNumTokens(); i++) {
-					Token token = tokenGroup.getToken(i);
-					if (tokenGroup.getScore(i) == 0)
-						continue;
-					int start = token.startOffset();
-					int end = token.endOffset();
+			else {
+				/*
+				 * The term infos are sorted by start offset. Overlapping terms,
+				 * e.g. from a tokenizer emitting compound words and their
+				 * parts, or words matched in both the content and the reversed
+				 * terms, are merged into a single range.
+				 */
+				List<TermInfo> termInfos = new ArrayList<TermInfo>();
+				addTermInfos(fieldTermStack, termInfos);
+				if (hasReversedTerms)
+					addTermInfos(new FieldTermStack(
+						reader, 0, Fields.CONTENT_REV.key(), fieldQuery),
+						termInfos);
+				Collections.sort(termInfos, new Comparator<TermInfo>() {
+					public int compare(TermInfo t1, TermInfo t2) {
+						return Integer.compare(
+							t1.getStartOffset(), t2.getStartOffset());
+					}
+				});
+				int lastEnd = -1;
+				for (TermInfo termInfo : termInfos) {
+					int start = termInfo.getStartOffset();
+					int end = termInfo.getEndOffset();
+					if (start < lastEnd) {
+						Range last = ranges.remove(ranges.size() - 1);
+						start = last.start;
+						end = Math.max(end, lastEnd);
+					}
 					ranges.add(new Range(start, end - start));
+					lastEnd = end;
 				}
-				return null;
 			}
-		};
-		String key = Fields.CONTENT.key();
-		Highlighter highlighter = new Highlighter(nullFormatter, new QueryScorer(query, key));
-		highlighter.setMaxDocCharsToAnalyze(Integer.MAX_VALUE);
-		highlighter.setTextFragmenter(new NullFragmenter());
-		try {
-			/*
-			 * This has a return value, but we ignore it since we only want the
-			 * offsets. Might throw an OutOfMemoryError.
-			 */
-			highlighter.getBestFragment(IndexRegistry.getAnalyzer(), key, text);
+			return ranges;
 		}
 		catch (OutOfMemoryError e) {
 			throw new CheckedOutOfMemoryError(e);
 		}
 		catch (Exception e) {
 			Util.printErr(e);
+			return new ArrayList<Range> (0);
+		}
+		finally {
+			index.reset();
 		}
-		return ranges;
+	}
+	
+	private static void addTermInfos(	@NotNull FieldTermStack fieldTermStack,
+										@NotNull List<TermInfo> termInfos) {
+		TermInfo termInfo;
+		while ((termInfo = fieldTermStack.pop()) != null)
+			termInfos.add(termInfo);
+	}
+	
+	// Returns whether the given query searches the field of reversed terms
+	@RecursiveMethod
+	private static boolean isOnReversedTerms(@NotNull Query query) {
+		if (query instanceof MultiTermQuery)
+			return ((MultiTermQuery) query).getField().equals(
+				Fields.CONTENT_REV.key());
+		if (query instanceof BoostQuery)
+			return isOnReversedTerms(((BoostQuery) query).getQuery());
+		if (query instanceof BooleanQuery)
+			for (BooleanClause clause : ((BooleanQuery) query).clauses())
+				if (isOnReversedTerms(clause.getQuery()))
+					return true;
+		return false;
 	}
 	
 }
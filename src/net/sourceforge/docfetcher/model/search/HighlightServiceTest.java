@@ -12,12 +12,17 @@
 package net.sourceforge.docfetcher.model.search;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
 import net.sourceforge.docfetcher.model.FieldTypes;
+import net.sourceforge.docfetcher.model.Fields;
 import net.sourceforge.docfetcher.model.IndexRegistry;
 import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
+import net.sourceforge.docfetcher.model.search.ResultDocument.PreviewPageHandler;
 
 import org.ansj.library.DicLibrary;
 import org.apache.lucene.analysis.Analyzer;
@@ -121,4 +126,79 @@ public final class HighlightServiceTest {
 			Closeables.closeQuietly(searcher.getIndexReader());
 		}
 	}
+
+	@Test
+	public void testHighlight() throws Exception {
+		QueryParser queryParser = new QueryParser(Fields.CONTENT.key(), IndexRegistry.getAnalyzer());
+		queryParser.setAllowLeadingWildcard(true);
+		String text = "some text, more texts";
+		
+		HighlightedString string = HighlightService.highlight(queryParser.parse("text"), false, text);
+		assertEquals(1, string.getRangeCount());
+		assertEquals(5, string.getRanges().get(0).start);
+		assertEquals(4, string.getRanges().get(0).length);
+		
+		string = HighlightService.highlight(queryParser.parse("tex*"), false, text);
+		assertEquals(2, string.getRangeCount());
+		assertEquals(16, string.getRanges().get(1).start);
+		
+		string = HighlightService.highlight(queryParser.parse("\"some text\""), true, text);
+		assertEquals(1, string.getRangeCount());
+		assertEquals(0, string.getRanges().get(0).start);
+		assertEquals(9, string.getRanges().get(0).length);
+	}
+	
+	@Test
+	public void testHighlightLeadingWildcard() throws Exception {
+		PhraseDetectingQueryParser queryParser = new PhraseDetectingQueryParser(
+			Fields.CONTENT.key(), IndexRegistry.getAnalyzer());
+		queryParser.setAllowLeadingWildcard(true);
+		String text = "support texts";
+		
+		// Only words ending with the pattern, not the reversed words
+		HighlightedString string = HighlightService.highlight(queryParser.parse("*s"), false, text);
+		assertEquals(1, string.getRangeCount());
+		assertEquals(8, string.getRanges().get(0).start);
+		
+		// Rewritten into a query on the reversed terms
+		queryParser.setReverseLeadingWildcards(true);
+		string = HighlightService.highlight(queryParser.parse("*port"), false, text);
+		assertEquals(1, string.getRangeCount());
+		assertEquals(0, string.getRanges().get(0).start);
+		assertEquals(7, string.getRanges().get(0).length);
+	}
+	
+	@Test
+	public void testHighlightChunks() throws Exception {
+		QueryParser queryParser = new QueryParser(Fields.CONTENT.key(), IndexRegistry.getAnalyzer());
+		Query query = queryParser.parse("text");
+		StringBuilder sb = new StringBuilder();
+		int lineCount = 0;
+		while (sb.length() < HighlightService.FIRST_CHUNK_SIZE + HighlightService.CHUNK_SIZE) {
+			sb.append("line ").append(lineCount).append(" with some text\n");
+			lineCount++;
+		}
+		String text = sb.toString().trim();
+		
+		final List<HighlightedString> chunks = new ArrayList<HighlightedString>();
+		HighlightService.highlight(query, false, text, new PreviewPageHandler() {
+			public void handlePage(HighlightedString pageText) {
+				chunks.add(pageText);
+			}
+			public boolean isStopped() {
+				return false;
+			}
+		});
+		
+		assertEquals(3, chunks.size());
+		assertTrue(chunks.get(0).length() <= HighlightService.FIRST_CHUNK_SIZE);
+		assertTrue(chunks.get(0).getString().endsWith("\n"));
+		HighlightedString merged = chunks.get(0);
+		for (int i = 1; i < chunks.size(); i++)
+			merged.add(chunks.get(i));
+		assertEquals(text, merged.getString());
+		assertEquals(lineCount, merged.getRangeCount());
+		Range last = merged.getRanges().get(lineCount - 1);
+		assertEquals("text", text.substring(last.start, last.start + last.length));
+	}
 }
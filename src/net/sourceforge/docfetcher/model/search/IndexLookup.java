@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.util.List;
+
+import net.sourceforge.docfetcher.model.LuceneIndex;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.Immutable;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+
+/**
+ * Maps the document IDs of a composite reader to the indexes the documents
+ * belong to. The table holds the first document ID of each index, which is
+ * binary-searched for a given document ID via {@link ReaderUtil#subIndex(int,
+ * int[])}, so that looking up the index of a search result takes logarithmic
+ * time in the number of indexes and doesn't allocate anything.
+ *
+ * @author Tran Nam Quang
+ */
+@Immutable
+@VisibleForPackageGroup
+public final class IndexLookup {
+
+	private final int[] docBases;
+	private final LuceneIndex[] indexes;
+
+	/**
+	 * Creates a lookup table for the given composite reader, whose
+	 * sub-readers must belong to the given indexes, in the same order.
+	 */
+	public IndexLookup(	@NotNull IndexReader reader,
+						@NotNull List<LuceneIndex> indexes) {
+		List<IndexReaderContext> children = reader.getContext().children();
+		Util.checkThat(children.size() == indexes.size());
+		docBases = new int[children.size()];
+		for (int i = 0; i < docBases.length; i++)
+			docBases[i] = children.get(i).docBaseInParent;
+		this.indexes = indexes.toArray(new LuceneIndex[indexes.size()]);
+	}
+
+	/**
+	 * Creates a lookup table from the given first document IDs of the given
+	 * indexes. The document IDs must be in ascending order.
+	 */
+	public IndexLookup(@NotNull int[] docBases, @NotNull LuceneIndex[] indexes) {
+		Util.checkThat(docBases.length == indexes.length);
+		this.docBases = docBases.clone();
+		this.indexes = indexes.clone();
+	}
+
+	/**
+	 * Returns the index containing the document with the given ID.
+	 */
+	@NotNull
+	public LuceneIndex getIndex(int docId) {
+		return indexes[ReaderUtil.subIndex(docId, docBases)];
+	}
+
+}
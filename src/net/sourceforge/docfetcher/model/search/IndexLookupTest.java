@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import net.sourceforge.docfetcher.model.LuceneIndex;
+import net.sourceforge.docfetcher.model.index.file.FileIndex;
+
+import org.junit.Test;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class IndexLookupTest {
+
+	@Test
+	public void testGetIndex() {
+		LuceneIndex[] indexes = new LuceneIndex[4];
+		for (int i = 0; i < indexes.length; i++)
+			indexes[i] = new FileIndex(null, new File("index" + i));
+
+		// The second index is empty
+		IndexLookup lookup = new IndexLookup(
+			new int[] { 0, 10, 10, 25 }, indexes);
+		assertSame(indexes[0], lookup.getIndex(0));
+		assertSame(indexes[0], lookup.getIndex(9));
+		assertSame(indexes[2], lookup.getIndex(10));
+		assertSame(indexes[2], lookup.getIndex(24));
+		assertSame(indexes[3], lookup.getIndex(25));
+		assertSame(indexes[3], lookup.getIndex(1000));
+	}
+
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.sourceforge.docfetcher.model.DocumentType;
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.LuceneIndex;
+import net.sourceforge.docfetcher.model.Path;
+import net.sourceforge.docfetcher.model.TreeCheckState;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * A query that matches all documents whose parent folder is checked in a given
+ * {@link TreeCheckState}. This is meant to be used as a filter clause.
+ * <p>
+ * The matching documents are determined per index segment and cached as a
+ * bitset. For each document, the ID of its parent folder is read from the
+ * folder ID doc values and looked up in the bitsets of the check state. The
+ * documents that have no folder ID, because they were indexed by an earlier
+ * version, or whose folder isn't covered by the check state, are resolved by
+ * scanning the UID terms of the segment and looking up the parent folders by
+ * path.
+ * <p>
+ * Since segments never change once written, the cached bitsets stay valid
+ * until the segments are merged away, and a refreshed searcher only has to
+ * compute bitsets for the segments that were added in the meantime. Deleted
+ * documents are excluded by the searcher, so they don't have to be taken into
+ * account here.
+ *
+ * @author Tran Nam Quang
+ */
+@ThreadSafe
+final class LocationFilterQuery extends Query {
+
+	private final TreeCheckState checkState;
+	@Nullable private final IndexLookup indexLookup;
+
+	// Maps segment core keys to bitsets of matching documents
+	private final Map<Object, FixedBitSet> cache;
+
+	public LocationFilterQuery(@NotNull TreeCheckState checkState) {
+		this.checkState = Util.checkNotNull(checkState);
+		this.indexLookup = null;
+		this.cache = Collections.synchronizedMap(
+			new WeakHashMap<Object, FixedBitSet>());
+	}
+
+	private LocationFilterQuery(@NotNull LocationFilterQuery query,
+								@NotNull IndexLookup indexLookup) {
+		this.checkState = query.checkState;
+		this.indexLookup = indexLookup;
+		this.cache = query.cache;
+	}
+
+	/**
+	 * Returns a query for searching the indexes of the given lookup table,
+	 * which shares the cached bitsets with the receiver. The lookup table is
+	 * needed for finding the index of each segment, whose folder IDs are
+	 * then looked up in the check state.
+	 */
+	@NotNull
+	public LocationFilterQuery withIndexLookup(@NotNull IndexLookup indexLookup) {
+		return new LocationFilterQuery(this, Util.checkNotNull(indexLookup));
+	}
+
+	public Weight createWeight(IndexSearcher searcher, boolean needsScores)
+			throws IOException {
+		return new ConstantScoreWeight(this) {
+			public Scorer scorer(LeafReaderContext context) throws IOException {
+				FixedBitSet bits = getBits(context);
+				if (bits == null)
+					return null;
+				DocIdSetIterator it = new BitSetIterator(bits, bits.cardinality());
+				return new ConstantScoreScorer(this, score(), it);
+			}
+		};
+	}
+
+	@Nullable
+	private FixedBitSet getBits(@NotNull LeafReaderContext context)
+			throws IOException {
+		LeafReader reader = context.reader();
+		Object key = reader.getCoreCacheKey();
+		FixedBitSet bits = cache.get(key);
+		if (bits == null) {
+			bits = computeBits(context);
+			cache.put(key, bits);
+		}
+		return bits.cardinality() == 0 ? null : bits;
+	}
+
+	@NotNull
+	private FixedBitSet computeBits(@NotNull LeafReaderContext context)
+			throws IOException {
+		LeafReader reader = context.reader();
+		int maxDoc = reader.maxDoc();
+		FixedBitSet bits = new FixedBitSet(maxDoc);
+
+		/*
+		 * The segments of the searcher are numbered across all indexes, so
+		 * the segment's first document ID tells which index it belongs to.
+		 */
+		LuceneIndex index = indexLookup == null
+			? null
+			: indexLookup.getIndex(context.docBase);
+		Bits folders = index == null ? null : checkState.getFolders(index);
+		String field = Fields.FOLDER_ID.key();
+		NumericDocValues folderIds = reader.getNumericDocValues(field);
+		if (folders == null || folderIds == null) {
+			resolveByUid(reader, bits, null);
+			return bits;
+		}
+
+		// Documents that have to be resolved by their UIDs
+		FixedBitSet unresolved = new FixedBitSet(maxDoc);
+		boolean hasUnresolved = false;
+		Bits checked = checkState.getCheckedFolders(index);
+		Bits hasFolderId = reader.getDocsWithField(field);
+		int folderCount = folders.length();
+		for (int doc = 0; doc < maxDoc; doc++) {
+			long folderId = hasFolderId.get(doc) ? folderIds.get(doc) : -1;
+			if (folderId < 0 || folderId >= folderCount
+					|| !folders.get((int) folderId)) {
+				unresolved.set(doc);
+				hasUnresolved = true;
+			}
+			else if (checked.get((int) folderId)) {
+				bits.set(doc);
+			}
+		}
+		if (hasUnresolved)
+			resolveByUid(reader, bits, unresolved);
+		return bits;
+	}
+
+	/**
+	 * Sets the bits of the documents in the given segment whose parent folder
+	 * is checked, by looking up the parent folders by path. If the given set
+	 * of unresolved documents is not null, only these documents are
+	 * considered.
+	 */
+	private void resolveByUid(	@NotNull LeafReader reader,
+								@NotNull FixedBitSet bits,
+								@Nullable FixedBitSet unresolved)
+			throws IOException {
+		Terms terms = reader.terms(Fields.UID.key());
+		if (terms == null)
+			return;
+		TermsEnum termsEnum = terms.iterator();
+		PostingsEnum postings = null;
+
+		/*
+		 * The UIDs come in sorted order, so documents in the same folder are
+		 * mostly adjacent and the check result for the last parent folder can
+		 * be reused.
+		 */
+		String lastParent = null;
+		boolean lastChecked = false;
+		BytesRef term;
+		while ((term = termsEnum.next()) != null) {
+			postings = termsEnum.postings(postings, PostingsEnum.NONE);
+			int doc = postings.nextDoc();
+			if (unresolved != null) {
+				while (doc != DocIdSetIterator.NO_MORE_DOCS && !unresolved.get(doc))
+					doc = postings.nextDoc();
+			}
+			if (doc == DocIdSetIterator.NO_MORE_DOCS)
+				continue;
+
+			Path path = DocumentType.extractPath(term.utf8ToString());
+			Path parent = path.splitAtLastSeparator().getLeft();
+			String parentStr = parent.getPath();
+			if (!parentStr.equals(lastParent)) {
+				lastParent = parentStr;
+				lastChecked = checkState.isChecked(parent);
+			}
+			if (!lastChecked)
+				continue;
+			for (; doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc())
+				if (unresolved == null || unresolved.get(doc))
+					bits.set(doc);
+		}
+	}
+
+	public String toString(String field) {
+		return "LocationFilterQuery";
+	}
+
+	/*
+	 * The index lookup table isn't compared, since a segment always belongs
+	 * to the same index, so the matching documents of a segment only depend
+	 * on the check state.
+	 */
+	public boolean equals(Object other) {
+		return sameClassAs(other)
+			&& checkState == ((LocationFilterQuery) other).checkState;
+	}
+
+	public int hashCode() {
+		return 31 * classHash() + System.identityHashCode(checkState);
+	}
+
+}
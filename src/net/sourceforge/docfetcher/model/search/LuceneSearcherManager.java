@@ -0,0 +1,355 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import net.sourceforge.docfetcher.model.IndexLoadingProblems.CorruptedIndex;
+import net.sourceforge.docfetcher.model.LuceneIndex;
+import net.sourceforge.docfetcher.model.index.DecoratedMultiReader;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.Immutable;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReader.ReaderClosedListener;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * Keeps one open Lucene reader per index and combines them into a composite
+ * searcher for the {@link Searcher}.
+ * <p>
+ * On {@link #refresh(List, LuceneIndex, List) refresh}, only the readers of
+ * indexes that may have changed are reopened via
+ * {@link DirectoryReader#openIfChanged(DirectoryReader)}, which reuses all
+ * unchanged segments. The readers of the other indexes are carried over as
+ * they are. The new composite searcher then replaces the current one in a
+ * single volatile write.
+ * <p>
+ * All readers are reference-counted: Searches {@link #acquire() acquire} the
+ * current snapshot and release it when done, so a refresh never waits for
+ * running searches, and running searches never see their readers closed
+ * underneath them. A reader is closed when the last snapshot referring to it
+ * has been released.
+ * <p>
+ * If an executor is given, the composite searchers search groups of index
+ * segments concurrently on the executor and merge the results.
+ *
+ * @author Tran Nam Quang
+ */
+@ThreadSafe
+final class LuceneSearcherManager implements Closeable {
+
+	/**
+	 * A composite searcher over the indexes that were available at the time
+	 * of a refresh. Must be released after usage.
+	 */
+	static final class Snapshot {
+		@NotNull public final IndexSearcher searcher;
+
+		/**
+		 * The indexes of this snapshot, in the same order as the sub-readers of
+		 * the searcher's reader. Indexes that couldn't be opened are not
+		 * included.
+		 */
+		@Immutable @NotNull public final List<LuceneIndex> indexes;
+
+		/** Maps the document IDs of the searcher to the indexes. */
+		@NotNull public final IndexLookup indexLookup;
+
+		/**
+		 * Identifies the state of the indexes of this snapshot: The list
+		 * contains each index followed by the version of its reader. Two
+		 * snapshots with equal generations return the same results for the
+		 * same searches.
+		 */
+		@Immutable @NotNull public final List<Object> generation;
+
+		@NotNull private final DecoratedMultiReader reader;
+		private final CountDownLatch closedLatch = new CountDownLatch(1);
+
+		private Snapshot(	@NotNull DecoratedMultiReader reader,
+							@NotNull List<LuceneIndex> indexes,
+							@NotNull List<Object> generation,
+							@Nullable ExecutorService executor) {
+			this.reader = reader;
+			this.indexes = Collections.unmodifiableList(indexes);
+			this.indexLookup = new IndexLookup(reader, indexes);
+			this.generation = Collections.unmodifiableList(generation);
+			this.searcher = executor == null
+				? new IndexSearcher(reader)
+				: new SlicingIndexSearcher(reader, executor);
+			reader.addReaderClosedListener(new ReaderClosedListener() {
+				public void onClose(IndexReader reader) {
+					closedLatch.countDown();
+				}
+			});
+		}
+
+		@NotNull
+		public DecoratedMultiReader getReader() {
+			return reader;
+		}
+
+		/**
+		 * Returns the groups of segments that the searcher searches
+		 * concurrently, or one group per segment if the searcher doesn't
+		 * search concurrently.
+		 */
+		@NotNull
+		public List<LeafReaderContext[]> getSlices() {
+			if (searcher instanceof SlicingIndexSearcher)
+				return ((SlicingIndexSearcher) searcher).getSlices();
+			List<LeafReaderContext[]> slices = new ArrayList<LeafReaderContext[]>();
+			for (LeafReaderContext leaf : reader.leaves())
+				slices.add(new LeafReaderContext[] { leaf });
+			return slices;
+		}
+
+		/**
+		 * Acquires an additional reference to this snapshot, which must be
+		 * released separately.
+		 */
+		public void incRef() {
+			reader.incRef();
+		}
+
+		public void release() {
+			try {
+				reader.decRef();
+			}
+			catch (IOException e) {
+				Util.printErr(e);
+			}
+		}
+
+		/**
+		 * Blocks until this snapshot has been released by all searches that
+		 * were using it.
+		 */
+		public void awaitClose() {
+			try {
+				closedLatch.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * A searcher that searches groups of segments concurrently. Lucene's
+	 * default is one task per segment, which for many small indexes would
+	 * cost more in task overhead than the concurrency gains, so small
+	 * segments are grouped together.
+	 */
+	private static final class SlicingIndexSearcher extends IndexSearcher {
+		private static final int MIN_DOCS_PER_SLICE = 250000;
+		private static final int MAX_SEGMENTS_PER_SLICE = 5;
+
+		public SlicingIndexSearcher(@NotNull IndexReader reader,
+									@NotNull ExecutorService executor) {
+			super(reader, executor);
+		}
+
+		// Note: This is called from the superclass constructor
+		protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+			List<LeafReaderContext> sorted = new ArrayList<LeafReaderContext>(leaves);
+			Collections.sort(sorted, new Comparator<LeafReaderContext>() {
+				public int compare(LeafReaderContext o1, LeafReaderContext o2) {
+					return o2.reader().maxDoc() - o1.reader().maxDoc();
+				}
+			});
+			List<LeafSlice> slices = new ArrayList<LeafSlice>();
+			List<LeafReaderContext> group = new ArrayList<LeafReaderContext>();
+			int docCount = 0;
+			for (LeafReaderContext leaf : sorted) {
+				group.add(leaf);
+				docCount += leaf.reader().maxDoc();
+				if (docCount >= MIN_DOCS_PER_SLICE
+						|| group.size() >= MAX_SEGMENTS_PER_SLICE) {
+					slices.add(createSlice(group));
+					group.clear();
+					docCount = 0;
+				}
+			}
+			if (!group.isEmpty())
+				slices.add(createSlice(group));
+			return slices.toArray(new LeafSlice[slices.size()]);
+		}
+
+		@NotNull
+		public List<LeafReaderContext[]> getSlices() {
+			List<LeafReaderContext[]> slices = new ArrayList<LeafReaderContext[]>(leafSlices.length);
+			for (LeafSlice slice : leafSlices)
+				slices.add(slice.leaves);
+			return slices;
+		}
+
+		@NotNull
+		private static LeafSlice createSlice(@NotNull List<LeafReaderContext> group) {
+			return new LeafSlice(group.toArray(new LeafReaderContext[group.size()]));
+		}
+	}
+
+	@Nullable private final ExecutorService executor;
+	private final Map<LuceneIndex, DirectoryReader> readers = new HashMap<LuceneIndex, DirectoryReader>(); // guarded by 'this' lock
+	@Nullable private volatile Snapshot current;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param executor
+	 *            The executor on which the composite searchers search
+	 *            concurrently, or null to search on the calling thread.
+	 */
+	public LuceneSearcherManager(@Nullable ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Brings the composite searcher up to date with the given list of indexes.
+	 * Readers are opened for new indexes and released for indexes that are no
+	 * longer in the list. Of the remaining indexes, only the given changed
+	 * index is checked for changes, or all of them if the changed index is
+	 * null.
+	 * <p>
+	 * Indexes that can't be opened are added to the given list of corrupted
+	 * indexes, and are left out of the new searcher.
+	 *
+	 * @return The replaced snapshot, or null if there was none. The returned
+	 *         snapshot has already been released by this manager.
+	 */
+	@Nullable
+	public synchronized Snapshot refresh(	@NotNull List<LuceneIndex> indexes,
+											@Nullable LuceneIndex changedIndex,
+											@NotNull List<CorruptedIndex> corruptedIndexes)
+			throws IOException {
+		Util.checkNotNull(indexes, corruptedIndexes);
+		if (closed)
+			throw new IOException("Searcher has been shut down.");
+
+		Map<LuceneIndex, DirectoryReader> newReaders = new HashMap<LuceneIndex, DirectoryReader>();
+		List<IndexReader> subReaders = new ArrayList<IndexReader>(indexes.size());
+		List<LuceneIndex> openIndexes = new ArrayList<LuceneIndex>(indexes.size());
+		List<Object> generation = new ArrayList<Object>(indexes.size() * 2);
+
+		for (LuceneIndex index : indexes) {
+			DirectoryReader reader = readers.get(index);
+			if (reader == null) {
+				try {
+					reader = DirectoryReader.open(index.getLuceneDir());
+				}
+				catch (IOException e) {
+					Util.printErr(e);
+					corruptedIndexes.add(new CorruptedIndex(index, e));
+					continue;
+				}
+			}
+			else if (changedIndex == null || changedIndex == index) {
+				try {
+					DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+					if (newReader != null) {
+						reader.decRef();
+						reader = newReader;
+					}
+				}
+				catch (IOException e) {
+					Util.printErr(e); // keep using the old reader
+				}
+			}
+			newReaders.put(index, reader);
+			subReaders.add(reader);
+			openIndexes.add(index);
+			generation.add(index);
+			generation.add(reader.getVersion());
+		}
+
+		// Release the readers of indexes that were removed from the registry
+		for (Map.Entry<LuceneIndex, DirectoryReader> entry : readers.entrySet())
+			if (!newReaders.containsKey(entry.getKey()))
+				entry.getValue().decRef();
+		readers.clear();
+		readers.putAll(newReaders);
+
+		/*
+		 * The composite reader increments the reference counts of the
+		 * sub-readers, so they stay open as long as any snapshot using them
+		 * hasn't been released.
+		 */
+		IndexReader[] subReaderArray = subReaders.toArray(new IndexReader[subReaders.size()]);
+		Snapshot oldSnapshot = current;
+		current = new Snapshot(
+			new DecoratedMultiReader(subReaderArray, false), openIndexes,
+			generation, executor);
+		if (oldSnapshot != null)
+			oldSnapshot.reader.decRef();
+		return oldSnapshot;
+	}
+
+	/**
+	 * Returns the current snapshot, which must be released by the caller via
+	 * {@link Snapshot#release()} after usage. Never blocks.
+	 */
+	@NotNull
+	public Snapshot acquire() throws IOException {
+		while (true) {
+			Snapshot snapshot = current;
+			if (snapshot == null || closed)
+				throw new IOException("Searcher has been shut down.");
+			if (snapshot.reader.tryIncRef())
+				return snapshot;
+			// Else the snapshot was replaced and closed in the meantime; retry
+		}
+	}
+
+	/**
+	 * Returns whether the given snapshot is the current one, i.e. whether it
+	 * hasn't been replaced by a refresh and the manager hasn't been closed.
+	 */
+	public boolean isCurrent(@NotNull Snapshot snapshot) {
+		return !closed && current == snapshot;
+	}
+
+	/**
+	 * Releases all readers. Searches that are still running will close their
+	 * readers when they're done.
+	 */
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			for (DirectoryReader reader : readers.values())
+				reader.decRef();
+			readers.clear();
+			if (current != null)
+				current.reader.decRef();
+		}
+		catch (IOException e) {
+			Util.printErr(e);
+		}
+	}
+
+}
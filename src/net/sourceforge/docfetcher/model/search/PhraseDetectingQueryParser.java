@@ -11,12 +11,22 @@
 
 package net.sourceforge.docfetcher.model.search;
 
+import java.io.IOException;
+
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
 import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.MultiTermQuery.RewriteMethod;
+import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.Version;
 
@@ -33,6 +43,12 @@ public final class PhraseDetectingQueryParser extends QueryParser {
 	 */
 	
 	private boolean isPhraseQuery = true;
+	@Nullable private Suggester suggester;
+	@Nullable private IndexReader suggesterReader;
+	private boolean reverseLeadingWildcards = false;
+	@Nullable private RewriteMethod prefixRewrite;
+	@Nullable private RewriteMethod wildcardRewrite;
+	@Nullable private RewriteMethod fuzzyRewrite;
 	
 	public PhraseDetectingQueryParser(  String defaultField,
                                         Analyzer analyzer) {
@@ -42,12 +58,59 @@ public final class PhraseDetectingQueryParser extends QueryParser {
 	public boolean isPhraseQuery() {
 		return isPhraseQuery;
 	}
+	
+	/**
+	 * Causes prefix queries on the suggester's field to be replaced with
+	 * queries for the most frequent completions of the prefixes in the given
+	 * reader. This is used for search-as-you-type, where expanding a short
+	 * prefix to all matching terms would be too slow.
+	 */
+	void setSuggester(	@NotNull Suggester suggester,
+						@NotNull IndexReader reader) {
+		this.suggester = Util.checkNotNull(suggester);
+		this.suggesterReader = Util.checkNotNull(reader);
+	}
+
+	/**
+	 * Sets whether wildcard queries on the default field that start with a
+	 * wildcard are run on the field of reversed terms. This must only be
+	 * enabled if all searched indexes contain the reversed terms, since the
+	 * rewritten queries don't match anything in the other indexes.
+	 * 
+	 * @see ReversedTermsAnalyzer
+	 */
+	public void setReverseLeadingWildcards(boolean reverseLeadingWildcards) {
+		this.reverseLeadingWildcards = reverseLeadingWildcards;
+	}
+
+	/**
+	 * Sets the rewrite methods of prefix, wildcard and fuzzy queries. For
+	 * null arguments, the rewrite method set via
+	 * {@link #setMultiTermRewriteMethod(RewriteMethod)} is used, except for
+	 * fuzzy queries, which then keep their own default.
+	 */
+	public void setRewriteMethods(	@Nullable RewriteMethod prefixRewrite,
+									@Nullable RewriteMethod wildcardRewrite,
+									@Nullable RewriteMethod fuzzyRewrite) {
+		this.prefixRewrite = prefixRewrite;
+		this.wildcardRewrite = wildcardRewrite;
+		this.fuzzyRewrite = fuzzyRewrite;
+	}
+
+	@NotNull
+	private static Query setRewriteMethod(	@NotNull Query query,
+											@Nullable RewriteMethod method) {
+		if (method != null && query instanceof MultiTermQuery)
+			((MultiTermQuery) query).setRewriteMethod(method);
+		return query;
+	}
 
 	protected Query newFuzzyQuery(	Term term,
 									float minimumSimilarity,
 									int prefixLength) {
 		isPhraseQuery = false;
-		return super.newFuzzyQuery(term, minimumSimilarity, prefixLength);
+		Query query = super.newFuzzyQuery(term, minimumSimilarity, prefixLength);
+		return setRewriteMethod(query, fuzzyRewrite);
 	}
 
 	protected Query newMatchAllDocsQuery() {
@@ -57,12 +120,36 @@ public final class PhraseDetectingQueryParser extends QueryParser {
 
 	protected Query newPrefixQuery(Term prefix) {
 		isPhraseQuery = false;
-		return super.newPrefixQuery(prefix);
+		if (suggester != null && prefix.field().equals(getField())) {
+			try {
+				return suggester.createCompletionQuery(suggesterReader, prefix.text());
+			}
+			catch (IOException e) {
+				Util.printErr(e); // fall back to the full prefix query
+			}
+		}
+		return setRewriteMethod(super.newPrefixQuery(prefix), prefixRewrite);
 	}
 
 	protected Query newWildcardQuery(org.apache.lucene.index.Term t) {
 		isPhraseQuery = false;
-		return super.newWildcardQuery(t);
+		if (reverseLeadingWildcards && t.field().equals(getField())) {
+			String reversed = ReversedTermsAnalyzer.reverseWildcard(t.text());
+			if (reversed != null) {
+				// E.g. "*report" becomes a prefix query for "troper"
+				String field = Fields.CONTENT_REV.key();
+				String prefix = reversed.substring(0, reversed.length() - 1);
+				if (reversed.endsWith("*") && prefix.indexOf('*') < 0
+						&& prefix.indexOf('?') < 0) {
+					PrefixQuery query = new PrefixQuery(new Term(field, prefix));
+					query.setRewriteMethod(getMultiTermRewriteMethod());
+					return setRewriteMethod(query, wildcardRewrite);
+				}
+				Term reversedTerm = new Term(field, reversed);
+				return setRewriteMethod(super.newWildcardQuery(reversedTerm), wildcardRewrite);
+			}
+		}
+		return setRewriteMethod(super.newWildcardQuery(t), wildcardRewrite);
 	}
 	
 }
\ No newline at end of file
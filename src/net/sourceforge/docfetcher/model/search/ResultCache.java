@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * An LRU cache for the top results of searches, i.e. their document IDs and
+ * scores. The entries are keyed by the search settings and by the generation
+ * of the searched indexes (see {@link LuceneSearcherManager.Snapshot#generation}),
+ * since document IDs are only valid for the index readers they were obtained
+ * from. Entries of older generations never match again and are removed when
+ * the Lucene searcher is replaced.
+ *
+ * @author Tran Nam Quang
+ */
+@ThreadSafe
+final class ResultCache {
+
+	static final class Key {
+		@NotNull private final List<?> search;
+		@NotNull private final List<?> generation;
+
+		/**
+		 * @param search
+		 *            The settings that determine the results on a given set
+		 *            of index readers, such as the query and the filter.
+		 * @param generation
+		 *            The generation of the searched indexes.
+		 */
+		public Key(@NotNull List<?> search, @NotNull List<?> generation) {
+			this.search = Util.checkNotNull(search);
+			this.generation = Util.checkNotNull(generation);
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return search.equals(other.search)
+				&& generation.equals(other.generation);
+		}
+
+		public int hashCode() {
+			return 31 * search.hashCode() + generation.hashCode();
+		}
+	}
+
+	private final Map<Key, ScoreDoc[]> cache; // guarded by 'this' lock
+	private long hitCount = 0; // guarded by 'this' lock
+	private long missCount = 0; // guarded by 'this' lock
+
+	public ResultCache(final int capacity) {
+		cache = new LinkedHashMap<Key, ScoreDoc[]>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Key, ScoreDoc[]> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached results for the given key, or null if there are
+	 * none. The returned array must not be modified.
+	 */
+	@Nullable
+	public synchronized ScoreDoc[] get(@NotNull Key key) {
+		ScoreDoc[] scoreDocs = cache.get(key);
+		if (scoreDocs == null)
+			missCount++;
+		else
+			hitCount++;
+		return scoreDocs;
+	}
+
+	/**
+	 * Caches the given results, which must not be modified afterwards.
+	 */
+	public synchronized void put(@NotNull Key key, @NotNull ScoreDoc[] scoreDocs) {
+		cache.put(key, Util.checkNotNull(scoreDocs));
+	}
+
+	/**
+	 * Removes all entries that don't belong to the given generation.
+	 */
+	public synchronized void retainGeneration(@NotNull List<?> generation) {
+		Iterator<Key> it = cache.keySet().iterator();
+		while (it.hasNext())
+			if (!it.next().generation.equals(generation))
+				it.remove();
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.junit.Test;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class ResultCacheTest {
+
+	@Test
+	public void testCache() {
+		ResultCache cache = new ResultCache(2);
+		List<?> gen1 = Arrays.asList("index", 1L);
+		List<?> gen2 = Arrays.asList("index", 2L);
+		ScoreDoc[] results = { new ScoreDoc(3, 1.5f) };
+
+		ResultCache.Key key = new ResultCache.Key(Arrays.asList("query"), gen1);
+		assertNull(cache.get(key));
+		cache.put(key, results);
+		assertSame(results, cache.get(new ResultCache.Key(Arrays.asList("query"), gen1)));
+		assertNull(cache.get(new ResultCache.Key(Arrays.asList("query"), gen2)));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+
+		// The least recently used entry is evicted
+		cache.put(new ResultCache.Key(Arrays.asList("a"), gen1), results);
+		cache.get(key);
+		cache.put(new ResultCache.Key(Arrays.asList("b"), gen1), results);
+		assertNotNull(cache.get(key));
+		assertNull(cache.get(new ResultCache.Key(Arrays.asList("a"), gen1)));
+
+		// Entries of other generations are removed
+		cache.put(new ResultCache.Key(Arrays.asList("c"), gen2), results);
+		cache.retainGeneration(gen2);
+		assertNull(cache.get(key));
+		assertNotNull(cache.get(new ResultCache.Key(Arrays.asList("c"), gen2)));
+	}
+
+}
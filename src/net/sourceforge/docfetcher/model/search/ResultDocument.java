@@ -13,13 +13,17 @@ package net.sourceforge.docfetcher.model.search;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import net.sourceforge.docfetcher.model.DocumentType;
 import net.sourceforge.docfetcher.model.Fields;
 import net.sourceforge.docfetcher.model.FileResource;
 import net.sourceforge.docfetcher.model.MailResource;
 import net.sourceforge.docfetcher.model.Path;
+import net.sourceforge.docfetcher.model.TextCache;
 import net.sourceforge.docfetcher.model.index.IndexingConfig;
 import net.sourceforge.docfetcher.model.index.file.FileFactory;
 import net.sourceforge.docfetcher.model.index.outlook.OutlookMailFactory;
@@ -57,16 +61,19 @@ public final class ResultDocument {
 		public boolean isStopped();
 	}
 	
-	private final Document luceneDoc;
+	@Nullable private final Document luceneDoc;
+	@Nullable private final ResultLoader loader;
+	private final int loaderIndex;
 	private final float score;
 	private final Query query;
 	private final boolean isPhraseQuery;
 	private final IndexingConfig config;
 	private final FileFactory fileFactory;
 	private final OutlookMailFactory mailFactory;
+	@Nullable private final TextCache textCache;
 	
 	// Cached values
-	private final String uid;
+	private String uid;
 	private final boolean isEmail;
 	private Path path;
 	private Path parentPath;
@@ -79,20 +86,83 @@ public final class ResultDocument {
 							boolean isPhraseQuery,
 							@NotNull IndexingConfig config,
 							@NotNull FileFactory fileFactory,
-							@NotNull OutlookMailFactory mailFactory) {
+							@NotNull OutlookMailFactory mailFactory,
+							@Nullable TextCache textCache) {
 		Util.checkNotNull(luceneDoc, query, config, fileFactory, mailFactory);
 		this.luceneDoc = luceneDoc;
+		this.loader = null;
+		this.loaderIndex = -1;
 		this.score = score;
 		this.query = query;
 		this.isPhraseQuery = isPhraseQuery;
 		this.config = config;
 		this.fileFactory = fileFactory;
 		this.mailFactory = mailFactory;
+		this.textCache = textCache;
 		
 		uid = luceneDoc.get(Fields.UID.key());
 		isEmail = DocumentType.isEmailType(uid);
 	}
 	
+	/**
+	 * Creates a result document whose Lucene document will be loaded on
+	 * demand from the given loader.
+	 */
+	ResultDocument(	@NotNull ResultLoader loader,
+					int loaderIndex,
+					float score,
+					@NotNull Query query,
+					boolean isPhraseQuery,
+					@NotNull IndexingConfig config,
+					@NotNull FileFactory fileFactory,
+					@NotNull OutlookMailFactory mailFactory,
+					@Nullable TextCache textCache) {
+		Util.checkNotNull(loader, query, config, fileFactory, mailFactory);
+		this.luceneDoc = null;
+		this.loader = loader;
+		this.loaderIndex = loaderIndex;
+		this.score = score;
+		this.query = query;
+		this.isPhraseQuery = isPhraseQuery;
+		this.config = config;
+		this.fileFactory = fileFactory;
+		this.mailFactory = mailFactory;
+		this.textCache = textCache;
+		
+		isEmail = loader.isEmail(loaderIndex);
+	}
+	
+	@NotNull
+	private Document getLuceneDoc() {
+		if (luceneDoc != null)
+			return luceneDoc;
+		try {
+			return loader.getDocument(loaderIndex);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	@NotNull
+	private String getUid() {
+		if (uid == null)
+			uid = getLuceneDoc().get(Fields.UID.key());
+		return uid;
+	}
+	
+	// Returns the value from the doc values of the index, if available
+	@Nullable
+	private Long getLongColumn(@NotNull Fields field) {
+		return loader == null ? null : loader.getLong(loaderIndex, field);
+	}
+	
+	// Returns the value from the doc values of the index, if available
+	@Nullable
+	private String getStringColumn(@NotNull Fields field) {
+		return loader == null ? null : loader.getString(loaderIndex, field);
+	}
+	
 	private void onlyFiles() {
 		if (isEmail)
 			throw new UnsupportedOperationException("Method only supported for file documents.");
@@ -106,6 +176,7 @@ public final class ResultDocument {
 	// returns filename title or email subject
 	@NotNull
 	public String getTitle() {
+		Document luceneDoc = getLuceneDoc();
 		String title = luceneDoc.get(Fields.TITLE.key());
 		if (title == null)
 			title = luceneDoc.get(Fields.SUBJECT.key());
@@ -123,9 +194,12 @@ public final class ResultDocument {
 	
 	public long getSizeInKB() {
 		if (sizeInKB < 0) {
-			String sizeString = luceneDoc.get(Fields.SIZE.key());
-			assert sizeString != null;
-			long sizeInBytes = Long.valueOf(sizeString);
+			Long sizeInBytes = getLongColumn(Fields.SIZE);
+			if (sizeInBytes == null) {
+				String sizeString = getLuceneDoc().get(Fields.SIZE.key());
+				assert sizeString != null;
+				sizeInBytes = Long.valueOf(sizeString);
+			}
 			long extra = sizeInBytes % 1024 == 0 ? 0 : 1;
 			sizeInKB = sizeInBytes / 1024 + extra;
 		}
@@ -136,7 +210,7 @@ public final class ResultDocument {
 	@NotNull
 	public String getParserName() {
 		if (parserName == null)
-			parserName = luceneDoc.get(Fields.PARSER.key());
+			parserName = getLuceneDoc().get(Fields.PARSER.key());
 		assert parserName != null;
 		return parserName;
 	}
@@ -145,20 +219,25 @@ public final class ResultDocument {
 	public String getFilename() {
 		if (isEmail)
 			return "";
-		return luceneDoc.get(Fields.FILENAME.key());
+		String filename = getStringColumn(Fields.FILENAME);
+		if (filename != null)
+			return filename;
+		return getLuceneDoc().get(Fields.FILENAME.key());
 	}
 	
 	@NotNull
 	public String getSender() {
 		if (!isEmail)
 			return "";
-		return luceneDoc.get(Fields.SENDER.key());
+		return getLuceneDoc().get(Fields.SENDER.key());
 	}
 	
 	// returns file extension or mail type (Outlook, IMAP, etc.)
 	@NotNull
 	public String getType() {
-		String type = luceneDoc.get(Fields.TYPE.key());
+		String type = getStringColumn(Fields.TYPE);
+		if (type == null)
+			type = getLuceneDoc().get(Fields.TYPE.key());
 		assert type != null;
 		return type;
 	}
@@ -166,7 +245,7 @@ public final class ResultDocument {
 	@NotNull
 	public Path getPath() {
 		if (path == null)
-			path =  DocumentType.extractPath(uid);
+			path =  DocumentType.extractPath(getUid());
 		return path;
 	}
 	
@@ -186,6 +265,7 @@ public final class ResultDocument {
 	// Returns authors for files, sender for emails
 	@NotNull
 	public String getAuthors() {
+		Document luceneDoc = getLuceneDoc();
 		String[] authors = luceneDoc.getValues(Fields.AUTHOR.key());
 		if (authors.length > 0)
 			return Util.join(", ", (Object[]) authors);
@@ -196,8 +276,10 @@ public final class ResultDocument {
 	@NotNull
 	public Date getLastModified() {
 		onlyFiles();
-		String lastModified = luceneDoc.get(Fields.LAST_MODIFIED.key());
-		return new Date(Long.valueOf(lastModified));
+		Long lastModified = getLongColumn(Fields.LAST_MODIFIED);
+		if (lastModified == null)
+			lastModified = Long.valueOf(getLuceneDoc().get(Fields.LAST_MODIFIED.key()));
+		return new Date(lastModified);
 	}
 	
 	// Convenience method for Python API
@@ -212,7 +294,7 @@ public final class ResultDocument {
 	@Nullable
 	public Date getDate() {
 		onlyEmails();
-		String sendDate = luceneDoc.get(Fields.DATE.key());
+		String sendDate = getLuceneDoc().get(Fields.DATE.key());
 		return sendDate == null ? null : new Date(Long.valueOf(sendDate));
 	}
 	
@@ -248,8 +330,7 @@ public final class ResultDocument {
 	}
 	
 	private boolean wasParsedBy(Class<? extends Parser> parserClass) {
-		String parserName = luceneDoc.get(Fields.PARSER.key());
-		return parserName.equals(parserClass.getSimpleName());
+		return getParserName().equals(parserClass.getSimpleName());
 	}
 	
 	// Should be run in a thread
@@ -258,13 +339,19 @@ public final class ResultDocument {
 	private String getText() throws ParseException, FileNotFoundException,
 			CheckedOutOfMemoryError {
 		onlyFiles();
-		String parserName = luceneDoc.get(Fields.PARSER.key());
+		List<String> cachedPages = getCachedPages();
+		if (cachedPages != null)
+			return Util.join("", cachedPages);
+		String parserName = getParserName();
 		FileResource fileResource = null;
 		try {
 			fileResource = getFileResource();
 			File file = fileResource.getFile();
-			return ParseService.renderText(
+			String text = ParseService.renderText(
 				config, file, getFilename(), parserName);
+			if (textCache != null)
+				textCache.put(getUid(), getLastModified().getTime(), text);
+			return text;
 		}
 		finally {
 			if (fileResource != null)
@@ -280,6 +367,23 @@ public final class ResultDocument {
 		return HighlightService.highlight(query, isPhraseQuery, getText());
 	}
 	
+	/**
+	 * Same as {@link #getHighlightedText()}, but passes the text to the given
+	 * handler in consecutive chunks, starting with a short one, so that the
+	 * beginning of a large text can be displayed before the rest has been
+	 * highlighted. Unlike the pages passed to
+	 * {@link #readPages(PreviewPageHandler)}, the chunks are parts of the
+	 * same page.
+	 */
+	// Should be run in a thread
+	// thrown parse exception has localized error message
+	public void readHighlightedText(@NotNull PreviewPageHandler chunkHandler)
+			throws ParseException, FileNotFoundException,
+			CheckedOutOfMemoryError {
+		Util.checkNotNull(chunkHandler);
+		HighlightService.highlight(query, isPhraseQuery, getText(), chunkHandler);
+	}
+	
 	// should be run in a thread
 	public void readPages(@NotNull final PreviewPageHandler pageHandler)
 			throws ParseException, FileNotFoundException,
@@ -287,9 +391,9 @@ public final class ResultDocument {
 		// TODO i18n of error messages
 		onlyFiles();
 		Util.checkNotNull(pageHandler);
+		final List<String> pages = new ArrayList<String>();
 		FileResource fileResource = null;
 		try {
-			fileResource = getFileResource();
 			PageHandler handler = new PageHandler() {
 				public boolean handlePage(String pageText) {
 					HighlightedString string;
@@ -301,15 +405,28 @@ public final class ResultDocument {
 					catch (CheckedOutOfMemoryError e) {
 						throw new OutOfMemoryError(e.getMessage());
 					}
+					pages.add(pageText);
 					pageHandler.handlePage(string);
 					return pageHandler.isStopped();
 				}
 			};
+			List<String> cachedPages = getCachedPages();
+			if (cachedPages != null) {
+				for (String pageText : cachedPages)
+					if (handler.handlePage(pageText))
+						break;
+				return;
+			}
+			fileResource = getFileResource();
 			if (isPdfFile()) {
 				new PagingPdfParser(fileResource.getFile(), handler).run();
 			} else if (isChmFile()) {
 				new PagingChmParser(fileResource.getFile(), handler).run();
 			}
+			
+			// Don't cache the pages if the reading was stopped prematurely
+			if (textCache != null && !pageHandler.isStopped())
+				textCache.put(getUid(), getLastModified().getTime(), pages);
 		}
 		catch (OutOfMemoryError e) {
 			throw new CheckedOutOfMemoryError(e);
@@ -320,6 +437,18 @@ public final class ResultDocument {
 		}
 	}
 
+	/**
+	 * Returns the text of this document from the text cache, or null if the
+	 * text cache is disabled or doesn't contain the text. In the latter case,
+	 * the text must be extracted from the file.
+	 */
+	@Nullable
+	private List<String> getCachedPages() {
+		if (textCache == null)
+			return null;
+		return textCache.get(getUid(), getLastModified().getTime());
+	}
+
 	/**
 	 * If the receiver represents a file, this method returns a {@code File} for
 	 * it, wrapped in a {@code FileResource}. The caller <b>must</b> dispose of
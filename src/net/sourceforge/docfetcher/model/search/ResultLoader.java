@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Loads the Lucene documents of a list of search results on demand, one page
+ * at a time, so that a search only has to load the documents that are
+ * actually displayed. The values of the result table columns for which the
+ * index stores doc values (see {@link Fields#createDocValue(long)}) are read
+ * column-wise for all results at once, without loading any documents, which
+ * makes sorting by these columns cheap.
+ * <p>
+ * A loader keeps a snapshot of the Lucene searcher open, which would prevent
+ * the deletion of indexes. For this reason, the {@link Searcher} keeps track
+ * of the {@link Handle}s of all loaders: When indexes are about to be deleted,
+ * the remaining documents of the loaders that are still in use are loaded and
+ * the snapshots released, and the snapshots of loaders that have been garbage
+ * collected are released right away.
+ *
+ * @author Tran Nam Quang
+ */
+@ThreadSafe
+final class ResultLoader {
+
+	/** The number of documents that are loaded at once. */
+	static final int PAGE_SIZE = 100;
+
+	/**
+	 * The state of a loader, which is referenced by the loader and which in
+	 * turn references the loader weakly. All state is guarded by the handle's
+	 * lock.
+	 */
+	static final class Handle extends WeakReference<ResultLoader> {
+		@Nullable private LuceneSearcherManager.Snapshot snapshot;
+		private final int[] docIds;
+		private final Document[] docs;
+		private int loadedCount = 0;
+		private final Map<Fields, Object> columns = new HashMap<Fields, Object>(8);
+
+		private Handle(	@NotNull ResultLoader loader,
+						@NotNull ReferenceQueue<ResultLoader> queue,
+						@NotNull LuceneSearcherManager.Snapshot snapshot,
+						@NotNull int[] docIds) {
+			super(loader, queue);
+			this.snapshot = snapshot;
+			this.docIds = docIds;
+			this.docs = new Document[docIds.length];
+		}
+
+		@NotNull
+		private synchronized Document getDocument(int index) throws IOException {
+			if (docs[index] == null)
+				loadPage(index / PAGE_SIZE);
+			return docs[index];
+		}
+
+		private void loadPage(int page) throws IOException {
+			if (snapshot == null)
+				throw new IOException("Search results have been released.");
+			int start = page * PAGE_SIZE;
+			int end = Math.min(start + PAGE_SIZE, docIds.length);
+
+			// Stored fields are read faster in the order of the document IDs
+			long[] sorted = new long[end - start];
+			for (int i = start; i < end; i++)
+				sorted[i - start] = ((long) docIds[i] << 32) | i;
+			Arrays.sort(sorted);
+			for (long entry : sorted) {
+				int i = (int) entry;
+				if (docs[i] == null) {
+					docs[i] = snapshot.searcher.doc(docIds[i]);
+					loadedCount++;
+				}
+			}
+			if (loadedCount == docs.length)
+				release(); // All documents have been loaded
+		}
+
+		/**
+		 * Returns the values of the given numeric doc values field, or null if
+		 * the values are no longer available. Missing values are represented
+		 * by null elements.
+		 */
+		@Nullable
+		private synchronized Long[] getLongColumn(@NotNull Fields field) {
+			Long[] values = (Long[]) columns.get(field);
+			if (values != null || snapshot == null)
+				return values;
+			values = new Long[docIds.length];
+			try {
+				List<LeafReaderContext> leaves = snapshot.getReader().leaves();
+				for (int i = 0; i < docIds.length; i++) {
+					LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docIds[i], leaves));
+					LeafReader reader = leaf.reader();
+					NumericDocValues docValues = reader.getNumericDocValues(field.key());
+					if (docValues == null)
+						continue; // Index was created without doc values
+					int doc = docIds[i] - leaf.docBase;
+					Bits docsWithField = reader.getDocsWithField(field.key());
+					if (docsWithField.get(doc))
+						values[i] = docValues.get(doc);
+				}
+			}
+			catch (IOException e) {
+				Util.printErr(e);
+				return null;
+			}
+			columns.put(field, values);
+			return values;
+		}
+
+		/**
+		 * Returns the values of the given sorted doc values field, or null if
+		 * the values are no longer available. Missing values are represented
+		 * by null elements.
+		 */
+		@Nullable
+		private synchronized String[] getStringColumn(@NotNull Fields field) {
+			String[] values = (String[]) columns.get(field);
+			if (values != null || snapshot == null)
+				return values;
+			values = new String[docIds.length];
+			try {
+				List<LeafReaderContext> leaves = snapshot.getReader().leaves();
+				for (int i = 0; i < docIds.length; i++) {
+					LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docIds[i], leaves));
+					SortedDocValues docValues = leaf.reader().getSortedDocValues(field.key());
+					if (docValues == null)
+						continue; // Index was created without doc values
+					int ord = docValues.getOrd(docIds[i] - leaf.docBase);
+					if (ord >= 0)
+						values[i] = docValues.lookupOrd(ord).utf8ToString();
+				}
+			}
+			catch (IOException e) {
+				Util.printErr(e);
+				return null;
+			}
+			columns.put(field, values);
+			return values;
+		}
+
+		/**
+		 * Loads all documents that haven't been loaded yet, and then releases
+		 * the snapshot.
+		 */
+		public synchronized void materialize() {
+			if (snapshot == null)
+				return;
+			try {
+				for (int page = 0; page * PAGE_SIZE < docs.length; page++)
+					if (snapshot != null)
+						loadPage(page);
+			}
+			catch (IOException e) {
+				Util.printErr(e);
+			}
+			release();
+		}
+
+		/**
+		 * Releases the snapshot. Documents that haven't been loaded yet cannot
+		 * be loaded afterwards.
+		 */
+		public synchronized void release() {
+			if (snapshot == null)
+				return;
+			snapshot.release();
+			snapshot = null;
+		}
+	}
+
+	private final Handle handle;
+	private final boolean[] isEmail;
+
+	/**
+	 * Creates a loader for the given results, which takes over the given
+	 * snapshot. The snapshot will be released by the loader's {@link Handle}.
+	 */
+	ResultLoader(	@NotNull LuceneSearcherManager.Snapshot snapshot,
+					@NotNull ScoreDoc[] scoreDocs,
+					@NotNull ReferenceQueue<ResultLoader> queue)
+			throws IOException {
+		int[] docIds = new int[scoreDocs.length];
+		for (int i = 0; i < scoreDocs.length; i++)
+			docIds[i] = scoreDocs[i].doc;
+
+		/*
+		 * Whether a result is an email must be known beforehand for setting
+		 * up the column headers of the result table. This can be determined
+		 * from the postings of the parser field, which is much cheaper than
+		 * loading the documents. The results are visited in the order of the
+		 * document IDs, so that the postings only have to be advanced to the
+		 * results rather than walked completely.
+		 */
+		isEmail = new boolean[docIds.length];
+		long[] sorted = new long[docIds.length];
+		for (int i = 0; i < docIds.length; i++)
+			sorted[i] = ((long) docIds[i] << 32) | i;
+		Arrays.sort(sorted);
+		Term emailTerm = new Term(Fields.PARSER.key(), Fields.EMAIL_PARSER);
+		List<LeafReaderContext> leaves = snapshot.getReader().leaves();
+		LeafReaderContext leaf = null;
+		PostingsEnum postings = null;
+		for (long entry : sorted) {
+			int docId = (int) (entry >>> 32);
+			if (leaf == null || docId >= leaf.docBase + leaf.reader().maxDoc()) {
+				leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+				postings = leaf.reader().postings(emailTerm, PostingsEnum.NONE);
+			}
+			if (postings == null)
+				continue; // No emails in this segment
+			int doc = docId - leaf.docBase;
+			if (postings.docID() < doc)
+				postings.advance(doc);
+			isEmail[(int) entry] = postings.docID() == doc;
+		}
+
+		handle = new Handle(this, queue, snapshot, docIds);
+		if (docIds.length == 0)
+			handle.release();
+	}
+
+	@NotNull
+	Handle getHandle() {
+		return handle;
+	}
+
+	int size() {
+		return isEmail.length;
+	}
+
+	boolean isEmail(int index) {
+		return isEmail[index];
+	}
+
+	/**
+	 * Returns the Lucene document at the given index, loading the page it's
+	 * on if necessary.
+	 */
+	@NotNull
+	Document getDocument(int index) throws IOException {
+		return handle.getDocument(index);
+	}
+
+	/**
+	 * Returns the value of the given numeric field from the doc values of the
+	 * index, or null if the index doesn't have doc values for the field. In
+	 * the latter case, the value must be taken from the stored document.
+	 */
+	@Nullable
+	Long getLong(int index, @NotNull Fields field) {
+		Long[] values = handle.getLongColumn(field);
+		return values == null ? null : values[index];
+	}
+
+	/**
+	 * Returns the value of the given string field from the doc values of the
+	 * index, or null if the index doesn't have doc values for the field. In
+	 * the latter case, the value must be taken from the stored document.
+	 */
+	@Nullable
+	String getString(int index, @NotNull Fields field) {
+		String[] values = handle.getStringColumn(field);
+		return values == null ? null : values[index];
+	}
+
+}
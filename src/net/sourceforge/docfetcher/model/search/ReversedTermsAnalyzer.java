@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.reverse.ReverseStringFilter;
+
+/**
+ * Wraps an analyzer so that the tokens of the {@link Fields#CONTENT_REV}
+ * field are reversed, while all other fields are analyzed as before. Indexes
+ * configured to index reversed terms get a copy of their content in that
+ * field (see {@link net.sourceforge.docfetcher.model.index.IndexWriterAdapter
+ * IndexWriterAdapter}). A term with a leading wildcard, such as
+ * <tt>*report</tt>, can then be searched for as a prefix of the reversed
+ * terms, which seeks to the matching terms instead of enumerating the whole
+ * term dictionary (see {@link #reverseWildcard(String)}).
+ * <p>
+ * The reversed terms are kept in a field of their own so that they can't be
+ * matched by queries on the content field, e.g. by plain wildcard queries on
+ * indexes with and without reversed terms.
+ *
+ * @author Tran Nam Quang
+ */
+@VisibleForPackageGroup
+public final class ReversedTermsAnalyzer extends AnalyzerWrapper {
+
+	private final Analyzer delegate;
+
+	public ReversedTermsAnalyzer(@NotNull Analyzer delegate) {
+		/*
+		 * The components of the reversed field differ from those of the other
+		 * fields, so they must not be shared across fields, regardless of the
+		 * reuse strategy of the delegate.
+		 */
+		super(PER_FIELD_REUSE_STRATEGY);
+		this.delegate = Util.checkNotNull(delegate);
+	}
+
+	protected Analyzer getWrappedAnalyzer(String fieldName) {
+		return delegate;
+	}
+
+	protected TokenStreamComponents wrapComponents(	String fieldName,
+													TokenStreamComponents components) {
+		if (!fieldName.equals(Fields.CONTENT_REV.key()))
+			return components;
+		return new TokenStreamComponents(
+			components.getTokenizer(),
+			new ReverseStringFilter(components.getTokenStream()));
+	}
+
+	/**
+	 * Converts the given wildcard pattern with a leading wildcard into an
+	 * equivalent pattern on the reversed terms, which ends with the wildcard.
+	 * Returns null if the pattern doesn't start with a wildcard, ends with one
+	 * (in which case reversing wouldn't help), or contains escaped characters.
+	 */
+	@Nullable
+	public static String reverseWildcard(@NotNull String pattern) {
+		if (pattern.length() < 2 || pattern.indexOf('\\') >= 0)
+			return null;
+		if (!isWildcard(pattern.charAt(0))
+				|| isWildcard(pattern.charAt(pattern.length() - 1)))
+			return null;
+		// Unlike a char-wise reversal, this keeps surrogate pairs intact
+		return new StringBuilder(pattern).reverse().toString();
+	}
+
+	private static boolean isWildcard(char c) {
+		return c == '*' || c == '?';
+	}
+
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.IndexRegistry;
+import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import com.google.common.io.Closeables;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class ReversedTermsAnalyzerTest {
+
+	@Test
+	public void testReverseWildcard() {
+		assertEquals("troper*", ReversedTermsAnalyzer.reverseWildcard("*report"));
+		assertEquals("tr?per?", ReversedTermsAnalyzer.reverseWildcard("?rep?rt"));
+		assertNull(ReversedTermsAnalyzer.reverseWildcard("report*"));
+		assertNull(ReversedTermsAnalyzer.reverseWildcard("*report*"));
+		assertNull(ReversedTermsAnalyzer.reverseWildcard("*re\\*port"));
+	}
+
+	@Test
+	public void testLeadingWildcard() throws Exception {
+		Directory directory = new RAMDirectory();
+		IndexWriterAdapter writer = new IndexWriterAdapter(directory, true);
+		String[] contents = {
+			"annual report", "reports", "support", "airport", "other"
+		};
+		for (String content : contents) {
+			Document doc = new Document();
+			doc.add(Fields.createContent(content));
+			writer.add(doc);
+		}
+		Closeables.closeQuietly(writer);
+
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			IndexSearcher searcher = new IndexSearcher(reader);
+			PhraseDetectingQueryParser queryParser = new PhraseDetectingQueryParser(
+				Fields.CONTENT.key(), IndexRegistry.getAnalyzer());
+			queryParser.setAllowLeadingWildcard(true);
+			queryParser.setReverseLeadingWildcards(true);
+
+			Query query = queryParser.parse("*port");
+			assertTrue(query instanceof PrefixQuery);
+			assertEquals(3, searcher.count(query));
+
+			query = queryParser.parse("?eport");
+			assertTrue(query instanceof WildcardQuery);
+			assertEquals(1, searcher.count(query));
+
+			// The reversed terms don't match regular queries
+			assertEquals(1, searcher.count(queryParser.parse("report")));
+			assertEquals(0, searcher.count(queryParser.parse("tro*")));
+			assertEquals(2, searcher.count(queryParser.parse("report*")));
+
+			// Leading wildcards that aren't rewritten match the same documents
+			queryParser.setReverseLeadingWildcards(false);
+			query = queryParser.parse("*port");
+			assertTrue(query instanceof WildcardQuery);
+			assertEquals(3, searcher.count(query));
+			assertEquals(0, searcher.count(queryParser.parse("*troper")));
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+}
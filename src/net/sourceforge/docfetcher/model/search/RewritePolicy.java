@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.io.IOException;
+
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.MultiTermQuery.RewriteMethod;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.AttributeSource;
+
+/**
+ * The ways in which multi-term queries, i.e. prefix, wildcard and fuzzy
+ * queries, can be expanded into the matching terms of the indexes. All of
+ * them bound the size of the expanded query by a maximum number of terms, so
+ * that a query like <tt>a*</tt> on a large index can't build a boolean query
+ * with millions of clauses and exhaust the heap.
+ *
+ * @author Tran Nam Quang
+ */
+enum RewritePolicy {
+
+	/**
+	 * Scores the matching terms like term queries, which ranks documents by
+	 * how well they match. If the query expands to more than the maximum
+	 * number of terms, it's run as a constant-score query instead.
+	 */
+	SCORING ("scoring"),
+
+	/**
+	 * Scores only the most relevant terms up to the maximum number of terms
+	 * and ignores the others.
+	 */
+	TOP_TERMS ("top-terms"),
+
+	/**
+	 * Matches all terms without scoring them, using a bitset of matching
+	 * documents per index segment. This uses the least memory, but all
+	 * matches of the query get the same score.
+	 */
+	CONSTANT_SCORE ("constant-score"),
+	;
+
+	private final String name;
+
+	private RewritePolicy(@NotNull String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the policy with the given name, or the given default policy if
+	 * there's no policy with that name. The name is not case-sensitive.
+	 */
+	@NotNull
+	public static RewritePolicy fromName(	@Nullable String name,
+											@NotNull RewritePolicy defaultPolicy) {
+		if (name != null)
+			for (RewritePolicy policy : values())
+				if (policy.name.equalsIgnoreCase(name.trim()))
+					return policy;
+		return defaultPolicy;
+	}
+
+	@NotNull
+	public RewriteMethod createRewriteMethod(int maxTerms) {
+		switch (this) {
+		case SCORING:
+			return new BoundedScoringRewrite(maxTerms);
+		case TOP_TERMS:
+			return new MultiTermQuery.TopTermsBlendedFreqScoringRewrite(maxTerms);
+		default:
+			return MultiTermQuery.CONSTANT_SCORE_REWRITE;
+		}
+	}
+
+	/**
+	 * A scoring rewrite that first estimates the number of terms the query
+	 * expands to, and falls back to a constant-score rewrite if there are
+	 * too many of them. Counting the terms is cheap compared to scoring them,
+	 * and stops as soon as the maximum is exceeded.
+	 */
+	private static final class BoundedScoringRewrite extends RewriteMethod {
+		private final int maxTerms;
+
+		public BoundedScoringRewrite(int maxTerms) {
+			this.maxTerms = maxTerms;
+		}
+
+		public Query rewrite(IndexReader reader, MultiTermQuery query)
+				throws IOException {
+			if (countTerms(reader, query) > maxTerms)
+				return MultiTermQuery.CONSTANT_SCORE_REWRITE.rewrite(reader, query);
+			return MultiTermQuery.SCORING_BOOLEAN_REWRITE.rewrite(reader, query);
+		}
+
+		// Terms occurring in several segments are counted once per segment
+		private int countTerms(	@NotNull IndexReader reader,
+								@NotNull MultiTermQuery query)
+				throws IOException {
+			int count = 0;
+			for (LeafReaderContext leaf : reader.leaves()) {
+				Terms terms = leaf.reader().terms(query.getField());
+				if (terms == null)
+					continue;
+				TermsEnum termsEnum = getTermsEnum(query, terms, new AttributeSource());
+				while (termsEnum.next() != null)
+					if (++count > maxTerms)
+						return count;
+			}
+			return count;
+		}
+
+		public boolean equals(Object obj) {
+			return obj instanceof BoundedScoringRewrite
+				&& ((BoundedScoringRewrite) obj).maxTerms == maxTerms;
+		}
+
+		public int hashCode() {
+			return 31 * BoundedScoringRewrite.class.hashCode() + maxTerms;
+		}
+	}
+
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import com.google.common.io.Closeables;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class RewritePolicyTest {
+
+	@Test
+	public void testFromName() {
+		assertEquals(RewritePolicy.TOP_TERMS, RewritePolicy.fromName(" Top-Terms ", RewritePolicy.SCORING));
+		assertEquals(RewritePolicy.SCORING, RewritePolicy.fromName("unknown", RewritePolicy.SCORING));
+		assertEquals(RewritePolicy.SCORING, RewritePolicy.fromName(null, RewritePolicy.SCORING));
+	}
+
+	@Test
+	public void testBoundedScoringRewrite() throws Exception {
+		Directory directory = new RAMDirectory();
+		IndexWriterAdapter writer = new IndexWriterAdapter(directory);
+		String[] contents = { "test1", "test2", "test3", "test4", "other" };
+		for (String content : contents) {
+			Document doc = new Document();
+			doc.add(Fields.createContent(content));
+			writer.add(doc);
+		}
+		Closeables.closeQuietly(writer);
+
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			IndexSearcher searcher = new IndexSearcher(reader);
+			PrefixQuery query = new PrefixQuery(new Term(Fields.CONTENT.key(), "test"));
+
+			// Within the limit, each term becomes a scoring clause
+			query.setRewriteMethod(RewritePolicy.SCORING.createRewriteMethod(4));
+			assertTrue(searcher.rewrite(query) instanceof BooleanQuery);
+			assertEquals(4, searcher.count(query));
+
+			// Above the limit, the query falls back to constant scoring
+			query.setRewriteMethod(RewritePolicy.SCORING.createRewriteMethod(3));
+			assertFalse(searcher.rewrite(query) instanceof BooleanQuery);
+			assertEquals(4, searcher.count(query));
+
+			query.setRewriteMethod(RewritePolicy.TOP_TERMS.createRewriteMethod(2));
+			assertEquals(2, searcher.count(query));
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.TreeCheckState;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.Nullable;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queries.TermsQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.LegacyNumericRangeQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+
+/**
+ * The filter settings of the desktop interface, i.e. the filesize range, the
+ * checked file types and the checked folders. The {@link Searcher} applies
+ * these settings as filter clauses of the Lucene query, so that filtered-out
+ * documents don't count against the maximum number of results.
+ * <p>
+ * The bitsets of matching documents are cached per index segment, both for
+ * the location filter (see {@link LocationFilterQuery}) and for the other
+ * filters (by the query cache of the Lucene searcher). A filter object should
+ * therefore be kept and updated rather than recreated for each search.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Tran Nam Quang
+ */
+public final class SearchFilter {
+
+	@Nullable private Long minSizeInKB;
+	@Nullable private Long maxSizeInKB;
+	@Nullable private List<String> parserNames;
+	@Nullable private TreeCheckState checkState;
+	@Nullable private LocationFilterQuery locationQuery;
+
+	/**
+	 * Sets the filesize range in kilobytes. Either bound may be null. As on
+	 * the result panel, filesizes are rounded up to whole kilobytes.
+	 */
+	public void setSizeInKB(@Nullable Long minSizeInKB,
+							@Nullable Long maxSizeInKB) {
+		this.minSizeInKB = minSizeInKB;
+		this.maxSizeInKB = maxSizeInKB;
+	}
+
+	/**
+	 * Sets the names of the parsers whose files should be included in the
+	 * results. If null is specified, files of all types will be included.
+	 * Emails are never excluded by this setting.
+	 */
+	public void setIncludedParsers(@Nullable Collection<String> parserNames) {
+		this.parserNames = parserNames == null
+			? null
+			: new ArrayList<String>(parserNames);
+	}
+
+	/**
+	 * Sets the check state of the folders on the index panel. Only documents
+	 * in checked folders will be included in the results. If null is
+	 * specified, documents in all folders will be included.
+	 */
+	public void setTreeCheckState(@Nullable TreeCheckState checkState) {
+		if (checkState == this.checkState)
+			return;
+		this.checkState = checkState;
+		this.locationQuery = null;
+	}
+
+	/**
+	 * Returns a list of the current settings for use in cache keys. The check
+	 * state is compared by identity, since it is replaced rather than
+	 * modified when folders are checked or unchecked.
+	 */
+	@NotNull
+	List<Object> getCacheKey() {
+		return Arrays.<Object>asList(
+			minSizeInKB, maxSizeInKB, parserNames, checkState);
+	}
+
+	/**
+	 * Adds the filter clauses for the current settings to the given query
+	 * builder. The given lookup table must belong to the searcher that will
+	 * run the query.
+	 */
+	void addClauses(@NotNull BooleanQuery.Builder builder,
+					@NotNull IndexLookup indexLookup) {
+		if (minSizeInKB != null || maxSizeInKB != null) {
+			// A size of n bytes is shown as ceil(n / 1024) KB
+			Long minBytes = minSizeInKB == null || minSizeInKB <= 0
+				? null
+				: (minSizeInKB - 1) * 1024 + 1;
+			Long maxBytes = maxSizeInKB == null ? null : maxSizeInKB * 1024;
+			builder.add(LegacyNumericRangeQuery.newLongRange(
+				Fields.SIZE.key(), minBytes, maxBytes, true, true),
+				BooleanClause.Occur.FILTER);
+		}
+
+		if (parserNames != null) {
+			String fieldName = Fields.PARSER.key();
+			List<Term> terms = new ArrayList<Term>(parserNames.size() + 1);
+			terms.add(new Term(fieldName, Fields.EMAIL_PARSER));
+			for (String parserName : parserNames)
+				terms.add(new Term(fieldName, parserName));
+			builder.add(new TermsQuery(terms), BooleanClause.Occur.FILTER);
+		}
+
+		if (checkState != null && !checkState.isAllChecked()) {
+			if (checkState.isNoneChecked()) {
+				builder.add(new MatchNoDocsQuery(), BooleanClause.Occur.FILTER);
+			}
+			else {
+				if (locationQuery == null)
+					locationQuery = new LocationFilterQuery(checkState);
+				builder.add(
+					locationQuery.withIndexLookup(indexLookup),
+					BooleanClause.Occur.FILTER);
+			}
+		}
+	}
+
+}
@@ -13,13 +13,29 @@ package net.sourceforge.docfetcher.model.search;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 
 import net.sourceforge.docfetcher.enums.Msg;
@@ -32,7 +48,7 @@ import net.sourceforge.docfetcher.model.IndexRegistry.ExistingIndexesHandler;
 import net.sourceforge.docfetcher.model.LuceneIndex;
 import net.sourceforge.docfetcher.model.Path;
 import net.sourceforge.docfetcher.model.PendingDeletion;
-import net.sourceforge.docfetcher.model.index.DecoratedMultiReader;
+import net.sourceforge.docfetcher.model.TextCache;
 import net.sourceforge.docfetcher.model.index.IndexingConfig;
 import net.sourceforge.docfetcher.model.index.file.FileFactory;
 import net.sourceforge.docfetcher.model.index.outlook.OutlookMailFactory;
@@ -42,7 +58,6 @@ import net.sourceforge.docfetcher.util.Event;
 import net.sourceforge.docfetcher.util.Util;
 import net.sourceforge.docfetcher.util.annotations.ImmutableCopy;
 import net.sourceforge.docfetcher.util.annotations.NotNull;
-import net.sourceforge.docfetcher.util.annotations.NotThreadSafe;
 import net.sourceforge.docfetcher.util.annotations.Nullable;
 import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
 import net.sourceforge.docfetcher.util.annotations.VisibleForPackageGroup;
@@ -50,16 +65,16 @@ import net.sourceforge.docfetcher.util.collect.AlphanumComparator;
 import net.sourceforge.docfetcher.util.collect.LazyList;
 
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queries.TermsQuery;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
 import org.apache.lucene.search.MultiTermQuery.RewriteMethod;
-
-import com.google.common.io.Closeables;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
  * A search API on top of the index registry. This class is completely
@@ -102,21 +117,105 @@ public final class Searcher {
 		}
 	}
 	
+	/**
+	 * The results of a search, which may be incomplete if the search was
+	 * stopped or ran out of time. In that case, the results are the best ones
+	 * among the documents searched up to that point.
+	 */
+	public static final class SearchResult {
+		/** The result documents, in order of decreasing score. */
+		@ImmutableCopy
+		public final List<ResultDocument> resultDocuments;
+		
+		/** Whether all documents were searched. */
+		public final boolean isComplete;
+		
+		private SearchResult(	@NotNull List<ResultDocument> resultDocuments,
+								boolean isComplete) {
+			this.resultDocuments = Util.checkNotNull(resultDocuments);
+			this.isComplete = isComplete;
+		}
+	}
+	
+	/**
+	 * Receives the intermediate results of a search that is still running.
+	 * 
+	 * @see Searcher#search(String, SearchFilter, PartialResultHandler)
+	 */
+	public interface PartialResultHandler {
+		/**
+		 * Called on the searching thread with the top results among the
+		 * documents searched so far. The given numbers of searched and total
+		 * documents indicate the progress of the search.
+		 */
+		void handlePartialResults(	@ImmutableCopy @NotNull List<ResultDocument> resultDocuments,
+									int searchedDocs,
+									int totalDocs);
+	}
+	
 	private static final int PAGE_SIZE = 50;
 	public static final int MAX_RESULTS = ProgramConf.Int.MaxResultsTotal.get();
+	private static final int MAX_TYPE_AHEAD_RESULTS = ProgramConf.Int.TypeAheadMaxResults.get();
+	private static final int MAX_EXPANDED_TERMS = ProgramConf.Int.MaxExpandedTerms.get();
+	private static final long SEARCH_TIME_LIMIT = ProgramConf.Int.SearchTimeLimit.get() * 1000L; // ms
+	
+	/*
+	 * The partial results of a search are first passed on after the given
+	 * delay, so that fast searches don't report any, and then at the given
+	 * interval. Both are in milliseconds.
+	 */
+	private static final long PARTIAL_RESULTS_DELAY = 100;
+	private static final long PARTIAL_RESULTS_INTERVAL = 500;
+	
+	/**
+	 * The number of documents of a segment that are scored at once when
+	 * searching incrementally, before the termination is checked again.
+	 */
+	private static final int SCORE_WINDOW = 64 * 1024;
 	
 	private final IndexRegistry indexRegistry;
 	private final FileFactory fileFactory;
 	private final OutlookMailFactory outlookMailFactory;
+	@Nullable private final TextCache textCache;
 	private final Event.Listener<LuceneIndex> addedListener;
 	
 	private final BlockingQueue<List<PendingDeletion>> deletionQueue = new LinkedBlockingQueue<List<PendingDeletion>>(); // guarded by 'this' lock
 	private final Thread deletionThread; // guarded by 'this' lock
 	
-	@NotNull private IndexSearcher luceneSearcher; // guarded by read-write lock
-	@NotNull private List<LuceneIndex> indexes; // guarded by read-write lock
+	@Nullable private final ExecutorService searchExecutor = createSearchExecutor();
+	@Nullable private final ResultCache resultCache = ProgramConf.Int.ResultCacheSize.get() == 0
+		? null
+		: new ResultCache(ProgramConf.Int.ResultCacheSize.get());
+	private final LuceneSearcherManager searcherManager = new LuceneSearcherManager(searchExecutor);
+	private final Suggester suggester = new Suggester(
+		Fields.CONTENT.key(), ProgramConf.Int.TypeAheadCompletions.get());
+	
+	/*
+	 * The rewrite methods for the different kinds of multi-term queries, which
+	 * bound the number of terms the queries are expanded to. The default
+	 * rewrite method applies to the remaining kinds, e.g. range queries.
+	 */
+	private final RewriteMethod defaultRewrite = RewritePolicy.SCORING
+		.createRewriteMethod(MAX_EXPANDED_TERMS);
+	private final RewriteMethod prefixRewrite = RewritePolicy.fromName(
+		ProgramConf.Str.PrefixQueryRewrite.get(), RewritePolicy.SCORING)
+		.createRewriteMethod(MAX_EXPANDED_TERMS);
+	private final RewriteMethod wildcardRewrite = RewritePolicy.fromName(
+		ProgramConf.Str.WildcardQueryRewrite.get(), RewritePolicy.SCORING)
+		.createRewriteMethod(MAX_EXPANDED_TERMS);
+	private final RewriteMethod fuzzyRewrite = RewritePolicy.fromName(
+		ProgramConf.Str.FuzzyQueryRewrite.get(), RewritePolicy.TOP_TERMS)
+		.createRewriteMethod(MAX_EXPANDED_TERMS);
 	@Nullable private volatile IOException ioException;
 	
+	/*
+	 * The handles of the result loaders that may still hold a snapshot. The
+	 * reference queue receives the handles of loaders that have been garbage
+	 * collected.
+	 */
+	private final Set<ResultLoader.Handle> loaderHandles = new HashSet<ResultLoader.Handle>(); // guarded by itself
+	private final ReferenceQueue<ResultLoader> loaderQueue = new ReferenceQueue<ResultLoader>();
+	
 	private final Lock readLock;
 	private final Lock writeLock;
 
@@ -140,6 +239,7 @@ public final class Searcher {
 		this.indexRegistry = indexRegistry;
 		this.fileFactory = fileFactory;
 		this.outlookMailFactory = outlookMailFactory;
+		textCache = TextCache.getInstance(indexRegistry.getIndexParentDir());
 		
 		readLock = indexRegistry.getReadLock();
 		writeLock = indexRegistry.getWriteLock();
@@ -161,7 +261,7 @@ public final class Searcher {
 				// Handle existing indexes
 				public void handleExistingIndexes(List<LuceneIndex> indexes) {
 					try {
-						corruptedIndexes.addAll(setLuceneSearcher(indexes));
+						searcherManager.refresh(indexes, null, corruptedIndexes);
 					}
 					catch (IOException e) {
 						ioException = e;
@@ -182,7 +282,7 @@ public final class Searcher {
 				while (true) {
 					try {
 						List<PendingDeletion> deletions = deletionQueue.take();
-						replaceLuceneSearcher();
+						replaceLuceneSearcherAndWait();
 						for (PendingDeletion deletion : deletions)
 							deletion.setApprovedBySearcher();
 					}
@@ -199,47 +299,548 @@ public final class Searcher {
 	
 	/**
 	 * Updates the cached indexes and replaces the current Lucene searcher with
-	 * a new one.
+	 * a new one. All indexes are checked for changes.
 	 */
 	@ThreadSafe
 	@VisibleForPackageGroup
 	public void replaceLuceneSearcher() {
-		writeLock.lock();
+		doReplaceLuceneSearcher(null);
+	}
+	
+	/**
+	 * Updates the cached indexes and replaces the current Lucene searcher with
+	 * a new one. Of the indexes that were already open, only the given index
+	 * is reopened, or all of them if the given index is null. Searches that
+	 * are still running on the old Lucene searcher are not affected.
+	 */
+	@ThreadSafe
+	@VisibleForPackageGroup
+	public void replaceLuceneSearcher(@Nullable LuceneIndex changedIndex) {
+		doReplaceLuceneSearcher(changedIndex);
+	}
+	
+	/**
+	 * Same as {@link #replaceLuceneSearcher()}, but additionally waits until
+	 * all searches running on the old Lucene searcher have finished, so that
+	 * the files of indexes that were removed from the registry are no longer
+	 * held open afterwards. This method must not be called while holding the
+	 * registry lock.
+	 */
+	@ThreadSafe
+	@VisibleForPackageGroup
+	public void replaceLuceneSearcherAndWait() {
+		LuceneSearcherManager.Snapshot oldSnapshot = doReplaceLuceneSearcher(null);
+		materializeLoaders();
+		if (oldSnapshot != null)
+			oldSnapshot.awaitClose();
+	}
+	
+	/**
+	 * Registers the given loader, so that its snapshot can be released when
+	 * indexes are about to be deleted. Also releases the snapshots of loaders
+	 * that have been garbage collected in the meantime.
+	 */
+	private void trackLoader(	@NotNull ResultLoader loader,
+								@NotNull LuceneSearcherManager.Snapshot snapshot) {
+		synchronized (loaderHandles) {
+			Reference<? extends ResultLoader> ref;
+			while ((ref = loaderQueue.poll()) != null) {
+				ResultLoader.Handle handle = (ResultLoader.Handle) ref;
+				handle.release();
+				loaderHandles.remove(handle);
+			}
+			loaderHandles.add(loader.getHandle());
+			
+			/*
+			 * If the searcher was replaced while the search was running, the
+			 * loaders have already been materialized, so this loader would
+			 * miss out on it.
+			 */
+			if (!searcherManager.isCurrent(snapshot)) {
+				loader.getHandle().materialize();
+				loaderHandles.remove(loader.getHandle());
+			}
+		}
+	}
+	
+	/**
+	 * Loads the remaining documents of all result loaders that are still in
+	 * use and releases their snapshots, so that the indexes of the snapshots
+	 * can be deleted.
+	 */
+	private void materializeLoaders() {
+		synchronized (loaderHandles) {
+			for (ResultLoader.Handle handle : loaderHandles) {
+				if (handle.get() == null)
+					handle.release();
+				else
+					handle.materialize();
+			}
+			loaderHandles.clear();
+		}
+	}
+	
+	@Nullable
+	private LuceneSearcherManager.Snapshot doReplaceLuceneSearcher(@Nullable LuceneIndex changedIndex) {
+		/*
+		 * The read lock is sufficient here, since the searcher manager is
+		 * synchronized, and since holding the read lock guarantees that the
+		 * list of indexes won't change until the refresh is done.
+		 */
+		readLock.lock();
 		try {
-			Closeables.close(luceneSearcher.getIndexReader(), false);
-			setLuceneSearcher(indexRegistry.getIndexes());
+			List<CorruptedIndex> corrupted = new LazyList<CorruptedIndex>();
+			LuceneSearcherManager.Snapshot oldSnapshot = searcherManager.refresh(
+				indexRegistry.getIndexes(), changedIndex, corrupted);
+			if (resultCache != null)
+				retainCachedResults();
+			return oldSnapshot;
 		}
 		catch (IOException e) {
 			ioException = e; // Will be thrown later
+			return null;
 		}
 		finally {
-			writeLock.unlock();
+			readLock.unlock();
 		}
 	}
 	
-	// Caller must close returned searcher
+	/**
+	 * Returns an executor with the number of search threads specified in the
+	 * program configuration, or null if the configuration asks for
+	 * single-threaded searches.
+	 */
+	@Nullable
+	private static ExecutorService createSearchExecutor() {
+		int threadCount = ProgramConf.Int.SearchThreads.get();
+		if (threadCount == 0)
+			threadCount = Runtime.getRuntime().availableProcessors();
+		if (threadCount <= 1)
+			return null;
+		return Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				String name = Searcher.class.getName() + " (Search thread " + count.incrementAndGet() + ")";
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	// Discards the cached results of indexes that have changed
+	private void retainCachedResults() {
+		LuceneSearcherManager.Snapshot snapshot;
+		try {
+			snapshot = searcherManager.acquire();
+		}
+		catch (IOException e) {
+			return; // The searcher has been shut down
+		}
+		try {
+			resultCache.retainGeneration(snapshot.generation);
+		}
+		finally {
+			snapshot.release();
+		}
+	}
+	
+	/**
+	 * Returns the number of searches whose results were taken from the result
+	 * cache, or 0 if the cache is disabled.
+	 */
+	@ThreadSafe
+	public long getResultCacheHitCount() {
+		return resultCache == null ? 0 : resultCache.getHitCount();
+	}
+	
+	/**
+	 * Returns the number of searches whose results were not found in the
+	 * result cache, or 0 if the cache is disabled.
+	 */
+	@ThreadSafe
+	public long getResultCacheMissCount() {
+		return resultCache == null ? 0 : resultCache.getMissCount();
+	}
+	
 	@NotNull
-	@NotThreadSafe
-	private List<CorruptedIndex> setLuceneSearcher(@NotNull List<LuceneIndex> indexes)
-			throws IOException {
-		this.indexes = Util.checkNotNull(indexes);
-		ArrayList<IndexReader> readers = new ArrayList<IndexReader>(indexes.size());
-        LazyList<CorruptedIndex> corrupted = new LazyList<CorruptedIndex>();
-		for (int i = 0; i < indexes.size(); i++) {
-			LuceneIndex index = indexes.get(i);
-            try {
-				readers.add(DirectoryReader.open(index.getLuceneDir()));
-            }
-            catch (IOException e) {
-            	Util.printErr(e);
-                corrupted.add(new CorruptedIndex(index, e));
-            }
-        }
-        luceneSearcher = new IndexSearcher(new DecoratedMultiReader(readers.toArray(new IndexReader[readers.size()])));
-        return corrupted;
+	private LuceneSearcherManager.Snapshot acquireSnapshot()
+			throws SearchException {
+		try {
+			return searcherManager.acquire();
+		}
+		catch (IOException e) {
+			throw new SearchException(e.getMessage()); // TODO i18n
+		}
 	}
 
-	private class StoppedSearcherException extends RuntimeException{
+	/**
+	 * Decides when the collectors of a search stop collecting: When
+	 * {@link #stopSearch()} is called, when the search has used up the time
+	 * limit in the program configuration, or when the search is cancelled due
+	 * to an error.
+	 */
+	private final class Termination {
+		private final long deadline; // compared with System.nanoTime()
+		private final boolean hasDeadline;
+		private volatile boolean cancelled = false;
+		private volatile boolean terminated = false;
+		
+		public Termination(long timeLimit) {
+			hasDeadline = timeLimit > 0;
+			deadline = System.nanoTime() + timeLimit * 1000000L;
+		}
+		
+		public boolean isTerminated() {
+			if (terminated)
+				return true;
+			if (stopped || cancelled
+					|| hasDeadline && System.nanoTime() - deadline > 0)
+				terminated = true;
+			return terminated;
+		}
+		
+		/**
+		 * Returns whether any collector of the search has stopped collecting
+		 * early, so that the results are incomplete.
+		 */
+		public boolean wasTerminated() {
+			return terminated;
+		}
+		
+		public void cancel() {
+			cancelled = true;
+		}
+	}
+	
+	/**
+	 * A collector of the top results of a search, which stops collecting when
+	 * the given termination says so. The results collected so far are kept.
+	 */
+	private static final class StoppableCollector extends FilterCollector {
+		// The termination is checked once per this number of hits
+		private static final int CHECK_INTERVAL = 256;
+		
+		private final TopScoreDocCollector topDocsCollector;
+		private final Termination termination;
+		
+		public StoppableCollector(	@NotNull TopScoreDocCollector topDocsCollector,
+									@NotNull Termination termination) {
+			super(topDocsCollector);
+			this.topDocsCollector = topDocsCollector;
+			this.termination = termination;
+		}
+		
+		public LeafCollector getLeafCollector(LeafReaderContext context)
+				throws IOException {
+			checkTerminated();
+			return new FilterLeafCollector(super.getLeafCollector(context)) {
+				private int hitCount = 0;
+				
+				public void collect(int doc) throws IOException {
+					if (++hitCount % CHECK_INTERVAL == 0)
+						checkTerminated();
+					in.collect(doc);
+				}
+			};
+		}
+		
+		private void checkTerminated() {
+			// The searcher skips the rest of the segment when this is thrown
+			if (termination.isTerminated())
+				throw new CollectionTerminatedException();
+		}
+	}
+	
+	/**
+	 * Returns a collector manager for the top results of a search. If the
+	 * Lucene searcher searches concurrently, each concurrently searched group
+	 * of segments gets its own collector, and the top results of the
+	 * collectors are merged afterwards. All collectors stop collecting when
+	 * the given termination says so.
+	 */
+	@NotNull
+	private static CollectorManager<StoppableCollector, TopDocs> createCollectorManager(
+			final int maxResults, @NotNull final Termination termination) {
+		return new CollectorManager<StoppableCollector, TopDocs>() {
+			public StoppableCollector newCollector() {
+				return new StoppableCollector(
+					TopScoreDocCollector.create(maxResults), termination);
+			}
+			public TopDocs reduce(Collection<StoppableCollector> collectors) {
+				TopDocs[] topDocs = new TopDocs[collectors.size()];
+				int i = 0;
+				for (StoppableCollector collector : collectors)
+					topDocs[i++] = collector.topDocsCollector.topDocs();
+				return TopDocs.merge(maxResults, topDocs);
+			}
+		};
+	}
+	
+	/**
+	 * Lucene wraps exceptions thrown on the search threads in an
+	 * ExecutionException and a RuntimeException. This method rethrows I/O
+	 * errors and OutOfMemoryErrors among them the same way as if they had
+	 * been thrown on the calling thread, and returns all other exceptions.
+	 */
+	@NotNull
+	private static RuntimeException unwrapSearchThreadException(@NotNull RuntimeException e)
+			throws SearchException, CheckedOutOfMemoryError {
+		if (e.getCause() instanceof ExecutionException) {
+			Throwable cause = e.getCause().getCause();
+			if (cause instanceof IOException)
+				throw new SearchException(cause.getMessage()); // TODO i18n
+			if (cause instanceof OutOfMemoryError)
+				throw new CheckedOutOfMemoryError(cause);
+		}
+		return e;
+	}
+	
+	/**
+	 * Searches the given query in units of index segments and passes the top
+	 * results found so far to the given handler from time to time, until all
+	 * units have been searched. If the Lucene searcher searches concurrently,
+	 * the units are its groups of segments, which are searched on the search
+	 * executor; otherwise the segments are searched one after another on the
+	 * calling thread.
+	 */
+	@NotNull
+	private TopDocs searchIncrementally(@NotNull LuceneSearcherManager.Snapshot snapshot,
+										@NotNull Query filteredQuery,
+										@NotNull QueryWrapper queryWrapper,
+										final int maxResults,
+										@NotNull final Termination termination,
+										@NotNull PartialResultHandler handler)
+			throws IOException {
+		final Weight weight = snapshot.searcher.createNormalizedWeight(filteredQuery, true);
+		List<LeafReaderContext[]> units = snapshot.getSlices();
+		TopDocs[] unitTopDocs = new TopDocs[units.size()];
+		int totalDocs = snapshot.getReader().maxDoc();
+		int searchedDocs = 0;
+		long nextPublication = System.nanoTime() + PARTIAL_RESULTS_DELAY * 1000000L;
+		
+		CompletionService<TopDocs> completionService = null;
+		Map<Future<TopDocs>, Integer> unitIndexes = new HashMap<Future<TopDocs>, Integer>();
+		boolean success = false;
+		try {
+			if (searchExecutor != null) {
+				completionService = new ExecutorCompletionService<TopDocs>(searchExecutor);
+				for (int i = 0; i < units.size(); i++) {
+					final LeafReaderContext[] unit = units.get(i);
+					Future<TopDocs> future = completionService.submit(new Callable<TopDocs>() {
+						public TopDocs call() throws IOException {
+							return searchUnit(weight, unit, maxResults, termination);
+						}
+					});
+					unitIndexes.put(future, i);
+				}
+			}
+			
+			for (int done = 0; done < units.size(); done++) {
+				int i;
+				if (completionService == null) {
+					i = done;
+					unitTopDocs[i] = searchUnit(weight, units.get(i), maxResults, termination);
+				}
+				else {
+					Future<TopDocs> future = takeCompleted(completionService);
+					i = unitIndexes.remove(future);
+					unitTopDocs[i] = getResult(future);
+				}
+				for (LeafReaderContext leaf : units.get(i))
+					searchedDocs += leaf.reader().maxDoc();
+				
+				if (done < units.size() - 1
+						&& System.nanoTime() - nextPublication > 0
+						&& !termination.isTerminated()) {
+					publishPartialResults(
+						snapshot, unitTopDocs, queryWrapper, handler,
+						searchedDocs, totalDocs);
+					nextPublication = System.nanoTime() + PARTIAL_RESULTS_INTERVAL * 1000000L;
+				}
+			}
+			success = true;
+			
+			// Merging in the order of the units makes the order of hits with equal scores deterministic
+			return TopDocs.merge(maxResults, unitTopDocs);
+		}
+		finally {
+			/*
+			 * Don't let the remaining units run on a released snapshot: The
+			 * caller releases the snapshot as soon as this method returns, so
+			 * the remaining units are told to stop and are waited for.
+			 */
+			if (!success) {
+				termination.cancel();
+				awaitUninterruptibly(unitIndexes.keySet());
+			}
+		}
+	}
+	
+	/**
+	 * Waits for the given search tasks to finish, ignoring their results and
+	 * exceptions. If the calling thread is interrupted, it keeps waiting and
+	 * restores the interrupt status afterwards.
+	 */
+	private static void awaitUninterruptibly(@NotNull Collection<Future<TopDocs>> futures) {
+		boolean interrupted = false;
+		for (Future<TopDocs> future : futures) {
+			while (true) {
+				try {
+					future.get();
+					break;
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+				catch (ExecutionException e) {
+					break;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	/**
+	 * Collects the top results of the given segments, skipping the remaining
+	 * segments if the search is terminated.
+	 */
+	@NotNull
+	private static TopDocs searchUnit(	@NotNull Weight weight,
+										@NotNull LeafReaderContext[] leaves,
+										int maxResults,
+										@NotNull Termination termination)
+			throws IOException {
+		StoppableCollector collector = new StoppableCollector(
+			TopScoreDocCollector.create(maxResults), termination);
+		for (LeafReaderContext leaf : leaves) {
+			try {
+				LeafCollector leafCollector = collector.getLeafCollector(leaf);
+				BulkScorer scorer = weight.bulkScorer(leaf);
+				if (scorer == null)
+					continue;
+				
+				/*
+				 * Scoring the segment in windows of documents lets the
+				 * termination be checked regularly even if the query has few
+				 * hits in a large segment.
+				 */
+				Bits liveDocs = leaf.reader().getLiveDocs();
+				int maxDoc = leaf.reader().maxDoc();
+				int doc = 0;
+				while (doc < maxDoc) {
+					collector.checkTerminated();
+					int end = (int) Math.min((long) doc + SCORE_WINDOW, maxDoc);
+					doc = scorer.score(leafCollector, liveDocs, doc, end);
+				}
+			}
+			catch (CollectionTerminatedException e) {
+				// Continue with the next segment, as the Lucene searcher does
+			}
+		}
+		return collector.topDocsCollector.topDocs();
+	}
+	
+	/**
+	 * Passes the top results of the units searched so far to the given
+	 * handler. Only as many results as fit on a page of the result loader are
+	 * passed on, which is enough for the first screenful.
+	 */
+	private void publishPartialResults(	@NotNull LuceneSearcherManager.Snapshot snapshot,
+										@NotNull TopDocs[] unitTopDocs,
+										@NotNull QueryWrapper queryWrapper,
+										@NotNull PartialResultHandler handler,
+										int searchedDocs,
+										int totalDocs)
+			throws IOException {
+		List<TopDocs> searched = new ArrayList<TopDocs>(unitTopDocs.length);
+		for (TopDocs topDocs : unitTopDocs)
+			if (topDocs != null)
+				searched.add(topDocs);
+		TopDocs partial = TopDocs.merge(
+			ResultLoader.PAGE_SIZE, searched.toArray(new TopDocs[searched.size()]));
+		
+		// The result loader of the partial results gets its own reference
+		snapshot.incRef();
+		List<ResultDocument> results = createResults(
+			snapshot, partial.scoreDocs, queryWrapper);
+		handler.handlePartialResults(results, searchedDocs, totalDocs);
+	}
+	
+	@NotNull
+	private static Future<TopDocs> takeCompleted(@NotNull CompletionService<TopDocs> completionService) {
+		try {
+			return completionService.take();
+		}
+		catch (InterruptedException e) {
+			throw new ThreadInterruptedException(e);
+		}
+	}
+	
+	/**
+	 * Returns the result of the given completed search task, rethrowing the
+	 * exceptions thrown by the task as if it had run on the calling thread.
+	 */
+	@NotNull
+	private static TopDocs getResult(@NotNull Future<TopDocs> future)
+			throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			throw new ThreadInterruptedException(e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+	
+	/**
+	 * Creates the result documents for the given hits. The result loader of
+	 * the documents takes over the given snapshot, which is released if this
+	 * method fails.
+	 */
+	@NotNull
+	private List<ResultDocument> createResults(	@NotNull LuceneSearcherManager.Snapshot snapshot,
+												@NotNull ScoreDoc[] scoreDocs,
+												@NotNull QueryWrapper queryWrapper)
+			throws IOException {
+		ResultLoader loader = null;
+		boolean success = false;
+		try {
+			loader = new ResultLoader(snapshot, scoreDocs, loaderQueue);
+			ResultDocument[] results = new ResultDocument[scoreDocs.length];
+			for (int i = 0; i < scoreDocs.length; i++) {
+				float score = scoreDocs[i].score;
+				LuceneIndex index = snapshot.indexLookup.getIndex(scoreDocs[i].doc);
+				IndexingConfig config = index.getConfig();
+				results[i] = new ResultDocument(
+					loader, i, score, queryWrapper.query,
+					queryWrapper.isPhraseQuery, config, fileFactory,
+					outlookMailFactory, textCache);
+			}
+			
+			// Load the first page now, so that I/O errors are reported here
+			if (results.length > 0)
+				loader.getDocument(0);
+			trackLoader(loader, snapshot);
+			success = true;
+			return Arrays.asList(results);
+		}
+		finally {
+			if (loader == null)
+				snapshot.release();
+			else if (!success)
+				loader.getHandle().release();
+		}
 	}
 
 	@ImmutableCopy
@@ -247,6 +848,87 @@ public final class Searcher {
 	@ThreadSafe
 	public List<ResultDocument> search(@NotNull String queryString)
 			throws SearchException, CheckedOutOfMemoryError {
+		return search(queryString, null);
+	}
+	
+	/**
+	 * Runs the given query like {@link #search(String)}, but only returns
+	 * results that pass the given filter, if the latter is not null. The
+	 * filter is applied within the Lucene query, so that the maximum number of
+	 * results is filled with documents that pass the filter.
+	 */
+	@ImmutableCopy
+	@NotNull
+	@ThreadSafe
+	public List<ResultDocument> search(	@NotNull String queryString,
+										@Nullable SearchFilter filter)
+			throws SearchException, CheckedOutOfMemoryError {
+		return search(queryString, filter, false, null).resultDocuments;
+	}
+	
+	/**
+	 * Runs the given query like {@link #search(String, SearchFilter)}, but
+	 * while the search is running, passes the top results found so far to the
+	 * given handler, so that they can be displayed before the search is
+	 * finished. The returned results are incomplete if the search was stopped
+	 * or exceeded the time limit in the program configuration.
+	 */
+	@NotNull
+	@ThreadSafe
+	public SearchResult search(	@NotNull String queryString,
+								@Nullable SearchFilter filter,
+								@NotNull PartialResultHandler handler)
+			throws SearchException, CheckedOutOfMemoryError {
+		return search(queryString, filter, false, Util.checkNotNull(handler));
+	}
+	
+	/**
+	 * Runs the given query like {@link #search(String, SearchFilter)}, but
+	 * for search-as-you-type: Prefix queries on the document content, such as
+	 * the word being typed followed by '*', are not expanded to all matching
+	 * terms, but only to the most frequent ones, and only the top-scoring
+	 * results up to a small limit are returned.
+	 */
+	@ImmutableCopy
+	@NotNull
+	@ThreadSafe
+	public List<ResultDocument> searchTypeAhead(@NotNull String queryString,
+												@Nullable SearchFilter filter)
+			throws SearchException, CheckedOutOfMemoryError {
+		return search(queryString, filter, true, null).resultDocuments;
+	}
+	
+	/**
+	 * Returns the most frequent completions of the given word prefix in the
+	 * content of the indexed documents, in order of decreasing frequency.
+	 */
+	@ImmutableCopy
+	@NotNull
+	@ThreadSafe
+	public List<String> suggest(@NotNull String prefix) throws SearchException {
+		LuceneSearcherManager.Snapshot snapshot = acquireSnapshot();
+		try {
+			/*
+			 * Lowercase like the analyzers do, independent of the default
+			 * locale; e.g. with a Turkish locale, "I" would become a dotless i.
+			 */
+			return suggester.suggest(
+				snapshot.getReader(), prefix.toLowerCase(Locale.ENGLISH));
+		}
+		catch (IOException e) {
+			throw new SearchException(e.getMessage()); // TODO i18n
+		}
+		finally {
+			snapshot.release();
+		}
+	}
+	
+	@NotNull
+	private SearchResult search(@NotNull String queryString,
+								@Nullable SearchFilter filter,
+								boolean typeAhead,
+								@Nullable PartialResultHandler handler)
+			throws SearchException, CheckedOutOfMemoryError {
 		/*
 		 * Note: For the desktop interface, we'll always search in all available
 		 * indexes, even those which are unchecked on the filter panel. This
@@ -254,11 +936,7 @@ public final class Searcher {
 		 * hidden results without starting another search.
 		 */
 		stopped =false;
-		
-		// Create Lucene query
-		QueryWrapper queryWrapper = createQuery(queryString);
-		Query query = queryWrapper.query;
-		boolean isPhraseQuery = queryWrapper.isPhraseQuery;
+		Termination termination = new Termination(SEARCH_TIME_LIMIT);
 		
 		/*
 		 * Notes regarding the following code:
@@ -267,45 +945,59 @@ public final class Searcher {
 		 * indexes while a search is running over the affected indexes. This can
 		 * happen when two DocFetcher instances are running.
 		 * 
-		 * 2) All the information needed for displaying the results must be
-		 * loaded and returned immediately rather than lazily, because after the
-		 * search the user might delete one or more indexes. This also means the
-		 * result documents must not access the indexes later on.
+		 * 2) The result documents are loaded lazily by a result loader, which
+		 * keeps the snapshot open after the search. Since the user might
+		 * delete one or more indexes later on, the loader is registered with
+		 * this searcher, which will load the remaining documents and release
+		 * the snapshot before the indexes are deleted.
 		 */
 
-		readLock.lock();
+		LuceneSearcherManager.Snapshot snapshot = acquireSnapshot();
+		boolean snapshotTakenOver = false;
 		try {
-			checkIndexesExist();
+			// Create Lucene query
+			QueryWrapper queryWrapper = createQuery(
+				queryString, typeAhead ? snapshot.getReader() : null,
+				hasReversedTerms(snapshot.indexes));
+			Query query = queryWrapper.query;
 			
-			// Perform search; might throw OutOfMemoryError
-			DelegatingCollector collector= new DelegatingCollector(){
-				@Override
-				public void collect(int doc) throws IOException {
-					leafDelegate.collect(doc);
-					if(stopped){
-						throw new StoppedSearcherException();
-					}
-				}
-			};
-			collector.setDelegate(TopScoreDocCollector.create(MAX_RESULTS, null));
-			try{
-				luceneSearcher.search(query, collector);
+			checkIndexesExist(snapshot.indexes);
+			IndexSearcher luceneSearcher = snapshot.searcher;
+			
+			// Perform search, unless the results are cached; might throw OutOfMemoryError
+			ResultCache.Key cacheKey = null;
+			ScoreDoc[] scoreDocs = null;
+			boolean isComplete = true;
+			if (resultCache != null) {
+				cacheKey = new ResultCache.Key(
+					getCacheKey(queryString, filter, typeAhead),
+					snapshot.generation);
+				scoreDocs = resultCache.get(cacheKey);
 			}
-			catch (StoppedSearcherException e){}
-			ScoreDoc[] scoreDocs = ((TopScoreDocCollector)collector.getDelegate()).topDocs().scoreDocs;
-
-			// Create result documents
-			ResultDocument[] results = new ResultDocument[scoreDocs.length];
-			for (int i = 0; i < scoreDocs.length; i++) {
-				Document doc = luceneSearcher.doc(scoreDocs[i].doc);
-				float score = scoreDocs[i].score;
-				LuceneIndex index = indexes.get(((DecoratedMultiReader) luceneSearcher.getIndexReader()).decoratedReaderIndex(i));
-				IndexingConfig config = index.getConfig();
-				results[i] = new ResultDocument(
-					doc, score, query, isPhraseQuery, config, fileFactory,
-					outlookMailFactory);
+			if (scoreDocs == null) {
+				int maxResults = typeAhead ? MAX_TYPE_AHEAD_RESULTS : MAX_RESULTS;
+				Query filteredQuery = applyFilter(
+					query, filter, snapshot.indexLookup);
+				if (handler == null)
+					scoreDocs = luceneSearcher.search(
+						filteredQuery,
+						createCollectorManager(maxResults, termination)).scoreDocs;
+				else
+					scoreDocs = searchIncrementally(
+						snapshot, filteredQuery, queryWrapper, maxResults,
+						termination, handler).scoreDocs;
+				isComplete = !termination.wasTerminated();
+				
+				// Incomplete results aren't cached
+				if (cacheKey != null && isComplete)
+					resultCache.put(cacheKey, scoreDocs);
 			}
-			return Arrays.asList(results);
+
+			// Create result documents; the loader takes over the snapshot
+			snapshotTakenOver = true;
+			List<ResultDocument> results = createResults(
+				snapshot, scoreDocs, queryWrapper);
+			return new SearchResult(results, isComplete);
 		}
 		catch (IllegalArgumentException e) {
 			throw wrapEmptyIndexException(e);
@@ -313,11 +1005,15 @@ public final class Searcher {
 		catch (IOException e) {
 			throw new SearchException(e.getMessage()); // TODO i18n
 		}
+		catch (RuntimeException e) {
+			throw unwrapSearchThreadException(e);
+		}
 		catch (OutOfMemoryError e) {
 			throw new CheckedOutOfMemoryError(e);
 		}
 		finally {
-			readLock.unlock();
+			if (!snapshotTakenOver)
+				snapshot.release();
 		}
 	}
 
@@ -348,6 +1044,20 @@ public final class Searcher {
 	@ThreadSafe
 	public List<ResultDocument> list(@NotNull Set<String> uids)
 			throws SearchException, CheckedOutOfMemoryError {
+		return list(uids, null);
+	}
+	
+	/**
+	 * Lists the documents with the given UIDs like {@link #list(Set)}, but
+	 * only returns documents that pass the given filter, if the latter is not
+	 * null.
+	 */
+	@ImmutableCopy
+	@NotNull
+	@ThreadSafe
+	public List<ResultDocument> list(	@NotNull Set<String> uids,
+										@Nullable SearchFilter filter)
+			throws SearchException, CheckedOutOfMemoryError {
 		// Construct a filter that only matches documents with the given UIDs
 		BooleanQuery.Builder builder=new BooleanQuery.Builder();
 		ArrayList<Term> terms=new ArrayList<Term>(uids.size());
@@ -359,9 +1069,12 @@ public final class Searcher {
 		
 		Query query = new MatchAllDocsQuery();
 		
-		readLock.lock();
+		LuceneSearcherManager.Snapshot snapshot = acquireSnapshot();
 		try {
-			checkIndexesExist();
+			if (filter != null)
+				filter.addClauses(builder, snapshot.indexLookup);
+			checkIndexesExist(snapshot.indexes);
+			IndexSearcher luceneSearcher = snapshot.searcher;
 			
 			// Perform search; might throw OutOfMemoryError
 			builder.add(query,BooleanClause.Occur.MUST);
@@ -372,11 +1085,11 @@ public final class Searcher {
 			for (int i = 0; i < results.length; i++) {
 				Document doc = luceneSearcher.doc(scoreDocs[i].doc);
 				float score = scoreDocs[i].score;
-				LuceneIndex index = indexes.get(((DecoratedMultiReader) luceneSearcher.getIndexReader()).decoratedReaderIndex(i));
+				LuceneIndex index = snapshot.indexLookup.getIndex(scoreDocs[i].doc);
 				IndexingConfig config = index.getConfig();
 				results[i] = new ResultDocument(
 					doc, score, query, true, config, fileFactory,
-					outlookMailFactory);
+					outlookMailFactory, textCache);
 			}
 			
 			// Sort results by title
@@ -399,7 +1112,7 @@ public final class Searcher {
 			throw new CheckedOutOfMemoryError(e);
 		}
 		finally {
-			readLock.unlock();
+			snapshot.release();
 		}
 	}
 	
@@ -453,14 +1166,16 @@ public final class Searcher {
 			builder.add( locationQueryBuilder.build(), BooleanClause.Occur.FILTER );
 		}
 
-		// Create query
-		QueryWrapper queryWrapper = createQuery(webQuery.query);
-		Query query = queryWrapper.query;
-		boolean isPhraseQuery = queryWrapper.isPhraseQuery;
-		
-		readLock.lock();
+		LuceneSearcherManager.Snapshot snapshot = searcherManager.acquire();
 		try {
-			checkIndexesExist();
+			// Create query
+			QueryWrapper queryWrapper = createQuery(
+				webQuery.query, null, hasReversedTerms(snapshot.indexes));
+			Query query = queryWrapper.query;
+			boolean isPhraseQuery = queryWrapper.isPhraseQuery;
+			
+			checkIndexesExist(snapshot.indexes);
+			IndexSearcher luceneSearcher = snapshot.searcher;
 			
 			// Perform search; might throw OutOfMemoryError
 			int maxResults = (webQuery.pageIndex + 1) * PAGE_SIZE;
@@ -484,11 +1199,11 @@ public final class Searcher {
 			for (int i = start; i < end; i++) {
 				Document doc = luceneSearcher.doc(scoreDocs[i].doc);
 				float score = scoreDocs[i].score;
-				LuceneIndex index = indexes.get(((DecoratedMultiReader) luceneSearcher.getIndexReader()).decoratedReaderIndex(i));
+				LuceneIndex index = snapshot.indexLookup.getIndex(scoreDocs[i].doc);
 				IndexingConfig config = index.getConfig();
 				results[i - start] = new ResultDocument(
 					doc, score, query, isPhraseQuery, config, fileFactory,
-					outlookMailFactory);
+					outlookMailFactory, textCache);
 			}
 			
 			int hitCount = topDocs.totalHits;
@@ -501,23 +1216,83 @@ public final class Searcher {
 		catch (IllegalArgumentException e) {
 			throw wrapEmptyIndexException(e);
 		}
+		catch (RuntimeException e) {
+			throw unwrapSearchThreadException(e);
+		}
 		catch (OutOfMemoryError e) {
 			throw new CheckedOutOfMemoryError(e);
 		}
 		finally {
-			readLock.unlock();
+			snapshot.release();
 		}
 	}
 	
+	/**
+	 * Returns the settings that determine the results of a search on a given
+	 * set of index readers, for use as a result cache key. Whitespace in the
+	 * query string is normalized, since the query parser ignores it.
+	 */
+	@NotNull
+	private static List<Object> getCacheKey(@NotNull String queryString,
+											@Nullable SearchFilter filter,
+											boolean typeAhead) {
+		String normalizedQuery = queryString.trim().replaceAll("\\s+", " ");
+		return Arrays.<Object>asList(
+			normalizedQuery,
+			SettingsConf.Int.LuceneAnalyzer.get(),
+			SettingsConf.Bool.UseOrOperator.get(),
+			typeAhead,
+			filter == null ? null : filter.getCacheKey());
+	}
+	
+	@NotNull
+	private static Query applyFilter(	@NotNull Query query,
+										@Nullable SearchFilter filter,
+										@NotNull IndexLookup indexLookup) {
+		if (filter == null)
+			return query;
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.add(query, BooleanClause.Occur.MUST);
+		filter.addClauses(builder, indexLookup);
+		return builder.build();
+	}
+	
+	/**
+	 * Returns whether all of the given indexes contain the reversed terms of
+	 * the content, so that leading wildcards can be searched for on them. If
+	 * only some of the indexes contain them, leading wildcards are searched
+	 * for on the content field, which is slower, but finds the same documents
+	 * in all indexes.
+	 */
+	private static boolean hasReversedTerms(@NotNull List<LuceneIndex> indexes) {
+		if (indexes.isEmpty())
+			return false;
+		for (LuceneIndex index : indexes)
+			if (!index.getConfig().isIndexReversedTerms())
+				return false;
+		return true;
+	}
+	
+	/**
+	 * If the given reader is not null, prefix queries on the content are
+	 * replaced with the most frequent completions in the reader. If
+	 * <tt>reverseLeadingWildcards</tt> is true, terms with leading wildcards
+	 * are searched for on the reversed terms of the content.
+	 */
 	@NotNull
 	@ThreadSafe
-	private static QueryWrapper createQuery(@NotNull String queryString)
+	private QueryWrapper createQuery(	@NotNull String queryString,
+										@Nullable IndexReader typeAheadReader,
+										boolean reverseLeadingWildcards)
 			throws SearchException {
 		PhraseDetectingQueryParser queryParser = new PhraseDetectingQueryParser(
 			Fields.CONTENT.key(), IndexRegistry.getAnalyzer());
+		if (typeAheadReader != null)
+			queryParser.setSuggester(suggester, typeAheadReader);
 		queryParser.setAllowLeadingWildcard(true);
-		RewriteMethod rewriteMethod = MultiTermQuery.SCORING_BOOLEAN_REWRITE;
-		queryParser.setMultiTermRewriteMethod(rewriteMethod);
+		queryParser.setReverseLeadingWildcards(reverseLeadingWildcards);
+		queryParser.setMultiTermRewriteMethod(defaultRewrite);
+		queryParser.setRewriteMethods(prefixRewrite, wildcardRewrite, fuzzyRewrite);
 		if (!SettingsConf.Bool.UseOrOperator.get())
 			queryParser.setDefaultOperator(QueryParser.AND_OPERATOR);
 		
@@ -542,8 +1317,9 @@ public final class Searcher {
 	
 	// Checks that all indexes still exist
 	@NotNull
-	@NotThreadSafe
-	private void checkIndexesExist() throws SearchException {
+	@ThreadSafe
+	private static void checkIndexesExist(@NotNull List<LuceneIndex> indexes)
+			throws SearchException {
 		if (indexes.isEmpty())
 			throw new SearchException("Nothing to search in: No indexes have been created yet."); // TODO i18n
 		for (LuceneIndex index : indexes) {
@@ -594,20 +1370,25 @@ public final class Searcher {
 		writeLock.lock();
 		try {
 			indexRegistry.removeListeners(addedListener, null);
-			Closeables.closeQuietly(luceneSearcher.getIndexReader());
+			searcherManager.close();
 		}
 		finally {
 			writeLock.unlock();
 		}
+		materializeLoaders();
 		
 		/*
-		 * This should be done after closing the Lucene searcher in order to
+		 * This should be done after closing the searcher manager in order to
 		 * ensure that no indexes will be deleted outside the deletion queue
 		 * while the Lucene searcher is still open.
 		 */
 		synchronized (this) {
 			deletionThread.interrupt();
 		}
+		
+		// Searches that are still running may finish
+		if (searchExecutor != null)
+			searchExecutor.shutdown();
 	}
 	
 	private static final class QueryWrapper {
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.docfetcher.util.Util;
+import net.sourceforge.docfetcher.util.annotations.Immutable;
+import net.sourceforge.docfetcher.util.annotations.NotNull;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+/**
+ * Completes word prefixes to the most frequent indexed terms starting with
+ * them, for the search-as-you-type mode.
+ * <p>
+ * The completions are looked up in the term dictionaries of the index
+ * segments, which are written at indexing time and come with an FST-based
+ * prefix index, so seeking to a prefix is cheap. Only a limited number of
+ * terms is visited per segment, so that short prefixes on large indexes don't
+ * enumerate the whole dictionary. Since the completions are computed from the
+ * reader they're requested for, they're always up to date with the indexes.
+ * The completions of recently requested prefixes are cached per reader.
+ *
+ * @author Tran Nam Quang
+ */
+@ThreadSafe
+final class Suggester {
+
+	/** The maximum number of terms visited per segment and prefix. */
+	static final int MAX_VISITED_TERMS = 10000;
+
+	private static final int CACHE_SIZE = 64;
+
+	private final String field;
+	private final int maxCompletions;
+
+	// The reader for which the cached completions were computed
+	private IndexReader cachedReader; // guarded by 'this' lock
+	private final Map<String, List<String>> cache = new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	}; // guarded by 'this' lock
+
+	public Suggester(@NotNull String field, int maxCompletions) {
+		this.field = Util.checkNotNull(field);
+		this.maxCompletions = maxCompletions;
+	}
+
+	/**
+	 * Returns the most frequent terms in the given reader that start with the
+	 * given prefix, in order of decreasing document frequency. The prefix
+	 * must already be in the form of an indexed term, e.g. lowercased.
+	 */
+	@Immutable
+	@NotNull
+	public List<String> suggest(@NotNull IndexReader reader,
+								@NotNull String prefix) throws IOException {
+		synchronized (this) {
+			if (cachedReader != reader) {
+				cache.clear();
+				cachedReader = reader;
+			}
+			List<String> completions = cache.get(prefix);
+			if (completions != null)
+				return completions;
+		}
+		List<String> completions = Collections.unmodifiableList(
+			computeCompletions(reader, prefix));
+		synchronized (this) {
+			if (cachedReader == reader)
+				cache.put(prefix, completions);
+		}
+		return completions;
+	}
+
+	@NotNull
+	private List<String> computeCompletions(@NotNull IndexReader reader,
+											@NotNull String prefix)
+			throws IOException {
+		BytesRef prefixBytes = new BytesRef(prefix);
+		final Map<String, Integer> docFreqs = new HashMap<String, Integer>();
+		for (LeafReaderContext leaf : reader.leaves()) {
+			Terms terms = leaf.reader().terms(field);
+			if (terms == null)
+				continue;
+			TermsEnum termsEnum = terms.iterator();
+			if (termsEnum.seekCeil(prefixBytes) == TermsEnum.SeekStatus.END)
+				continue;
+			int visited = 0;
+			do {
+				BytesRef term = termsEnum.term();
+				if (!StringHelper.startsWith(term, prefixBytes))
+					break;
+				String termStr = term.utf8ToString();
+				Integer docFreq = docFreqs.get(termStr);
+				int sum = termsEnum.docFreq() + (docFreq == null ? 0 : docFreq);
+				docFreqs.put(termStr, sum);
+			}
+			while (++visited < MAX_VISITED_TERMS && termsEnum.next() != null);
+		}
+
+		List<String> completions = new ArrayList<String>(docFreqs.keySet());
+		Collections.sort(completions, new Comparator<String>() {
+			public int compare(String o1, String o2) {
+				int c = docFreqs.get(o2).compareTo(docFreqs.get(o1));
+				return c != 0 ? c : o1.compareTo(o2);
+			}
+		});
+		if (completions.size() > maxCompletions)
+			return new ArrayList<String>(completions.subList(0, maxCompletions));
+		return completions;
+	}
+
+	/**
+	 * Returns a query matching the documents that contain any of the
+	 * completions of the given prefix, or no documents if there are no
+	 * completions.
+	 */
+	@NotNull
+	public Query createCompletionQuery(	@NotNull IndexReader reader,
+										@NotNull String prefix)
+			throws IOException {
+		List<String> completions = suggest(reader, prefix);
+		if (completions.isEmpty())
+			return new MatchNoDocsQuery();
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		for (String completion : completions) {
+			Query termQuery = new TermQuery(new Term(field, completion));
+			builder.add(termQuery, BooleanClause.Occur.SHOULD);
+		}
+		return builder.build();
+	}
+
+}
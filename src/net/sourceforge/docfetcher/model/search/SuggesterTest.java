@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.model.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import net.sourceforge.docfetcher.model.Fields;
+import net.sourceforge.docfetcher.model.index.IndexWriterAdapter;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import com.google.common.io.Closeables;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class SuggesterTest {
+
+	@Test
+	public void testSuggest() throws Exception {
+		Directory directory = new RAMDirectory();
+		IndexWriterAdapter writer = new IndexWriterAdapter(directory);
+		String[] contents = {
+			"report repository", "report reports", "report rename", "other"
+		};
+		for (String content : contents) {
+			Document doc = new Document();
+			doc.add(Fields.createContent(content));
+			writer.add(doc);
+		}
+		Closeables.closeQuietly(writer);
+
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			Suggester suggester = new Suggester(Fields.CONTENT.key(), 2);
+			assertEquals(
+				Arrays.asList("report", "reports"),
+				suggester.suggest(reader, "rep"));
+			assertEquals(
+				Arrays.asList("rename"),
+				suggester.suggest(reader, "ren"));
+			assertEquals(0, suggester.suggest(reader, "xyz").size());
+
+			// Documents matching any of the two completions
+			IndexSearcher searcher = new IndexSearcher(reader);
+			int hitCount = searcher.count(
+				suggester.createCompletionQuery(reader, "rep"));
+			assertEquals(3, hitCount);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+}
@@ -11,100 +11,211 @@
 
 package net.sourceforge.docfetcher.util;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.Properties;
 
 import net.sourceforge.docfetcher.util.annotations.NotNull;
-import net.sourceforge.docfetcher.util.annotations.NotThreadSafe;
 import net.sourceforge.docfetcher.util.annotations.Nullable;
+import net.sourceforge.docfetcher.util.annotations.ThreadSafe;
 
 import org.mozilla.universalchardet.UniversalDetector;
 
 import com.google.common.base.Charsets;
-import com.google.common.io.ByteStreams;
-import com.google.common.io.Files;
+import com.google.common.io.Closeables;
 
 /**
+ * Decodes text of unknown encoding. The charset is detected from a bounded
+ * prefix of the input, and the input is then decoded incrementally, so that
+ * the raw bytes never have to be held in memory as a whole. All methods may
+ * be called from several threads at once.
+ *
  * @author Tran Nam Quang
  */
 public final class CharsetDetectorHelper {
-	
-	@NotNull public static String charsetOverride = "";
-	
-	@Nullable private static UniversalDetector charsetDetector;
-	
+
+	@NotNull public static volatile String charsetOverride = "";
+
+	/**
+	 * The maximum number of bytes that are examined to detect the charset of
+	 * a file or stream. The detector usually decides much earlier.
+	 */
+	private static final int DETECTION_LIMIT = 1024 * 1024;
+
+	/*
+	 * Text files may be parsed on several threads at once (see the
+	 * ParserThreads setting), so each thread gets its own detector and
+	 * buffers.
+	 */
+	private static final ThreadLocal<UniversalDetector> charsetDetector = new ThreadLocal<UniversalDetector>() {
+		protected UniversalDetector initialValue() {
+			return new UniversalDetector(null);
+		}
+	};
+	private static final ThreadLocal<byte[]> byteBuffer = new ThreadLocal<byte[]>() {
+		protected byte[] initialValue() {
+			return new byte[4096];
+		}
+	};
+	private static final ThreadLocal<char[]> charBuffer = new ThreadLocal<char[]>() {
+		protected char[] initialValue() {
+			return new char[8192];
+		}
+	};
+
 	private CharsetDetectorHelper() {
 	}
-	
+
 	@NotNull
-	@NotThreadSafe
+	@ThreadSafe
 	public static Properties load(@NotNull File propsFile) throws IOException {
-		byte[] bytes = Files.toByteArray(propsFile);
-		String contents = toString(bytes);
+		String contents = toString(propsFile);
 		Properties props = new Properties();
 		props.load(new StringReader(contents));
 		return props;
 	}
-	
+
 	@NotNull
-	@NotThreadSafe
+	@ThreadSafe
 	public static String toString(@NotNull InputStream in)
 			throws IOException {
-		byte[] bytes = ByteStreams.toByteArray(in);
-		return toString(bytes);
+		return readFully(toReader(in, DETECTION_LIMIT), 8192);
 	}
-	
+
 	@NotNull
-	@NotThreadSafe
+	@ThreadSafe
 	public static String toString(@NotNull File file)
 			throws IOException {
-		byte[] bytes = Files.toByteArray(file);
-		return toString(bytes);
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int capacityHint = (int) Math.min(file.length(), 64 * 1024 * 1024);
+			return readFully(toReader(in, DETECTION_LIMIT), capacityHint);
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
 	}
-	
+
+	/**
+	 * Returns a reader that decodes the given input stream incrementally, so
+	 * that the stream's content doesn't have to fit into memory. Unlike
+	 * {@link #toString(byte[])}, this method detects the charset only from
+	 * the first bytes of the stream, up to the given number of bytes.
+	 */
+	@NotNull
+	@ThreadSafe
+	public static Reader toReader(@NotNull InputStream in, int detectionLimit)
+			throws IOException {
+		Charset charset = getCharsetOverride();
+		if (charset != null)
+			return new InputStreamReader(in, newDecoder(charset));
+
+		BufferedInputStream bufferedIn = new BufferedInputStream(in);
+		bufferedIn.mark(detectionLimit);
+		UniversalDetector detector = charsetDetector.get();
+		byte[] buf = byteBuffer.get();
+		int total = 0;
+		int nread;
+		while (total < detectionLimit && !detector.isDone()
+				&& (nread = bufferedIn.read(buf, 0, Math.min(buf.length, detectionLimit - total))) > 0) {
+			detector.handleData(buf, 0, nread);
+			total += nread;
+		}
+		bufferedIn.reset();
+		return new InputStreamReader(bufferedIn, newDecoder(finishDetection(detector)));
+	}
+
 	@NotNull
-	@NotThreadSafe
+	@ThreadSafe
 	public static String toString(@NotNull byte[] bytes)
 			throws IOException {
-		if (!charsetOverride.trim().isEmpty()) {
-			try {
-				return new String(bytes, charsetOverride.trim());
-			} catch (UnsupportedCharsetException e) {
-				throw new IOException("Charset not found: " + charsetOverride.trim());
-			}
+		Charset charset = getCharsetOverride();
+		if (charset == null) {
+			UniversalDetector detector = charsetDetector.get();
+			feed(detector, ByteBuffer.wrap(bytes));
+			charset = finishDetection(detector);
 		}
-		
-		if (charsetDetector == null)
-			charsetDetector = new UniversalDetector(null);
-		
-		byte[] buf = new byte[4096];
-		ByteArrayInputStream byteIn = new ByteArrayInputStream(bytes);
-		
-		int nread;
-		while ((nread = byteIn.read(buf)) > 0 && !charsetDetector.isDone())
-			charsetDetector.handleData(buf, 0, nread);
-		charsetDetector.dataEnd();
-		String charsetName = charsetDetector.getDetectedCharset();
-		charsetDetector.reset();
-		
+		return new String(bytes, charset);
+	}
+
+	private static void feed(	@NotNull UniversalDetector detector,
+								@NotNull ByteBuffer bytes) {
+		byte[] buf = byteBuffer.get();
+		while (bytes.hasRemaining() && !detector.isDone()) {
+			int length = Math.min(buf.length, bytes.remaining());
+			bytes.get(buf, 0, length);
+			detector.handleData(buf, 0, length);
+		}
+	}
+
+	/*
+	 * Returns the detected charset and resets the detector for the next
+	 * detection on the same thread.
+	 */
+	@NotNull
+	private static Charset finishDetection(@NotNull UniversalDetector detector) {
+		detector.dataEnd();
+		String charsetName = detector.getDetectedCharset();
+		detector.reset();
+		if (charsetName == null)
+			return Charsets.ISO_8859_1;
 		try {
-			return charsetName == null
-				? new String(bytes, Charsets.ISO_8859_1)
-				: new String(bytes, charsetName);
+			return Charset.forName(charsetName);
 		}
-		catch (UnsupportedEncodingException e) {
+		catch (IllegalArgumentException e) {
 			/*
 			 * Bug #1410: DocFetcher fails to parse text files with HZ-GB-2312
 			 * encoding, since the latter is not supported by the JRE.
 			 */
-			return new String(bytes, Charsets.ISO_8859_1);
+			return Charsets.ISO_8859_1;
+		}
+	}
+
+	@Nullable
+	private static Charset getCharsetOverride() throws IOException {
+		String override = charsetOverride.trim();
+		if (override.isEmpty())
+			return null;
+		try {
+			return Charset.forName(override);
 		}
+		catch (IllegalCharsetNameException e) {
+			throw new IOException("Charset not found: " + override);
+		}
+		catch (UnsupportedCharsetException e) {
+			throw new IOException("Charset not found: " + override);
+		}
+	}
+
+	// Replaces malformed input like the String constructors do
+	@NotNull
+	private static CharsetDecoder newDecoder(@NotNull Charset charset) {
+		return charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@NotNull
+	private static String readFully(@NotNull Reader reader, int capacityHint)
+			throws IOException {
+		StringBuilder sb = new StringBuilder(Math.max(capacityHint, 16));
+		char[] buf = charBuffer.get();
+		int nread;
+		while ((nread = reader.read(buf)) != -1)
+			sb.append(buf, 0, nread);
+		return sb.toString();
 	}
 
 }
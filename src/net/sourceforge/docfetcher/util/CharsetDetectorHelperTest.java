@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Tran Nam Quang.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Tran Nam Quang - initial API and implementation
+ *******************************************************************************/
+
+package net.sourceforge.docfetcher.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * @author Tran Nam Quang
+ */
+public final class CharsetDetectorHelperTest {
+
+	@Test
+	public void testLargeFile() throws Exception {
+		// Larger than the buffers used for detection and decoding
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 200 * 1024)
+			sb.append("Grüße aus Köln, Ærø und Zürich. ");
+		String expected = sb.toString();
+
+		File tempFile = File.createTempFile("charset-test", ".txt");
+		try {
+			Files.write(expected, tempFile, Charsets.UTF_8);
+			assertEquals(expected, CharsetDetectorHelper.toString(tempFile));
+		}
+		finally {
+			tempFile.delete();
+		}
+	}
+
+	@Test
+	public void testConcurrentDetection() throws Exception {
+		final String utf8Text = "Ünïcödé tëxt – “quoted” ";
+		final String latinText = "Ärger über Öl ";
+		final byte[] utf8Bytes = repeat(utf8Text, 500).getBytes(Charsets.UTF_8);
+		final byte[] latinBytes = repeat(latinText, 500).getBytes(Charsets.ISO_8859_1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 40; i++) {
+				final boolean utf8 = i % 2 == 0;
+				futures.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() throws Exception {
+						byte[] bytes = utf8 ? utf8Bytes : latinBytes;
+						String expected = repeat(utf8 ? utf8Text : latinText, 500);
+						return expected.equals(CharsetDetectorHelper.toString(
+							new ByteArrayInputStream(bytes)));
+					}
+				}));
+			}
+			for (Future<Boolean> future : futures)
+				assertEquals(true, future.get());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private static String repeat(String s, int count) {
+		StringBuilder sb = new StringBuilder(s.length() * count);
+		for (int i = 0; i < count; i++)
+			sb.append(s);
+		return sb.toString();
+	}
+
+}